@@ -13,29 +13,148 @@ import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Move;
 import net.sf.gogui.go.PointList;
 
-/** Updates a go.Board to a node in a GameTree. */
+/** Updates a go.Board to a node in a GameTree.
+    Remembers the node of the last update. If the next update is for the
+    same tree and board and the board was not changed in between, the board
+    is updated incrementally by undoing the moves back to the common
+    ancestor of both nodes and playing the moves to the new node. This
+    makes stepping through a game take constant time per step. A full
+    update from the root is done if nodes on the way contain setup stones
+    or a player to move, or if the incremental update is not possible for
+    other reasons. */
 public class BoardUpdater
 {
     public BoardUpdater()
     {
         m_nodes = new ArrayList<ConstNode>(400);
+        m_moves = new ArrayList<Move>(400);
+    }
+
+    /** Remove all cached checkpoints.
+        Needs to be called if nodes were changed in a way that changes the
+        position at the node or its descendants (e.g. adding setup stones
+        or changing the player to move), if checkpoints are enabled.
+        @see #enableCheckpoints */
+    public void clearCheckpoints()
+    {
+        if (m_checkpoints != null)
+            m_checkpoints.clear();
+    }
+
+    /** Enable a cache of positions at nodes for full updates.
+        Full updates store a snapshot of the position at nodes along the
+        path from the root with a depth that is a multiple of the given
+        interval. Later full updates start with the position of the
+        nearest ancestor in the cache instead of the root and replay only
+        the remaining nodes. The cache uses the nodes as keys; if nodes are
+        changed, clearCheckpoints needs to be called.
+        @param interval The distance in nodes between checkpoints.
+        @param maxMemory The maximum estimated memory for the cache in
+        bytes. Least recently used checkpoints are removed first. */
+    public void enableCheckpoints(int interval, long maxMemory)
+    {
+        m_checkpoints = new CheckpointCache(interval, maxMemory);
     }
 
     public void update(ConstGameTree tree, ConstNode currentNode, Board board)
     {
-        board.init(tree.getBoardSize());
         int handicap = tree.getGameInfoConst(currentNode).getHandicap();
+        if (! updateIncremental(tree, currentNode, board, handicap))
+            updateFull(tree, currentNode, board, handicap);
+        m_tree = tree;
+        m_node = currentNode;
+        m_board = board;
+        m_handicap = handicap;
+        m_numberMoves = board.getNumberMoves();
+        m_hashCode = board.getHashCode();
+        m_toMove = board.getToMove();
+    }
+
+    /** Local variable used in update.
+        Member variable for avoiding frequent new memory allocations. */
+    private final ArrayList<ConstNode> m_nodes;
+
+    /** Moves not yet played in update.
+        Member variable for avoiding frequent new memory allocations. */
+    private final ArrayList<Move> m_moves;
+
+    /** Cache of positions at nodes.
+        Null, if not enabled. */
+    private CheckpointCache m_checkpoints;
+
+    /** Tree of the last update. */
+    private ConstGameTree m_tree;
+
+    /** Node of the last update. */
+    private ConstNode m_node;
+
+    /** Board of the last update. */
+    private Board m_board;
+
+    /** Handicap of the last update. */
+    private int m_handicap;
+
+    /** Number of moves on the board after the last update.
+        Used for detecting changes of the board between updates. */
+    private int m_numberMoves;
+
+    /** Hash code of the board after the last update.
+        Used for detecting changes of the board between updates. */
+    private long m_hashCode;
+
+    /** Color to move after the last update.
+        Used for detecting changes of the board between updates. */
+    private GoColor m_toMove;
+
+    /** Check if a node only contains a move (or nothing) that changes the
+        board. */
+    private static boolean isMoveOnly(ConstNode node)
+    {
+        return (! node.hasSetup() && node.getPlayer() == null);
+    }
+
+    private void updateFull(ConstGameTree tree, ConstNode currentNode,
+                            Board board, int handicap)
+    {
         NodeUtil.getPathToRoot(currentNode, m_nodes);
         int nuMoves = 0;
         boolean isFirstPlacement = true;
         boolean isHandicapSetupDone = false;
         boolean isInInitialBlackMoveSequence = true;
-        for (int i = m_nodes.size() - 1; i >= 0; --i)
+        int start = m_nodes.size() - 1;
+        CheckpointCache.Entry checkpoint = null;
+        if (m_checkpoints != null)
+            for (int i = 0; i < m_nodes.size() && checkpoint == null; ++i)
+            {
+                checkpoint = m_checkpoints.get(m_nodes.get(i), handicap);
+                if (checkpoint != null
+                    && checkpoint.m_snapshot.getSize() == tree.getBoardSize())
+                    start = i - 1;
+                else
+                    checkpoint = null;
+            }
+        if (checkpoint == null)
+            board.init(tree.getBoardSize());
+        else
+        {
+            board.restore(checkpoint.m_snapshot);
+            nuMoves = checkpoint.m_numberMoves;
+            isFirstPlacement = checkpoint.m_isFirstPlacement;
+            isHandicapSetupDone = checkpoint.m_isHandicapSetupDone;
+            isInInitialBlackMoveSequence =
+                checkpoint.m_isInInitialBlackMoveSequence;
+        }
+        // Moves are collected and played with Board.playSequence, which does
+        // not keep information for undoing them. Undoing them later in an
+        // incremental update replays the moves from the setup position.
+        m_moves.clear();
+        for (int i = start; i >= 0; --i)
         {
             ConstNode node = m_nodes.get(i);
             GoColor player = node.getPlayer();
             if (node.hasSetup())
             {
+                playMoves(board);
                 ConstPointList setupBlack = node.getSetup(BLACK);
                 ConstPointList setupWhite = node.getSetup(WHITE);
                 ConstPointList setupEmpty = node.getSetup(EMPTY);
@@ -52,11 +171,14 @@ public class BoardUpdater
                 isInInitialBlackMoveSequence = false;
             }
             else if (player != null)
+            {
+                playMoves(board);
                 board.setToMove(player);
+            }
             Move move = node.getMove();
             if (move != null)
             {
-                board.play(move);
+                m_moves.add(move);
                 ++nuMoves;
                 isFirstPlacement = false;
                 if (move.getColor() != BLACK)
@@ -66,16 +188,91 @@ public class BoardUpdater
                 if (handicap > 0 && ! isHandicapSetupDone &&
                     isInInitialBlackMoveSequence && nuMoves == handicap)
                 {
+                    playMoves(board);
                     setupMovesAsHandicap(board);
                     isHandicapSetupDone = true;
                 }
             }
+            int depth = m_nodes.size() - 1 - i;
+            if (m_checkpoints != null
+                && m_checkpoints.isCheckpoint(node, depth))
+            {
+                playMoves(board);
+                CheckpointCache.Entry entry =
+                    new CheckpointCache.Entry(board.getSnapshot(), handicap,
+                                              nuMoves, isFirstPlacement,
+                                              isHandicapSetupDone,
+                                              isInInitialBlackMoveSequence);
+                m_checkpoints.put(node, entry);
+            }
         }
+        playMoves(board);
     }
 
-    /** Local variable used in update.
-        Member variable for avoiding frequent new memory allocations. */
-    private final ArrayList<ConstNode> m_nodes;
+    /** Update the board from the node of the last update.
+        @return false, if an incremental update is not possible. The board
+        can be partially updated in this case and needs a full update. */
+    private boolean updateIncremental(ConstGameTree tree,
+                                      ConstNode currentNode, Board board,
+                                      int handicap)
+    {
+        if (tree != m_tree || board != m_board || m_node == null
+            || currentNode == m_node || handicap != m_handicap
+            || board.getSize() != tree.getBoardSize()
+            || board.getNumberMoves() != m_numberMoves
+            || board.getHashCode() != m_hashCode
+            || board.getToMove() != m_toMove)
+            return false;
+        // Handicap stones stored as moves are converted into setup stones
+        // after the last handicap move, which only a full update does
+        if (handicap > 0 && ! board.isSetupHandicap())
+            return false;
+        ConstNode oldNode = m_node;
+        ConstNode newNode = currentNode;
+        int oldDepth = NodeUtil.getDepth(oldNode);
+        int newDepth = NodeUtil.getDepth(newNode);
+        m_nodes.clear();
+        while (newDepth > oldDepth)
+        {
+            m_nodes.add(newNode);
+            newNode = newNode.getFatherConst();
+            --newDepth;
+        }
+        while (oldNode != newNode)
+        {
+            if (oldDepth == newDepth)
+            {
+                m_nodes.add(newNode);
+                newNode = newNode.getFatherConst();
+                --newDepth;
+            }
+            // The old node could have been removed from the tree
+            if (oldNode == null || newNode == null)
+                return false;
+            if (! isMoveOnly(oldNode))
+                return false;
+            Move move = oldNode.getMove();
+            if (move != null)
+            {
+                if (board.getNumberMoves() == 0
+                    || ! move.equals(board.getLastMove()))
+                    return false;
+                board.undo();
+            }
+            oldNode = oldNode.getFatherConst();
+            --oldDepth;
+        }
+        for (int i = m_nodes.size() - 1; i >= 0; --i)
+        {
+            ConstNode node = m_nodes.get(i);
+            if (! isMoveOnly(node))
+                return false;
+            Move move = node.getMove();
+            if (move != null)
+                board.play(move);
+        }
+        return true;
+    }
 
     /** Initialize board with new setup from merging the current position
         with the setup properties from a node. */
@@ -113,6 +310,12 @@ public class BoardUpdater
         board.setup(black, white, player);
     }
 
+    private void playMoves(Board board)
+    {
+        board.playSequence(m_moves);
+        m_moves.clear();
+    }
+
     void setupMovesAsHandicap(Board board)
     {
         PointList black = new PointList();
@@ -0,0 +1,130 @@
+// CheckpointCache.java
+
+package net.sf.gogui.game;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import net.sf.gogui.go.BoardSnapshot;
+
+/** Cache of board positions at nodes of a game tree.
+    Used by BoardUpdater for restoring the position at the nearest cached
+    ancestor of a node instead of replaying all nodes from the root.
+    Entries are evicted in least-recently-used order if the estimated
+    memory of the cached snapshots exceeds a limit. The estimate does not
+    take into account that snapshots of the same board share structure, so
+    the real memory use is lower. */
+final class CheckpointCache
+{
+    /** State of BoardUpdater after processing a node. */
+    public static final class Entry
+    {
+        public final BoardSnapshot m_snapshot;
+
+        public final int m_handicap;
+
+        public final int m_numberMoves;
+
+        public final boolean m_isFirstPlacement;
+
+        public final boolean m_isHandicapSetupDone;
+
+        public final boolean m_isInInitialBlackMoveSequence;
+
+        public Entry(BoardSnapshot snapshot, int handicap, int numberMoves,
+                     boolean isFirstPlacement, boolean isHandicapSetupDone,
+                     boolean isInInitialBlackMoveSequence)
+        {
+            m_snapshot = snapshot;
+            m_handicap = handicap;
+            m_numberMoves = numberMoves;
+            m_isFirstPlacement = isFirstPlacement;
+            m_isHandicapSetupDone = isHandicapSetupDone;
+            m_isInInitialBlackMoveSequence = isInInitialBlackMoveSequence;
+        }
+    }
+
+    /** Constructor.
+        @param interval Store a checkpoint at nodes with a depth that is a
+        multiple of this number.
+        @param maxMemory Maximum estimated memory of the cached entries in
+        bytes. */
+    public CheckpointCache(int interval, long maxMemory)
+    {
+        assert interval > 0;
+        m_interval = interval;
+        m_maxMemory = maxMemory;
+    }
+
+    public void clear()
+    {
+        m_entries.clear();
+        m_memory = 0;
+    }
+
+    /** Get the entry for a node.
+        Marks the entry as recently used.
+        @return The entry or null, if the node is not in the cache or was
+        stored with a different handicap. */
+    public Entry get(ConstNode node, int handicap)
+    {
+        Entry entry = m_entries.get(node);
+        if (entry == null || entry.m_handicap != handicap)
+            return null;
+        return entry;
+    }
+
+    public int getInterval()
+    {
+        return m_interval;
+    }
+
+    /** Check if a checkpoint should be stored for a node.
+        @param node The node.
+        @param depth The depth of the node.
+        @see NodeUtil#getDepth */
+    public boolean isCheckpoint(ConstNode node, int depth)
+    {
+        return (depth > 0 && depth % m_interval == 0
+                && ! m_entries.containsKey(node));
+    }
+
+    public void put(ConstNode node, Entry entry)
+    {
+        Entry oldEntry = m_entries.put(node, entry);
+        if (oldEntry != null)
+            m_memory -= getMemory(oldEntry);
+        m_memory += getMemory(entry);
+        Iterator<Entry> it = m_entries.values().iterator();
+        while (m_memory > m_maxMemory && it.hasNext())
+        {
+            m_memory -= getMemory(it.next());
+            it.remove();
+        }
+    }
+
+    public int size()
+    {
+        return m_entries.size();
+    }
+
+    private final int m_interval;
+
+    private final long m_maxMemory;
+
+    private long m_memory;
+
+    /** Entries in access order. */
+    private final LinkedHashMap<ConstNode,Entry> m_entries
+        = new LinkedHashMap<ConstNode,Entry>(16, 0.75f, true);
+
+    /** Estimate the memory used by an entry.
+        Counts the rows of the board with one reference per point and the
+        moves with one reference and one hash code per move. */
+    private static long getMemory(Entry entry)
+    {
+        BoardSnapshot snapshot = entry.m_snapshot;
+        int size = snapshot.getSize();
+        return 200 + size * (16 + 4 * size)
+            + 12 * (long)snapshot.getNumberMoves();
+    }
+}
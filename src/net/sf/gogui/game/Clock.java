@@ -2,8 +2,11 @@
 
 package net.sf.gogui.game;
 
-import java.util.TimerTask;
-import java.util.Timer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import net.sf.gogui.go.BlackWhiteSet;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
@@ -13,17 +16,42 @@ import net.sf.gogui.util.StringUtil;
 /** Time control for a Go game.
     If the clock is not initialized with Clock.setTimeSettings, the clock
     will count upwards, otherwise the time settings with main and/or
-    byoyomi time are used. The time unit is milliseconds. */
+    byoyomi time are used. The time unit is milliseconds.
+    Internally, the time is measured with a monotonic time source in
+    nanoseconds, so that changes of the system time do not affect the clock
+    and the time used per move is available with sub-millisecond resolution
+    (see getLastMoveTime and getTimeUsed). */
 public final class Clock
     implements ConstClock
 {
-    /** Provides the time for a clock. */
+    /** Provides the time for a clock with nanosecond resolution. */
+    public interface NanoTimeSource
+    {
+        /** Get the current time.
+            @return The time in nanoseconds relative to an arbitrary but
+            fixed origin. Must not decrease between calls. */
+        long nanoTime();
+    }
+
+    /** Time source using System.nanoTime(). */
+    public static final class SystemNanoTimeSource
+        implements NanoTimeSource
+    {
+        public long nanoTime()
+        {
+            return System.nanoTime();
+        }
+    }
+
+    /** Provides the time for a clock with millisecond resolution.
+        Kept for compatibility, new code should use NanoTimeSource. */
     public interface TimeSource
     {
         long currentTimeMillis();
     }
 
-    /** Time source using the system time. */
+    /** Time source using the system time.
+        Kept for compatibility, new code should use SystemNanoTimeSource. */
     public static final class SystemTimeSource
         implements TimeSource
     {
@@ -35,23 +63,48 @@ public final class Clock
 
     /** Listener to clock changes.
         This function will be called from a different thread at regular
-        intervals. */
+        intervals. The thread is shared by all clocks, so the function should
+        return quickly. */
     public interface Listener
     {
         void clockChanged();
     }
 
+    /** Constructor.
+        Uses the monotonic System.nanoTime() as the time source. */
     public Clock()
     {
-        this(new SystemTimeSource());
+        this(new SystemNanoTimeSource());
     }
 
-    public Clock(TimeSource timeSource)
+    /** Constructor.
+        @param timeSource The time source, e.g. for tests. */
+    public Clock(NanoTimeSource timeSource)
     {
         m_timeSource = timeSource;
         reset();
     }
 
+    /** Constructor with a time source in milliseconds.
+        The times of the time source are converted to nanoseconds.
+        @param timeSource The time source. */
+    public Clock(final TimeSource timeSource)
+    {
+        this(new NanoTimeSource() {
+                public long nanoTime() {
+                    return toNanos(timeSource.currentTimeMillis());
+                }
+            });
+    }
+
+    /** Get time used for the last move of a color.
+        @return The time in nanoseconds or 0, if the color has not made a move
+        since the last reset. */
+    public long getLastMoveTime(GoColor color)
+    {
+        return getRecord(color).m_lastMoveTime;
+    }
+
     /** Get moves left.
         Requires: getUseByoyomi() and isInByoyomi(color) */
     public int getMovesLeft(GoColor color)
@@ -68,9 +121,15 @@ public final class Clock
         TimeRecord record = getRecord(color);
         long time = record.m_time;
         if (getUseByoyomi() && isInByoyomi(color))
-            return (getByoyomi() - time);
+            return toMillis(getByoyomi() - time);
         else
-            return (getPreByoyomi() - time);
+            return toMillis(getPreByoyomi() - time);
+    }
+
+    /** Get number of moves timed for a color since the last reset. */
+    public int getNumberMoves(GoColor color)
+    {
+        return getRecord(color).m_numberMoves;
     }
 
     public TimeSettings getTimeSettings()
@@ -84,7 +143,7 @@ public final class Clock
         TimeRecord record = getRecord(color);
         long time = record.m_time;
         if (color.equals(m_toMove))
-            time += currentTimeMillis() - m_startTime;
+            time += nanoTime() - m_startTime;
         if (isInitialized())
         {
             if (record.m_isInByoyomi)
@@ -98,7 +157,7 @@ public final class Clock
             movesLeft = record.m_movesLeft;
         }
         // Round time to seconds
-        time = time / 1000L;
+        time = time / NANOS_PER_SECOND;
         return getTimeString((double)time, movesLeft);
     }
 
@@ -125,6 +184,16 @@ public final class Clock
         return m_toMove;
     }
 
+    /** Get total time used by a color since the last reset.
+        Unlike the time used for the time settings, this time is not reset
+        at the start of a new byoyomi period and does not include the time
+        of the current move.
+        @return The time in nanoseconds. */
+    public long getTimeUsed(GoColor color)
+    {
+        return getRecord(color).m_timeUsed;
+    }
+
     public boolean getUseByoyomi()
     {
         return m_timeSettings.getUseByoyomi();
@@ -135,10 +204,11 @@ public final class Clock
         if (! m_isRunning)
             return;
         TimeRecord record = getRecord(m_toMove);
-        long currentTime = currentTimeMillis();
+        long currentTime = nanoTime();
         long time = currentTime - m_startTime;
         m_startTime = currentTime;
         record.m_time += time;
+        record.m_moveTime += time;
         m_isRunning = false;
         updateListener();
         stopTimer();
@@ -227,6 +297,10 @@ public final class Clock
         timeRecord.m_movesLeft = 0;
         timeRecord.m_isInByoyomi = false;
         timeRecord.m_byoyomiExceeded = false;
+        timeRecord.m_moveTime = 0;
+        timeRecord.m_lastMoveTime = 0;
+        timeRecord.m_timeUsed = 0;
+        timeRecord.m_numberMoves = 0;
         if (isInitialized() && getPreByoyomi() == 0)
         {
             assert getByoyomiMoves() > 0;
@@ -242,16 +316,17 @@ public final class Clock
         if (m_isRunning)
             return;
         assert m_toMove != null;
-        m_startTime = currentTimeMillis();
+        m_startTime = nanoTime();
         m_isRunning = true;
         startTimer();
     }
 
     /** Register listener for clock changes.
         Only one listener supported at the moment.
-        If the clock has a listener, the clock should be stopped with halt()
-        if it is no longer used, otherwise the timer thread can keep an
-        application from terminating. */
+        The listener is called by a daemon thread shared by all clocks. If
+        the clock has a listener, the clock should be stopped with halt()
+        if it is no longer used, otherwise the listener is still called at
+        regular intervals. */
     public void setListener(Listener listener)
     {
         m_listener = listener;
@@ -287,13 +362,13 @@ public final class Clock
             if (! m_timeSettings.getUseByoyomi())
                 return;
             record.m_isInByoyomi = isInByoyomi;
-            record.m_time = getByoyomi() - time;
+            record.m_time = getByoyomi() - toNanos(time);
             record.m_movesLeft = movesLeft;
             record.m_byoyomiExceeded = time > 0;
         }
         else
         {
-            record.m_time = getPreByoyomi() - time;
+            record.m_time = getPreByoyomi() - toNanos(time);
             record.m_movesLeft = -1;
             record.m_byoyomiExceeded = false;
         }
@@ -310,7 +385,8 @@ public final class Clock
         assert color.isBlackWhite();
         m_toMove = color;
         m_isRunning = true;
-        m_startTime = currentTimeMillis();
+        m_startTime = nanoTime();
+        getRecord(color).m_moveTime = 0;
         startTimer();
     }
 
@@ -323,8 +399,13 @@ public final class Clock
         if (! m_isRunning)
             return;
         TimeRecord record = getRecord(m_toMove);
-        long time = currentTimeMillis() - m_startTime;
+        long time = nanoTime() - m_startTime;
         record.m_time += time;
+        record.m_moveTime += time;
+        record.m_lastMoveTime = record.m_moveTime;
+        record.m_timeUsed += record.m_moveTime;
+        ++record.m_numberMoves;
+        record.m_moveTime = 0;
         if (isInitialized() && getUseByoyomi())
         {
             if (! record.m_isInByoyomi
@@ -362,9 +443,32 @@ public final class Clock
 
         public int m_movesLeft;
 
+        public int m_numberMoves;
+
+        /** Time in the current main time or byoyomi period in nanoseconds. */
         public long m_time;
+
+        /** Time of the current move before the last halt in nanoseconds. */
+        public long m_moveTime;
+
+        public long m_lastMoveTime;
+
+        public long m_timeUsed;
     }
 
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /** Interval for calling the listener in milliseconds. */
+    private static final long UPDATE_INTERVAL = 1000;
+
+    /** Scheduler for calling the listeners of all clocks.
+        Created on demand. Uses a single daemon thread, so that many clocks
+        (e.g. in twogtp with many parallel games) do not create many threads
+        and the thread does not keep an application from terminating. */
+    private static ScheduledExecutorService s_scheduler;
+
     private boolean m_isRunning = false;
 
     private long m_startTime;
@@ -378,13 +482,13 @@ public final class Clock
 
     private Listener m_listener;
 
-    private Timer m_timer;
+    private ScheduledFuture<?> m_timer;
 
-    private final TimeSource m_timeSource;
+    private final NanoTimeSource m_timeSource;
 
-    private long currentTimeMillis()
+    private long nanoTime()
     {
-        return m_timeSource.currentTimeMillis();
+        return m_timeSource.nanoTime();
     }
 
     private TimeRecord getRecord(GoColor c)
@@ -394,7 +498,7 @@ public final class Clock
 
     private long getByoyomi()
     {
-        return m_timeSettings.getByoyomi();
+        return toNanos(m_timeSettings.getByoyomi());
     }
 
     private int getByoyomiMoves()
@@ -404,20 +508,39 @@ public final class Clock
 
     private long getPreByoyomi()
     {
-        return m_timeSettings.getPreByoyomi();
+        return toNanos(m_timeSettings.getPreByoyomi());
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler()
+    {
+        if (s_scheduler == null)
+        {
+            ThreadFactory threadFactory = new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Clock");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                };
+            s_scheduler =
+                Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+        return s_scheduler;
     }
 
     private void startTimer()
     {
         if (m_timer == null && m_listener != null)
         {
-            m_timer = new Timer();
-            TimerTask task = new TimerTask() {
+            Runnable task = new Runnable() {
                     public void run() {
                         updateListener();
                     }
                 };
-            m_timer.scheduleAtFixedRate(task, 1000, 1000);
+            m_timer =
+                getScheduler().scheduleAtFixedRate(task, UPDATE_INTERVAL,
+                                                   UPDATE_INTERVAL,
+                                                   TimeUnit.MILLISECONDS);
         }
     }
 
@@ -425,11 +548,21 @@ public final class Clock
     {
         if (m_timer != null)
         {
-            m_timer.cancel();
+            m_timer.cancel(false);
             m_timer = null;
         }
     }
 
+    private static long toMillis(long nanos)
+    {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    private static long toNanos(long millis)
+    {
+        return millis * NANOS_PER_MILLI;
+    }
+
     private void updateListener()
     {
         if (m_listener != null)
@@ -0,0 +1,283 @@
+// CommentIndex.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/** Index of the words in the comments of a game tree.
+    Used for finding nodes with comments containing a pattern without
+    searching through all nodes of the tree. The index is updated
+    incrementally before each search; only nodes with changed comments and
+    nodes added to the tree since the last search are visited (Node marks a
+    node and its ancestors as not indexed, when the comment is set or the
+    children of a node change).
+    <p>
+    If a pattern is a plain text without regular expression operators, the
+    candidate nodes are found with the index; otherwise all nodes with
+    comments are candidates. The candidates are sorted by their number in
+    the iteration through the complete tree and kept until the next search
+    with a different pattern or the next change of the tree, so that
+    repeated searches for the same pattern only need a binary search for
+    the first candidate after the current node. The pattern is always
+    matched against the comments of the candidate nodes, so the result is
+    the same as with NodeUtil.findInComments.
+    @see GameTree#getCommentIndex */
+public final class CommentIndex
+{
+    /** Find next node with a comment containing a pattern in the iteration
+        through complete tree.
+        @param node The current node in the iteration.
+        @param pattern The pattern.
+        @return The next node in the iteration through the complete tree
+        after the current node that contains a match of the pattern.
+        @see NodeUtil#findInComments */
+    public ConstNode findInComments(ConstNode node, Pattern pattern)
+    {
+        assert NodeUtil.getRoot(node) == m_tree.getRoot();
+        update();
+        if (! pattern.pattern().equals(m_candidatesPattern))
+            initCandidates(pattern);
+        // The node is usually the result of the previous search
+        Integer cachedOrder = m_order.get(node);
+        int order = (cachedOrder != null ? cachedOrder : getOrder(node));
+        // Binary search for the first candidate after the node
+        int i = Arrays.binarySearch(m_candidateOrder, order);
+        i = (i >= 0 ? i + 1 : -i - 1);
+        for ( ; i < m_candidates.length; ++i)
+            if (NodeUtil.commentContains(m_candidates[i], pattern))
+                return m_candidates[i];
+        return null;
+    }
+
+    /** Get the number of nodes with comments in the index. */
+    public int getNumberNodes()
+    {
+        update();
+        if (m_order == null)
+            initOrder();
+        return m_words.size();
+    }
+
+    CommentIndex(GameTree tree)
+    {
+        m_tree = tree;
+    }
+
+    private final GameTree m_tree;
+
+    /** Map from word to nodes containing the word. */
+    private final Map<String,Set<Node>> m_nodes =
+        new HashMap<String,Set<Node>>();
+
+    /** Map from node to the words in its comment. */
+    private final Map<Node,String[]> m_words = new HashMap<Node,String[]>();
+
+    /** Number of the nodes with comments in the iteration through the
+        complete tree (see getOrder()).
+        Null, if the tree has changed since the numbers were computed. */
+    private Map<Node,Integer> m_order;
+
+    /** Pattern of the last search or null, if the tree has changed since
+        the last search. */
+    private String m_candidatesPattern;
+
+    /** Candidates for m_candidatesPattern sorted by m_order. */
+    private Node[] m_candidates;
+
+    /** Numbers of the nodes in m_candidates (see m_order). */
+    private int[] m_candidateOrder;
+
+    private void add(Node node)
+    {
+        String comment = node.getComment();
+        if (comment == null)
+            return;
+        String[] words = getWords(comment);
+        m_words.put(node, words);
+        for (String word : words)
+        {
+            Set<Node> nodes = m_nodes.get(word);
+            if (nodes == null)
+            {
+                nodes = new HashSet<Node>();
+                m_nodes.put(word, nodes);
+            }
+            nodes.add(node);
+        }
+    }
+
+    private Collection<Node> getCandidates(Pattern pattern)
+    {
+        if (! isPlainText(pattern))
+            return m_words.keySet();
+        String[] words = getWords(pattern.pattern());
+        if (words.length == 0)
+            return m_words.keySet();
+        Set<Node> result = null;
+        for (String word : words)
+        {
+            // The pattern matches substrings, so all words in the index
+            // that contain the word of the pattern are used
+            Set<Node> nodes = new HashSet<Node>();
+            for (Map.Entry<String,Set<Node>> entry : m_nodes.entrySet())
+                if (entry.getKey().contains(word))
+                    nodes.addAll(entry.getValue());
+            if (result == null)
+                result = nodes;
+            else
+                result.retainAll(nodes);
+        }
+        return result;
+    }
+
+    /** Get the number of a node in the iteration through the complete
+        tree.
+        Uses the cached subtree sizes of the siblings of the node and its
+        ancestors. */
+    private static int getOrder(ConstNode node)
+    {
+        int order = 0;
+        ConstNode father = node.getFatherConst();
+        while (father != null)
+        {
+            int index = father.getChildIndex(node);
+            for (int i = 0; i < index; ++i)
+                order += father.getChildConst(i).getSubtreeSize();
+            ++order;
+            node = father;
+            father = node.getFatherConst();
+        }
+        return order;
+    }
+
+    /** Split a text into lower-case words.
+        A word is a sequence of letters or digits. Lower-case conversion is
+        done per character, so that a substring of a word has the same length
+        as the corresponding part of the text. */
+    private static String[] getWords(String text)
+    {
+        Set<String> words = new HashSet<String>();
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i <= text.length(); ++i)
+        {
+            char c = (i < text.length() ? text.charAt(i) : ' ');
+            if (Character.isLetterOrDigit(c))
+                buffer.append(Character.toLowerCase(c));
+            else if (buffer.length() > 0)
+            {
+                words.add(buffer.toString());
+                buffer.setLength(0);
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /** Sort the candidates for a pattern by their number in the iteration
+        through the complete tree. */
+    private void initCandidates(Pattern pattern)
+    {
+        if (m_order == null)
+            initOrder();
+        Collection<Node> candidates = getCandidates(pattern);
+        Node[] nodes = candidates.toArray(new Node[candidates.size()]);
+        long[] keys = new long[nodes.length];
+        for (int i = 0; i < nodes.length; ++i)
+            keys[i] = ((long)m_order.get(nodes[i]) << 32) | i;
+        Arrays.sort(keys);
+        m_candidates = new Node[nodes.length];
+        m_candidateOrder = new int[nodes.length];
+        for (int i = 0; i < keys.length; ++i)
+        {
+            m_candidates[i] = nodes[(int)keys[i]];
+            m_candidateOrder[i] = (int)(keys[i] >>> 32);
+        }
+        m_candidatesPattern = pattern.pattern();
+    }
+
+    /** Number the nodes with comments in the iteration through the
+        complete tree.
+        Also removes nodes from the index that are no longer in the tree. */
+    private void initOrder()
+    {
+        m_order = new HashMap<Node,Integer>(2 * m_words.size());
+        ArrayList<Node> stack = new ArrayList<Node>();
+        stack.add(m_tree.getRoot());
+        int order = 0;
+        while (! stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+            if (m_words.containsKey(node))
+                m_order.put(node, order);
+            ++order;
+            for (int i = node.getNumberChildren() - 1; i >= 0; --i)
+                stack.add(node.getChild(i));
+        }
+        if (m_order.size() < m_words.size())
+        {
+            ArrayList<Node> removed = new ArrayList<Node>();
+            for (Node node : m_words.keySet())
+                if (! m_order.containsKey(node))
+                    removed.add(node);
+            for (Node node : removed)
+                remove(node);
+        }
+    }
+
+    /** Check if a pattern contains no regular expression operators.
+        Such a pattern matches a text, if the text contains the pattern
+        (ignoring case). */
+    private static boolean isPlainText(Pattern pattern)
+    {
+        String regex = pattern.pattern();
+        for (int i = 0; i < regex.length(); ++i)
+            if ("\\^$.|?*+()[]{}".indexOf(regex.charAt(i)) >= 0)
+                return false;
+        return true;
+    }
+
+    private void remove(Node node)
+    {
+        String[] words = m_words.remove(node);
+        if (words == null)
+            return;
+        for (String word : words)
+        {
+            Set<Node> nodes = m_nodes.get(word);
+            nodes.remove(node);
+            if (nodes.isEmpty())
+                m_nodes.remove(word);
+        }
+    }
+
+    /** Add all nodes that are not marked as indexed to the index. */
+    private void update()
+    {
+        if (m_tree.getRoot().isIndexed(Node.INDEX_COMMENT))
+            return;
+        m_order = null;
+        m_candidatesPattern = null;
+        m_candidates = null;
+        m_candidateOrder = null;
+        ArrayList<Node> stack = new ArrayList<Node>();
+        stack.add(m_tree.getRoot());
+        while (! stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+            if (node.isIndexed(Node.INDEX_COMMENT))
+                continue;
+            node.setIndexed(Node.INDEX_COMMENT);
+            remove(node);
+            add(node);
+            int numberChildren = node.getNumberChildren();
+            for (int i = 0; i < numberChildren; ++i)
+                stack.add(node.getChild(i));
+        }
+    }
+}
@@ -0,0 +1,525 @@
+// CompactGameTree.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import net.sf.gogui.go.ConstPointList;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoColor;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+
+/** Game tree with a compact memory representation.
+    Alternative to GameTree for very large trees, for example analysis trees
+    generated by programs. The structure of the tree and the moves are
+    stored in parallel arrays of integers indexed by node number; the root
+    has number 0. Only nodes that contain more than a move (comments,
+    markup, setup stones, game information, other properties) have an
+    entry in a side table, which stores the additional information in a
+    Node object without father and children.
+    <p>
+    The tree can only grow by appending nodes. The ConstNode objects
+    returned by the functions of this class are lightweight views, which are
+    created on demand. Two views of the same node are equal with respect to
+    equals(), but not necessarily identical, so they should not be compared
+    with ==. Depth, move number and subtree size are not cached; they are
+    computed from the arrays on each call. */
+public final class CompactGameTree
+    implements ConstGameTree
+{
+    /** Create a tree containing only a root node.
+        @param boardSize The board size.
+        @param root The information of the root node. The tree takes
+        ownership of the node. It must have no father and no children. A
+        game information is created, if it does not already exist. */
+    public CompactGameTree(int boardSize, Node root)
+    {
+        m_boardSize = boardSize;
+        m_father = new int[INITIAL_CAPACITY];
+        m_firstChild = new int[INITIAL_CAPACITY];
+        m_nextSibling = new int[INITIAL_CAPACITY];
+        m_move = new int[INITIAL_CAPACITY];
+        root.createGameInfo();
+        add(-1, root);
+    }
+
+    /** Create a compact copy of a game tree.
+        The information of the nodes is copied; the new tree does not share
+        any mutable objects with the original tree. */
+    public CompactGameTree(ConstGameTree tree)
+    {
+        this(tree.getBoardSize(), copyData(tree.getRootConst()));
+        // Non-recursive, because trees can be very deep
+        ArrayList<ConstNode> nodes = new ArrayList<ConstNode>();
+        ArrayList<Integer> fathers = new ArrayList<Integer>();
+        ConstNode root = tree.getRootConst();
+        for (int i = root.getNumberChildren() - 1; i >= 0; --i)
+        {
+            nodes.add(root.getChildConst(i));
+            fathers.add(0);
+        }
+        while (! nodes.isEmpty())
+        {
+            ConstNode node = nodes.remove(nodes.size() - 1);
+            int father = fathers.remove(fathers.size() - 1);
+            int index = append(father, copyData(node));
+            for (int i = node.getNumberChildren() - 1; i >= 0; --i)
+            {
+                nodes.add(node.getChildConst(i));
+                fathers.add(index);
+            }
+        }
+    }
+
+    /** Append a new child node.
+        @param father The number of the father node.
+        @param node The information of the new node. The tree takes
+        ownership of the node, if it contains more than a move; otherwise
+        the node is no longer referenced after this call. It must have no
+        father and no children.
+        @return The number of the new node. */
+    public int append(int father, Node node)
+    {
+        assert father >= 0 && father < m_numberNodes;
+        int index = add(father, node);
+        int child = m_firstChild[father];
+        if (child < 0)
+            m_firstChild[father] = index;
+        else
+        {
+            while (m_nextSibling[child] >= 0)
+                child = m_nextSibling[child];
+            m_nextSibling[child] = index;
+        }
+        return index;
+    }
+
+    public int getBoardSize()
+    {
+        return m_boardSize;
+    }
+
+    /** Find the game information valid for this node.
+        @return The game information from the nearest ancestor node,
+        which has a game information (the root node is always guaranteed
+        to have one). */
+    public ConstGameInfo getGameInfoConst(ConstNode node)
+    {
+        int index = getIndex(node);
+        while (true)
+        {
+            Node data = m_data.get(index);
+            if (data != null && data.getGameInfoConst() != null)
+                return data.getGameInfoConst();
+            index = m_father[index];
+        }
+    }
+
+    /** Get the number of a node.
+        Requires: node is part of this game tree. */
+    public int getIndex(ConstNode node)
+    {
+        assert node instanceof View && ((View)node).getTree() == this;
+        return ((View)node).m_index;
+    }
+
+    /** Get a view of a node.
+        @param index The number of the node.
+        @return A new view of the node. */
+    public ConstNode getNodeConst(int index)
+    {
+        assert index >= 0 && index < m_numberNodes;
+        return new View(index);
+    }
+
+    public int getNumberNodes()
+    {
+        return m_numberNodes;
+    }
+
+    public ConstNode getRootConst()
+    {
+        return getNodeConst(0);
+    }
+
+    public boolean hasVariations()
+    {
+        for (int i = 0; i < m_numberNodes; ++i)
+            if (m_nextSibling[i] >= 0)
+                return true;
+        return false;
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Information of nodes without data. */
+    private static final Node EMPTY_DATA = new Node();
+
+    private final int m_boardSize;
+
+    private int m_numberNodes;
+
+    /** Number of father node or -1 for the root. */
+    private int[] m_father;
+
+    /** Number of first child or -1 if node has no children. */
+    private int[] m_firstChild;
+
+    /** Number of next sibling or -1 if node is the last child. */
+    private int[] m_nextSibling;
+
+    /** Moves encoded with encodeMove(). */
+    private int[] m_move;
+
+    /** Information for nodes that contain more than a move. */
+    private final Map<Integer,Node> m_data = new HashMap<Integer,Node>();
+
+    /** View of a node of the tree. */
+    private final class View
+        implements ConstNode
+    {
+        public View(int index)
+        {
+            m_index = index;
+        }
+
+        public boolean equals(Object object)
+        {
+            if (! (object instanceof View))
+                return false;
+            View view = (View)object;
+            return (view.getTree() == getTree() && view.m_index == m_index);
+        }
+
+        public int hashCode()
+        {
+            return m_index;
+        }
+
+        public String getComment()
+        {
+            return getData().getComment();
+        }
+
+        public ConstNode getFatherConst()
+        {
+            return getView(m_father[m_index]);
+        }
+
+        public ConstNode getChildConst()
+        {
+            return getView(m_firstChild[m_index]);
+        }
+
+        public ConstNode getChildConst(int i)
+        {
+            int child = m_firstChild[m_index];
+            for (int j = 0; j < i; ++j)
+                child = m_nextSibling[child];
+            assert child >= 0;
+            return new View(child);
+        }
+
+        public int getChildIndex(ConstNode node)
+        {
+            if (! (node instanceof View) || ((View)node).getTree() != getTree())
+                return -1;
+            int index = ((View)node).m_index;
+            int i = 0;
+            for (int child = m_firstChild[m_index]; child >= 0;
+                 child = m_nextSibling[child], ++i)
+                if (child == index)
+                    return i;
+            return -1;
+        }
+
+        public int getDepth()
+        {
+            int depth = 0;
+            for (int i = m_father[m_index]; i >= 0; i = m_father[i])
+                ++depth;
+            return depth;
+        }
+
+        public ConstGameInfo getGameInfoConst()
+        {
+            return getData().getGameInfoConst();
+        }
+
+        public String getLabel(GoPoint point)
+        {
+            return getData().getLabel(point);
+        }
+
+        public Map<GoPoint,String> getLabelsUnmodifiable()
+        {
+            return getData().getLabelsUnmodifiable();
+        }
+
+        public ConstPointList getMarkedConst(MarkType type)
+        {
+            return getData().getMarkedConst(type);
+        }
+
+        public Move getMove()
+        {
+            return decodeMove(m_move[m_index]);
+        }
+
+        public int getMoveNumber()
+        {
+            int moveNumber = 0;
+            for (int i = m_index; i >= 0; i = m_father[i])
+                if (m_move[i] != 0)
+                    ++moveNumber;
+            return moveNumber;
+        }
+
+        public int getMovesLeft(GoColor color)
+        {
+            return getData().getMovesLeft(color);
+        }
+
+        public int getNumberChildren()
+        {
+            int n = 0;
+            for (int child = m_firstChild[m_index]; child >= 0;
+                 child = m_nextSibling[child])
+                ++n;
+            return n;
+        }
+
+        public GoColor getPlayer()
+        {
+            return getData().getPlayer();
+        }
+
+        public ConstPointList getSetup(GoColor c)
+        {
+            return getData().getSetup(c);
+        }
+
+        public ConstSgfProperties getSgfPropertiesConst()
+        {
+            return getData().getSgfPropertiesConst();
+        }
+
+        /** Get number of nodes in the subtree of this node.
+            Traverses the subtree without recursion. */
+        public int getSubtreeSize()
+        {
+            int size = 0;
+            int i = m_index;
+            while (true)
+            {
+                ++size;
+                if (m_firstChild[i] >= 0)
+                {
+                    i = m_firstChild[i];
+                    continue;
+                }
+                while (i != m_index && m_nextSibling[i] < 0)
+                    i = m_father[i];
+                if (i == m_index)
+                    return size;
+                i = m_nextSibling[i];
+            }
+        }
+
+        public double getTimeLeft(GoColor color)
+        {
+            return getData().getTimeLeft(color);
+        }
+
+        public GoColor getToMove()
+        {
+            GoColor player = getPlayer();
+            if (player != null)
+                return player;
+            Move move = getMove();
+            if (move != null)
+                return move.getColor().otherColor();
+            return null;
+        }
+
+        public float getValue()
+        {
+            return getData().getValue();
+        }
+
+        public boolean hasChildren()
+        {
+            return (m_firstChild[m_index] >= 0);
+        }
+
+        public boolean hasComment()
+        {
+            return getData().hasComment();
+        }
+
+        public boolean hasFather()
+        {
+            return (m_father[m_index] >= 0);
+        }
+
+        public boolean hasSetup()
+        {
+            return getData().hasSetup();
+        }
+
+        public boolean isEmpty()
+        {
+            return (m_move[m_index] == 0 && getData().isEmpty());
+        }
+
+        public ConstNode variationAfter(ConstNode child)
+        {
+            int index = getIndex(child);
+            assert m_father[index] == m_index;
+            return getView(m_nextSibling[index]);
+        }
+
+        public ConstNode variationBefore(ConstNode child)
+        {
+            int index = getIndex(child);
+            assert m_father[index] == m_index;
+            int before = -1;
+            for (int i = m_firstChild[m_index]; i != index;
+                 i = m_nextSibling[i])
+                before = i;
+            return getView(before);
+        }
+
+        private final int m_index;
+
+        private Node getData()
+        {
+            Node data = m_data.get(m_index);
+            if (data == null)
+                return EMPTY_DATA;
+            return data;
+        }
+
+        private CompactGameTree getTree()
+        {
+            return CompactGameTree.this;
+        }
+    }
+
+    private int add(int father, Node node)
+    {
+        assert ! node.hasFather() && ! node.hasChildren();
+        if (m_numberNodes == m_father.length)
+        {
+            int capacity = 2 * m_father.length;
+            m_father = copyOf(m_father, capacity);
+            m_firstChild = copyOf(m_firstChild, capacity);
+            m_nextSibling = copyOf(m_nextSibling, capacity);
+            m_move = copyOf(m_move, capacity);
+        }
+        int index = m_numberNodes++;
+        m_father[index] = father;
+        m_firstChild[index] = -1;
+        m_nextSibling[index] = -1;
+        m_move[index] = encodeMove(node.getMove());
+        node.setMove(null);
+        // Node.isEmpty() does not count empty game information
+        if (! node.isEmpty() || node.getGameInfoConst() != null)
+            m_data.put(index, node);
+        return index;
+    }
+
+    private static int[] copyOf(int[] array, int length)
+    {
+        int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    /** Create a node with a copy of the information of a node without
+        father and children. */
+    private static Node copyData(ConstNode node)
+    {
+        Node data = new Node(node.getMove());
+        if (node.hasComment())
+            data.setComment(node.getComment());
+        for (MarkType type : MarkType.values())
+        {
+            ConstPointList marked = node.getMarkedConst(type);
+            if (marked != null)
+                for (GoPoint p : marked)
+                    data.addMarked(p, type);
+        }
+        Map<GoPoint,String> labels = node.getLabelsUnmodifiable();
+        if (labels != null)
+            for (Map.Entry<GoPoint,String> entry : labels.entrySet())
+                data.setLabel(entry.getKey(), entry.getValue());
+        if (node.hasSetup())
+        {
+            data.addStones(BLACK, node.getSetup(BLACK));
+            data.addStones(WHITE, node.getSetup(WHITE));
+            data.addStones(EMPTY, node.getSetup(EMPTY));
+        }
+        if (node.getPlayer() != null)
+            data.setPlayer(node.getPlayer());
+        ConstGameInfo info = node.getGameInfoConst();
+        if (info != null)
+            data.createGameInfo().copyFrom(info);
+        ConstSgfProperties props = node.getSgfPropertiesConst();
+        if (props != null)
+            for (String key : props.getKeys())
+            {
+                ArrayList<String> values = new ArrayList<String>();
+                for (int i = 0; i < props.getNumberValues(key); ++i)
+                    values.add(props.getValue(key, i));
+                data.addSgfProperty(key, values);
+            }
+        for (GoColor c : GoColor.BLACK_WHITE)
+        {
+            if (! Double.isNaN(node.getTimeLeft(c)))
+                data.setTimeLeft(c, node.getTimeLeft(c));
+            if (node.getMovesLeft(c) >= 0)
+                data.setMovesLeft(c, node.getMovesLeft(c));
+        }
+        if (! Float.isNaN(node.getValue()))
+            data.setValue(node.getValue());
+        return data;
+    }
+
+    /** Decode a move encoded with encodeMove().
+        @return The move or null, if the code is 0. */
+    private static Move decodeMove(int code)
+    {
+        if (code == 0)
+            return null;
+        GoColor c = ((code & 3) == 1 ? BLACK : WHITE);
+        int index = (code >> 2) - 1;
+        if (index < 0)
+            return Move.getPass(c);
+        return Move.get(c, GoPoint.getFromIndex(index));
+    }
+
+    /** Encode a move as an integer.
+        Bits 0-1 contain the color (1 for black, 2 for white), the other bits
+        the point index plus one (0 for pass).
+        @return The code or 0, if move is null. */
+    private static int encodeMove(Move move)
+    {
+        if (move == null)
+            return 0;
+        GoPoint p = move.getPoint();
+        int code = (p == null ? 0 : p.getIndex() + 1) << 2;
+        return code | (move.getColor() == BLACK ? 1 : 2);
+    }
+
+    private View getView(int index)
+    {
+        if (index < 0)
+            return null;
+        return new View(index);
+    }
+}
@@ -8,14 +8,20 @@ import net.sf.gogui.go.GoColor;
     @see Clock */
 public interface ConstClock
 {
+    long getLastMoveTime(GoColor color);
+
     int getMovesLeft(GoColor color);
 
+    int getNumberMoves(GoColor color);
+
     long getTimeLeft(GoColor color);
 
     TimeSettings getTimeSettings();
 
     String getTimeString(GoColor color);
 
+    long getTimeUsed(GoColor color);
+
     GoColor getToMove();
 
     boolean getUseByoyomi();
@@ -9,6 +9,10 @@ import net.sf.gogui.go.GoColor;
     @see Game */
 public interface ConstGame
 {
+    boolean canRedoEdit();
+
+    boolean canUndoEdit();
+
     ConstBoard getBoard();
 
     ConstClock getClock();
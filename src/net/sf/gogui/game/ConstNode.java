@@ -22,6 +22,8 @@ public interface ConstNode
 
     int getChildIndex(ConstNode child);
 
+    int getDepth();
+
     ConstGameInfo getGameInfoConst();
 
     String getLabel(GoPoint point);
@@ -32,6 +34,8 @@ public interface ConstNode
 
     Move getMove();
 
+    int getMoveNumber();
+
     int getMovesLeft(GoColor color);
 
     int getNumberChildren();
@@ -42,6 +46,8 @@ public interface ConstNode
 
     ConstSgfProperties getSgfPropertiesConst();
 
+    int getSubtreeSize();
+
     double getTimeLeft(GoColor color);
 
     GoColor getToMove();
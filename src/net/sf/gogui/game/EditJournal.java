@@ -0,0 +1,625 @@
+// EditJournal.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import net.sf.gogui.go.ConstPointList;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.util.ObjectUtil;
+
+/** Journal of edits of a game tree for undo and redo.
+    The edit functions of this class change the tree and record the
+    information needed for reverting the change (the children of a node
+    before and after the change, the old and new setup or markup at a
+    point), so that undo and redo take time proportional to the size of the
+    edit and no copies of the tree are needed. Removed subtrees are kept by
+    reference as long as the edit is in the journal.
+    <p>
+    The edit functions can be grouped into a single edit with beginEdit and
+    endEdit; otherwise each call is an edit of its own. Undo and redo restore
+    the tree to the exact state before or after an edit, so all structural
+    changes of the tree must be done with this class, while the journal is
+    used. The only exception are new children appended with Node#append
+    (like moves played, which are not recorded), they are kept by undo and
+    redo. The memory used by the journal is limited; if the estimated memory
+    exceeds the maximum, the oldest edits are discarded.
+    @see GameTree#getJournal */
+public final class EditJournal
+{
+    /** Default maximum estimated memory in bytes.
+        @see #setMaxMemory */
+    public static final long DEFAULT_MAX_MEMORY = 4000000L;
+
+    /** Append a node to the children of a node.
+        @param father The node.
+        @param child The new child. Must not have a father. */
+    public void append(Node father, Node child)
+    {
+        Node[] children = father.getChildren();
+        Node[] newChildren = new Node[children.length + 1];
+        System.arraycopy(children, 0, newChildren, 0, children.length);
+        newChildren[children.length] = child;
+        setChildren(father, newChildren);
+    }
+
+    /** Start a group of edits.
+        Groups can be nested; the group ends with the outermost endEdit.
+        @param currentNode The node that should become the current node after
+        an undo of the edit (can be null). */
+    public void beginEdit(ConstNode currentNode)
+    {
+        if (m_depth++ > 0)
+            return;
+        m_edit = new Edit();
+        m_edit.m_nodeBefore = currentNode;
+    }
+
+    public boolean canRedo()
+    {
+        return ! m_redo.isEmpty();
+    }
+
+    public boolean canUndo()
+    {
+        return ! m_undo.isEmpty();
+    }
+
+    /** Remove all edits from the journal. */
+    public void clear()
+    {
+        m_undo.clear();
+        m_redo.clear();
+        m_memory = 0;
+    }
+
+    /** End a group of edits.
+        Does nothing, if no group was started.
+        @param currentNode The node that should become the current node after
+        a redo of the edit (can be null). */
+    public void endEdit(ConstNode currentNode)
+    {
+        if (m_depth == 0 || --m_depth > 0)
+            return;
+        Edit edit = m_edit;
+        m_edit = null;
+        if (edit.m_steps.isEmpty())
+            return;
+        edit.m_nodeAfter = currentNode;
+        for (Edit redoEdit : m_redo)
+            m_memory -= redoEdit.m_memory;
+        m_redo.clear();
+        m_undo.addLast(edit);
+        m_memory += edit.m_memory;
+        while (m_memory > m_maxMemory && ! m_undo.isEmpty())
+            m_memory -= m_undo.removeFirst().m_memory;
+    }
+
+    public long getMaxMemory()
+    {
+        return m_maxMemory;
+    }
+
+    /** Get the estimated memory used by the journal in bytes.
+        Counts the objects for the edits and steps, the arrays of children
+        stored in the steps and the nodes in removed subtrees, which are
+        kept alive only by the journal. The estimate assumes 4 bytes per
+        reference; nodes are counted with a fixed size, which does not
+        include large properties like comments. */
+    public long getMemory()
+    {
+        return m_memory;
+    }
+
+    /** Remove all variations of a tree.
+        @see GameTree#keepOnlyMainVariation */
+    public void keepOnlyMainVariation(GameTree tree)
+    {
+        beginEdit(null);
+        Node node = tree.getRoot();
+        while (node != null)
+        {
+            if (node.getNumberChildren() > 1)
+                setChildren(node, new Node[] { node.getChild() });
+            node = node.getChild();
+        }
+        endEdit(null);
+    }
+
+    /** Make a node the main variation.
+        @see NodeUtil#makeMainVariation */
+    public void makeMainVariation(Node node)
+    {
+        beginEdit(null);
+        while (node.getFather() != null)
+        {
+            Node father = node.getFather();
+            Node[] children = father.getChildren();
+            if (children[0] != node)
+            {
+                Node[] newChildren = new Node[children.length];
+                newChildren[0] = node;
+                int j = 1;
+                for (Node child : children)
+                    if (child != node)
+                        newChildren[j++] = child;
+                setChildren(father, newChildren);
+            }
+            node = father;
+        }
+        endEdit(null);
+    }
+
+    /** Redo the last undone edit.
+        Requires: canRedo() and no group of edits was started.
+        @return The current node given to endEdit for this edit or the node
+        that was changed first, if none was given. */
+    public ConstNode redo()
+    {
+        assert canRedo() && m_depth == 0;
+        Edit edit = m_redo.removeLast();
+        for (Step step : edit.m_steps)
+            step.redo();
+        m_undo.addLast(edit);
+        if (edit.m_nodeAfter != null)
+            return edit.m_nodeAfter;
+        return edit.m_steps.get(0).getNode();
+    }
+
+    /** Remove a child of a node including its subtree.
+        @param father The node.
+        @param child The child to remove. */
+    public void removeChild(Node father, Node child)
+    {
+        assert child.isChildOf(father);
+        Node[] children = father.getChildren();
+        Node[] newChildren = new Node[children.length - 1];
+        int j = 0;
+        for (Node node : children)
+            if (node != child)
+                newChildren[j++] = node;
+        setChildren(father, newChildren);
+    }
+
+    /** Set the label at a point in a node.
+        @param node The node.
+        @param p The point.
+        @param label The label; empty string or null to delete the label
+        (see Node#setLabel). */
+    public void setLabel(Node node, GoPoint p, String label)
+    {
+        if (label != null)
+        {
+            label = label.trim();
+            if (label.equals(""))
+                label = null;
+        }
+        String oldLabel = node.getLabel(p);
+        if (ObjectUtil.equals(oldLabel, label))
+            return;
+        addStep(new LabelStep(node, p, oldLabel, label));
+    }
+
+    /** Add or remove a markup at a point in a node.
+        @param node The node.
+        @param p The point.
+        @param type The markup type.
+        @param marked true for adding the markup, false for removing it. */
+    public void setMarked(Node node, GoPoint p, MarkType type,
+                          boolean marked)
+    {
+        ConstPointList list = node.getMarkedConst(type);
+        if ((list != null && list.contains(p)) == marked)
+            return;
+        addStep(new MarkStep(node, p, type, marked));
+    }
+
+    /** Set the maximum memory of the journal.
+        @param maxMemory The maximum estimated memory in bytes (see
+        getMemory). */
+    public void setMaxMemory(long maxMemory)
+    {
+        m_maxMemory = maxMemory;
+        while (m_memory > m_maxMemory && ! m_undo.isEmpty())
+            m_memory -= m_undo.removeFirst().m_memory;
+        while (m_memory > m_maxMemory && ! m_redo.isEmpty())
+            m_memory -= m_redo.removeFirst().m_memory;
+    }
+
+    /** Set the color to play in a node.
+        @param node The node.
+        @param color The color to play or null for removing it. */
+    public void setPlayer(Node node, GoColor color)
+    {
+        GoColor oldColor = node.getPlayer();
+        if (oldColor == color)
+            return;
+        addStep(new PlayerStep(node, oldColor, color));
+    }
+
+    /** Set the setup stone at a point in a node.
+        @param node The node.
+        @param p The point.
+        @param color The color of the setup stone (EMPTY for a removal of a
+        stone) or null for removing the setup at the point. */
+    public void setSetup(Node node, GoPoint p, GoColor color)
+    {
+        GoColor oldColor = getSetup(node, p);
+        if (oldColor == color)
+            return;
+        addStep(new SetupStep(node, p, oldColor, color));
+    }
+
+    /** Remove all children of a node.
+        @see NodeUtil#truncateChildren */
+    public void truncateChildren(Node node)
+    {
+        if (node.hasChildren())
+            setChildren(node, new Node[0]);
+    }
+
+    /** Undo the last edit.
+        Requires: canUndo() and no group of edits was started.
+        @return The current node given to beginEdit for this edit or the node
+        that was changed first, if none was given. */
+    public ConstNode undo()
+    {
+        assert canUndo() && m_depth == 0;
+        Edit edit = m_undo.removeLast();
+        for (int i = edit.m_steps.size() - 1; i >= 0; --i)
+            edit.m_steps.get(i).undo();
+        m_redo.addLast(edit);
+        if (edit.m_nodeBefore != null)
+            return edit.m_nodeBefore;
+        return edit.m_steps.get(0).getNode();
+    }
+
+    EditJournal()
+    {
+    }
+
+    /** Reversible change of a single node. */
+    private interface Step
+    {
+        /** The changed node. */
+        Node getNode();
+
+        /** Estimated memory of the step in bytes (see getMemory). */
+        long getMemory();
+
+        void redo();
+
+        void undo();
+    }
+
+    /** Change of the children of a node. */
+    private static final class ChildrenStep
+        implements Step
+    {
+        public ChildrenStep(Node node, Node[] before, Node[] after)
+        {
+            m_node = node;
+            m_before = before;
+            m_after = after;
+        }
+
+        public Node getNode()
+        {
+            return m_node;
+        }
+
+        public long getMemory()
+        {
+            long memory = STEP_MEMORY
+                + 2 * ARRAY_MEMORY + 4 * (m_before.length + m_after.length);
+            for (Node child : m_before)
+                if (! contains(m_after, child))
+                    memory += NODE_MEMORY * (long)child.getSubtreeSize();
+            for (Node child : m_after)
+                if (! contains(m_before, child))
+                    memory += NODE_MEMORY * (long)child.getSubtreeSize();
+            return memory;
+        }
+
+        public void redo()
+        {
+            m_node.setChildren(keepAppended(m_after, m_before));
+        }
+
+        public void undo()
+        {
+            m_node.setChildren(keepAppended(m_before, m_after));
+        }
+
+        private final Node m_node;
+
+        private final Node[] m_before;
+
+        private final Node[] m_after;
+
+        private static boolean contains(Node[] nodes, Node node)
+        {
+            for (Node n : nodes)
+                if (n == node)
+                    return true;
+            return false;
+        }
+
+        /** Add the children that were appended to the node after the step
+            without the journal.
+            @param children The children to set.
+            @param other The children of the node on the other side of the
+            step.
+            @return The children to set followed by the current children
+            that are contained in neither array. */
+        private Node[] keepAppended(Node[] children, Node[] other)
+        {
+            Node[] current = m_node.getChildren();
+            Node[] result = null;
+            int j = children.length;
+            for (Node child : current)
+                if (! contains(children, child) && ! contains(other, child))
+                {
+                    if (result == null)
+                        result = Arrays.copyOf(children,
+                                               children.length
+                                               + current.length);
+                    result[j++] = child;
+                }
+            if (result == null)
+                return children;
+            return Arrays.copyOf(result, j);
+        }
+    }
+
+    /** Change of the label at a point in a node. */
+    private static final class LabelStep
+        implements Step
+    {
+        public LabelStep(Node node, GoPoint p, String before, String after)
+        {
+            m_node = node;
+            m_point = p;
+            m_before = before;
+            m_after = after;
+        }
+
+        public Node getNode()
+        {
+            return m_node;
+        }
+
+        public long getMemory()
+        {
+            return STEP_MEMORY;
+        }
+
+        public void redo()
+        {
+            m_node.setLabel(m_point, m_after);
+        }
+
+        public void undo()
+        {
+            m_node.setLabel(m_point, m_before);
+        }
+
+        private final Node m_node;
+
+        private final GoPoint m_point;
+
+        private final String m_before;
+
+        private final String m_after;
+    }
+
+    /** Addition or removal of a markup at a point in a node. */
+    private static final class MarkStep
+        implements Step
+    {
+        public MarkStep(Node node, GoPoint p, MarkType type, boolean marked)
+        {
+            m_node = node;
+            m_point = p;
+            m_type = type;
+            m_marked = marked;
+        }
+
+        public Node getNode()
+        {
+            return m_node;
+        }
+
+        public long getMemory()
+        {
+            return STEP_MEMORY;
+        }
+
+        public void redo()
+        {
+            set(m_marked);
+        }
+
+        public void undo()
+        {
+            set(! m_marked);
+        }
+
+        private final boolean m_marked;
+
+        private final Node m_node;
+
+        private final GoPoint m_point;
+
+        private final MarkType m_type;
+
+        private void set(boolean marked)
+        {
+            if (marked)
+                m_node.addMarked(m_point, m_type);
+            else
+                m_node.removeMarked(m_point, m_type);
+        }
+    }
+
+    /** Change of the color to play in a node. */
+    private static final class PlayerStep
+        implements Step
+    {
+        public PlayerStep(Node node, GoColor before, GoColor after)
+        {
+            m_node = node;
+            m_before = before;
+            m_after = after;
+        }
+
+        public Node getNode()
+        {
+            return m_node;
+        }
+
+        public long getMemory()
+        {
+            return STEP_MEMORY;
+        }
+
+        public void redo()
+        {
+            set(m_after);
+        }
+
+        public void undo()
+        {
+            set(m_before);
+        }
+
+        private final Node m_node;
+
+        private final GoColor m_before;
+
+        private final GoColor m_after;
+
+        private void set(GoColor color)
+        {
+            if (color == null)
+                m_node.removePlayer();
+            else
+                m_node.setPlayer(color);
+        }
+    }
+
+    /** Change of the setup at a point in a node. */
+    private static final class SetupStep
+        implements Step
+    {
+        public SetupStep(Node node, GoPoint p, GoColor before, GoColor after)
+        {
+            m_node = node;
+            m_point = p;
+            m_before = before;
+            m_after = after;
+        }
+
+        public Node getNode()
+        {
+            return m_node;
+        }
+
+        public long getMemory()
+        {
+            return STEP_MEMORY;
+        }
+
+        public void redo()
+        {
+            set(m_after);
+        }
+
+        public void undo()
+        {
+            set(m_before);
+        }
+
+        private final Node m_node;
+
+        private final GoPoint m_point;
+
+        private final GoColor m_before;
+
+        private final GoColor m_after;
+
+        private void set(GoColor color)
+        {
+            m_node.removeSetup(m_point);
+            if (color != null)
+                m_node.addStone(color, m_point);
+        }
+    }
+
+    /** Group of steps that is undone and redone together. */
+    private static final class Edit
+    {
+        public long m_memory = EDIT_MEMORY;
+
+        public ConstNode m_nodeBefore;
+
+        public ConstNode m_nodeAfter;
+
+        public final ArrayList<Step> m_steps = new ArrayList<Step>();
+    }
+
+    /** Estimated memory of an array without its elements. */
+    private static final long ARRAY_MEMORY = 16;
+
+    /** Estimated memory of an edit without its steps. */
+    private static final long EDIT_MEMORY = 64;
+
+    /** Estimated memory of a node without large properties. */
+    private static final long NODE_MEMORY = 100;
+
+    /** Estimated memory of a step and its reference in the edit. */
+    private static final long STEP_MEMORY = 32;
+
+    /** Nesting depth of beginEdit. */
+    private int m_depth;
+
+    private long m_memory;
+
+    private long m_maxMemory = DEFAULT_MAX_MEMORY;
+
+    /** Current group of edits, if m_depth &gt; 0. */
+    private Edit m_edit;
+
+    private final LinkedList<Edit> m_undo = new LinkedList<Edit>();
+
+    private final LinkedList<Edit> m_redo = new LinkedList<Edit>();
+
+    /** Do a step and add it to the current edit. */
+    private void addStep(Step step)
+    {
+        boolean isGroup = (m_depth > 0);
+        if (! isGroup)
+            beginEdit(null);
+        m_edit.m_memory += step.getMemory();
+        step.redo();
+        m_edit.m_steps.add(step);
+        if (! isGroup)
+            endEdit(null);
+    }
+
+    private static GoColor getSetup(Node node, GoPoint p)
+    {
+        for (GoColor c : BLACK_WHITE_EMPTY)
+            if (node.getSetup(c).contains(p))
+                return c;
+        return null;
+    }
+
+    private void setChildren(Node node, Node[] children)
+    {
+        addStep(new ChildrenStep(node, node.getChildren(), children));
+    }
+}
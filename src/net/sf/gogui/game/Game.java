@@ -2,6 +2,7 @@
 
 package net.sf.gogui.game;
 
+import java.util.regex.Pattern;
 import net.sf.gogui.go.ConstBoard;
 import net.sf.gogui.go.ConstPointList;
 import net.sf.gogui.go.Board;
@@ -30,9 +31,18 @@ public class Game
     }
 
     public Game(GameTree tree)
+    {
+        this(tree, false);
+    }
+
+    /** Constructor.
+        @param tree The game tree.
+        @param useBitBoard Use a bitset board engine.
+        @see Board#Board(int, boolean) */
+    public Game(GameTree tree, boolean useBitBoard)
     {
         int boardSize = tree.getBoardSize();
-        m_board = new Board(boardSize);
+        m_board = new Board(boardSize, useBitBoard);
         m_clock = new Clock();
         init(tree);
     }
@@ -40,10 +50,32 @@ public class Game
     /** Add a mark property to current node. */
     public void addMarked(GoPoint point, MarkType type)
     {
-        m_current.addMarked(point, type);
+        beginEdit();
+        m_tree.getJournal().setMarked(m_current, point, type, true);
+        endEdit();
         setModified();
     }
 
+    /** Start a group of edits that is undone with a single undoEdit.
+        Groups can be nested. Edits of the tree structure, the setup and the
+        markup are recorded in the journal of the tree. Moves played are
+        not recorded.
+        @see EditJournal#beginEdit */
+    public void beginEdit()
+    {
+        m_tree.getJournal().beginEdit(m_current);
+    }
+
+    public boolean canRedoEdit()
+    {
+        return m_tree.getJournal().canRedo();
+    }
+
+    public boolean canUndoEdit()
+    {
+        return m_tree.getJournal().canUndo();
+    }
+
     /** Clear modified flag.
         Can be used for instance after game was saved.
         @see #isModified() */
@@ -58,11 +90,28 @@ public class Game
     public void createNewChild()
     {
         Node node = new Node();
-        m_current.append(node);
+        beginEdit();
+        m_tree.getJournal().append(m_current, node);
         m_current = node;
+        endEdit();
         setModified();
     }
 
+    /** End a group of edits.
+        @see #beginEdit */
+    public void endEdit()
+    {
+        m_tree.getJournal().endEdit(m_current);
+    }
+
+    /** Find next node with a comment containing a pattern.
+        Uses the comment index of the game tree.
+        @see CommentIndex#findInComments */
+    public ConstNode findInComments(ConstNode node, Pattern pattern)
+    {
+        return m_tree.getCommentIndex().findInComments(node, pattern);
+    }
+
     public ConstBoard getBoard()
     {
         return m_board;
@@ -146,6 +195,7 @@ public class Game
 
     public final void init(GameTree tree)
     {
+        m_boardUpdater.clearCheckpoints();
         m_tree = tree;
         m_current = m_tree.getRoot();
         updateBoard();
@@ -166,7 +216,9 @@ public class Game
 
     public void keepOnlyMainVariation()
     {
-        m_tree.keepOnlyMainVariation();
+        beginEdit();
+        m_tree.getJournal().keepOnlyMainVariation(m_tree);
+        endEdit();
         setModified();
     }
 
@@ -174,6 +226,7 @@ public class Game
     {
         ConstGameInfo info = getGameInfo(m_current);
         m_tree = NodeUtil.makeTreeFromPosition(info, m_board);
+        m_boardUpdater.clearCheckpoints();
         m_board.init(m_board.getSize());
         m_current = m_tree.getRoot();
         updateBoard();
@@ -183,7 +236,9 @@ public class Game
     /** Make current node the main variation. */
     public void makeMainVariation()
     {
-        NodeUtil.makeMainVariation(m_current);
+        beginEdit();
+        m_tree.getJournal().makeMainVariation(m_current);
+        endEdit();
         setModified();
     }
 
@@ -203,6 +258,7 @@ public class Game
             if (m_clock.isInByoyomi(color))
                 node.setMovesLeft(color, m_clock.getMovesLeft(color));
         }
+        // Moves played are not recorded in the journal
         m_current.append(node);
         m_current = node;
         updateBoard();
@@ -210,10 +266,21 @@ public class Game
         m_clock.startMove(getToMove());
     }
 
+    /** Redo the last undone edit.
+        Requires: canRedoEdit()
+        The current node becomes the current node after the edit. */
+    public void redoEdit()
+    {
+        m_current = (Node)m_tree.getJournal().redo();
+        editUndoneOrRedone();
+    }
+
     /** Remove a mark property from current node. */
     public void removeMarked(GoPoint point, MarkType type)
     {
-        m_current.removeMarked(point, type);
+        beginEdit();
+        m_tree.getJournal().setMarked(m_current, point, type, false);
+        endEdit();
         setModified();
     }
 
@@ -282,7 +349,9 @@ public class Game
     {
         if (! ObjectUtil.equals(value, m_current.getLabel(point)))
             setModified();
-        m_current.setLabel(point, value);
+        beginEdit();
+        m_tree.getJournal().setLabel(m_current, point, value);
+        endEdit();
     }
 
     public void setPlayer(GoColor c, String name)
@@ -308,7 +377,10 @@ public class Game
         if (! ObjectUtil.equals(color, m_current.getPlayer())
             || color.equals(m_board.getToMove()))
             setModified();
-        m_current.setPlayer(color);
+        beginEdit();
+        m_tree.getJournal().setPlayer(m_current, color);
+        endEdit();
+        m_boardUpdater.clearCheckpoints();
         updateBoard();
     }
 
@@ -351,21 +423,24 @@ public class Game
     public void setup(GoPoint p, GoColor c)
     {
         assert p != null;
-        m_current.removeSetup(p);
+        m_boardUpdater.clearCheckpoints();
         Node father = m_current.getFather();
+        // Setup stone or null, if the setup at the point is removed
+        GoColor setup = c;
         if (father != null)
         {
             m_boardUpdater.update(getTree(), father, m_board);
             GoColor oldColor = m_board.getColor(p);
             if (oldColor == c)
-            {
-                updateBoard();
-                return;
-            }
+                setup = null;
         }
-        if (c != EMPTY || father != null)
-            m_current.addStone(c, p);
-        setModified();
+        else if (c == EMPTY)
+            setup = null;
+        beginEdit();
+        m_tree.getJournal().setSetup(m_current, p, setup);
+        endEdit();
+        if (setup != null || father == null)
+            setModified();
         updateBoard();
     }
 
@@ -382,24 +457,45 @@ public class Game
         Node father = m_current.getFather();
         assert father != null;
         Node oldCurrentNode = m_current;
+        beginEdit();
         m_current = father;
-        m_current.removeChild(oldCurrentNode);
+        m_tree.getJournal().removeChild(father, oldCurrentNode);
+        endEdit();
         setModified();
     }
 
     /** Remove children of currentNode. */
     public void truncateChildren()
     {
-        NodeUtil.truncateChildren(m_current);
+        beginEdit();
+        m_tree.getJournal().truncateChildren(m_current);
+        endEdit();
         setModified();
     }
 
+    /** Undo the last edit.
+        Requires: canUndoEdit()
+        The current node becomes the current node before the edit. */
+    public void undoEdit()
+    {
+        m_current = (Node)m_tree.getJournal().undo();
+        editUndoneOrRedone();
+    }
+
+    /** Distance in moves between positions cached for navigating in the
+        game tree. */
+    private static final int CHECKPOINT_INTERVAL = 50;
+
+    /** Maximum memory for positions cached for navigating in the game
+        tree. */
+    private static final long CHECKPOINT_MEMORY = 8000000L;
+
     /** See #isModified() */
     private boolean m_modified;
 
     private final Board m_board;
 
-    private final BoardUpdater m_boardUpdater = new BoardUpdater();
+    private final BoardUpdater m_boardUpdater = createBoardUpdater();
 
     private GameTree m_tree;
 
@@ -410,6 +506,21 @@ public class Game
 
     private final Clock m_clock;
 
+    private static BoardUpdater createBoardUpdater()
+    {
+        BoardUpdater updater = new BoardUpdater();
+        updater.enableCheckpoints(CHECKPOINT_INTERVAL, CHECKPOINT_MEMORY);
+        return updater;
+    }
+
+    private void editUndoneOrRedone()
+    {
+        // Setup stones of nodes could have changed
+        m_boardUpdater.clearCheckpoints();
+        updateBoard();
+        setModified();
+    }
+
     private void setModified()
     {
         m_modified = true;
@@ -61,6 +61,16 @@ public class GameTree
         return m_boardSize;
     }
 
+    /** Get the index of the words in the comments of this tree.
+        The index is created on the first call and updated incrementally
+        on each search. */
+    public CommentIndex getCommentIndex()
+    {
+        if (m_commentIndex == null)
+            m_commentIndex = new CommentIndex(this);
+        return m_commentIndex;
+    }
+
     /** Find the game information valid for this node.
         @return The game information from the nearest ancestor node,
         which has a game information (the root node is always guaranteed
@@ -88,6 +98,15 @@ public class GameTree
         return getGameInfo((Node)node);
     }
 
+    /** Get the journal for undoing and redoing edits of this tree.
+        The journal is created on the first call. */
+    public EditJournal getJournal()
+    {
+        if (m_journal == null)
+            m_journal = new EditJournal();
+        return m_journal;
+    }
+
     /** Get a non-const reference to a const node.
         Requires: node is part of this game tree. */
     public Node getNode(ConstNode node)
@@ -96,6 +115,16 @@ public class GameTree
         return (Node)node;
     }
 
+    /** Get the index of the positions at the nodes of this tree.
+        The index is created on the first call and updated incrementally
+        on each query. */
+    public PositionIndex getPositionIndex()
+    {
+        if (m_positionIndex == null)
+            m_positionIndex = new PositionIndex(this);
+        return m_positionIndex;
+    }
+
     public Node getRoot()
     {
         return m_root;
@@ -132,6 +161,12 @@ public class GameTree
 
     private final Node m_root;
 
+    private CommentIndex m_commentIndex;
+
+    private EditJournal m_journal;
+
+    private PositionIndex m_positionIndex;
+
     private void setDate()
     {
         Calendar cal = Calendar.getInstance();
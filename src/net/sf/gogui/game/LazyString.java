@@ -0,0 +1,15 @@
+// LazyString.java
+
+package net.sf.gogui.game;
+
+/** String that is loaded on demand.
+    Used for comments and SGF properties of large files, which are only read
+    from the file when needed instead of being kept in memory.
+    @see Node#setCommentLazy
+    @see SgfProperties#addLazy */
+public interface LazyString
+{
+    /** Get the string.
+        Implementations must return equal strings on each invocation. */
+    String get();
+}
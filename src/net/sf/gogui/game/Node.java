@@ -4,7 +4,9 @@ package net.sf.gogui.game;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import net.sf.gogui.go.BlackWhiteSet;
@@ -106,6 +108,21 @@ final class TimeInfo
 public final class Node
     implements ConstNode
 {
+    /** Flag for CommentIndex.
+        @see #isIndexed */
+    static final int INDEX_COMMENT = 1;
+
+    /** Flag for PositionIndex.
+        @see #isIndexed */
+    static final int INDEX_POSITION = 2;
+
+    static final int INDEX_ALL = INDEX_COMMENT | INDEX_POSITION;
+
+    /** Shift of the INDEX_* flags in m_indexed for marking the subtree of
+        a node as not indexed.
+        @see #m_indexed */
+    private static final int INDEX_SUBTREE_SHIFT = 2;
+
     /** Construct empty node. */
     public Node()
     {
@@ -143,6 +160,10 @@ public final class Node
             }
         }
         node.m_father = this;
+        node.invalidateDepth();
+        invalidateSubtreeSize();
+        node.invalidateIndexSubtree(INDEX_ALL);
+        invalidateIndex(INDEX_ALL);
     }
 
     /** Add a markup.
@@ -184,6 +205,14 @@ public final class Node
         createSgfProperties().add(label, value);
     }
 
+    /** Add an SGF property with values that are loaded on demand.
+        @see #addSgfProperty(String,ArrayList)
+        @see SgfProperties#addLazy */
+    public void addSgfPropertyLazy(String label, List<LazyString> values)
+    {
+        createSgfProperties().addLazy(label, values);
+    }
+
     /** Add or remove a setup stone.
         It is not checked, if this stone is already in the list of added
         or removed stones.
@@ -193,6 +222,7 @@ public final class Node
     {
         assert p != null;
         createSetupInfo().m_stones.get(c).add(p);
+        invalidatePositionIndex();
     }
 
     /** Add or remove a list of setup stones.
@@ -204,6 +234,7 @@ public final class Node
     {
         assert list != null;
         createSetupInfo().m_stones.get(c).addAllFromConst(list);
+        invalidatePositionIndex();
     }
 
     /** Create game information or return it if already existing. */
@@ -249,6 +280,18 @@ public final class Node
         return getChild(i);
     }
 
+    /** Get the children of this node.
+        Only used by EditJournal.
+        @return A new array containing the children. */
+    Node[] getChildren()
+    {
+        int numberChildren = getNumberChildren();
+        Node[] children = new Node[numberChildren];
+        for (int i = 0; i < numberChildren; ++i)
+            children[i] = getChild(i);
+        return children;
+    }
+
     /** Get index of child node.
         @param child The child.
         @return Index of child or -1, if node is not a child of this node. */
@@ -267,13 +310,16 @@ public final class Node
     {
         if (m_comment == null)
             return null;
+        if (m_comment instanceof LazyString)
+            return ((LazyString)m_comment).get();
+        byte[] comment = (byte[])m_comment;
         try
         {
-            return new String(m_comment, "UTF-8");
+            return new String(comment, "UTF-8");
         }
         catch (UnsupportedEncodingException e)
         {
-            return new String(m_comment);
+            return new String(comment);
         }
     }
 
@@ -284,6 +330,19 @@ public final class Node
         return m_father;
     }
 
+    /** Get depth of this node.
+        The value is cached and updated lazily after changes of the tree
+        structure.
+        @return The number of nodes in the sequence from the root node to
+        this node, excluding this node.
+        @see NodeUtil#getDepth */
+    public int getDepth()
+    {
+        if (m_depth < 0)
+            computeDepth();
+        return m_depth;
+    }
+
     /** Get father node (const).
         @return Father node of this node or null, if no father. */
     public ConstNode getFatherConst()
@@ -350,6 +409,18 @@ public final class Node
         return getMarked(type);
     }
 
+    /** Get number of moves in the sequence from the root to this node.
+        The value is cached and updated lazily after changes of the tree
+        structure or of the moves.
+        @return The number of nodes containing a move, including this node.
+        @see NodeUtil#getMoveNumber */
+    public int getMoveNumber()
+    {
+        if (m_depth < 0)
+            computeDepth();
+        return m_moveNumber;
+    }
+
     /** Get move contained in this node.
         @return Move or null, if no move. */
     public Move getMove()
@@ -423,6 +494,18 @@ public final class Node
         return getSgfProperties();
     }
 
+    /** Get number of nodes in the subtree of this node.
+        The value is cached and updated lazily after changes of the tree
+        structure.
+        @return The number of nodes in the subtree including this node.
+        @see NodeUtil#subtreeSize */
+    public int getSubtreeSize()
+    {
+        if (m_subtreeSize == 0)
+            computeSubtreeSize();
+        return m_subtreeSize;
+    }
+
     /** Time left for color after move was made.
         @param c The color
         @return Time left in seconds for this color or Double.NaN if unknown */
@@ -489,6 +572,14 @@ public final class Node
         return false;
     }
 
+    /** Check if this node and its subtree are in an index of the tree.
+        Only used by CommentIndex and PositionIndex.
+        @param index INDEX_COMMENT or INDEX_POSITION */
+    boolean isIndexed(int index)
+    {
+        return ((m_indexed & index) != 0);
+    }
+
     /** Check if node is child of this node.
         @param node The node to check.
         @return true, if node is child node. */
@@ -515,6 +606,7 @@ public final class Node
         ArrayList<Node> list = (ArrayList<Node>)m_children;
         list.remove(child);
         list.add(0, child);
+        invalidateIndex(INDEX_COMMENT);
     }
 
     /** Remove child of this node.
@@ -535,6 +627,9 @@ public final class Node
         else
             assert false;
         child.m_father = null;
+        child.invalidateDepth();
+        invalidateSubtreeSize();
+        invalidateIndex(INDEX_COMMENT);
     }
 
     /** Remove markup.
@@ -560,6 +655,18 @@ public final class Node
             return;
         for (GoColor c : BLACK_WHITE_EMPTY)
             while (setupInfo.m_stones.get(c).remove(p));
+        invalidatePositionIndex();
+    }
+
+    /** Remove the explicitely set color to play.
+        Only used by EditJournal. */
+    void removePlayer()
+    {
+        SetupInfo setupInfo = getSetupInfo();
+        if (setupInfo == null)
+            return;
+        setupInfo.m_player = null;
+        invalidatePositionIndex();
     }
 
     /** Remove all children but the first. */
@@ -569,6 +676,8 @@ public final class Node
             return;
         Node child = getChild(0);
         m_children = child;
+        invalidateSubtreeSize();
+        invalidateIndex(INDEX_COMMENT);
     }
 
     /** Store comment in this node.
@@ -577,6 +686,7 @@ public final class Node
         node. */
     public void setComment(String comment)
     {
+        invalidateIndex(INDEX_COMMENT);
         if (StringUtil.isEmpty(comment))
         {
             m_comment = null;
@@ -592,11 +702,79 @@ public final class Node
         }
     }
 
+    /** Store a comment that is loaded on demand.
+        Unlike setComment(String), the comment is not checked for being empty,
+        because that would require to load it.
+        @param comment The comment. Must not return an empty string. If the
+        parameter is null, the comment will be deleted from this node. */
+    public void setCommentLazy(LazyString comment)
+    {
+        invalidateIndex(INDEX_COMMENT);
+        m_comment = comment;
+    }
+
+    /** Mark this node as indexed by an index of the tree.
+        Only used by CommentIndex and PositionIndex.
+        @param index INDEX_COMMENT or INDEX_POSITION */
+    void setIndexed(int index)
+    {
+        int subtree = index << INDEX_SUBTREE_SHIFT;
+        if ((m_indexed & subtree) != 0)
+        {
+            // Push the invalidation of the subtree down to the children,
+            // which are visited next by the index
+            int numberChildren = getNumberChildren();
+            for (int i = 0; i < numberChildren; ++i)
+                getChild(i).invalidateIndexSubtree(index);
+        }
+        m_indexed = (byte)((m_indexed | index) & ~subtree);
+    }
+
+    /** Replace the children of this node.
+        Children that are not in the new list are detached from this node.
+        Only used by EditJournal.
+        @param children The new children. Nodes that are not already children
+        of this node must not have a father. */
+    void setChildren(Node[] children)
+    {
+        Node[] oldChildren = getChildren();
+        for (Node child : oldChildren)
+            child.m_father = null;
+        if (children.length == 0)
+            m_children = null;
+        else if (children.length == 1)
+            m_children = children[0];
+        else
+            m_children = new ArrayList<Node>(Arrays.asList(children));
+        for (Node child : children)
+        {
+            assert child.m_father == null;
+            child.m_father = this;
+            boolean isNew = true;
+            for (Node oldChild : oldChildren)
+                if (oldChild == child)
+                    isNew = false;
+            if (isNew)
+            {
+                child.invalidateDepth();
+                child.invalidateIndexSubtree(INDEX_ALL);
+            }
+        }
+        for (Node oldChild : oldChildren)
+            if (oldChild.m_father == null)
+                oldChild.invalidateDepth();
+        invalidateSubtreeSize();
+        invalidateIndex(INDEX_ALL);
+    }
+
     /** Set father of this node.
         @param father The new father. */
     public void setFather(Node father)
     {
         m_father = father;
+        invalidateDepth();
+        invalidateIndex(INDEX_ALL);
+        invalidateIndexSubtree(INDEX_ALL);
     }
 
     /** Add label at a location on the board.
@@ -622,6 +800,8 @@ public final class Node
     public void setMove(Move move)
     {
         m_move = move;
+        invalidateDepth();
+        invalidatePositionIndex();
     }
 
     /** Set byoyomi moves left.
@@ -648,6 +828,7 @@ public final class Node
     {
         assert color.isBlackWhite();
         createSetupInfo().m_player = color;
+        invalidatePositionIndex();
     }
 
     /** Set value for this node.
@@ -703,10 +884,10 @@ public final class Node
         return getChildConst(i - 1);
     }
 
-    /** Comment stored as bytes.
+    /** Comment stored as bytes or LazyString.
         Store comments in UTF-8, because that saves up to a factor of 2 in
         size compared to a string. */
-    private byte[] m_comment;
+    private Object m_comment;
 
     private ExtraInfo m_extraInfo;
 
@@ -717,6 +898,162 @@ public final class Node
     /** Node if one child only, ArrayList otherwise. */
     private Object m_children;
 
+    /** Cached depth.
+        Negative, if not valid. If the value is valid, it is also valid for
+        all ancestors, so that invalidating a subtree can stop at nodes that
+        are already invalid.
+        @see #getDepth */
+    private int m_depth = -1;
+
+    /** Cached move number.
+        Valid if m_depth is valid.
+        @see #getMoveNumber */
+    private int m_moveNumber;
+
+    /** Cached subtree size.
+        Zero, if not valid. If the value is valid, it is also valid for all
+        nodes in the subtree, so that invalidating the ancestors can stop at
+        nodes that are already invalid.
+        @see #getSubtreeSize */
+    private int m_subtreeSize;
+
+    /** Flags for the indexes of the tree that contain this node and all
+        nodes in its subtree.
+        If a flag is not set for a node, it is also not set for all
+        ancestors. The flags shifted by INDEX_SUBTREE_SHIFT mark the
+        subtree as not indexed, independent of the flags of the nodes in the
+        subtree. setIndexed() moves them to the children, so the indexes
+        only see the flags of nodes without such a mark in an ancestor.
+        @see #INDEX_COMMENT
+        @see #INDEX_POSITION */
+    private byte m_indexed;
+
+    /** Compute depth and move number of this node and all ancestors without
+        valid values. */
+    private void computeDepth()
+    {
+        int depth = 0;
+        int moveNumber = 0;
+        Node node = this;
+        while (node != null && node.m_depth < 0)
+        {
+            ++depth;
+            if (node.m_move != null)
+                ++moveNumber;
+            node = node.m_father;
+        }
+        if (node == null)
+            --depth;
+        else
+        {
+            depth += node.m_depth;
+            moveNumber += node.m_moveNumber;
+        }
+        for (node = this; node != null && node.m_depth < 0;
+             node = node.m_father)
+        {
+            node.m_depth = depth--;
+            node.m_moveNumber = moveNumber;
+            if (node.m_move != null)
+                --moveNumber;
+        }
+    }
+
+    /** Compute the subtree size of this node and all nodes in the subtree
+        without valid values.
+        Does not use recursion, because trees can be very deep. */
+    private void computeSubtreeSize()
+    {
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        ArrayList<Node> stack = new ArrayList<Node>();
+        stack.add(this);
+        while (! stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+            nodes.add(node);
+            int numberChildren = node.getNumberChildren();
+            for (int i = 0; i < numberChildren; ++i)
+            {
+                Node child = node.getChild(i);
+                if (child.m_subtreeSize == 0)
+                    stack.add(child);
+            }
+        }
+        // Children are always after their father in the list
+        for (int i = nodes.size() - 1; i >= 0; --i)
+        {
+            Node node = nodes.get(i);
+            int size = 1;
+            int numberChildren = node.getNumberChildren();
+            for (int j = 0; j < numberChildren; ++j)
+                size += node.getChild(j).m_subtreeSize;
+            node.m_subtreeSize = size;
+        }
+    }
+
+    /** Invalidate the cached depth and move number of this node and its
+        subtree. */
+    private void invalidateDepth()
+    {
+        if (m_depth < 0)
+            return;
+        ArrayList<Node> stack = new ArrayList<Node>();
+        stack.add(this);
+        while (! stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+            node.m_depth = -1;
+            int numberChildren = node.getNumberChildren();
+            for (int i = 0; i < numberChildren; ++i)
+            {
+                Node child = node.getChild(i);
+                if (child.m_depth >= 0)
+                    stack.add(child);
+            }
+        }
+    }
+
+    /** Mark this node and all ancestors as not in an index.
+        @param index A combination of the INDEX_* flags */
+    private void invalidateIndex(int index)
+    {
+        for (Node node = this; node != null && (node.m_indexed & index) != 0;
+             node = node.m_father)
+            node.m_indexed &= ~index;
+    }
+
+    /** Mark all nodes in the subtree of this node as not in an index.
+        Needed if a subtree is attached to a different tree or at a different
+        location, because its nodes may be marked as indexed by the index of
+        the old tree, or if the position in the subtree changes.
+        Does not visit the subtree, the nodes are only marked as not
+        indexed when an index visits them (see setIndexed()).
+        @param index A combination of the INDEX_* flags */
+    private void invalidateIndexSubtree(int index)
+    {
+        m_indexed = (byte)((m_indexed & ~index)
+                           | (index << INDEX_SUBTREE_SHIFT));
+    }
+
+    /** Mark the subtree and the ancestors of this node as not in the position
+        index.
+        Called if the position at this node changes. */
+    private void invalidatePositionIndex()
+    {
+        // Ancestors first, the subtree invalidation clears the flag of this
+        // node, which would stop invalidateIndex()
+        invalidateIndex(INDEX_POSITION);
+        invalidateIndexSubtree(INDEX_POSITION);
+    }
+
+    /** Invalidate the cached subtree size of this node and its ancestors. */
+    private void invalidateSubtreeSize()
+    {
+        for (Node node = this; node != null && node.m_subtreeSize != 0;
+             node = node.m_father)
+            node.m_subtreeSize = 0;
+    }
+
     private void createExtraInfo()
     {
         if (m_extraInfo == null)
@@ -287,13 +287,7 @@ public final class NodeUtil
         root node has depth 0). */
     public static int getDepth(ConstNode node)
     {
-        int depth = 0;
-        while (node.getFatherConst() != null)
-        {
-            node = node.getFatherConst();
-            ++depth;
-        }
-        return depth;
+        return node.getDepth();
     }
 
     /** Get last node in main variation. */
@@ -310,14 +304,7 @@ public final class NodeUtil
         the root node to the given node, including the given node. */
     public static int getMoveNumber(ConstNode node)
     {
-        int moveNumber = 0;
-        while (node != null)
-        {
-            if (node.getMove() != null)
-                ++moveNumber;
-            node = node.getFatherConst();
-        }
-        return moveNumber;
+        return node.getMoveNumber();
     }
 
     /** Moves left in main variation. */
@@ -424,6 +411,22 @@ public final class NodeUtil
         return node;
     }
 
+    /** Get other nodes with the same position.
+        Uses the position index of the tree.
+        @param tree The game tree.
+        @param node A node of the tree.
+        @return The nodes of the tree other than the given node, at which the
+        same position with the same color to move occurs.
+        @see GameTree#getPositionIndex */
+    public static ArrayList<ConstNode> getTranspositions(GameTree tree,
+                                                         ConstNode node)
+    {
+        PositionIndex index = tree.getPositionIndex();
+        ArrayList<ConstNode> result = index.getNodes(index.getHashCode(node));
+        result.remove(node);
+        return result;
+    }
+
     /** Get a text representation of the variation to a certain node.
         The string contains the number of the child for each node with more
         than one child in the path from the root node to this node.
@@ -756,16 +759,7 @@ public final class NodeUtil
         than a given limit. */
     public static boolean subtreeGreaterThan(ConstNode node, int size)
     {
-        int n = 0;
-        int depth = NodeUtil.getDepth(node);
-        while (node != null)
-        {
-            ++n;
-            if (n > size)
-                return true;
-            node = nextNode(node, depth);
-        }
-        return false;
+        return node.getSubtreeSize() > size;
     }
 
     /** Count number of nodes in subtree.
@@ -774,14 +768,7 @@ public final class NodeUtil
         node). */
     public static int subtreeSize(ConstNode node)
     {
-        int n = 0;
-        int depth = NodeUtil.getDepth(node);
-        while (node != null)
-        {
-            ++n;
-            node = nextNode(node, depth);
-        }
-        return n;
+        return node.getSubtreeSize();
     }
 
     /** Return a string containing information and statistics of the subtree
@@ -0,0 +1,147 @@
+// PositionIndex.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.ConstBoard;
+import static net.sf.gogui.go.GoColor.WHITE;
+
+/** Index of the positions at the nodes of a game tree.
+    Maps the hash code of the position to the nodes, at which the position
+    occurs, so that transpositions (the same position reached by different
+    move orders) can be found without searching the tree. The hash code
+    contains the stones on the board and the color to move (see
+    getHashCode(ConstBoard)); other state like the ko point is not taken
+    into account.
+    <p>
+    The index is updated incrementally before each query; only nodes that
+    were added to the tree since the last query and nodes, at which the
+    position has changed (because of changed moves or setup stones in the
+    node or its ancestors) are visited. Nodes removed from the tree are
+    removed from the index when they are found in a query.
+    @see GameTree#getPositionIndex
+    @see NodeUtil#getTranspositions */
+public final class PositionIndex
+{
+    /** Get the hash code used for the position of a board.
+        @return The Zobrist hash code of the board combined with a key for
+        the color to move. */
+    public static long getHashCode(ConstBoard board)
+    {
+        long hashCode = board.getHashCode();
+        if (board.getToMove() == WHITE)
+            hashCode ^= WHITE_TO_MOVE;
+        return hashCode;
+    }
+
+    /** Get the hash code of the position at a node.
+        @param node A node of the tree.
+        @see #getHashCode(ConstBoard) */
+    public long getHashCode(ConstNode node)
+    {
+        assert NodeUtil.getRoot(node) == m_tree.getRoot();
+        update();
+        return m_hashCodes.get(node).longValue();
+    }
+
+    /** Get all nodes of the tree with a position.
+        @param hashCode The hash code of the position.
+        @return The nodes in the order, in which they were added to the
+        index. */
+    public ArrayList<ConstNode> getNodes(long hashCode)
+    {
+        update();
+        ArrayList<ConstNode> result = new ArrayList<ConstNode>();
+        ArrayList<Node> nodes = m_nodes.get(hashCode);
+        if (nodes == null)
+            return result;
+        Iterator<Node> it = nodes.iterator();
+        while (it.hasNext())
+        {
+            Node node = it.next();
+            if (NodeUtil.getRoot(node) == m_tree.getRoot())
+                result.add(node);
+            else
+            {
+                m_hashCodes.remove(node);
+                it.remove();
+            }
+        }
+        if (nodes.isEmpty())
+            m_nodes.remove(hashCode);
+        return result;
+    }
+
+    /** Get the number of different positions in the index. */
+    public int getNumberPositions()
+    {
+        update();
+        return m_nodes.size();
+    }
+
+    PositionIndex(GameTree tree)
+    {
+        m_tree = tree;
+    }
+
+    /** Key for the color to move (arbitrary random number). */
+    private static final long WHITE_TO_MOVE = 0x2c5b0ab3e1f5a7c9L;
+
+    private final GameTree m_tree;
+
+    /** Map from hash code to nodes with this position. */
+    private final Map<Long,ArrayList<Node>> m_nodes =
+        new HashMap<Long,ArrayList<Node>>();
+
+    /** Map from node to the hash code of its position. */
+    private final Map<Node,Long> m_hashCodes = new HashMap<Node,Long>();
+
+    /** Add all nodes that are not marked as indexed to the index.
+        Visits the nodes in depth-first order, so that the board updater
+        can update the board incrementally between nodes. */
+    private void update()
+    {
+        Node root = m_tree.getRoot();
+        if (root.isIndexed(Node.INDEX_POSITION))
+            return;
+        // New updater and board, because nodes of a previous update could
+        // have been changed
+        BoardUpdater updater = new BoardUpdater();
+        Board board = new Board(m_tree.getBoardSize());
+        ArrayList<Node> stack = new ArrayList<Node>();
+        stack.add(root);
+        while (! stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+            if (node.isIndexed(Node.INDEX_POSITION))
+                continue;
+            node.setIndexed(Node.INDEX_POSITION);
+            updater.update(m_tree, node, board);
+            Long hashCode = Long.valueOf(getHashCode(board));
+            Long oldHashCode = m_hashCodes.put(node, hashCode);
+            if (! hashCode.equals(oldHashCode))
+            {
+                if (oldHashCode != null)
+                {
+                    ArrayList<Node> nodes = m_nodes.get(oldHashCode);
+                    nodes.remove(node);
+                    if (nodes.isEmpty())
+                        m_nodes.remove(oldHashCode);
+                }
+                ArrayList<Node> nodes = m_nodes.get(hashCode);
+                if (nodes == null)
+                {
+                    nodes = new ArrayList<Node>(1);
+                    m_nodes.put(hashCode, nodes);
+                }
+                nodes.add(node);
+            }
+            for (int i = node.getNumberChildren() - 1; i >= 0; --i)
+                stack.add(node.getChild(i));
+        }
+    }
+}
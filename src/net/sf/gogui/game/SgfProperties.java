@@ -3,6 +3,7 @@
 package net.sf.gogui.game;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -16,7 +17,7 @@ public final class SgfProperties
 {
     public SgfProperties()
     {
-        m_properties = new TreeMap<String,ArrayList<String>>();
+        m_properties = new TreeMap<String,ArrayList<Object>>();
     }
 
     public SgfProperties(ConstSgfProperties props)
@@ -24,23 +25,31 @@ public final class SgfProperties
         this();
         if (props == null)
             return;
-        for (Map.Entry<String,ArrayList<String>> entry :
+        for (Map.Entry<String,ArrayList<Object>> entry :
                  ((SgfProperties)props).m_properties.entrySet())
-            add(entry.getKey(), entry.getValue());
+            m_properties.put(entry.getKey(),
+                             new ArrayList<Object>(entry.getValue()));
     }
 
     public void add(String key, ArrayList<String> values)
     {
-        m_properties.put(key, new ArrayList<String>(values));
+        m_properties.put(key, new ArrayList<Object>(values));
     }
 
     public void add(String key, String value)
     {
-        ArrayList<String> values = new ArrayList<String>();
+        ArrayList<Object> values = new ArrayList<Object>(1);
         values.add(value);
         m_properties.put(key, values);
     }
 
+    /** Add a property with values that are loaded on demand.
+        The values are loaded each time getValue() is called. */
+    public void addLazy(String key, List<LazyString> values)
+    {
+        m_properties.put(key, new ArrayList<Object>(values));
+    }
+
     /** Get a list of all keys.
         This list is a copy of the keys at the time of the function call. */
     public ArrayList<String> getKeys()
@@ -52,7 +61,7 @@ public final class SgfProperties
         @return Number of values or -1, if key does not exist. */
     public int getNumberValues(String key)
     {
-        ArrayList<String> values = m_properties.get(key);
+        ArrayList<Object> values = m_properties.get(key);
         if (values == null)
             return -1;
         return values.size();
@@ -60,7 +69,10 @@ public final class SgfProperties
 
     public String getValue(String key, int index)
     {
-        return m_properties.get(key).get(index);
+        Object value = m_properties.get(key).get(index);
+        if (value instanceof LazyString)
+            return ((LazyString)value).get();
+        return (String)value;
     }
 
     public boolean hasKey(String key)
@@ -78,5 +90,6 @@ public final class SgfProperties
         m_properties.remove(key);
     }
 
-    private Map<String,ArrayList<String>> m_properties;
+    /** Values of properties stored as String or LazyString. */
+    private Map<String,ArrayList<Object>> m_properties;
 }
@@ -2,39 +2,95 @@
 
 package net.sf.gogui.gamefile;
 
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import net.sf.gogui.game.ConstGameTree;
+import net.sf.gogui.sgf.SgfReader;
 import net.sf.gogui.sgf.SgfWriter;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.xml.XmlWriter;
 
 public class GameWriter
 {
+    /** Write a game file.
+        The game is written to a temporary file in the same directory, which
+        then replaces the file. This keeps the old file intact while the
+        tree is written, so a tree that loads values on demand from the file
+        (see SgfReader) can be saved to the file it was read from. If the
+        file cannot be replaced, the old file is kept and the temporary file
+        is deleted. */
     public GameWriter(GameFile gameFile, ConstGameTree tree,
                       String application, String version) throws ErrorMessage
     {
-        OutputStream out;
+        File file;
+        File tempFile = null;
+        boolean success = false;
         try
         {
-            out = new FileOutputStream(gameFile.m_file);
+            file = gameFile.m_file.getCanonicalFile();
+            if (file.isDirectory())
+                throw new ErrorMessage(file + " is a directory");
+            tempFile = File.createTempFile("gogui", ".tmp",
+                                           file.getParentFile());
+            OutputStream out = new FileOutputStream(tempFile);
+            switch (gameFile.m_format)
+            {
+            case SGF:
+                new SgfWriter(out, tree, application, version);
+                break;
+            case XML:
+                String xmlApplication = application;
+                if (xmlApplication != null && version != null)
+                    xmlApplication = xmlApplication + ":" + version;
+                new XmlWriter(out, tree, xmlApplication);
+                break;
+            }
+            // A mapped file cannot be replaced on all platforms
+            SgfReader.releaseFile(file);
+            replace(file, tempFile);
+            success = true;
         }
-        catch (FileNotFoundException e)
+        catch (IOException e)
         {
             throw new ErrorMessage(e.getMessage());
         }
-        switch (gameFile.m_format)
+        finally
         {
-        case SGF:
-            new SgfWriter(out, tree, application, version);
-            break;
-        case XML:
-            String xmlApplication = application;
-            if (xmlApplication != null && version != null)
-                xmlApplication = xmlApplication + ":" + version;
-            new XmlWriter(out, tree, xmlApplication);
-            break;
+            if (! success && tempFile != null)
+                tempFile.delete();
         }
     }
+
+    /** Replace a file by a new file.
+        renameTo() does not replace existing files on all platforms. In
+        this case, the old file is moved to a backup file first, which is
+        moved back if the new file cannot be renamed. */
+    private static void replace(File file, File newFile)
+        throws IOException, ErrorMessage
+    {
+        if (newFile.renameTo(file))
+            return;
+        if (! file.exists())
+            throw new ErrorMessage("Could not rename " + newFile + " to "
+                                   + file);
+        File backupFile = File.createTempFile("gogui", ".bak",
+                                              file.getParentFile());
+        if (! backupFile.delete() || ! file.renameTo(backupFile))
+        {
+            backupFile.delete();
+            throw new ErrorMessage("Could not replace " + file);
+        }
+        if (! newFile.renameTo(file))
+        {
+            if (! backupFile.renameTo(file))
+                throw new ErrorMessage("Could not replace " + file
+                                       + ", old file was moved to "
+                                       + backupFile);
+            throw new ErrorMessage("Could not replace " + file);
+        }
+        if (! backupFile.delete())
+            backupFile.deleteOnExit();
+    }
 }
@@ -0,0 +1,267 @@
+// BitBoard.java
+
+package net.sf.gogui.go;
+
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+
+/** Board state stored as packed bitsets.
+    Used by Board as an alternative engine for finding blocks and captures.
+    The points are stored row by row with a row stride of size + 1, the
+    extra guard column is never set, so that shifting a bitset by one
+    does not wrap neighbors from one row to the next. Neighbors of a set of
+    points are computed by shifting by one and by the stride in both
+    directions and masking the result with the points on the board. */
+final class BitBoard
+{
+    /** Constructor.
+        @param size The board size. */
+    public BitBoard(int size)
+    {
+        assert size > 0 && size <= GoPoint.MAX_SIZE;
+        m_stride = size + 1;
+        m_numberWords = (size * m_stride + 63) / 64;
+        m_onBoard = new long[m_numberWords];
+        m_black = new long[m_numberWords];
+        m_white = new long[m_numberWords];
+        m_empty = new long[m_numberWords];
+        m_block = new long[m_numberWords];
+        m_neighbors = new long[m_numberWords];
+        for (int x = 0; x < size; ++x)
+            for (int y = 0; y < size; ++y)
+                setBit(m_onBoard, getBit(x, y));
+        clear();
+    }
+
+    /** Set all points to empty. */
+    public void clear()
+    {
+        for (int i = 0; i < m_numberWords; ++i)
+        {
+            m_black[i] = 0;
+            m_white[i] = 0;
+            m_empty[i] = m_onBoard[i];
+        }
+    }
+
+    /** Get the block of a stone if it has no liberties.
+        Does not modify the board.
+        @param p The location of the stone.
+        @param color The color of the stone.
+        @param stones List to append the stones of the block to, if the block
+        has no liberties.
+        @return <code>true</code>, if the block has no liberties. */
+    public boolean getDeadBlock(GoPoint p, GoColor color,
+                                PointIndexList stones)
+    {
+        if (! findBlock(p, color, true))
+            return false;
+        appendPoints(m_block, stones);
+        return true;
+    }
+
+    /** Get the number of liberties of a block.
+        @param p A stone of the block.
+        @return The number of empty points adjacent to the block. */
+    public int getLiberties(GoPoint p)
+    {
+        GoColor color = getColor(p);
+        assert color.isBlackWhite();
+        findBlock(p, color, false);
+        getNeighbors(m_block, m_neighbors);
+        int result = 0;
+        for (int i = 0; i < m_numberWords; ++i)
+            result += Long.bitCount(m_neighbors[i] & m_empty[i]);
+        return result;
+    }
+
+    /** Check if the block of a stone has a liberty other than a given
+        point.
+        @param stone A stone of the block.
+        @param p The point not to count as liberty.
+        @return <code>true</code>, if the block has another liberty. */
+    public boolean hasOtherLiberty(GoPoint stone, GoPoint p)
+    {
+        findBlock(stone, getColor(stone), false);
+        getNeighbors(m_block, m_neighbors);
+        clearBit(m_neighbors, getBit(p.getX(), p.getY()));
+        for (int i = 0; i < m_numberWords; ++i)
+            if ((m_neighbors[i] & m_empty[i]) != 0)
+                return true;
+        return false;
+    }
+
+    /** Get the color of a point. */
+    public GoColor getColor(GoPoint p)
+    {
+        int bit = getBit(p.getX(), p.getY());
+        if (testBit(m_black, bit))
+            return BLACK;
+        if (testBit(m_white, bit))
+            return WHITE;
+        return EMPTY;
+    }
+
+    /** Get the stones of a block.
+        @param p A point.
+        @param color The color of the block (EMPTY for a connected region
+        of empty points).
+        @param stones List to append the stones of the block to. Nothing is
+        appended, if the point does not have the given color. */
+    public void getStones(GoPoint p, GoColor color, PointList stones)
+    {
+        if (getColor(p) != color)
+            return;
+        findBlock(p, color, false);
+        for (int i = 0; i < m_numberWords; ++i)
+        {
+            long word = m_block[i];
+            while (word != 0)
+            {
+                stones.add(getPoint(i * 64
+                                    + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /** Get the stones of a block as point indexes.
+        @see #getStones(GoPoint, GoColor, PointList) */
+    public void getStones(GoPoint p, GoColor color, PointIndexList stones)
+    {
+        if (getColor(p) != color)
+            return;
+        findBlock(p, color, false);
+        appendPoints(m_block, stones);
+    }
+
+    /** Change the color of a point. */
+    public void set(GoPoint p, GoColor c)
+    {
+        int bit = getBit(p.getX(), p.getY());
+        clearBit(m_black, bit);
+        clearBit(m_white, bit);
+        clearBit(m_empty, bit);
+        if (c == BLACK)
+            setBit(m_black, bit);
+        else if (c == WHITE)
+            setBit(m_white, bit);
+        else
+            setBit(m_empty, bit);
+    }
+
+    private final int m_stride;
+
+    private final int m_numberWords;
+
+    private final long[] m_onBoard;
+
+    private final long[] m_black;
+
+    private final long[] m_white;
+
+    private final long[] m_empty;
+
+    /** Temporary variable reused for efficiency. */
+    private final long[] m_block;
+
+    /** Temporary variable reused for efficiency. */
+    private final long[] m_neighbors;
+
+    private void appendPoints(long[] bits, PointIndexList points)
+    {
+        for (int i = 0; i < m_numberWords; ++i)
+        {
+            long word = bits[i];
+            while (word != 0)
+            {
+                int bit = i * 64 + Long.numberOfTrailingZeros(word);
+                points.addIndex(GoPoint.getIndex(bit % m_stride,
+                                                 bit / m_stride));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /** Grow a block from a stone into m_block.
+        @param stopAtLiberty Stop as soon as a liberty is found.
+        @return <code>true</code>, if the complete block was found and has
+        no liberties. */
+    private boolean findBlock(GoPoint p, GoColor color, boolean stopAtLiberty)
+    {
+        long[] stones;
+        if (color == BLACK)
+            stones = m_black;
+        else if (color == WHITE)
+            stones = m_white;
+        else
+            stones = m_empty;
+        for (int i = 0; i < m_numberWords; ++i)
+            m_block[i] = 0;
+        setBit(m_block, getBit(p.getX(), p.getY()));
+        while (true)
+        {
+            getNeighbors(m_block, m_neighbors);
+            boolean changed = false;
+            for (int i = 0; i < m_numberWords; ++i)
+            {
+                long neighbors = m_neighbors[i];
+                if (stopAtLiberty && (neighbors & m_empty[i]) != 0)
+                    return false;
+                long grown = m_block[i] | (neighbors & stones[i]);
+                if (grown != m_block[i])
+                {
+                    m_block[i] = grown;
+                    changed = true;
+                }
+            }
+            if (! changed)
+                return true;
+        }
+    }
+
+    private int getBit(int x, int y)
+    {
+        return y * m_stride + x;
+    }
+
+    private GoPoint getPoint(int bit)
+    {
+        return GoPoint.get(bit % m_stride, bit / m_stride);
+    }
+
+    /** Compute the points adjacent to a set of points.
+        The result may include points of the set itself. */
+    private void getNeighbors(long[] bits, long[] result)
+    {
+        int n = m_numberWords;
+        int s = m_stride;
+        for (int i = 0; i < n; ++i)
+        {
+            long lower = (i > 0 ? bits[i - 1] : 0);
+            long upper = (i < n - 1 ? bits[i + 1] : 0);
+            long w = bits[i];
+            result[i] = ((w << 1) | (lower >>> 63)
+                         | (w >>> 1) | (upper << 63)
+                         | (w << s) | (lower >>> (64 - s))
+                         | (w >>> s) | (upper << (64 - s)))
+                & m_onBoard[i];
+        }
+    }
+
+    private static void clearBit(long[] bits, int bit)
+    {
+        bits[bit >> 6] &= ~(1L << (bit & 63));
+    }
+
+    private static void setBit(long[] bits, int bit)
+    {
+        bits[bit >> 6] |= 1L << (bit & 63);
+    }
+
+    private static boolean testBit(long[] bits, int bit)
+    {
+        return (bits[bit >> 6] & (1L << (bit & 63))) != 0;
+    }
+}
@@ -3,7 +3,9 @@
 package net.sf.gogui.go;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
 import static net.sf.gogui.go.GoColor.EMPTY;
@@ -40,17 +42,38 @@ public final class Board
         in the range from one to GoPoint.MAX_SIZE */
     public Board(int boardSize)
     {
+        this(boardSize, false);
+    }
+
+    /** Constructor.
+        @param boardSize The board size (number of points per row / column)
+        in the range from one to GoPoint.MAX_SIZE
+        @param useBitBoard Use packed bitsets instead of the incrementally
+        updated block information for finding blocks and captured stones.
+        The behavior of the board is the same. */
+    public Board(int boardSize, boolean useBitBoard)
+    {
+        m_useBitBoard = useBitBoard;
         init(boardSize);
     }
 
+    /** Construct a board from a snapshot.
+        @param snapshot The snapshot.
+        @see #restore */
+    public Board(BoardSnapshot snapshot)
+    {
+        this(snapshot.getSize());
+        restore(snapshot);
+    }
+
     /** Check for two consecutive passes.
         @return true, if the last two moves were pass moves */
     public boolean bothPassed()
     {
         int n = getNumberMoves();
         return (n >= 2
-                && m_stack.get(n - 1).m_move.getPoint() == null
-                && m_stack.get(n - 2).m_move.getPoint() == null);
+                && m_moves[n - 1].getPoint() == null
+                && m_moves[n - 2].getPoint() == null);
     }
 
     /** Check if board contains a point.
@@ -74,7 +97,10 @@ public final class Board
         opponent moves or by suicide. */
     public int getCaptured(GoColor c)
     {
-        return m_captured.get(c);
+        if (c == BLACK)
+            return m_capturedBlack;
+        assert c == WHITE;
+        return m_capturedWhite;
     }
 
     /** Get state of a point on the board.
@@ -84,6 +110,17 @@ public final class Board
         return m_color[p.getIndex()];
     }
 
+    /** Get the Zobrist hash code of the position.
+        Updated incrementally on every change of a point. Depends only on
+        the stones on the board, not on the color to move or the move
+        history.
+        @return The hash code.
+        @see Zobrist */
+    public long getHashCode()
+    {
+        return m_hashCode;
+    }
+
     /** Get location of handicap stones for a given board size.
         @param n The number of handicap stones.
         @param size The board size.
@@ -108,6 +145,31 @@ public final class Board
         return m_stack.get(n - 1).m_killed;
     }
 
+    /** Get all legal moves of a player.
+        Computed in a single pass over the points from the liberties of the
+        adjacent blocks, without playing any moves. A move is legal if the
+        point is empty, the move is not a suicide and, if the player is
+        the color to move, it does not violate the simple ko rule.
+        Positional superko is not checked (see isSuperko), pass moves are
+        not included.
+        @param c The player color.
+        @param moves The list to append the legal moves to. */
+    public void getLegalMoves(GoColor c, PointIndexList moves)
+    {
+        int koPoint = -1;
+        if (c == m_toMove && m_koPoint != null)
+            koPoint = m_koPoint.getIndex();
+        for (int y = 0; y < m_size; ++y)
+            for (int x = 0; x < m_size; ++x)
+            {
+                int index = GoPoint.getIndex(x, y);
+                if (m_color[index] != EMPTY || index == koPoint)
+                    continue;
+                if (isLegalEmpty(c, index))
+                    moves.addIndex(index);
+            }
+    }
+
     /** Return last move.
         @return Last move or null if there is no last move. */
     public Move getLastMove()
@@ -115,7 +177,7 @@ public final class Board
         int n = getNumberMoves();
         if (n == 0)
             return null;
-        return m_stack.get(n - 1).m_move;
+        return m_moves[n - 1];
     }
 
     /** Get the number of moves played so far.
@@ -123,7 +185,7 @@ public final class Board
         @see #getMove */
     public int getNumberMoves()
     {
-        return m_stack.size();
+        return m_numberMoves;
     }
 
     /** Get a move from the sequence of moves played so far.
@@ -132,7 +194,8 @@ public final class Board
         @see #getNumberMoves() */
     public Move getMove(int i)
     {
-        return m_stack.get(i).m_move;
+        assert i < m_numberMoves;
+        return m_moves[i];
     }
 
     /** Get initial setup stones of a color.
@@ -161,13 +224,118 @@ public final class Board
         return m_size;
     }
 
-    /** Get stones of a block. */
+    /** Get an immutable copy of the current state of the board.
+        Only the rows of the board and chunks of the move list that were
+        changed since the previous call are copied, unchanged parts are
+        shared with the previous snapshot. Taking a snapshot after every
+        move therefore takes time proportional to the number of changed
+        points, not to the size of the board or the number of moves.
+        @return The snapshot. */
+    public BoardSnapshot getSnapshot()
+    {
+        BoardSnapshot parent = m_snapshot;
+        int numberMoves = m_numberMoves;
+        if (parent != null && m_snapshotDirtyRows == 0
+            && m_snapshotValidMoves == numberMoves
+            && parent.getNumberMoves() == numberMoves
+            && parent.getToMove() == m_toMove)
+            return parent;
+        GoColor[][] rows = new GoColor[m_size][];
+        for (int y = 0; y < m_size; ++y)
+        {
+            if (parent != null && (m_snapshotDirtyRows & (1 << y)) == 0)
+                rows[y] = parent.m_rows[y];
+            else
+            {
+                rows[y] = new GoColor[m_size];
+                System.arraycopy(m_color, GoPoint.getIndex(0, y), rows[y], 0,
+                                 m_size);
+            }
+        }
+        int chunkSize = BoardSnapshot.MOVE_CHUNK_SIZE;
+        int numberChunks = (numberMoves + chunkSize - 1) / chunkSize;
+        Move[][] moves = new Move[numberChunks][];
+        long[][] hashCodes = new long[numberChunks][];
+        for (int i = 0; i < numberChunks; ++i)
+        {
+            int start = i * chunkSize;
+            int end = Math.min(start + chunkSize, numberMoves);
+            if (parent != null && end <= m_snapshotValidMoves
+                && end <= parent.getNumberMoves())
+            {
+                moves[i] = parent.m_moves[i];
+                hashCodes[i] = parent.m_hashCodes[i];
+                continue;
+            }
+            moves[i] = new Move[chunkSize];
+            hashCodes[i] = new long[chunkSize];
+            System.arraycopy(m_moves, start, moves[i], 0, end - start);
+            System.arraycopy(m_hashCodes, start, hashCodes[i], 0,
+                             end - start);
+        }
+        PointList setupBlack;
+        PointList setupWhite;
+        if (parent != null)
+        {
+            setupBlack = parent.m_setupBlack;
+            setupWhite = parent.m_setupWhite;
+        }
+        else
+        {
+            setupBlack = new PointList(m_setup.get(BLACK));
+            setupWhite = new PointList(m_setup.get(WHITE));
+        }
+        PointList killed;
+        PointList suicide;
+        if (numberMoves > 0)
+        {
+            killed = new PointList(getKilled());
+            suicide = new PointList(getSuicide());
+        }
+        else
+        {
+            killed = new PointList();
+            suicide = new PointList();
+        }
+        m_snapshot = new BoardSnapshot(m_size, rows, moves, hashCodes,
+                                       numberMoves, setupBlack, setupWhite,
+                                       m_setupPlayer, m_isSetupHandicap,
+                                       m_initialHashCode, m_hashCode,
+                                       m_toMove, m_koPoint, m_capturedBlack,
+                                       m_capturedWhite, killed, suicide);
+        m_snapshotDirtyRows = 0;
+        m_snapshotValidMoves = numberMoves;
+        return m_snapshot;
+    }
+
+    /** Get stones of a block.
+        For stones, the block is taken from the incrementally updated block
+        information without a flood fill.
+        @param p A point.
+        @param color The color of the block; EMPTY to get a connected region
+        of empty points.
+        @param stones List to append the stones to. Nothing is appended, if
+        the point does not have the given color. */
     public void getStones(GoPoint p, GoColor color, PointList stones)
     {
-        assert m_mark.isCleared();
-        findStones(p, color, stones);
-        m_mark.clear(stones);
-        //assert m_mark.isCleared();
+        if (m_bitBoard != null)
+        {
+            m_bitBoard.getStones(p, color, stones);
+            return;
+        }
+        if (color != EMPTY)
+        {
+            if (getColor(p) != color)
+                return;
+            for (int s = m_anchor[p.getIndex()]; s >= 0; s = m_nextStone[s])
+                stones.add(GoPoint.getFromIndex(s));
+            return;
+        }
+        if (getColor(p) != color)
+            return;
+        m_getStonesList.clear();
+        findStones(p.getIndex(), m_getStonesList);
+        stones.addAllFromConst(m_getStonesList);
     }
 
     /** Player stones killed by suicide in last move.
@@ -197,8 +365,9 @@ public final class Board
         row / column) in the range from one to GoPoint.MAX_SIZE */
     public void init(int size)
     {
+        if (m_useBitBoard && (m_bitBoard == null || size != m_size))
+            m_bitBoard = new BitBoard(size);
         m_size = size;
-        m_mark = new Marker(m_size);
         m_constants = BoardConstants.get(size);
         clear();
     }
@@ -212,10 +381,11 @@ public final class Board
     {
         if (getColor(p) != EMPTY)
             return false;
-        play(c, p);
-        boolean result = (getKilled().size() > 0 || getSuicide().size() > 0);
-        undo();
-        return result;
+        GoColor otherColor = c.otherColor();
+        for (GoPoint adj : getAdjacent(p))
+            if (getColor(adj) == otherColor && ! hasOtherLiberty(adj, p))
+                return true;
+        return isSuicide(c, p);
     }
 
     /** Check if a point is a handicap point.
@@ -237,10 +407,17 @@ public final class Board
         return point == m_koPoint;
     }
 
+    /** Check if the board uses packed bitsets for finding blocks.
+        @see #Board(int, boolean) */
+    public boolean isBitBoard()
+    {
+        return m_useBitBoard;
+    }
+
     /** Check if any moves were played or setup stones placed on the board. */
     public boolean isModified()
     {
-        return (! m_stack.isEmpty()
+        return (m_numberMoves > 0
                 || m_setup.get(BLACK).size() > 0
                 || m_setup.get(WHITE).size() > 0
                 || m_toMove != BLACK);
@@ -264,10 +441,63 @@ public final class Board
     {
         if (getColor(p) != EMPTY)
             return false;
-        play(c, p);
-        boolean result = (getSuicide().size() > 0);
-        undo();
-        return result;
+        for (GoPoint adj : getAdjacent(p))
+        {
+            GoColor adjColor = getColor(adj);
+            if (adjColor == EMPTY)
+                return false;
+            // Own block with another liberty keeps the stone alive, opponent
+            // block without another liberty gets captured
+            if (hasOtherLiberty(adj, p) == (adjColor == c))
+                return false;
+        }
+        return true;
+    }
+
+    /** Check if a move would violate the positional superko rule.
+        Computes the hash code of the position after the move without
+        playing it and checks if it occurred before since the last setup.
+        Uses the hash history if enabled with setSuperkoHistory, otherwise
+        it compares with the hash codes of all moves played so far.
+        @param c The player color.
+        @param p The point (null for pass).
+        @return true, if the move would repeat a position. Pass moves and
+        moves on occupied points never violate the rule.
+        @see #setSuperkoHistory */
+    public boolean isSuperko(GoColor c, GoPoint p)
+    {
+        if (p == null || getColor(p) != EMPTY)
+            return false;
+        long hashCode = m_hashCode ^ Zobrist.getKey(c, p.getIndex());
+        GoColor otherColor = c.otherColor();
+        m_superkoStones.clear();
+        for (GoPoint adj : getAdjacent(p))
+            if (getColor(adj) == otherColor
+                && ! m_superkoStones.containsIndex(adj.getIndex())
+                && ! hasOtherLiberty(adj, p))
+                getStones(adj.getIndex(), m_superkoStones);
+        if (m_superkoStones.isEmpty() && isSuicide(c, p))
+        {
+            hashCode = m_hashCode;
+            for (GoPoint adj : getAdjacent(p))
+                if (getColor(adj) == c
+                    && ! m_superkoStones.containsIndex(adj.getIndex()))
+                    getStones(adj.getIndex(), m_superkoStones);
+        }
+        int nuStones = m_superkoStones.size();
+        for (int i = 0; i < nuStones; ++i)
+        {
+            int stone = m_superkoStones.getIndex(i);
+            hashCode ^= Zobrist.getKey(m_color[stone], stone);
+        }
+        if (m_superkoHistory != null)
+            return m_superkoHistory.containsKey(hashCode);
+        if (hashCode == m_initialHashCode)
+            return true;
+        for (int i = 0; i < m_numberMoves; ++i)
+            if (m_hashCodes[i] == hashCode)
+                return true;
+        return false;
     }
 
     public Iterator<GoPoint> iterator()
@@ -281,16 +511,25 @@ public final class Board
     {
         for (GoPoint p : this)
             setColor(p, EMPTY);
-        m_stack.clear();
+        // Points outside the current board size could contain stones from
+        // a previous board size
+        m_hashCode = 0;
+        m_numberMoves = 0;
+        m_numberRemovedStones = 0;
+        m_noIncrementalUndo = 0;
         for (GoColor c : BLACK_WHITE)
-        {
             m_setup.get(c).clear();
-            m_captured.set(c, 0);
-        }
+        m_capturedBlack = 0;
+        m_capturedWhite = 0;
         m_toMove = BLACK;
         m_koPoint = null;
         m_isSetupHandicap = false;
         m_setupPlayer = null;
+        m_numberMovesWithoutUndo = 0;
+        m_snapshot = null;
+        rebuildBlocks();
+        m_initialHashCode = m_hashCode;
+        initHashHistory();
     }
 
     /** Play a move.
@@ -312,9 +551,105 @@ public final class Board
         @param move The move (location and player) */
     public void play(Move move)
     {
-        StackEntry entry = new StackEntry(move);
-        entry.execute(this);
-        m_stack.add(entry);
+        getStackEntry(m_numberMoves).execute(this, move);
+        addMove(move);
+    }
+
+    /** Play a sequence of moves without keeping information for undoing
+        them.
+        For replaying games forward. The moves are executed as with
+        play(Move), including capture counts, ko point and hash codes, but
+        no stack entries and block information for undoing them are kept
+        and captured stones are removed in place. Only the last move is
+        played with play(Move), so that getKilled and getSuicide return the
+        stones removed by it. Undoing one of the moves later is possible
+        but slow, it replays the moves before it from the setup position.
+        @param moves The moves to play. */
+    public void playSequence(List<Move> moves)
+    {
+        int nuMoves = moves.size();
+        if (nuMoves == 0)
+            return;
+        for (int i = 0; i < nuMoves - 1; ++i)
+            playWithoutUndo(moves.get(i));
+        play(moves.get(nuMoves - 1));
+        m_numberMovesWithoutUndo = m_numberMoves;
+    }
+
+    /** Set the board to the state of a snapshot.
+        Changes the board size if needed. The moves of the snapshot can be
+        undone; since the information for undoing them is not stored in
+        the snapshot, undoing one of them replays the remaining moves from
+        the setup position.
+        @param snapshot The snapshot.
+        @see #getSnapshot */
+    public void restore(BoardSnapshot snapshot)
+    {
+        if (snapshot.getSize() != m_size)
+            init(snapshot.getSize());
+        else
+            clear();
+        m_setup.set(BLACK, new PointList(snapshot.getSetup(BLACK)));
+        m_setup.set(WHITE, new PointList(snapshot.getSetup(WHITE)));
+        m_setupPlayer = snapshot.getSetupPlayer();
+        m_isSetupHandicap = snapshot.isSetupHandicap();
+        for (GoPoint p : this)
+            setColor(p, snapshot.getColor(p));
+        assert m_hashCode == snapshot.getHashCode();
+        int numberMoves = snapshot.getNumberMoves();
+        ensureMoveCapacity(numberMoves);
+        for (int i = 0; i < numberMoves; ++i)
+        {
+            m_moves[i] = snapshot.getMove(i);
+            m_hashCodes[i] = snapshot.getHashCode(i);
+        }
+        if (numberMoves > 0)
+        {
+            // Only the stones removed by the last move are known
+            StackEntry entry = getStackEntry(numberMoves - 1);
+            entry.m_isStoneAdded = false;
+            entry.m_killed.m_start = m_numberRemovedStones;
+            for (GoPoint p : snapshot.getKilled())
+                pushRemovedStone(p.getIndex());
+            entry.m_killed.m_end = m_numberRemovedStones;
+            entry.m_suicide.m_start = m_numberRemovedStones;
+            for (GoPoint p : snapshot.getSuicide())
+                pushRemovedStone(p.getIndex());
+            entry.m_suicide.m_end = m_numberRemovedStones;
+        }
+        m_numberMoves = numberMoves;
+        m_numberMovesWithoutUndo = numberMoves;
+        m_noIncrementalUndo = numberMoves;
+        m_capturedBlack = snapshot.getCaptured(BLACK);
+        m_capturedWhite = snapshot.getCaptured(WHITE);
+        m_toMove = snapshot.getToMove();
+        m_koPoint = snapshot.getKoPoint();
+        m_initialHashCode = snapshot.getInitialHashCode();
+        rebuildBlocks();
+        initHashHistory();
+        m_snapshot = snapshot;
+        m_snapshotDirtyRows = 0;
+        m_snapshotValidMoves = numberMoves;
+    }
+
+    /** Enable or disable the hash history for superko checks.
+        If enabled, the hash codes of all positions since the last setup are
+        kept in a hash table, which makes isSuperko independent of the number
+        of moves played.
+        @param enable true to enable the hash history.
+        @see #isSuperko */
+    public void setSuperkoHistory(boolean enable)
+    {
+        if (enable)
+        {
+            if (m_superkoHistory == null)
+            {
+                m_superkoHistory = new HashMap<Long,Integer>();
+                initHashHistory();
+            }
+        }
+        else
+            m_superkoHistory = null;
     }
 
     /** Change the color to move.
@@ -349,6 +684,9 @@ public final class Board
                 m_setup.set(c, new PointList(stones));
             }
         }
+        rebuildBlocks();
+        m_initialHashCode = m_hashCode;
+        initHashHistory();
     }
 
     /** Setup initial handicap stones.
@@ -369,8 +707,20 @@ public final class Board
     {
         int index = getNumberMoves() - 1;
         assert index >= 0;
-        m_stack.get(index).undo(this);
-        m_stack.remove(index);
+        if (index < m_numberMovesWithoutUndo)
+        {
+            replay(index);
+            return;
+        }
+        if (index < m_snapshotValidMoves)
+            m_snapshotValidMoves = index;
+        boolean isIncremental = (index >= m_noIncrementalUndo);
+        if (m_superkoHistory != null)
+            removeHashHistory(m_hashCodes[index]);
+        m_stack.get(index).undo(this, m_moves[index], isIncremental);
+        m_numberMoves = index;
+        if (! isIncremental)
+            m_noIncrementalUndo = index;
     }
 
     /** Undo a number of moves.
@@ -387,99 +737,340 @@ public final class Board
 
     private static class StackEntry
     {
-        public final Move m_move;
-
         public GoPoint m_oldKoPoint;
 
         public GoColor m_oldColor;
 
         public GoColor m_oldToMove;
 
-        public PointList m_killed;
+        public final RemovedStones m_killed;
+
+        public final RemovedStones m_suicide;
 
-        public PointList m_suicide;
+        /** Block information needed for undoing the move incrementally.
+            Only used if move was played with Board.addStone. */
+        public final BlockUndo m_blockUndo = new BlockUndo();
 
-        public StackEntry(Move move)
+        /** True, if the block information was changed by addStone. */
+        public boolean m_isStoneAdded;
+
+        public StackEntry(Board board)
         {
-            m_move = move;
+            m_killed = board.new RemovedStones();
+            m_suicide = board.new RemovedStones();
         }
 
-        public void execute(Board board)
+        public void execute(Board board, Move move)
         {
-            GoPoint p = m_move.getPoint();
-            GoColor c = m_move.getColor();
+            GoPoint p = move.getPoint();
+            GoColor c = move.getColor();
             GoColor otherColor = c.otherColor();
-            m_killed = new PointList();
-            m_suicide = new PointList();
             m_oldKoPoint = board.m_koPoint;
+            m_isStoneAdded = false;
             board.m_koPoint = null;
+            m_killed.m_start = board.m_numberRemovedStones;
             if (p != null)
             {
                 m_oldColor = board.getColor(p);
-                board.setColor(p, c);
                 assert c != EMPTY;
-                for (GoPoint adj : board.getAdjacent(p))
+                if (board.m_bitBoard != null)
+                    board.setColor(p, c);
+                else if (m_oldColor == EMPTY)
+                {
+                    board.addStone(p, c, m_blockUndo);
+                    m_isStoneAdded = true;
+                }
+                else
+                {
+                    // Play on occupied point, cannot be done incrementally
+                    board.setColor(p, c);
+                    board.rebuildBlocks();
+                    board.m_noIncrementalUndo = board.getNumberMoves() + 1;
+                }
+                ConstPointList adjacent = board.getAdjacent(p);
+                int nuAdjacent = adjacent.size();
+                // Don't use an iterator for efficiency
+                for (int i = 0; i < nuAdjacent; ++i)
                 {
-                    int killedSize = m_killed.size();
+                    GoPoint adj = adjacent.get(i);
+                    int killedSize = board.m_numberRemovedStones;
                     if (board.getColor(adj) == otherColor)
-                        board.checkKill(adj, m_killed);
-                    if (m_killed.size() == killedSize + 1)
-                        board.m_koPoint = m_killed.get(killedSize);
+                        board.checkKill(adj, true);
+                    if (board.m_numberRemovedStones == killedSize + 1)
+                        board.m_koPoint = GoPoint.getFromIndex(
+                                         board.m_removedStones[killedSize]);
                 }
-                board.checkKill(p, m_suicide);
+                m_killed.m_end = board.m_numberRemovedStones;
+                m_suicide.m_start = board.m_numberRemovedStones;
+                board.checkKill(p, true);
+                m_suicide.m_end = board.m_numberRemovedStones;
                 if (board.m_koPoint != null
                     && ! board.isSingleStoneSingleLib(p, c))
                     board.m_koPoint = null;
-                board.m_captured.set(c,
-                                     board.m_captured.get(c)
-                                     + m_suicide.size());
-                board.m_captured.set(otherColor,
-                                     board.m_captured.get(otherColor)
-                                     + m_killed.size());
+                board.addCaptured(c, m_suicide.size());
+                board.addCaptured(otherColor, m_killed.size());
+            }
+            else
+            {
+                m_killed.m_end = m_killed.m_start;
+                m_suicide.m_start = m_killed.m_start;
+                m_suicide.m_end = m_killed.m_start;
             }
             m_oldToMove = board.m_toMove;
             board.m_toMove = otherColor;
         }
 
-        protected void undo(Board board)
+        protected void undo(Board board, Move move, boolean isIncremental)
         {
-            GoPoint p = m_move.getPoint();
+            GoPoint p = move.getPoint();
             if (p != null)
             {
-                GoColor c = m_move.getColor();
+                GoColor c = move.getColor();
                 GoColor otherColor = c.otherColor();
-                for (GoPoint stone : m_suicide)
-                    board.setColor(stone, c);
-                board.setColor(p, m_oldColor);
-                for (GoPoint stone : m_killed)
-                    board.setColor(stone, otherColor);
-                board.m_captured.set(c,
-                                     board.m_captured.get(c)
-                                     - m_suicide.size());
-                board.m_captured.set(otherColor,
-                                     board.m_captured.get(otherColor)
-                                     - m_killed.size());
+                if (isIncremental && m_isStoneAdded)
+                {
+                    board.restoreStones(m_suicide, c);
+                    board.restoreStones(m_killed, otherColor);
+                    board.removeStone(p, m_blockUndo);
+                }
+                else
+                {
+                    for (int i = 0; i < m_suicide.size(); ++i)
+                        board.setColor(m_suicide.get(i), c);
+                    board.setColor(p, m_oldColor);
+                    for (int i = 0; i < m_killed.size(); ++i)
+                        board.setColor(m_killed.get(i), otherColor);
+                    if (board.m_bitBoard == null)
+                        board.rebuildBlocks();
+                }
+                board.addCaptured(c, -m_suicide.size());
+                board.addCaptured(otherColor, -m_killed.size());
             }
+            board.m_numberRemovedStones = m_killed.m_start;
             board.m_toMove = m_oldToMove;
             board.m_koPoint = m_oldKoPoint;
         }
     }
 
-    private Marker m_mark;
+    /** Stones removed by a move.
+        A view on a range of Board.m_removedStones, which is shared by all
+        moves to avoid allocating a list for every move. Only valid as long
+        as the move is on the stack. */
+    private final class RemovedStones
+        implements ConstPointList
+    {
+        public int m_start;
+
+        public int m_end;
+
+        public boolean contains(Object elem)
+        {
+            for (int i = m_start; i < m_end; ++i)
+                if (GoPoint.getFromIndex(m_removedStones[i]) == elem)
+                    return true;
+            return false;
+        }
+
+        /** Compare with another list of removed stones.
+            Lists of other classes are never equal, because their equals
+            would not accept this class (e.g. PointList).
+            @return true, if the object is a RemovedStones containing the
+            same points in the same order. */
+        public boolean equals(Object object)
+        {
+            if (! (object instanceof RemovedStones))
+                return false;
+            RemovedStones list = (RemovedStones)object;
+            if (list.size() != size())
+                return false;
+            for (int i = 0; i < size(); ++i)
+                if (list.get(i) != get(i))
+                    return false;
+            return true;
+        }
+
+        public GoPoint get(int index)
+        {
+            assert index >= 0 && index < size();
+            return GoPoint.getFromIndex(m_removedStones[m_start + index]);
+        }
+
+        /** Hash code as defined by java.util.List. */
+        public int hashCode()
+        {
+            int hashCode = 1;
+            for (int i = m_start; i < m_end; ++i)
+                hashCode = 31 * hashCode + m_removedStones[i];
+            return hashCode;
+        }
+
+        public boolean isEmpty()
+        {
+            return (m_end == m_start);
+        }
+
+        public Iterator<GoPoint> iterator()
+        {
+            return new Iterator<GoPoint>() {
+                    public boolean hasNext()
+                    {
+                        return (m_index < size());
+                    }
+
+                    public GoPoint next()
+                    {
+                        return get(m_index++);
+                    }
+
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    private int m_index;
+                };
+        }
+
+        public int size()
+        {
+            return m_end - m_start;
+        }
+
+        public String toString()
+        {
+            return GoPoint.toString(this);
+        }
+    }
+
+    /** Information for undoing Board.addStone. */
+    private static class BlockUndo
+    {
+        /** Anchor of the block the stone was added to. */
+        public int m_anchor;
+
+        public int m_oldSize;
+
+        public int m_oldLastStone;
+
+        public int m_oldLiberties;
+
+        /** Anchors of the blocks merged into the block of the stone. */
+        public final int[] m_merged = new int[4];
+
+        public int m_numberMerged;
+
+        /** Block information stored at the index of the new stone.
+            The point could be an anchor or stone of a captured block, which
+            needs to be restored when undoing the capture. */
+        public int m_oldPointAnchor;
+
+        public int m_oldPointNextStone;
+
+        public int m_oldPointSize;
+
+        public int m_oldPointLastStone;
+
+        public int m_oldPointLiberties;
+    }
+
+    private final boolean m_useBitBoard;
+
+    /** Bitset representation of the position.
+        Only used if m_useBitBoard, kept in sync in setColor. */
+    private BitBoard m_bitBoard;
 
     private int m_size;
 
-    private final BlackWhiteSet<Integer> m_captured
-        = new BlackWhiteSet<Integer>(0, 0);
+    private int m_capturedBlack;
+
+    private int m_capturedWhite;
 
+    /** Information for undoing the moves played.
+        Null for moves that were never played with play(Move). Entries
+        above m_numberMoves are unused and kept for reuse.
+        @see #m_numberMovesWithoutUndo */
     private final ArrayList<StackEntry> m_stack
         = new ArrayList<StackEntry>(361);
 
+    private int m_numberMoves;
+
+    /** Moves played, indexed by move number. */
+    private Move[] m_moves = new Move[GoPoint.NUMBER_INDEXES];
+
+    /** Hash codes of the positions after the moves played. */
+    private long[] m_hashCodes = new long[GoPoint.NUMBER_INDEXES];
+
+    /** Stones removed by captures or suicide of all moves played.
+        Stored as point indexes; each stack entry refers to a range in this
+        array. */
+    private int[] m_removedStones = new int[GoPoint.NUMBER_INDEXES];
+
+    private int m_numberRemovedStones;
+
     /** Temporary variable reused for efficiency. */
-    private final PointList m_checkKillStones = new PointList();
+    private final PointIndexList m_checkKillStones = new PointIndexList();
 
     /** Temporary variable reused for efficiency. */
-    private final PointList m_checkKillStack = new PointList();
+    private final PointIndexList m_getStonesList = new PointIndexList();
+
+    /** Anchor stone of the block a stone belongs to.
+        Indexed by point index; the anchor is also the first stone in the
+        list of stones of the block. The value for empty points is
+        undefined. */
+    private final int[] m_anchor = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Next stone in the block or -1 for the last stone. */
+    private final int[] m_nextStone = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Number of stones of a block, indexed by the anchor. */
+    private final int[] m_blockSize = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Last stone in the list of stones of a block, indexed by the anchor. */
+    private final int[] m_blockLastStone = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Pseudo-liberties of a block, indexed by the anchor.
+        The number of pairs of a stone of the block and an adjacent empty
+        point. Liberties adjacent to several stones are counted several
+        times, but the value is zero if and only if the block has no
+        liberties, which is enough for detecting captures. */
+    private final int[] m_blockLiberties = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Moves with a lower number cannot be undone incrementally.
+        The block information is rebuilt for changes that are not simple
+        stone placements (setup, play on occupied points). After that, the
+        block information stored for undoing older moves is no longer
+        valid and undoing them rebuilds the block information again. */
+    private int m_noIncrementalUndo;
+
+    private long m_hashCode;
+
+    /** Hash code of the position after the last setup or clear. */
+    private long m_initialHashCode;
+
+    /** Number of occurrences of positions by hash code.
+        Null, if the hash history is not enabled.
+        @see #setSuperkoHistory */
+    private HashMap<Long,Integer> m_superkoHistory;
+
+    /** Temporary variable reused for efficiency. */
+    private final PointIndexList m_superkoStones = new PointIndexList();
+
+    /** Last snapshot returned by getSnapshot or passed to restore.
+        Null, if the board was cleared since then. */
+    private BoardSnapshot m_snapshot;
+
+    /** Bitmask of the rows changed since m_snapshot was taken. */
+    private int m_snapshotDirtyRows;
+
+    /** Number of moves that are unchanged since m_snapshot was taken. */
+    private int m_snapshotValidMoves;
+
+    /** Number of moves without information for undoing them.
+        Moves restored from a snapshot or played with playSequence.
+        Undoing them replays the moves before them.
+        @see #restore
+        @see #playSequence */
+    private int m_numberMovesWithoutUndo;
 
     private GoColor[] m_color = new GoColor[GoPoint.NUMBER_INDEXES];
 
@@ -496,14 +1087,55 @@ public final class Board
 
     private boolean m_isSetupHandicap;
 
+    /** Check if a move on an empty point is not a suicide.
+        Used by getLegalMoves. */
+    private boolean isLegalEmpty(GoColor c, int index)
+    {
+        PointIndexList adjacent = m_constants.getAdjacentIndexes(index);
+        int nuAdjacent = adjacent.size();
+        for (int i = 0; i < nuAdjacent; ++i)
+            if (m_color[adjacent.getIndex(i)] == EMPTY)
+                return true;
+        GoPoint p = GoPoint.getFromIndex(index);
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = adjacent.getIndex(i);
+            GoColor adjColor = m_color[adj];
+            boolean hasOtherLiberty;
+            if (m_bitBoard != null)
+                hasOtherLiberty =
+                    m_bitBoard.hasOtherLiberty(GoPoint.getFromIndex(adj), p);
+            else
+            {
+                // All adjacent points are stones, subtract the
+                // pseudo-liberties at the point
+                int anchor = m_anchor[adj];
+                int liberties = m_blockLiberties[anchor];
+                for (int j = 0; j < nuAdjacent; ++j)
+                    if (m_anchor[adjacent.getIndex(j)] == anchor)
+                        --liberties;
+                hasOtherLiberty = (liberties > 0);
+            }
+            // Own block with another liberty or opponent block that gets
+            // captured
+            if (hasOtherLiberty == (adjColor == c))
+                return true;
+        }
+        return false;
+    }
+
     private boolean isSingleStoneSingleLib(GoPoint point, GoColor color)
     {
         if (getColor(point) != color)
             return false;
         int lib = 0;
-        for (GoPoint adj : getAdjacent(point))
+        PointIndexList adjacent =
+            m_constants.getAdjacentIndexes(point.getIndex());
+        int nuAdjacent = adjacent.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuAdjacent; ++i)
         {
-            GoColor adjColor = getColor(adj);
+            GoColor adjColor = m_color[adjacent.getIndex(i)];
             if (adjColor == EMPTY)
             {
                 ++lib;
@@ -516,68 +1148,508 @@ public final class Board
         return true;
     }
 
-    private void checkKill(GoPoint point, PointList killed)
+    private void addCaptured(GoColor c, int n)
+    {
+        if (c == BLACK)
+            m_capturedBlack += n;
+        else
+            m_capturedWhite += n;
+    }
+
+    /** Append a move to the moves played.
+        Called after the move was executed. */
+    private void addMove(Move move)
+    {
+        ensureMoveCapacity(m_numberMoves + 1);
+        m_moves[m_numberMoves] = move;
+        m_hashCodes[m_numberMoves] = m_hashCode;
+        ++m_numberMoves;
+        if (m_superkoHistory != null)
+            addHashHistory(m_hashCode);
+    }
+
+    private void addHashHistory(long hashCode)
+    {
+        Integer count = m_superkoHistory.get(hashCode);
+        m_superkoHistory.put(hashCode, count == null ? 1 : count + 1);
+    }
+
+    /** Place a stone on an empty point and update the block information.
+        @param p The point.
+        @param c The color of the stone.
+        @param undo Information needed to undo the change in removeStone */
+    private void addStone(GoPoint p, GoColor c, BlockUndo undo)
+    {
+        assert getColor(p) == EMPTY;
+        int index = p.getIndex();
+        undo.m_oldPointAnchor = m_anchor[index];
+        undo.m_oldPointNextStone = m_nextStone[index];
+        undo.m_oldPointSize = m_blockSize[index];
+        undo.m_oldPointLastStone = m_blockLastStone[index];
+        undo.m_oldPointLiberties = m_blockLiberties[index];
+        setColor(index, c);
+        PointIndexList adjacent = m_constants.getAdjacentIndexes(index);
+        int nuAdjacent = adjacent.size();
+        int liberties = 0;
+        int anchor = index;
+        int maxSize = 0;
+        undo.m_numberMerged = 0;
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = adjacent.getIndex(i);
+            GoColor adjColor = m_color[adj];
+            if (adjColor == EMPTY)
+            {
+                ++liberties;
+                continue;
+            }
+            int adjAnchor = m_anchor[adj];
+            --m_blockLiberties[adjAnchor];
+            if (adjColor != c || isMerged(adjAnchor, undo))
+                continue;
+            undo.m_merged[undo.m_numberMerged++] = adjAnchor;
+            if (m_blockSize[adjAnchor] > maxSize)
+            {
+                maxSize = m_blockSize[adjAnchor];
+                anchor = adjAnchor;
+            }
+        }
+        undo.m_anchor = anchor;
+        m_anchor[index] = index;
+        m_nextStone[index] = -1;
+        m_blockSize[index] = 1;
+        m_blockLastStone[index] = index;
+        m_blockLiberties[index] = liberties;
+        if (anchor == index)
+            return;
+        undo.m_oldSize = m_blockSize[anchor];
+        undo.m_oldLastStone = m_blockLastStone[anchor];
+        undo.m_oldLiberties = m_blockLiberties[anchor];
+        appendBlock(anchor, index);
+        for (int i = 0; i < undo.m_numberMerged; ++i)
+            if (undo.m_merged[i] != anchor)
+                appendBlock(anchor, undo.m_merged[i]);
+    }
+
+    /** Place a stone on an empty point and update the block information
+        without keeping information for undoing the change.
+        Used by playWithoutUndo. */
+    private void addStoneWithoutUndo(int index, GoColor c)
+    {
+        setColor(index, c);
+        PointIndexList adjacent = m_constants.getAdjacentIndexes(index);
+        int nuAdjacent = adjacent.size();
+        int liberties = 0;
+        int anchor = index;
+        int maxSize = 0;
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = adjacent.getIndex(i);
+            GoColor adjColor = m_color[adj];
+            if (adjColor == EMPTY)
+            {
+                ++liberties;
+                continue;
+            }
+            int adjAnchor = m_anchor[adj];
+            --m_blockLiberties[adjAnchor];
+            if (adjColor == c && m_blockSize[adjAnchor] > maxSize)
+            {
+                maxSize = m_blockSize[adjAnchor];
+                anchor = adjAnchor;
+            }
+        }
+        m_anchor[index] = index;
+        m_nextStone[index] = -1;
+        m_blockSize[index] = 1;
+        m_blockLastStone[index] = index;
+        m_blockLiberties[index] = liberties;
+        if (anchor == index)
+            return;
+        // Append the new stone and the other blocks to the largest block
+        appendBlock(anchor, index);
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = adjacent.getIndex(i);
+            if (m_color[adj] == c && m_anchor[adj] != anchor)
+                appendBlock(anchor, m_anchor[adj]);
+        }
+    }
+
+    /** Append the stones of a block to another block. */
+    private void appendBlock(int anchor, int otherAnchor)
+    {
+        for (int s = otherAnchor; s >= 0; s = m_nextStone[s])
+            m_anchor[s] = anchor;
+        m_nextStone[m_blockLastStone[anchor]] = otherAnchor;
+        m_blockLastStone[anchor] = m_blockLastStone[otherAnchor];
+        m_blockSize[anchor] += m_blockSize[otherAnchor];
+        m_blockLiberties[anchor] += m_blockLiberties[otherAnchor];
+    }
+
+    /** Remove block if it has no liberties.
+        @param point A stone of the block.
+        @param isUndoable Push the removed stones on m_removedStones.
+        @return The number of removed stones. */
+    private int checkKill(GoPoint point, boolean isUndoable)
     {
-        assert m_mark.isCleared();
         GoColor color = getColor(point);
         assert color != EMPTY;
-        m_checkKillStack.clear();
-        m_checkKillStack.add(point);
-        m_mark.set(point);
+        if (m_bitBoard != null)
+        {
+            m_checkKillStones.clear();
+            if (m_bitBoard.getDeadBlock(point, color, m_checkKillStones))
+            {
+                int nuKillStones = m_checkKillStones.size();
+                for (int i = 0; i < nuKillStones; ++i)
+                {
+                    int stone = m_checkKillStones.getIndex(i);
+                    setColor(stone, EMPTY);
+                    if (isUndoable)
+                        pushRemovedStone(stone);
+                }
+                return nuKillStones;
+            }
+            return 0;
+        }
+        int anchor = m_anchor[point.getIndex()];
+        if (m_blockLiberties[anchor] > 0)
+            return 0;
+        // The block information of the removed stones is left unchanged,
+        // so that it is still valid when the stones are restored on undo
+        for (int s = anchor; s >= 0; s = m_nextStone[s])
+        {
+            setColor(s, EMPTY);
+            if (isUndoable)
+                pushRemovedStone(s);
+            PointIndexList adjacent = m_constants.getAdjacentIndexes(s);
+            int nuAdjacent = adjacent.size();
+            for (int i = 0; i < nuAdjacent; ++i)
+            {
+                int adj = adjacent.getIndex(i);
+                if (m_color[adj] == EMPTY)
+                    continue;
+                int adjAnchor = m_anchor[adj];
+                if (adjAnchor != anchor)
+                    ++m_blockLiberties[adjAnchor];
+            }
+        }
+        return m_blockSize[anchor];
+    }
+
+    /** Make sure that m_moves and m_hashCodes can hold a number of moves. */
+    private void ensureMoveCapacity(int numberMoves)
+    {
+        if (numberMoves <= m_moves.length)
+            return;
+        int length = Math.max(numberMoves, 2 * m_moves.length);
+        Move[] moves = new Move[length];
+        System.arraycopy(m_moves, 0, moves, 0, m_numberMoves);
+        m_moves = moves;
+        long[] hashCodes = new long[length];
+        System.arraycopy(m_hashCodes, 0, hashCodes, 0, m_numberMoves);
+        m_hashCodes = hashCodes;
+    }
+
+    /** Find a block or region of empty points with a flood fill.
+        @param index The point index of a point of the block.
+        @param stones The list to add the points to. Points already in
+        the list are treated as visited. */
+    private void findStones(int index, PointIndexList stones)
+    {
+        GoColor color = m_color[index];
+        int start = stones.size();
+        if (! stones.addIndex(index))
+            return;
+        // Use the list as stack of points whose neighbors were not visited
+        for (int i = start; i < stones.size(); ++i)
+        {
+            PointIndexList adjacent =
+                m_constants.getAdjacentIndexes(stones.getIndex(i));
+            int nuAdjacent = adjacent.size();
+            for (int j = 0; j < nuAdjacent; ++j)
+            {
+                int adj = adjacent.getIndex(j);
+                if (m_color[adj] == color)
+                    stones.addIndex(adj);
+            }
+        }
+    }
+
+    /** Get the stack entry for a move number.
+        Stack entries are reused to avoid memory allocation, they are only
+        created for moves played with play(Move). */
+    private StackEntry getStackEntry(int index)
+    {
+        while (m_stack.size() <= index)
+            m_stack.add(null);
+        StackEntry entry = m_stack.get(index);
+        if (entry == null)
+        {
+            entry = new StackEntry(this);
+            m_stack.set(index, entry);
+        }
+        return entry;
+    }
+
+    /** Add the stones of a block to a list.
+        @param index The point index of a stone of the block.
+        @param stones The list. */
+    private void getStones(int index, PointIndexList stones)
+    {
+        if (m_bitBoard != null)
+        {
+            GoPoint p = GoPoint.getFromIndex(index);
+            m_bitBoard.getStones(p, getColor(p), stones);
+            return;
+        }
+        for (int s = m_anchor[index]; s >= 0; s = m_nextStone[s])
+            stones.addIndex(s);
+    }
+
+    /** Check if the block of a stone has a liberty other than a given
+        point. */
+    private boolean hasOtherLiberty(GoPoint stone, GoPoint p)
+    {
+        if (m_bitBoard != null)
+            return m_bitBoard.hasOtherLiberty(stone, p);
+        // Subtract the pseudo-liberties at p
+        int anchor = m_anchor[stone.getIndex()];
+        int liberties = m_blockLiberties[anchor];
+        if (getColor(p) == EMPTY)
+        {
+            PointIndexList adjacent =
+                m_constants.getAdjacentIndexes(p.getIndex());
+            for (int i = 0; i < adjacent.size(); ++i)
+            {
+                int adj = adjacent.getIndex(i);
+                if (m_color[adj] != EMPTY && m_anchor[adj] == anchor)
+                    --liberties;
+            }
+        }
+        return (liberties > 0);
+    }
+
+    /** Initialize the hash history with the positions since the last setup
+        or clear. */
+    private void initHashHistory()
+    {
+        if (m_superkoHistory == null)
+            return;
+        m_superkoHistory.clear();
+        addHashHistory(m_initialHashCode);
+        for (int i = 0; i < m_numberMoves; ++i)
+            addHashHistory(m_hashCodes[i]);
+    }
+
+    /** Replay the first moves from the setup position.
+        Used for undoing moves without undo information. */
+    private void replay(int numberMoves)
+    {
+        ArrayList<Move> moves = new ArrayList<Move>(numberMoves);
+        for (int i = 0; i < numberMoves; ++i)
+            moves.add(m_moves[i]);
+        PointList black = m_setup.get(BLACK);
+        PointList white = m_setup.get(WHITE);
+        GoColor setupPlayer = m_setupPlayer;
+        if (black.isEmpty() && white.isEmpty() && setupPlayer == null)
+            clear();
+        else if (m_isSetupHandicap)
+            setupHandicap(new PointList(black));
+        else
+            setup(new PointList(black), new PointList(white), setupPlayer);
+        playSequence(moves);
+    }
+
+    private static boolean isMerged(int anchor, BlockUndo undo)
+    {
+        for (int i = 0; i < undo.m_numberMerged; ++i)
+            if (undo.m_merged[i] == anchor)
+                return true;
+        return false;
+    }
+
+    /** Compute the block information from scratch.
+        Needed after changes to the board that are not simple stone
+        placements. */
+    private void rebuildBlocks()
+    {
+        if (m_bitBoard != null)
+            return;
+        m_checkKillStones.clear();
+        for (GoPoint p : this)
+        {
+            int anchor = p.getIndex();
+            if (m_color[anchor] == EMPTY
+                || m_checkKillStones.containsIndex(anchor))
+                continue;
+            int start = m_checkKillStones.size();
+            findStones(anchor, m_checkKillStones);
+            int liberties = 0;
+            int last = -1;
+            for (int i = start; i < m_checkKillStones.size(); ++i)
+            {
+                int index = m_checkKillStones.getIndex(i);
+                m_anchor[index] = anchor;
+                m_nextStone[index] = -1;
+                if (last >= 0)
+                    m_nextStone[last] = index;
+                last = index;
+                PointIndexList adjacent =
+                    m_constants.getAdjacentIndexes(index);
+                for (int j = 0; j < adjacent.size(); ++j)
+                    if (m_color[adjacent.getIndex(j)] == EMPTY)
+                        ++liberties;
+            }
+            m_blockSize[anchor] = m_checkKillStones.size() - start;
+            m_blockLastStone[anchor] = last;
+            m_blockLiberties[anchor] = liberties;
+        }
         m_checkKillStones.clear();
-        boolean isDead = true;
-        // Recursion is unrolled using a stack for efficiency
-        while (isDead && ! m_checkKillStack.isEmpty())
+    }
+
+    /** Undo addStone.
+        Stones killed by the move have to be restored before. */
+    private void removeStone(GoPoint p, BlockUndo undo)
+    {
+        int index = p.getIndex();
+        int anchor = undo.m_anchor;
+        if (anchor != index)
+        {
+            for (int i = 0; i < undo.m_numberMerged; ++i)
+            {
+                int merged = undo.m_merged[i];
+                if (merged == anchor)
+                    continue;
+                int last = m_blockLastStone[merged];
+                for (int s = merged; s != last; s = m_nextStone[s])
+                    m_anchor[s] = merged;
+                m_anchor[last] = merged;
+                m_nextStone[last] = -1;
+            }
+            m_nextStone[undo.m_oldLastStone] = -1;
+            m_blockSize[anchor] = undo.m_oldSize;
+            m_blockLastStone[anchor] = undo.m_oldLastStone;
+            m_blockLiberties[anchor] = undo.m_oldLiberties;
+        }
+        m_anchor[index] = undo.m_oldPointAnchor;
+        m_nextStone[index] = undo.m_oldPointNextStone;
+        m_blockSize[index] = undo.m_oldPointSize;
+        m_blockLastStone[index] = undo.m_oldPointLastStone;
+        m_blockLiberties[index] = undo.m_oldPointLiberties;
+        setColor(index, EMPTY);
+        PointIndexList adjacent = m_constants.getAdjacentIndexes(index);
+        int nuAdjacent = adjacent.size();
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            int adj = adjacent.getIndex(i);
+            if (m_color[adj] != EMPTY)
+                ++m_blockLiberties[m_anchor[adj]];
+        }
+    }
+
+    /** Play a move without keeping information for undoing it.
+        Does the same as StackEntry.execute, but does not use a stack
+        entry and does not keep the removed stones.
+        @see #playSequence */
+    private void playWithoutUndo(Move move)
+    {
+        GoPoint p = move.getPoint();
+        GoColor c = move.getColor();
+        GoColor otherColor = c.otherColor();
+        m_koPoint = null;
+        if (p != null)
         {
-            GoPoint p = m_checkKillStack.pop();
-            assert getColor(p) == color;
-            m_checkKillStones.add(p);
+            assert c != EMPTY;
+            int index = p.getIndex();
+            if (m_bitBoard == null && m_color[index] == EMPTY)
+                addStoneWithoutUndo(index, c);
+            else
+            {
+                setColor(index, c);
+                rebuildBlocks();
+            }
             ConstPointList adjacent = getAdjacent(p);
             int nuAdjacent = adjacent.size();
+            int killed = 0;
             // Don't use an iterator for efficiency
             for (int i = 0; i < nuAdjacent; ++i)
             {
                 GoPoint adj = adjacent.get(i);
-                GoColor c = getColor(adj);
-                if (c == EMPTY)
-                {
-                    isDead = false;
-                    break;
-                }
-                if (m_mark.get(adj) || ! c.equals(color))
+                if (getColor(adj) != otherColor)
                     continue;
-                m_checkKillStack.add(adj);
-                m_mark.set(adj);
+                int n = checkKill(adj, false);
+                if (n == 1)
+                    m_koPoint = adj;
+                killed += n;
             }
+            int suicide = checkKill(p, false);
+            if (m_koPoint != null && ! isSingleStoneSingleLib(p, c))
+                m_koPoint = null;
+            addCaptured(c, suicide);
+            addCaptured(otherColor, killed);
         }
-        if (isDead)
+        m_toMove = otherColor;
+        addMove(move);
+    }
+
+    private void pushRemovedStone(int index)
+    {
+        if (m_numberRemovedStones == m_removedStones.length)
         {
-            killed.addAll(m_checkKillStones);
-            int nuKillStones = m_checkKillStones.size();
-            // Don't use an iterator for efficiency
-            for (int i = 0; i < nuKillStones; ++i)
-                setColor(m_checkKillStones.get(i), EMPTY);
+            int[] removedStones = new int[2 * m_removedStones.length];
+            System.arraycopy(m_removedStones, 0, removedStones, 0,
+                             m_numberRemovedStones);
+            m_removedStones = removedStones;
         }
-        m_mark.clear(m_checkKillStack);
-        m_mark.clear(m_checkKillStones);
-        //assert m_mark.isCleared();
+        m_removedStones[m_numberRemovedStones++] = index;
     }
 
-    private void findStones(GoPoint p, GoColor color, PointList stones)
+    private void removeHashHistory(long hashCode)
     {
-        if (getColor(p) != color)
-            return;
-        if (m_mark.get(p))
-            return;
-        m_mark.set(p);
-        stones.add(p);
-        for (GoPoint adj : getAdjacent(p))
-            findStones(adj, color, stones);
+        int count = m_superkoHistory.get(hashCode);
+        if (count == 1)
+            m_superkoHistory.remove(hashCode);
+        else
+            m_superkoHistory.put(hashCode, count - 1);
+    }
+
+    /** Restore stones removed by checkKill. */
+    private void restoreStones(RemovedStones stones, GoColor c)
+    {
+        for (int i = stones.m_start; i < stones.m_end; ++i)
+        {
+            int stone = m_removedStones[i];
+            setColor(stone, c);
+            int anchor = m_anchor[stone];
+            PointIndexList adjacent = m_constants.getAdjacentIndexes(stone);
+            int nuAdjacent = adjacent.size();
+            for (int j = 0; j < nuAdjacent; ++j)
+            {
+                int adj = adjacent.getIndex(j);
+                if (m_color[adj] == EMPTY)
+                    continue;
+                int adjAnchor = m_anchor[adj];
+                if (adjAnchor != anchor)
+                    --m_blockLiberties[adjAnchor];
+            }
+        }
     }
 
     private void setColor(GoPoint p, GoColor c)
     {
         assert p != null;
-        m_color[p.getIndex()] = c;
+        setColor(p.getIndex(), c);
+    }
+
+    private void setColor(int index, GoColor c)
+    {
+        m_hashCode ^= Zobrist.getKey(m_color[index], index)
+            ^ Zobrist.getKey(c, index);
+        m_color[index] = c;
+        m_snapshotDirtyRows |= 1 << (index / GoPoint.MAX_SIZE);
+        if (m_bitBoard != null)
+            m_bitBoard.set(GoPoint.getFromIndex(index), c);
     }
 }
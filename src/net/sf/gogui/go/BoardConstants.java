@@ -28,6 +28,16 @@ public final class BoardConstants
         return m_adjacent[p.getIndex()];
     }
 
+    /** Get points adjacent to a point as list of point indexes.
+        For use in loops over point indexes within this package; the
+        returned list must not be modified.
+        @param index The point index.
+        @return List of the adjacent points. */
+    PointIndexList getAdjacentIndexes(int index)
+    {
+        return m_adjacent[index];
+    }
+
     /** Get location of handicap stones.
         The handicap stone locations are defined as in the GTP version 2
         specification (section 4.1.1 Fixed Handicap Placement).
@@ -80,6 +90,19 @@ public final class BoardConstants
         return m_allPoints;
     }
 
+    /** Get the point index of a rotated point.
+        Uses a table precomputed for all rotation modes and points, for use
+        in loops over many points.
+        @param rotationMode The rotation mode in
+        [0..BoardUtil.NUMBER_ROTATIONS]
+        @param index The point index of a point on the board.
+        @return The point index of the rotated point.
+        @see BoardUtil#rotate */
+    public int getRotatedIndex(int rotationMode, int index)
+    {
+        return m_rotation[rotationMode][index];
+    }
+
     /** Get board size. */
     public int getSize()
     {
@@ -132,7 +155,12 @@ public final class BoardConstants
 
     private final PointList m_allPoints;
 
-    private final ConstPointList[] m_adjacent;
+    private final PointIndexList[] m_adjacent;
+
+    /** Point indexes of rotated points indexed by rotation mode and point
+        index.
+        @see #getRotatedIndex */
+    private final int[][] m_rotation;
 
     private BoardConstants(int size)
     {
@@ -157,13 +185,13 @@ public final class BoardConstants
         else
             m_handicapLine2 = -1;
         m_allPoints = new PointList();
-        m_adjacent = new ConstPointList[GoPoint.NUMBER_INDEXES];
+        m_adjacent = new PointIndexList[GoPoint.NUMBER_INDEXES];
         for (int x = 0; x < m_size; ++x)
             for (int y = 0; y < m_size; ++y)
             {
                 GoPoint p = GoPoint.get(x, y);
                 m_allPoints.add(p);
-                PointList adjacent = new PointList();
+                PointIndexList adjacent = new PointIndexList(4);
                 if (x > 0)
                     adjacent.add(GoPoint.get(x - 1, y));
                 if (x < m_size - 1)
@@ -174,5 +202,37 @@ public final class BoardConstants
                     adjacent.add(GoPoint.get(x, y + 1));
                 m_adjacent[p.getIndex()] = adjacent;
             }
+        m_rotation = new int[BoardUtil.NUMBER_ROTATIONS][];
+        for (int mode = 0; mode < BoardUtil.NUMBER_ROTATIONS; ++mode)
+        {
+            m_rotation[mode] = new int[GoPoint.NUMBER_INDEXES];
+            for (GoPoint p : m_allPoints)
+                m_rotation[mode][p.getIndex()] =
+                    getRotatedIndex(mode, p.getX(), p.getY(), size);
+        }
+    }
+
+    private static int getRotatedIndex(int rotationMode, int x, int y,
+                                       int size)
+    {
+        switch (rotationMode)
+        {
+        case 1:
+            return GoPoint.getIndex(size - x - 1, y);
+        case 2:
+            return GoPoint.getIndex(x, size - y - 1);
+        case 3:
+            return GoPoint.getIndex(y, x);
+        case 4:
+            return GoPoint.getIndex(size - y - 1, x);
+        case 5:
+            return GoPoint.getIndex(y, size - x - 1);
+        case 6:
+            return GoPoint.getIndex(size - x - 1, size - y - 1);
+        case 7:
+            return GoPoint.getIndex(size - y - 1, size - x - 1);
+        default:
+            return GoPoint.getIndex(x, y);
+        }
     }
 }
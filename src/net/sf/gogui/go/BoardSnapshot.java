@@ -0,0 +1,446 @@
+// BoardSnapshot.java
+
+package net.sf.gogui.go;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+
+/** Immutable copy of the state of a Board.
+    Created with Board.getSnapshot(). Snapshots taken from the same board
+    share the unchanged parts of the position with the previous snapshot:
+    the points are stored in rows and the moves in chunks of fixed size,
+    and only rows and chunks that were changed since the previous snapshot
+    are copied. A snapshot can be used as a ConstBoard and as the starting
+    point for a new Board (see Board.restore). Since a snapshot is never
+    modified, it can be shared between threads. The block information used
+    by the functions that check liberties is computed on the first call
+    and is immutable, too.
+    @see Board#getSnapshot
+    @see Board#restore */
+public final class BoardSnapshot
+    implements ConstBoard
+{
+    /** Number of moves stored in one chunk of the move list. */
+    static final int MOVE_CHUNK_SIZE = 64;
+
+    public boolean bothPassed()
+    {
+        int n = m_numberMoves;
+        return (n >= 2
+                && getMove(n - 1).getPoint() == null
+                && getMove(n - 2).getPoint() == null);
+    }
+
+    public boolean contains(GoPoint point)
+    {
+        return point.isOnBoard(m_size);
+    }
+
+    public ConstPointList getAdjacent(GoPoint point)
+    {
+        return m_constants.getAdjacent(point);
+    }
+
+    public int getCaptured(GoColor c)
+    {
+        if (c == BLACK)
+            return m_capturedBlack;
+        assert c == WHITE;
+        return m_capturedWhite;
+    }
+
+    public GoColor getColor(GoPoint p)
+    {
+        return m_rows[p.getY()][p.getX()];
+    }
+
+    public long getHashCode()
+    {
+        return m_hashCode;
+    }
+
+    /** Opponent stones captured in last move.
+        @return List of stones; empty if there is no last move. */
+    public ConstPointList getKilled()
+    {
+        return m_killed;
+    }
+
+    public Move getLastMove()
+    {
+        if (m_numberMoves == 0)
+            return null;
+        return getMove(m_numberMoves - 1);
+    }
+
+    public void getLegalMoves(GoColor c, PointIndexList moves)
+    {
+        ConstPointList points = m_constants.getPoints();
+        int nuPoints = points.size();
+        for (int i = 0; i < nuPoints; ++i)
+        {
+            GoPoint p = points.get(i);
+            if (getColor(p) == EMPTY && ! (c == m_toMove && isKo(p))
+                && ! isSuicide(c, p))
+                moves.add(p);
+        }
+    }
+
+    public Move getMove(int i)
+    {
+        assert i >= 0 && i < m_numberMoves;
+        return m_moves[i / MOVE_CHUNK_SIZE][i % MOVE_CHUNK_SIZE];
+    }
+
+    public int getNumberMoves()
+    {
+        return m_numberMoves;
+    }
+
+    public ConstPointList getSetup(GoColor c)
+    {
+        if (c == BLACK)
+            return m_setupBlack;
+        assert c == WHITE;
+        return m_setupWhite;
+    }
+
+    public GoColor getSetupPlayer()
+    {
+        return m_setupPlayer;
+    }
+
+    public int getSize()
+    {
+        return m_size;
+    }
+
+    public void getStones(GoPoint p, GoColor color, PointList stones)
+    {
+        if (getColor(p) != color)
+            return;
+        if (color == EMPTY)
+        {
+            getEmptyRegion(p, stones);
+            return;
+        }
+        Blocks blocks = getBlocks();
+        int anchor = blocks.m_anchor[p.getIndex()];
+        for (int s = anchor; s >= 0; s = blocks.m_nextStone[s])
+            stones.add(GoPoint.getFromIndex(s));
+    }
+
+    /** Player stones killed by suicide in last move.
+        @return List of stones; empty if there is no last move. */
+    public ConstPointList getSuicide()
+    {
+        return m_suicide;
+    }
+
+    public GoColor getToMove()
+    {
+        return m_toMove;
+    }
+
+    public boolean isCaptureOrSuicide(GoColor c, GoPoint p)
+    {
+        if (getColor(p) != EMPTY)
+            return false;
+        GoColor otherColor = c.otherColor();
+        for (GoPoint adj : getAdjacent(p))
+            if (getColor(adj) == otherColor && ! hasOtherLiberty(adj, p))
+                return true;
+        return isSuicide(c, p);
+    }
+
+    public boolean isHandicap(GoPoint point)
+    {
+        return m_constants.isHandicap(point);
+    }
+
+    public boolean isKo(GoPoint point)
+    {
+        return point == m_koPoint;
+    }
+
+    public boolean isModified()
+    {
+        return (m_numberMoves > 0 || m_setupBlack.size() > 0
+                || m_setupWhite.size() > 0 || m_toMove != BLACK);
+    }
+
+    public boolean isSetupHandicap()
+    {
+        return m_isSetupHandicap;
+    }
+
+    public boolean isSuicide(GoColor c, GoPoint p)
+    {
+        if (getColor(p) != EMPTY)
+            return false;
+        ConstPointList adjacent = getAdjacent(p);
+        int nuAdjacent = adjacent.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            GoPoint adj = adjacent.get(i);
+            GoColor adjColor = getColor(adj);
+            if (adjColor == EMPTY)
+                return false;
+            if (hasOtherLiberty(adj, p) == (adjColor == c))
+                return false;
+        }
+        return true;
+    }
+
+    /** Check if a move would violate the positional superko rule.
+        Compares with the hash codes of all positions since the last setup.
+        @see Board#isSuperko */
+    public boolean isSuperko(GoColor c, GoPoint p)
+    {
+        if (p == null || getColor(p) != EMPTY)
+            return false;
+        long hashCode = m_hashCode ^ Zobrist.getKey(c, p.getIndex());
+        GoColor otherColor = c.otherColor();
+        PointList stones = new PointList();
+        for (GoPoint adj : getAdjacent(p))
+            if (getColor(adj) == otherColor && ! stones.contains(adj)
+                && ! hasOtherLiberty(adj, p))
+                getStones(adj, otherColor, stones);
+        if (stones.isEmpty() && isSuicide(c, p))
+        {
+            hashCode = m_hashCode;
+            for (GoPoint adj : getAdjacent(p))
+                if (getColor(adj) == c && ! stones.contains(adj))
+                    getStones(adj, c, stones);
+        }
+        for (GoPoint stone : stones)
+            hashCode ^= Zobrist.getKey(getColor(stone), stone.getIndex());
+        if (hashCode == m_initialHashCode)
+            return true;
+        for (int i = 0; i < m_numberMoves; ++i)
+            if (m_hashCodes[i / MOVE_CHUNK_SIZE][i % MOVE_CHUNK_SIZE]
+                == hashCode)
+                return true;
+        return false;
+    }
+
+    public Iterator<GoPoint> iterator()
+    {
+        return m_constants.getPoints().iterator();
+    }
+
+    /** Constructor used by Board.getSnapshot.
+        Takes ownership of all arrays and lists; they must not be modified
+        afterwards. */
+    BoardSnapshot(int size, GoColor[][] rows, Move[][] moves,
+                  long[][] hashCodes, int numberMoves,
+                  PointList setupBlack, PointList setupWhite,
+                  GoColor setupPlayer, boolean isSetupHandicap,
+                  long initialHashCode, long hashCode, GoColor toMove,
+                  GoPoint koPoint, int capturedBlack, int capturedWhite,
+                  PointList killed, PointList suicide)
+    {
+        m_size = size;
+        m_constants = BoardConstants.get(size);
+        m_rows = rows;
+        m_moves = moves;
+        m_hashCodes = hashCodes;
+        m_numberMoves = numberMoves;
+        m_setupBlack = setupBlack;
+        m_setupWhite = setupWhite;
+        m_setupPlayer = setupPlayer;
+        m_isSetupHandicap = isSetupHandicap;
+        m_initialHashCode = initialHashCode;
+        m_hashCode = hashCode;
+        m_toMove = toMove;
+        m_koPoint = koPoint;
+        m_capturedBlack = capturedBlack;
+        m_capturedWhite = capturedWhite;
+        m_killed = killed;
+        m_suicide = suicide;
+    }
+
+    /** Get the hash code of the position after a move.
+        @param i The number of the move. */
+    long getHashCode(int i)
+    {
+        return m_hashCodes[i / MOVE_CHUNK_SIZE][i % MOVE_CHUNK_SIZE];
+    }
+
+    long getInitialHashCode()
+    {
+        return m_initialHashCode;
+    }
+
+    GoPoint getKoPoint()
+    {
+        return m_koPoint;
+    }
+
+    /** Rows of the position indexed by y and x.
+        Shared with the following snapshot of the same board if the row
+        is unchanged. */
+    final GoColor[][] m_rows;
+
+    /** Moves in chunks of MOVE_CHUNK_SIZE.
+        A chunk is shared with the following snapshot if the moves in it are
+        unchanged. Entries beyond m_numberMoves are not used. */
+    final Move[][] m_moves;
+
+    /** Hash codes of the positions after the moves.
+        Stored in chunks like m_moves. */
+    final long[][] m_hashCodes;
+
+    /** Setup stones.
+        Shared with the following snapshot of the same board if the board
+        was not cleared or set up again. */
+    final PointList m_setupBlack;
+
+    final PointList m_setupWhite;
+
+    private final int m_size;
+
+    private final int m_numberMoves;
+
+    private final int m_capturedBlack;
+
+    private final int m_capturedWhite;
+
+    private final boolean m_isSetupHandicap;
+
+    private final long m_initialHashCode;
+
+    private final long m_hashCode;
+
+    private final BoardConstants m_constants;
+
+    private final GoColor m_setupPlayer;
+
+    private final GoColor m_toMove;
+
+    private final GoPoint m_koPoint;
+
+    private final PointList m_killed;
+
+    private final PointList m_suicide;
+
+    /** Block information.
+        Null, if not yet computed. Computed on demand, because most
+        snapshots are never asked for blocks or liberties. Since the block
+        information is immutable, several threads computing it at the same
+        time is harmless. */
+    private volatile Blocks m_blocks;
+
+    /** Blocks of the position.
+        Uses the same representation as the block information of Board. */
+    private static final class Blocks
+    {
+        /** Anchor stone of the block of a stone, indexed by point index.
+            -1 for empty points. */
+        public final int[] m_anchor = new int[GoPoint.NUMBER_INDEXES];
+
+        /** Next stone in the block or -1 for the last stone. */
+        public final int[] m_nextStone = new int[GoPoint.NUMBER_INDEXES];
+
+        /** Pseudo-liberties of a block, indexed by the anchor.
+            The number of pairs of a stone of the block and an adjacent
+            empty point. */
+        public final int[] m_liberties = new int[GoPoint.NUMBER_INDEXES];
+
+        public Blocks(BoardSnapshot snapshot)
+        {
+            BoardConstants constants = snapshot.m_constants;
+            Arrays.fill(m_anchor, -1);
+            int[] stack = new int[GoPoint.NUMBER_INDEXES];
+            for (GoPoint p : snapshot)
+            {
+                int anchor = p.getIndex();
+                GoColor c = snapshot.getColor(p);
+                if (c == EMPTY || m_anchor[anchor] >= 0)
+                    continue;
+                m_anchor[anchor] = anchor;
+                int last = -1;
+                int nuStack = 0;
+                stack[nuStack++] = anchor;
+                while (nuStack > 0)
+                {
+                    int stone = stack[--nuStack];
+                    m_nextStone[stone] = -1;
+                    if (last >= 0)
+                        m_nextStone[last] = stone;
+                    last = stone;
+                    PointIndexList adjacent =
+                        constants.getAdjacentIndexes(stone);
+                    int nuAdjacent = adjacent.size();
+                    for (int i = 0; i < nuAdjacent; ++i)
+                    {
+                        int adj = adjacent.getIndex(i);
+                        GoColor adjColor =
+                            snapshot.getColor(GoPoint.getFromIndex(adj));
+                        if (adjColor == EMPTY)
+                            ++m_liberties[anchor];
+                        else if (adjColor == c && m_anchor[adj] < 0)
+                        {
+                            m_anchor[adj] = anchor;
+                            stack[nuStack++] = adj;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Blocks getBlocks()
+    {
+        Blocks blocks = m_blocks;
+        if (blocks == null)
+        {
+            blocks = new Blocks(this);
+            m_blocks = blocks;
+        }
+        return blocks;
+    }
+
+    /** Add a region of empty points to a list with a flood fill. */
+    private void getEmptyRegion(GoPoint p, PointList points)
+    {
+        PointList stack = new PointList();
+        Marker mark = new Marker(m_size);
+        stack.add(p);
+        mark.set(p);
+        while (! stack.isEmpty())
+        {
+            GoPoint point = stack.pop();
+            points.add(point);
+            for (GoPoint adj : getAdjacent(point))
+                if (! mark.get(adj) && getColor(adj) == EMPTY)
+                {
+                    mark.set(adj);
+                    stack.add(adj);
+                }
+        }
+    }
+
+    /** Check if the block of a stone has a liberty other than a point. */
+    private boolean hasOtherLiberty(GoPoint stone, GoPoint p)
+    {
+        // Subtract the pseudo-liberties at p
+        Blocks blocks = getBlocks();
+        int anchor = blocks.m_anchor[stone.getIndex()];
+        int liberties = blocks.m_liberties[anchor];
+        if (getColor(p) == EMPTY)
+        {
+            PointIndexList adjacent =
+                m_constants.getAdjacentIndexes(p.getIndex());
+            int nuAdjacent = adjacent.size();
+            for (int i = 0; i < nuAdjacent; ++i)
+                if (blocks.m_anchor[adjacent.getIndex(i)] == anchor)
+                    --liberties;
+        }
+        return (liberties > 0);
+    }
+}
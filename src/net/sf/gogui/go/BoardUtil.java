@@ -2,8 +2,11 @@
 
 package net.sf.gogui.go;
 
+import java.util.ArrayList;
+import java.util.List;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
 
 /** Static utility functions related to class Board. */
 public final class BoardUtil
@@ -13,11 +16,22 @@ public final class BoardUtil
     public static final int NUMBER_ROTATIONS = 8;
 
     /** Copy the state of one board to another.
-        Initializes the target board with the size and the setup stones of the
-        source board and executes all moves of the source board on the target
-        board. */
+        If the source is a Board or BoardSnapshot, the target is restored
+        from a snapshot of the source. Otherwise, initializes the target
+        board with the size and the setup stones of the source board and
+        executes all moves of the source board on the target board. */
     public static void copy(Board target, ConstBoard source)
     {
+        if (source instanceof BoardSnapshot)
+        {
+            target.restore((BoardSnapshot)source);
+            return;
+        }
+        if (source instanceof Board)
+        {
+            target.restore(((Board)source).getSnapshot());
+            return;
+        }
         target.init(source.getSize());
         ConstPointList setupBlack = source.getSetup(BLACK);
         ConstPointList setupWhite = source.getSetup(WHITE);
@@ -148,29 +162,120 @@ public final class BoardUtil
         assert rotationMode < NUMBER_ROTATIONS;
         if (point == null)
             return null;
-        int x = point.getX();
-        int y = point.getY();
-        switch (rotationMode)
+        int index = BoardConstants.get(size).getRotatedIndex(rotationMode,
+                                                             point.getIndex());
+        return GoPoint.getFromIndex(index);
+    }
+
+    /** Rotate and/or mirror a sequence of moves.
+        @param rotationMode The rotation mode in [0..NUMBER_ROTATIONS]
+        @param moves The moves
+        @param size The board size
+        @return The rotated moves
+        @see #rotate(int, GoPoint, int) */
+    public static ArrayList<Move> rotate(int rotationMode, List<Move> moves,
+                                         int size)
+    {
+        ArrayList<Move> result = new ArrayList<Move>(moves.size());
+        for (Move move : moves)
+            result.add(Move.get(move.getColor(),
+                                rotate(rotationMode, move.getPoint(), size)));
+        return result;
+    }
+
+    /** Get the rotation mode of the canonical orientation of a position.
+        The canonical orientation is the rotation with the smallest Zobrist
+        hash code of the rotated position, so that positions that are
+        rotated or mirrored versions of each other have the same canonical
+        form. If several rotations give the same position, the smallest
+        rotation mode is returned.
+        @param board The board.
+        @return The rotation mode for BoardUtil.rotate.
+        @see #getCanonicalHashCode(ConstBoard) */
+    public static int getCanonicalRotation(ConstBoard board)
+    {
+        long[] hashCodes = getRotatedHashCodes(board);
+        int result = 0;
+        for (int mode = 1; mode < NUMBER_ROTATIONS; ++mode)
+            if (hashCodes[mode] < hashCodes[result])
+                result = mode;
+        return result;
+    }
+
+    /** Get the Zobrist hash code of the canonical orientation of a
+        position.
+        Equal for all rotated and mirrored versions of a position.
+        @param board The board.
+        @return The hash code.
+        @see #getCanonicalRotation(ConstBoard) */
+    public static long getCanonicalHashCode(ConstBoard board)
+    {
+        long[] hashCodes = getRotatedHashCodes(board);
+        long result = hashCodes[0];
+        for (int mode = 1; mode < NUMBER_ROTATIONS; ++mode)
+            result = Math.min(result, hashCodes[mode]);
+        return result;
+    }
+
+    /** Get the rotation mode of the canonical orientation of a move
+        sequence.
+        The canonical orientation is the rotation, for which the sequence of
+        rotated points is smallest in lexicographic order of the point
+        indexes (pass moves are smaller than all points). Games that are
+        rotated or mirrored versions of each other have the same canonical
+        form.
+        @param moves The moves.
+        @param size The board size.
+        @return The rotation mode for BoardUtil.rotate. */
+    public static int getCanonicalRotation(List<Move> moves, int size)
+    {
+        BoardConstants constants = BoardConstants.get(size);
+        int result = 0;
+        for (int mode = 1; mode < NUMBER_ROTATIONS; ++mode)
+        {
+            for (Move move : moves)
+            {
+                GoPoint p = move.getPoint();
+                if (p == null)
+                    continue;
+                int index = constants.getRotatedIndex(mode, p.getIndex());
+                int bestIndex =
+                    constants.getRotatedIndex(result, p.getIndex());
+                if (index != bestIndex)
+                {
+                    if (index < bestIndex)
+                        result = mode;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Get a hash code of the canonical orientation of a move sequence.
+        Equal for all rotated and mirrored versions of a sequence.
+        @param moves The moves.
+        @param size The board size.
+        @return The hash code.
+        @see #getCanonicalRotation(List, int) */
+    public static long getCanonicalHashCode(List<Move> moves, int size)
+    {
+        BoardConstants constants = BoardConstants.get(size);
+        int mode = getCanonicalRotation(moves, size);
+        long hashCode = 0;
+        for (Move move : moves)
         {
-        case 0:
-            return GoPoint.get(x, y);
-        case 1:
-            return GoPoint.get(size - x - 1, y);
-        case 2:
-            return GoPoint.get(x, size - y - 1);
-        case 3:
-            return GoPoint.get(y, x);
-        case 4:
-            return GoPoint.get(size - y - 1, x);
-        case 5:
-            return GoPoint.get(y, size - x - 1);
-        case 6:
-            return GoPoint.get(size - x - 1, size - y - 1);
-        case 7:
-            return GoPoint.get(size - y - 1, size - x - 1);
-        default:
-            return GoPoint.get(x, y);
+            GoPoint p = move.getPoint();
+            long key;
+            if (p == null)
+                key = (move.getColor() == BLACK ? 1 : 2);
+            else
+                key = Zobrist.getKey(move.getColor(),
+                                     constants.getRotatedIndex(mode,
+                                                               p.getIndex()));
+            hashCode = hashCode * 0x100000001b3L ^ key;
         }
+        return hashCode;
     }
 
     /** Make constructor unavailable; class is for namespace only. */
@@ -178,6 +283,25 @@ public final class BoardUtil
     {
     }
 
+    /** Compute the Zobrist hash codes of all rotations of a position in
+        one pass over the stones. */
+    private static long[] getRotatedHashCodes(ConstBoard board)
+    {
+        BoardConstants constants = BoardConstants.get(board.getSize());
+        long[] hashCodes = new long[NUMBER_ROTATIONS];
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            if (c == EMPTY)
+                continue;
+            int index = p.getIndex();
+            for (int mode = 0; mode < NUMBER_ROTATIONS; ++mode)
+                hashCodes[mode] ^=
+                    Zobrist.getKey(c, constants.getRotatedIndex(mode, index));
+        }
+        return hashCodes;
+    }
+
     private static void printGameInfo(ConstBoard board, StringBuilder s,
                                       int yIndex)
     {
@@ -19,10 +19,14 @@ public interface ConstBoard
 
     GoColor getColor(GoPoint p);
 
+    long getHashCode();
+
     ConstPointList getKilled();
 
     Move getLastMove();
 
+    void getLegalMoves(GoColor c, PointIndexList moves);
+
     Move getMove(int i);
 
     int getNumberMoves();
@@ -51,5 +55,7 @@ public interface ConstBoard
 
     boolean isSuicide(GoColor c, GoPoint p);
 
+    boolean isSuperko(GoColor c, GoPoint p);
+
     Iterator<GoPoint> iterator();
 }
@@ -16,7 +16,17 @@ import static net.sf.gogui.go.Score.ScoringMethod.TERRITORY;
     Go engines return a list of dead stones on the final_status GTP command.
     It could happen that the program returns nonsense (e.g. a contiguous block
     of stones with only some stones dead) and this class should not crash
-    if that happens (even if the score will be no longer meaningful). */
+    if that happens (even if the score will be no longer meaningful). A block
+    with only some stones marked as dead is counted as dead.
+    <p>
+    The board is divided into elements (blocks of stones and connected
+    regions of empty points) with union-find once in #begin. A region is a
+    connected set of empty elements and dead blocks; it belongs to a color,
+    if it is only adjacent to alive stones of this color. If the
+    life-death status of blocks changes, #compute only updates the regions
+    adjacent to these blocks and the point counts used by #getScore.
+    Memory is allocated only in #begin, if the board size changes.
+    The board must not be modified while counting. */
 public class CountScore
 {
     /** Begin counting a score.
@@ -26,13 +36,46 @@ public class CountScore
     {
         m_board = board;
         int size = board.getSize();
-        m_dead = new Marker(size);
-        m_score = new GoColor[size][size];
-        for (GoPoint p : m_board)
-            m_dead.clear(p);
+        if (m_dead == null || m_size != size)
+        {
+            int numberPoints = size * size;
+            m_size = size;
+            m_dead = new Marker(size);
+            m_parent = new int[GoPoint.NUMBER_INDEXES];
+            m_element = new int[GoPoint.NUMBER_INDEXES];
+            m_elementColor = new GoColor[numberPoints];
+            m_elementSize = new int[numberPoints];
+            m_elementDead = new int[numberPoints];
+            m_scoreColor = new GoColor[numberPoints];
+            m_pointsStart = new int[numberPoints + 1];
+            m_points = new int[numberPoints];
+            m_adjacentStart = new int[numberPoints + 1];
+            m_adjacent = new int[4 * numberPoints];
+            m_visited = new int[numberPoints];
+            m_region = new int[numberPoints];
+            m_dirty = new int[numberPoints];
+            m_isDirty = new boolean[numberPoints];
+        }
+        findElements();
+        m_dead.clear();
+        m_numberDirty = 0;
+        for (int i = 0; i < m_numberElements; ++i)
+        {
+            m_elementDead[i] = 0;
+            m_scoreColor[i] = null;
+            m_isDirty[i] = false;
+        }
+        for (int i = 0; i < 2; ++i)
+        {
+            m_area[i] = 0;
+            m_territory[i] = 0;
+            m_prisoners[i] = 0;
+        }
         if (deadStones != null)
             for (GoPoint p : deadStones)
-                m_dead.set(p);
+                setDead(p, true);
+        for (int i = 0; i < m_numberElements; ++i)
+            setDirty(i);
         compute();
     }
 
@@ -42,61 +85,57 @@ public class CountScore
         surrounding opponent stones are alive. Otherwise it only changes the
         life death status of all stones in the block the stone belongs to.
         @param p Location of a stone.
-        @return List of all points that changed their life and death status. */
-    public PointList changeStatus(GoPoint p)
+        @return List of all points that changed their life and death status.
+        The list is reused and only valid until the next call of this
+        function. */
+    public ConstPointList changeStatus(GoPoint p)
     {
         GoColor c = m_board.getColor(p);
         assert c.isBlackWhite();
-        PointList stones = new PointList();
-        Marker marker = new Marker(m_board.getSize());
-        boolean allSurroundingAlive = findRegion(p, c, marker, stones);
-        if (! allSurroundingAlive)
+        int element = m_element[p.getIndex()];
+        int numberElements = findRegion(element, c);
+        boolean isDead = ! isDead(p);
+        m_changed.clear();
+        for (int i = 0; i < numberElements; ++i)
         {
-            stones.clear();
-            m_board.getStones(p, c, stones);
+            int e = m_region[i];
+            if (m_elementColor[e] != c)
+                continue;
+            for (int j = m_pointsStart[e]; j < m_pointsStart[e + 1]; ++j)
+            {
+                GoPoint stone = GoPoint.getFromIndex(m_points[j]);
+                if (isDead(stone) != isDead)
+                {
+                    setDead(stone, isDead);
+                    m_changed.add(stone);
+                }
+            }
         }
-        boolean isDead = ! isDead(p);
-        for (GoPoint stone : stones)
-            setDead(stone, isDead);
-        return stones;
+        return m_changed;
     }
 
-    /** Update score after changing the life-death status of stones. */
+    /** Update score after changing the life-death status of stones.
+        Only updates the regions adjacent to blocks, which changed their
+        status since the last call. */
     public void compute()
     {
-        Marker mark = new Marker(m_board.getSize());
-        boolean allEmpty = true;
-        for (GoPoint p : m_board)
+        nextGeneration();
+        for (int i = 0; i < m_numberDirty; ++i)
         {
-            GoColor c = m_board.getColor(p);
-            setScore(p, EMPTY);
-            if (c != EMPTY)
+            int e = m_dirty[i];
+            m_isDirty[e] = false;
+            if (isAlive(e))
+                setScoreColor(e, m_elementColor[e]);
+            else
+                computeRegion(e);
+            for (int j = m_adjacentStart[e]; j < m_adjacentStart[e + 1]; ++j)
             {
-                allEmpty = false;
-                if (! m_dead.get(p))
-                    setScore(p, c);
-            }
-        }
-        if (allEmpty)
-            return;
-        PointList territory = new PointList();
-        for (GoPoint p : m_board)
-        {
-            if (! mark.get(p))
-            {
-                territory.clear();
-                if (isTerritory(mark, p, territory, BLACK))
-                    setScore(territory, BLACK);
-                else
-                {
-                    mark.clear(territory);
-                    if (isTerritory(mark, p, territory, WHITE))
-                        setScore(territory, WHITE);
-                    else
-                        mark.clear(territory);
-                }
+                int adj = m_adjacent[j];
+                if (! isAlive(adj))
+                    computeRegion(adj);
             }
         }
+        m_numberDirty = 0;
     }
 
     /** Get the owner of a point.
@@ -105,7 +144,7 @@ public class CountScore
         point belongs to White; EMPTY, if point is neutral. */
     public GoColor getColor(GoPoint p)
     {
-        return m_score[p.getX()][p.getY()];
+        return m_scoreColor[m_element[p.getIndex()]];
     }
 
     /** Get the life-death status of a stone.
@@ -117,6 +156,7 @@ public class CountScore
     }
 
     /** Get the score.
+        Uses the point counts updated by #compute and takes constant time.
         @param komi The komi.
         @param rules The scoring method */
     public Score getScore(Komi komi, ScoringMethod rules, int handicap)
@@ -125,50 +165,20 @@ public class CountScore
         s.m_rules = rules;
         s.m_komi = komi;
 	s.m_handicap = (handicap > 1 ? handicap : 0);
-        s.m_capturedBlack = m_board.getCaptured(BLACK);
-        s.m_capturedWhite = m_board.getCaptured(WHITE);
-        int areaDiff = -handicap;
-        int territoryDiff = 0;
-        for (GoPoint p : m_board)
-        {
-            GoColor c = m_board.getColor(p);
-            GoColor sc = getColor(p);
-            if (sc == BLACK)
-            {
-                ++s.m_areaBlack;
-                ++areaDiff;
-            }
-            else if (sc == WHITE)
-            {
-                ++s.m_areaWhite;
-                --areaDiff;
-            }
-            if (c == EMPTY)
-            {
-                if (sc == BLACK)
-                {
-                    ++s.m_territoryBlack;
-                    ++territoryDiff;
-                }
-                else if (sc == WHITE)
-                {
-                    ++s.m_territoryWhite;
-                    --territoryDiff;
-                }
-            }
-            if (c == BLACK && sc == WHITE)
-            {
-                ++s.m_capturedBlack;
-                ++s.m_territoryWhite;
-                --territoryDiff;
-            }
-            if (c == WHITE && sc == BLACK)
-            {
-                ++s.m_capturedWhite;
-                ++s.m_territoryBlack;
-                ++territoryDiff;
-            }
-        }
+        s.m_areaBlack = m_area[BLACK_INDEX];
+        s.m_areaWhite = m_area[WHITE_INDEX];
+        // Dead stones count as captured and as territory of the owner of
+        // the region
+        s.m_capturedBlack =
+            m_board.getCaptured(BLACK) + m_prisoners[WHITE_INDEX];
+        s.m_capturedWhite =
+            m_board.getCaptured(WHITE) + m_prisoners[BLACK_INDEX];
+        s.m_territoryBlack =
+            m_territory[BLACK_INDEX] + m_prisoners[BLACK_INDEX];
+        s.m_territoryWhite =
+            m_territory[WHITE_INDEX] + m_prisoners[WHITE_INDEX];
+        int areaDiff = s.m_areaBlack - s.m_areaWhite - handicap;
+        int territoryDiff = s.m_territoryBlack - s.m_territoryWhite;
         s.m_resultArea = areaDiff;
         s.m_resultTerritory =
             s.m_capturedWhite - s.m_capturedBlack + territoryDiff;
@@ -196,59 +206,313 @@ public class CountScore
         @param value true, if stone is dead, false if stone is alive. */
     public void setDead(GoPoint p, boolean value)
     {
+        if (m_dead.get(p) == value)
+            return;
         m_dead.set(p, value);
+        int e = m_element[p.getIndex()];
+        if (m_elementColor[e] == EMPTY)
+            return;
+        boolean wasAlive = isAlive(e);
+        m_elementDead[e] += (value ? 1 : -1);
+        if (isAlive(e) != wasAlive)
+            setDirty(e);
     }
 
+    private static final int BLACK_INDEX = 0;
+
+    private static final int WHITE_INDEX = 1;
+
+    /** Board has at least one stone.
+        If all stones are dead, the whole board belongs to Black. */
+    private boolean m_hasStones;
+
+    private int m_size;
+
+    private int m_numberElements;
+
+    private int m_numberDirty;
+
+    /** Current generation for m_visited (see Marker). */
+    private int m_generation;
+
+    /** Number of points owned by Black and White. */
+    private final int[] m_area = new int[2];
+
+    /** Number of empty points owned by Black and White. */
+    private final int[] m_territory = new int[2];
+
+    /** Number of opponent stones owned by Black and White. */
+    private final int[] m_prisoners = new int[2];
+
     private Marker m_dead;
 
-    private GoColor m_score[][];
+    /** Union-find parent pointers by point index, used in #findElements. */
+    private int[] m_parent;
+
+    /** Element number by point index. */
+    private int[] m_element;
+
+    private GoColor[] m_elementColor;
+
+    private int[] m_elementSize;
+
+    /** Number of stones marked as dead in an element. */
+    private int[] m_elementDead;
+
+    /** Owner of the points in an element. */
+    private GoColor[] m_scoreColor;
+
+    /** Point indexes of element e are in m_points from m_pointsStart[e] to
+        m_pointsStart[e + 1] (exclusive). */
+    private int[] m_pointsStart;
+
+    private int[] m_points;
+
+    /** Adjacent elements of element e are in m_adjacent from
+        m_adjacentStart[e] to m_adjacentStart[e + 1] (exclusive). */
+    private int[] m_adjacentStart;
+
+    private int[] m_adjacent;
+
+    /** Generation in which an element was visited. */
+    private int[] m_visited;
+
+    /** Elements found by #computeRegion or #findRegion. */
+    private int[] m_region;
+
+    /** Elements that changed their status since the last #compute. */
+    private int[] m_dirty;
+
+    private boolean[] m_isDirty;
+
+    /** Return value of #changeStatus.
+        Member variable for avoiding frequent new memory allocations. */
+    private final PointList m_changed = new PointList();
 
     private ConstBoard m_board;
 
-    private boolean findRegion(GoPoint p, GoColor color, Marker marker,
-                               PointList stones)
+    /** Add the points of an element to the counts used in #getScore.
+        @param e The element.
+        @param owner The owner of the element (null means no owner).
+        @param sign 1 for adding, -1 for removing. */
+    private void addScore(int e, GoColor owner, int sign)
     {
-        if (marker.get(p))
-            return true;
-        GoColor c = m_board.getColor(p);
-        if (c == color.otherColor())
-            return ! isDead(p);
-        marker.set(p);
-        if (c == color)
-            stones.add(p);
-        for (GoPoint adj : m_board.getAdjacent(p))
-            if (! findRegion(adj, color, marker, stones))
-                return false;
-        return true;
+        if (owner == null || owner == EMPTY)
+            return;
+        int i = (owner == BLACK ? BLACK_INDEX : WHITE_INDEX);
+        int n = sign * m_elementSize[e];
+        m_area[i] += n;
+        GoColor c = m_elementColor[e];
+        if (c == EMPTY)
+            m_territory[i] += n;
+        else if (c != owner)
+            m_prisoners[i] += n;
+    }
+
+    /** Find the region containing an element and set its owner.
+        Does nothing, if the element was already visited in the current
+        generation. */
+    private void computeRegion(int element)
+    {
+        if (m_visited[element] == m_generation)
+            return;
+        boolean isBlackAdjacent = false;
+        boolean isWhiteAdjacent = false;
+        m_visited[element] = m_generation;
+        m_region[0] = element;
+        int size = 1;
+        for (int i = 0; i < size; ++i)
+        {
+            int e = m_region[i];
+            for (int j = m_adjacentStart[e]; j < m_adjacentStart[e + 1]; ++j)
+            {
+                int adj = m_adjacent[j];
+                if (isAlive(adj))
+                {
+                    if (m_elementColor[adj] == BLACK)
+                        isBlackAdjacent = true;
+                    else
+                        isWhiteAdjacent = true;
+                }
+                else if (m_visited[adj] != m_generation)
+                {
+                    m_visited[adj] = m_generation;
+                    m_region[size++] = adj;
+                }
+            }
+        }
+        GoColor owner;
+        if (isBlackAdjacent && isWhiteAdjacent)
+            owner = EMPTY;
+        else if (isBlackAdjacent)
+            owner = BLACK;
+        else if (isWhiteAdjacent)
+            owner = WHITE;
+        else
+            owner = (m_hasStones ? BLACK : EMPTY);
+        for (int i = 0; i < size; ++i)
+            setScoreColor(m_region[i], owner);
+    }
+
+    private int find(int index)
+    {
+        while (m_parent[index] != index)
+        {
+            m_parent[index] = m_parent[m_parent[index]];
+            index = m_parent[index];
+        }
+        return index;
+    }
+
+    /** Divide the board into elements with union-find.
+        Computes the element of each point, the points of each element and
+        the adjacent elements of each element. */
+    private void findElements()
+    {
+        m_hasStones = false;
+        for (GoPoint p : m_board)
+            m_parent[p.getIndex()] = p.getIndex();
+        for (GoPoint p : m_board)
+        {
+            GoColor c = m_board.getColor(p);
+            if (c != EMPTY)
+                m_hasStones = true;
+            ConstPointList adjacent = m_board.getAdjacent(p);
+            for (int i = 0; i < adjacent.size(); ++i)
+            {
+                GoPoint adj = adjacent.get(i);
+                if (m_board.getColor(adj) == c)
+                {
+                    int root1 = find(p.getIndex());
+                    int root2 = find(adj.getIndex());
+                    if (root1 != root2)
+                        m_parent[root1] = root2;
+                }
+            }
+        }
+        m_numberElements = 0;
+        for (GoPoint p : m_board)
+            if (find(p.getIndex()) == p.getIndex())
+            {
+                int e = m_numberElements++;
+                m_element[p.getIndex()] = e;
+                m_elementColor[e] = m_board.getColor(p);
+                m_elementSize[e] = 0;
+            }
+        for (GoPoint p : m_board)
+        {
+            int e = m_element[find(p.getIndex())];
+            m_element[p.getIndex()] = e;
+            ++m_elementSize[e];
+        }
+        // Group the points by element; m_region is used for the current
+        // insert position of each element
+        int start = 0;
+        for (int e = 0; e < m_numberElements; ++e)
+        {
+            m_pointsStart[e] = start;
+            m_region[e] = start;
+            start += m_elementSize[e];
+        }
+        m_pointsStart[m_numberElements] = start;
+        for (GoPoint p : m_board)
+            m_points[m_region[m_element[p.getIndex()]]++] = p.getIndex();
+        // Find adjacent elements; m_visited is used for avoiding duplicates
+        for (int e = 0; e < m_numberElements; ++e)
+            m_visited[e] = -1;
+        int numberAdjacent = 0;
+        for (int e = 0; e < m_numberElements; ++e)
+        {
+            m_adjacentStart[e] = numberAdjacent;
+            for (int i = m_pointsStart[e]; i < m_pointsStart[e + 1]; ++i)
+            {
+                GoPoint p = GoPoint.getFromIndex(m_points[i]);
+                ConstPointList adjacent = m_board.getAdjacent(p);
+                for (int j = 0; j < adjacent.size(); ++j)
+                {
+                    int adj = m_element[adjacent.get(j).getIndex()];
+                    if (adj != e && m_visited[adj] != e)
+                    {
+                        m_visited[adj] = e;
+                        m_adjacent[numberAdjacent++] = adj;
+                    }
+                }
+            }
+        }
+        m_adjacentStart[m_numberElements] = numberAdjacent;
+        for (int e = 0; e < m_numberElements; ++e)
+            m_visited[e] = 0;
+        m_generation = 0;
+        nextGeneration();
+    }
+
+    /** Find the elements of a color and empty elements in the connected
+        region of an element surrounded by opponent stones.
+        @param element A block of stones.
+        @param color The color of the block.
+        @return The number of elements stored in m_region. If an alive
+        opponent stone is adjacent to the region, only the element itself is
+        returned. */
+    private int findRegion(int element, GoColor color)
+    {
+        nextGeneration();
+        m_visited[element] = m_generation;
+        m_region[0] = element;
+        int size = 1;
+        GoColor otherColor = color.otherColor();
+        for (int i = 0; i < size; ++i)
+        {
+            int e = m_region[i];
+            for (int j = m_adjacentStart[e]; j < m_adjacentStart[e + 1]; ++j)
+            {
+                int adj = m_adjacent[j];
+                if (m_elementColor[adj] == otherColor)
+                {
+                    if (isAlive(adj))
+                        return 1;
+                }
+                else if (m_visited[adj] != m_generation)
+                {
+                    m_visited[adj] = m_generation;
+                    m_region[size++] = adj;
+                }
+            }
+        }
+        return size;
     }
 
-    private boolean isTerritory(Marker mark, GoPoint p,
-                                PointList territory, GoColor color)
+    private boolean isAlive(int e)
     {
-        GoColor c = getColor(p);
-        if (c == color.otherColor() && ! m_dead.get(p))
-            return false;
-        if (c.equals(color))
-            return (! m_dead.get(p));
-        if (mark.get(p))
-            return true;
-        mark.set(p);
-        territory.add(p);
-        for (GoPoint adj : m_board.getAdjacent(p))
-            if (! isTerritory(mark, adj, territory, color))
-                return false;
-        return true;
+        return (m_elementColor[e] != EMPTY && m_elementDead[e] == 0);
     }
 
-    private void setScore(GoPoint p, GoColor c)
+    private void nextGeneration()
     {
-        assert c != null;
-        m_score[p.getX()][p.getY()] = c;
+        ++m_generation;
+        if (m_generation == Integer.MAX_VALUE)
+        {
+            for (int i = 0; i < m_visited.length; ++i)
+                m_visited[i] = 0;
+            m_generation = 1;
+        }
+    }
+
+    private void setDirty(int e)
+    {
+        if (! m_isDirty[e])
+        {
+            m_isDirty[e] = true;
+            m_dirty[m_numberDirty++] = e;
+        }
     }
 
-    private void setScore(ConstPointList points, GoColor c)
+    private void setScoreColor(int e, GoColor c)
     {
-        for (GoPoint p : points)
-            setScore(p, c);
+        GoColor oldColor = m_scoreColor[e];
+        if (oldColor == c)
+            return;
+        addScore(e, oldColor, -1);
+        addScore(e, c, 1);
+        m_scoreColor[e] = c;
     }
 }
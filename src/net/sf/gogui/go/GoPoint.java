@@ -68,6 +68,16 @@ public final class GoPoint
         return point;
     }
 
+    /** Get a point from its one-dimensional index.
+        @param index The index as returned by getIndex()
+        @return Unique reference to the point with this index. */
+    public static GoPoint getFromIndex(int index)
+    {
+        assert index >= 0;
+        assert index < NUMBER_INDEXES;
+        return s_pointsByIndex[index];
+    }
+
     /** Integer for using points as indices in an array.
         The index of A1 is zero and the indices count upwards from left
         to right and bottom to top over a board with the maximum size
@@ -228,6 +238,8 @@ public final class GoPoint
 
     private static GoPoint[][] s_points;
 
+    private static GoPoint[] s_pointsByIndex;
+
     private final int m_x;
 
     private final int m_y;
@@ -239,9 +251,13 @@ public final class GoPoint
     static
     {
         s_points = new GoPoint[MAX_SIZE][MAX_SIZE];
+        s_pointsByIndex = new GoPoint[NUMBER_INDEXES];
         for (int x = 0; x < MAX_SIZE; ++x)
             for (int y = 0; y < MAX_SIZE; ++y)
+            {
                 s_points[x][y] = new GoPoint(x, y);
+                s_pointsByIndex[getIndex(x, y)] = s_points[x][y];
+            }
     }
 
     private GoPoint(int x, int y)
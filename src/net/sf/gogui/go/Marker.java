@@ -2,7 +2,11 @@
 
 package net.sf.gogui.go;
 
-/** Mark points on a Go board. */
+/** Mark points on a Go board.
+    Points are marked by storing the current generation number, so that
+    clearing all points only needs to increment the generation number and
+    takes constant time. This allows reusing a marker for repeated searches
+    instead of allocating a new one. */
 public class Marker
 {
     /** Constructor.
@@ -10,22 +14,29 @@ public class Marker
     public Marker(int size)
     {
         m_size = size;
-        m_mark = new boolean[GoPoint.NUMBER_INDEXES];
+        m_mark = new int[GoPoint.NUMBER_INDEXES];
     }
 
-    /** Clear all marked points. */
+    /** Clear all marked points.
+        Takes constant time. */
     public void clear()
     {
-        for (int x = 0; x < m_size; ++x)
-            for (int y = 0; y < m_size; ++y)
-                m_mark[GoPoint.getIndex(x, y)] = false;
+        ++m_generation;
+        if (m_generation == Integer.MAX_VALUE)
+        {
+            // Stamps of old generations could become equal to the current
+            // one after an overflow
+            for (int i = 0; i < m_mark.length; ++i)
+                m_mark[i] = 0;
+            m_generation = 1;
+        }
     }
 
     /** Clear a marked point.
         @param p The point to clear. */
     public void clear(GoPoint p)
     {
-        m_mark[p.getIndex()] = false;
+        m_mark[p.getIndex()] = 0;
     }
 
     /** Clear all points from a list.
@@ -35,7 +46,7 @@ public class Marker
         int nuPoints = points.size();
         // Don't use an iterator for efficiency
         for (int i = 0; i < nuPoints; ++i)
-            m_mark[points.get(i).getIndex()] = false;
+            m_mark[points.get(i).getIndex()] = 0;
     }
 
     /** Check if a point is marked.
@@ -43,7 +54,7 @@ public class Marker
         @return true, if point is marked, false otherwise. */
     public boolean get(GoPoint p)
     {
-        return m_mark[p.getIndex()];
+        return m_mark[p.getIndex()] == m_generation;
     }
 
     /** Check if no point is marked.
@@ -52,7 +63,7 @@ public class Marker
     {
         for (int x = 0; x < m_size; ++x)
             for (int y = 0; y < m_size; ++y)
-                if (m_mark[GoPoint.getIndex(x, y)])
+                if (m_mark[GoPoint.getIndex(x, y)] == m_generation)
                     return false;
         return true;
     }
@@ -61,7 +72,7 @@ public class Marker
         @param p The point to mark. */
     public void set(GoPoint p)
     {
-        m_mark[p.getIndex()] = true;
+        m_mark[p.getIndex()] = m_generation;
     }
 
     /** Mark or clear a point.
@@ -70,7 +81,7 @@ public class Marker
         be cleared. */
     public void set(GoPoint p, boolean value)
     {
-        m_mark[p.getIndex()] = value;
+        m_mark[p.getIndex()] = (value ? m_generation : 0);
     }
 
     /** Mark all points from a list.
@@ -80,10 +91,15 @@ public class Marker
         int nuPoints = points.size();
         // Don't use an iterator for efficiency
         for (int i = 0; i < nuPoints; ++i)
-            m_mark[points.get(i).getIndex()] = true;
+            m_mark[points.get(i).getIndex()] = m_generation;
     }
 
     private final int m_size;
 
-    private boolean m_mark[];
+    /** Current generation number.
+        A point is marked if its stamp is equal to the generation number.
+        Always greater than zero, zero is used for cleared points. */
+    private int m_generation = 1;
+
+    private final int m_mark[];
 }
@@ -0,0 +1,223 @@
+// PointIndexList.java
+
+package net.sf.gogui.go;
+
+import java.util.Iterator;
+
+/** List of distinct points stored as point indexes.
+    Alternative to PointList for frequently used lists. The points are
+    stored in an int array and a bitmap over all point indexes, so that
+    adding, removing the last point and <code>contains</code> take constant
+    time and do not allocate memory. Can be used as a ConstPointList;
+    <code>getIndex</code> gives access to the indexes without converting
+    them to points.
+    @see GoPoint#getIndex */
+public final class PointIndexList
+    implements ConstPointList
+{
+    /** Construct empty list. */
+    public PointIndexList()
+    {
+        this(16);
+    }
+
+    /** Construct empty list with initial capacity.
+        @param initialCapacity The number of points to reserve memory for. */
+    public PointIndexList(int initialCapacity)
+    {
+        m_indexes = new int[Math.max(initialCapacity, 1)];
+    }
+
+    /** Construct list as a copy of another point list.
+        Duplicate points in the other list are only added once.
+        @param list The list to copy the points from. */
+    public PointIndexList(ConstPointList list)
+    {
+        this(list.size());
+        addAll(list);
+    }
+
+    /** Add a point at the end of the list.
+        @param p The point.
+        @return <code>false</code>, if the point was already in the list and
+        was not added. */
+    public boolean add(GoPoint p)
+    {
+        return addIndex(p.getIndex());
+    }
+
+    /** Add all points of a list that are not already in this list. */
+    public void addAll(ConstPointList list)
+    {
+        int size = list.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < size; ++i)
+            add(list.get(i));
+    }
+
+    /** Add a point index at the end of the list.
+        @param index The point index.
+        @return <code>false</code>, if the point was already in the list and
+        was not added. */
+    public boolean addIndex(int index)
+    {
+        if (containsIndex(index))
+            return false;
+        if (m_size == m_indexes.length)
+        {
+            int[] indexes = new int[2 * m_indexes.length];
+            System.arraycopy(m_indexes, 0, indexes, 0, m_size);
+            m_indexes = indexes;
+        }
+        m_indexes[m_size++] = index;
+        m_bitmap[index >> 6] |= 1L << (index & 63);
+        return true;
+    }
+
+    /** Remove all points.
+        Takes time proportional to the size of the list. */
+    public void clear()
+    {
+        for (int i = 0; i < m_size; ++i)
+            m_bitmap[m_indexes[i] >> 6] = 0;
+        m_size = 0;
+    }
+
+    public boolean contains(Object elem)
+    {
+        if (! (elem instanceof GoPoint))
+            return false;
+        return containsIndex(((GoPoint)elem).getIndex());
+    }
+
+    /** Check if the list contains a point index.
+        Takes constant time. */
+    public boolean containsIndex(int index)
+    {
+        return (m_bitmap[index >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    /** Compare with another list.
+        Lists of other classes are never equal, because their equals would
+        not accept this class (e.g. PointList).
+        @return true, if the object is a PointIndexList containing the same
+        points in the same order. */
+    public boolean equals(Object object)
+    {
+        if (! (object instanceof PointIndexList))
+            return false;
+        PointIndexList list = (PointIndexList)object;
+        if (list.m_size != m_size)
+            return false;
+        for (int i = 0; i < m_size; ++i)
+            if (list.m_indexes[i] != m_indexes[i])
+                return false;
+        return true;
+    }
+
+    public GoPoint get(int i)
+    {
+        return GoPoint.getFromIndex(getIndex(i));
+    }
+
+    /** Get the point index of an element.
+        @param i The position in the list.
+        @return The point index. */
+    public int getIndex(int i)
+    {
+        assert i >= 0 && i < m_size;
+        return m_indexes[i];
+    }
+
+    /** Hash code as defined by java.util.List. */
+    public int hashCode()
+    {
+        int hashCode = 1;
+        for (int i = 0; i < m_size; ++i)
+            hashCode = 31 * hashCode + m_indexes[i];
+        return hashCode;
+    }
+
+    public boolean isEmpty()
+    {
+        return (m_size == 0);
+    }
+
+    public Iterator<GoPoint> iterator()
+    {
+        return new Iterator<GoPoint>() {
+                public boolean hasNext()
+                {
+                    return (m_index < m_size);
+                }
+
+                public GoPoint next()
+                {
+                    return get(m_index++);
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                private int m_index;
+            };
+    }
+
+    /** Remove and return the point index of the last element.
+        Requires that list is not empty. */
+    public int popIndex()
+    {
+        assert m_size > 0;
+        int index = m_indexes[--m_size];
+        m_bitmap[index >> 6] &= ~(1L << (index & 63));
+        return index;
+    }
+
+    /** Remove a point.
+        Keeps the order of the other points; takes time proportional to the
+        size of the list.
+        @return <code>false</code>, if the point was not in the list. */
+    public boolean remove(GoPoint p)
+    {
+        int index = p.getIndex();
+        if (! containsIndex(index))
+            return false;
+        int i = 0;
+        while (m_indexes[i] != index)
+            ++i;
+        System.arraycopy(m_indexes, i + 1, m_indexes, i, m_size - i - 1);
+        --m_size;
+        m_bitmap[index >> 6] &= ~(1L << (index & 63));
+        return true;
+    }
+
+    public int size()
+    {
+        return m_size;
+    }
+
+    /** Convert to a PointList. */
+    public PointList toPointList()
+    {
+        PointList result = new PointList(m_size);
+        for (int i = 0; i < m_size; ++i)
+            result.add(get(i));
+        return result;
+    }
+
+    /** Convert to a string.
+        Points are separated by a single space, as in PointList.toString. */
+    public String toString()
+    {
+        return GoPoint.toString(this);
+    }
+
+    private int m_size;
+
+    private int[] m_indexes;
+
+    private final long[] m_bitmap =
+        new long[(GoPoint.NUMBER_INDEXES + 63) / 64];
+}
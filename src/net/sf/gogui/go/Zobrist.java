@@ -0,0 +1,56 @@
+// Zobrist.java
+
+package net.sf.gogui.go;
+
+import java.util.Random;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+
+/** Zobrist hash codes for positions.
+    The hash code of a position is the exclusive-or of a random 64-bit key
+    for each stone on the board. The keys are generated with a fixed seed,
+    so hash codes are the same in all instances of the program and can be
+    compared between different boards and program runs. */
+public final class Zobrist
+{
+    /** Compute the hash code of a position from scratch.
+        @param board The board.
+        @return The hash code of the stones on the board. */
+    public static long getHashCode(ConstBoard board)
+    {
+        long hashCode = 0;
+        for (GoPoint p : board)
+            hashCode ^= getKey(board.getColor(p), p.getIndex());
+        return hashCode;
+    }
+
+    /** Get the key of a stone.
+        @param c The color of the point.
+        @param index The point index.
+        @return The key; 0 for EMPTY.
+        @see GoPoint#getIndex */
+    public static long getKey(GoColor c, int index)
+    {
+        if (c == BLACK)
+            return s_keys[0][index];
+        if (c == WHITE)
+            return s_keys[1][index];
+        return 0;
+    }
+
+    private static final long[][] s_keys =
+        new long[2][GoPoint.NUMBER_INDEXES];
+
+    static
+    {
+        Random random = new Random(0x5eed5eedL);
+        for (int i = 0; i < 2; ++i)
+            for (int j = 0; j < GoPoint.NUMBER_INDEXES; ++j)
+                s_keys[i][j] = random.nextLong();
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private Zobrist()
+    {
+    }
+}
@@ -727,7 +727,7 @@ public class GoGui
                         ConstNode root = getTree().getRootConst();
                         ConstNode currentNode = getCurrentNode();
                         ConstNode node =
-                            NodeUtil.findInComments(currentNode, m_pattern);
+                            m_game.findInComments(currentNode, m_pattern);
                         boolean cancel = false;
                         if (node == null && getCurrentNode() != root)
                         {
@@ -741,8 +741,8 @@ public class GoGui
                                 if (! NodeUtil.commentContains(node,
                                                                m_pattern))
                                     node =
-                                        NodeUtil.findInComments(node,
-                                                                m_pattern);
+                                        m_game.findInComments(node,
+                                                              m_pattern);
                             }
                             else
                                 cancel = true;
@@ -1342,6 +1342,17 @@ public class GoGui
         SwingUtilities.invokeLater(runnable);
     }
 
+    public void actionRedoEdit()
+    {
+        if (! checkStateChangePossible())
+            return;
+        if (! m_game.canRedoEdit())
+            return;
+        m_game.redoEdit();
+        actionGotoNode(getCurrentNode());
+        boardChangedBegin(false, true);
+    }
+
     public void actionRestoreParameters()
     {
         if (m_gtp == null)
@@ -1615,6 +1626,8 @@ public class GoGui
         {
             resetBoard();
             m_setupMode = true;
+            // All changes in setup mode are one edit
+            m_game.beginEdit();
             m_setupColor = color;
             m_setupNodeCreated = (node.getMove() != null || node.hasChildren());
             if (m_setupNodeCreated)
@@ -1828,6 +1841,17 @@ public class GoGui
         boardChangedBegin(false, true);
     }
 
+    public void actionUndoEdit()
+    {
+        if (! checkStateChangePossible())
+            return;
+        if (! m_game.canUndoEdit())
+            return;
+        m_game.undoEdit();
+        actionGotoNode(getCurrentNode());
+        boardChangedBegin(false, true);
+    }
+
     public void actionQuit()
     {
         close();
@@ -4097,6 +4121,7 @@ public class GoGui
         else if (m_setupNodeCreated && currentNode.isEmpty()
                  && currentNode.hasFather())
             m_game.truncate();
+        m_game.endEdit();
         currentNodeChanged();
     }
 
@@ -626,6 +626,17 @@ public class GoGuiActions
             public void actionPerformed(ActionEvent e) {
                 m_goGui.actionTruncateChildren(); } };
 
+    public final GuiAction m_actionUndoEdit =
+        new GuiAction(i18n("ACT_UNDO_EDIT"), null, KeyEvent.VK_Z) {
+            public void actionPerformed(ActionEvent e) {
+                m_goGui.actionUndoEdit(); } };
+
+    public final GuiAction m_actionRedoEdit =
+        new GuiAction(i18n("ACT_REDO_EDIT"), null,
+                      KeyEvent.VK_Z, SHORTCUT | ActionEvent.SHIFT_MASK) {
+            public void actionPerformed(ActionEvent e) {
+                m_goGui.actionRedoEdit(); } };
+
     public final GuiAction m_actionQuit =
         new GuiAction(i18n("ACT_QUIT"), null, KeyEvent.VK_Q, null) {
             public void actionPerformed(ActionEvent e) {
@@ -726,6 +737,7 @@ public class GoGuiActions
         m_actionPreviousVariation.setEnabled(hasPreviousVariation);
         m_actionPreviousEarlierVariation.setEnabled(hasPrevEarlierVariation);
         m_actionReattachProgram.setEnabled(isProgramAttached);
+        m_actionRedoEdit.setEnabled(game.canRedoEdit());
         m_actionReattachWithParameters.setEnabled(isProgramAttached
                                                   && hasParameterCommands
                                                   && (! isProgramDead
@@ -795,6 +807,7 @@ public class GoGuiActions
                     m_goGui.getTreeSize() == GameTreePanel.Size.TINY);
         m_actionTruncate.setEnabled(hasFather);
         m_actionTruncateChildren.setEnabled(hasChildren);
+        m_actionUndoEdit.setEnabled(game.canUndoEdit());
     }
 
     private final GoGui m_goGui;
@@ -311,6 +311,9 @@ public class GoGuiMenuBar
     private GuiMenu createMenuEdit(GoGuiActions actions)
     {
         GuiMenu menu = new GuiMenu(i18n("MEN_EDIT"));
+        menu.add(actions.m_actionUndoEdit);
+        menu.add(actions.m_actionRedoEdit);
+        menu.addSeparator();
         menu.add(actions.m_actionFind);
         menu.add(actions.m_actionFindNext);
         menu.add(actions.m_actionFindNextComment);
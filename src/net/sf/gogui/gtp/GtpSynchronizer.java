@@ -184,9 +184,13 @@ public class GtpSynchronizer
 
     /** Computes all actions to execute.
         Replaces setup stones by moves, if setup is not supported.
-        Fills in passes between moves of same color if m_fillPasses. */
-    private Board computeTargetState(ConstBoard board) throws GtpError
+        Fills in passes between moves of same color if m_fillPasses.
+        If nothing needs to be replaced, the board is used directly instead
+        of replaying all moves on a new board. */
+    private ConstBoard computeTargetState(ConstBoard board) throws GtpError
     {
+        if (isTransmittedUnchanged(board))
+            return board;
         int size = board.getSize();
         Board targetState = new Board(size);
         ConstPointList setupBlack = board.getSetup(BLACK);
@@ -265,6 +269,48 @@ public class GtpSynchronizer
         return i;
     }
 
+    /** Check if computeTargetState does not need to change the setup or
+        fill in passes. */
+    private boolean isTransmittedUnchanged(ConstBoard board)
+    {
+        ConstPointList setupBlack = board.getSetup(BLACK);
+        ConstPointList setupWhite = board.getSetup(WHITE);
+        GoColor toMove = BLACK;
+        if (setupBlack.size() == 0 && setupWhite.size() == 0)
+        {
+            // setup() does not transmit a setup player or handicap flag
+            // without setup stones
+            if (board.getSetupPlayer() != null || board.isSetupHandicap())
+                return false;
+        }
+        else
+        {
+            if (board.isSetupHandicap())
+            {
+                if (! m_isSupportedHandicap)
+                    return false;
+                toMove = WHITE;
+            }
+            else
+            {
+                if (! m_isSupportedSetup)
+                    return false;
+                if (board.getSetupPlayer() != null)
+                    toMove = board.getSetupPlayer();
+            }
+        }
+        if (! m_fillPasses)
+            return true;
+        for (int i = 0; i < board.getNumberMoves(); ++i)
+        {
+            GoColor c = board.getMove(i).getColor();
+            if (c != toMove)
+                return false;
+            toMove = c.otherColor();
+        }
+        return true;
+    }
+
     private boolean isSetupDifferent(ConstBoard targetState)
     {
         if (m_engineState.isSetupHandicap() != targetState.isSetupHandicap())
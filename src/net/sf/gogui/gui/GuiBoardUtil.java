@@ -18,7 +18,6 @@ import static net.sf.gogui.go.GoColor.EMPTY;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Marker;
 import net.sf.gogui.go.Move;
-import net.sf.gogui.go.PointList;
 
 /** Utility functions for class GuiBoard. */
 public final class GuiBoardUtil
@@ -158,7 +157,7 @@ public final class GuiBoardUtil
         GoColor c = board.getColor(p);
         if (c == EMPTY)
             return;
-        PointList stones = countScore.changeStatus(p);
+        ConstPointList stones = countScore.changeStatus(p);
         for (GoPoint stone : stones)
             guiBoard.setCrossHair(stone, countScore.isDead(stone));
         computeScore(guiBoard, countScore, board);
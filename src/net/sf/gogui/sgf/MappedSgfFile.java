@@ -0,0 +1,211 @@
+// MappedSgfFile.java
+
+package net.sf.gogui.sgf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.sf.gogui.game.LazyString;
+
+/** Memory-mapped SGF file for loading property values on demand.
+    Decoded values are kept in a small cache in least-recently-used order.
+    The file must not be modified in place as long as values are used.
+    Before the file is replaced (see GameWriter), the mapping must be closed
+    with close(File), because on some platforms a mapped file cannot be
+    deleted or replaced. */
+final class MappedSgfFile
+{
+    /** Property value in the file. */
+    private final class Value
+        implements LazyString
+    {
+        public Value(int offset, int length)
+        {
+            m_offset = offset;
+            m_length = length;
+        }
+
+        public String get()
+        {
+            return getValue(m_offset, m_length);
+        }
+
+        private final int m_offset;
+
+        private final int m_length;
+    }
+
+    /** Constructor.
+        @param file The file.
+        @param charset The charset of the file. Must be compatible with
+        ASCII (see SgfLexer#isAsciiCompatible). */
+    public MappedSgfFile(File file, Charset charset) throws IOException
+    {
+        m_charset = charset;
+        m_file = file.getCanonicalFile();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = randomAccessFile.getChannel();
+            m_buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+        synchronized (s_mappedFiles)
+        {
+            s_mappedFiles.add(new WeakReference<MappedSgfFile>(this));
+        }
+    }
+
+    /** Check if a file can be mapped.
+        Files larger than 2 GB cannot be mapped into a single buffer. */
+    public static boolean canMap(File file)
+    {
+        return (file.length() <= Integer.MAX_VALUE);
+    }
+
+    /** Close the mappings of a file.
+        The contents of the file are copied into memory for all mapped files
+        of the given file that are still used, so that values can still be
+        loaded, and the mappings are released.
+        @param file The file. */
+    public static void close(File file) throws IOException
+    {
+        file = file.getCanonicalFile();
+        synchronized (s_mappedFiles)
+        {
+            Iterator<WeakReference<MappedSgfFile>> it =
+                s_mappedFiles.iterator();
+            while (it.hasNext())
+            {
+                MappedSgfFile mappedFile = it.next().get();
+                if (mappedFile == null)
+                    it.remove();
+                else if (mappedFile.m_file.equals(file))
+                {
+                    mappedFile.close();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /** Create a lazy string for a property value.
+        @param offset The byte offset of the first character after the
+        opening bracket.
+        @param length The number of bytes including the closing bracket. */
+    public LazyString createValue(long offset, int length)
+    {
+        return new Value((int)offset, length);
+    }
+
+    private static final int CACHE_SIZE = 64;
+
+    /** All mapped files that are not closed and still referenced. */
+    private static final ArrayList<WeakReference<MappedSgfFile>>
+        s_mappedFiles = new ArrayList<WeakReference<MappedSgfFile>>();
+
+    private final Charset m_charset;
+
+    /** Canonical file. */
+    private final File m_file;
+
+    /** The mapped file or a copy in memory after close(). */
+    private ByteBuffer m_buffer;
+
+    private final Map<Integer,String> m_cache =
+        new LinkedHashMap<Integer,String>(2 * CACHE_SIZE, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<Integer,String> e)
+            {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /** Copy the contents into memory and release the mapping. */
+    private synchronized void close()
+    {
+        if (! (m_buffer instanceof MappedByteBuffer))
+            return;
+        ByteBuffer mappedBuffer = m_buffer;
+        byte[] bytes = new byte[mappedBuffer.capacity()];
+        mappedBuffer.position(0);
+        mappedBuffer.get(bytes);
+        m_buffer = ByteBuffer.wrap(bytes);
+        unmap(mappedBuffer);
+    }
+
+    /** Decode a value.
+        Uses the same decoding as SgfReader while reading the file. */
+    private synchronized String getValue(int offset, int length)
+    {
+        String value = m_cache.get(offset);
+        if (value != null)
+            return value;
+        byte[] bytes = new byte[length];
+        m_buffer.position(offset);
+        m_buffer.get(bytes);
+        SgfLexer lexer = new SgfLexer(bytes, 0, length, m_charset);
+        try
+        {
+            if (! lexer.readValue())
+                throw new IllegalStateException("SGF file has changed");
+        }
+        catch (IOException e)
+        {
+            // Cannot happen, the lexer does not read from a stream
+            throw new IllegalStateException(e);
+        }
+        value = lexer.getValue();
+        m_cache.put(offset, value);
+        return value;
+    }
+
+    /** Release a mapping without waiting for the garbage collector.
+        Java has no public API for this, the internal cleaner is called by
+        reflection if available (Java 9 and newer: Unsafe.invokeCleaner,
+        older versions: DirectBuffer.cleaner). If this fails, the mapping
+        is released when the buffer is garbage collected. The buffer must
+        not be used anymore. */
+    private static void unmap(ByteBuffer buffer)
+    {
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner =
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner.invoke(field.get(null), buffer);
+            return;
+        }
+        catch (Exception e)
+        {
+        }
+        try
+        {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        catch (Exception e)
+        {
+        }
+    }
+}
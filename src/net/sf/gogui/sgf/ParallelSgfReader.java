@@ -0,0 +1,286 @@
+// ParallelSgfReader.java
+
+package net.sf.gogui.sgf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.util.ErrorMessage;
+
+/** Reads the game trees of SGF files and collections in parallel.
+    The files are scanned for the boundaries of the game trees in the
+    thread that calls read() (see SgfCollectionScanner) and the game trees
+    are parsed concurrently by a pool of threads. The game trees are passed
+    to a listener in the order of the files or in the order in which their
+    parsing completes. The number of game trees that are scanned ahead is
+    limited, so that memory use does not depend on the size of the files.
+    <p>
+    The charset property of each game tree is respected. Starting with the
+    first game tree in a file that uses a charset not compatible with ASCII
+    (see SgfLexer#isAsciiCompatible), the rest of the file cannot be split
+    on the byte level and is read sequentially with SgfCollectionReader in
+    the thread that calls read(). */
+public final class ParallelSgfReader
+{
+    /** Callback for the game trees. */
+    public interface Listener
+    {
+        /** Called for each game tree.
+            Called in the thread that called read().
+            @param file The file containing the game tree.
+            @param index The index of the game tree in the file (starting
+            with 0).
+            @param tree The game tree.
+            @param warnings Warnings that occurred during reading the game
+            tree or null if no warnings.
+            @throws ErrorMessage To abort reading. */
+        void gameRead(File file, int index, GameTree tree, String warnings)
+            throws ErrorMessage;
+    }
+
+    /** Constructor using one thread per available processor.
+        @param inOrder Pass the game trees to the listener in the order of
+        the files; otherwise in the order in which parsing completes. */
+    public ParallelSgfReader(boolean inOrder)
+    {
+        this(Runtime.getRuntime().availableProcessors(), inOrder);
+    }
+
+    /** Constructor.
+        @param numberThreads The number of threads for parsing.
+        @param inOrder Pass the game trees to the listener in the order of
+        the files; otherwise in the order in which parsing completes. */
+    public ParallelSgfReader(int numberThreads, boolean inOrder)
+    {
+        assert numberThreads > 0;
+        m_numberThreads = numberThreads;
+        m_inOrder = inOrder;
+    }
+
+    /** Read all game trees of a list of files.
+        @param files The files.
+        @param listener The listener.
+        @throws SgfError If reading a game tree fails. If the game trees are
+        passed in the order of the files, all game trees before the one that
+        failed have been passed to the listener.
+        @throws ErrorMessage If the listener throws an error. */
+    public void read(List<File> files, Listener listener)
+        throws ErrorMessage
+    {
+        ExecutorService executor =
+            Executors.newFixedThreadPool(m_numberThreads, THREAD_FACTORY);
+        CompletionService<Result> completionService =
+            new ExecutorCompletionService<Result>(executor);
+        LinkedList<Future<Result>> pending = new LinkedList<Future<Result>>();
+        int maxPending = MAX_PENDING_PER_THREAD * m_numberThreads;
+        try
+        {
+            for (File file : files)
+            {
+                InputStream in = new FileInputStream(file);
+                int index = 0;
+                long sequentialOffset = -1;
+                try
+                {
+                    SgfCollectionScanner scanner =
+                        new SgfCollectionScanner(in);
+                    byte[] bytes;
+                    while ((bytes = scanner.next()) != null)
+                    {
+                        if (! SgfCollectionScanner.isAsciiCompatible(bytes))
+                        {
+                            sequentialOffset = scanner.getGameOffset();
+                            break;
+                        }
+                        if (pending.size() == maxPending)
+                            deliver(pending, completionService, listener);
+                        Task task = new Task(file, index++, bytes);
+                        if (m_inOrder)
+                            pending.add(executor.submit(task));
+                        else
+                            pending.add(completionService.submit(task));
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+                if (sequentialOffset >= 0)
+                {
+                    while (! pending.isEmpty())
+                        deliver(pending, completionService, listener);
+                    readSequential(file, sequentialOffset, index, listener);
+                }
+            }
+            while (! pending.isEmpty())
+                deliver(pending, completionService, listener);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new SgfError("File not found: " + e.getMessage());
+        }
+        catch (IOException e)
+        {
+            throw new SgfError("IO error");
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Result of parsing a game tree. */
+    private static final class Result
+    {
+        public int m_index;
+
+        public File m_file;
+
+        public GameTree m_tree;
+
+        public String m_warnings;
+
+        public SgfError m_error;
+    }
+
+    /** Parse a game tree. */
+    private static final class Task
+        implements Callable<Result>
+    {
+        public Task(File file, int index, byte[] bytes)
+        {
+            m_file = file;
+            m_index = index;
+            m_bytes = bytes;
+        }
+
+        public Result call()
+        {
+            Result result = new Result();
+            result.m_file = m_file;
+            result.m_index = m_index;
+            SgfLexer lexer =
+                new SgfLexer(m_bytes, 0, m_bytes.length, DEFAULT_CHARSET);
+            try
+            {
+                SgfReader reader = new SgfReader(lexer, m_file, false);
+                result.m_tree = reader.getTree();
+                result.m_warnings = reader.getWarnings();
+            }
+            catch (SgfError e)
+            {
+                result.m_error = e;
+            }
+            return result;
+        }
+
+        private final int m_index;
+
+        private final File m_file;
+
+        private final byte[] m_bytes;
+    }
+
+    /** Maximum number of scanned game trees per thread that were not yet
+        passed to the listener. */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    private static final Charset DEFAULT_CHARSET =
+        Charset.forName("ISO-8859-1");
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "ParallelSgfReader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+    private final boolean m_inOrder;
+
+    private final int m_numberThreads;
+
+    /** Read the rest of a file with SgfCollectionReader.
+        @param file The file.
+        @param offset The byte offset of the first game tree to read.
+        @param index The index of the first game tree to read in the file.
+        @param listener The listener. */
+    private static void readSequential(File file, long offset, int index,
+                                       Listener listener)
+        throws ErrorMessage, IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        in.getChannel().position(offset);
+        SgfCollectionReader reader = new SgfCollectionReader(in, file, false);
+        try
+        {
+            while (reader.hasNext())
+            {
+                GameTree tree = reader.next();
+                listener.gameRead(file, index++, tree, reader.getWarnings());
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /** Pass the next result to the listener.
+        Waits for the first pending result, if the results are passed in
+        order, otherwise for the next completed result. */
+    private void deliver(LinkedList<Future<Result>> pending,
+                         CompletionService<Result> completionService,
+                         Listener listener) throws ErrorMessage
+    {
+        Result result;
+        try
+        {
+            Future<Result> future;
+            if (m_inOrder)
+                future = pending.removeFirst();
+            else
+            {
+                future = completionService.take();
+                pending.remove(future);
+            }
+            result = future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SgfError("Interrupted");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof OutOfMemoryError)
+                throw new SgfError("Out of memory");
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IllegalStateException(cause);
+        }
+        if (result.m_error != null)
+            throw result.m_error;
+        listener.gameRead(result.m_file, result.m_index, result.m_tree,
+                          result.m_warnings);
+    }
+}
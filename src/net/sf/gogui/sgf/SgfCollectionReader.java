@@ -0,0 +1,130 @@
+// SgfCollectionReader.java
+
+package net.sf.gogui.sgf;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import net.sf.gogui.game.GameTree;
+
+/** Reader for SGF collections.
+    Reads the game trees of a file that contains several game trees one at
+    a time, so that only the game tree that was read last has to be kept in
+    memory. Text between game trees is ignored.
+    <p>
+    The charset property of each game tree is respected as long as all
+    charsets used in the collection are compatible with ASCII (see
+    SgfReader). After a game tree with a charset that is not compatible with
+    ASCII, the rest of the collection is decoded with this charset.
+    <p>
+    Usage:
+    <pre>
+    SgfCollectionReader reader = new SgfCollectionReader(in, file, false);
+    try
+    {
+        while (reader.hasNext())
+        {
+            GameTree tree = reader.next();
+            ...
+        }
+    }
+    finally
+    {
+        reader.close();
+    }
+    </pre>
+    If next() throws an SgfError, the position in the input is undefined and
+    the reader should not be used anymore. */
+public final class SgfCollectionReader
+{
+    /** Constructor.
+        @param in Stream to read from.
+        @param file File name used in error messages, can be null
+        @param onlyRoot Read only the root node of each game tree and skip
+        the rest of the game tree without parsing it. Can be used for
+        quickly reading the game information of all game trees. */
+    public SgfCollectionReader(InputStream in, File file, boolean onlyRoot)
+    {
+        m_in = in;
+        m_file = file;
+        m_onlyRoot = onlyRoot;
+        m_lexer = new SgfLexer(in, Charset.forName("ISO-8859-1"));
+    }
+
+    /** Close the stream. */
+    public void close()
+    {
+        try
+        {
+            m_in.close();
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not close SGF stream");
+        }
+    }
+
+    /** Get the number of game trees returned by next(). */
+    public int getNumberGames()
+    {
+        return m_numberGames;
+    }
+
+    /** Get warnings that occurred during reading the last game tree.
+        @return String with warning messages or null if no warnings. */
+    public String getWarnings()
+    {
+        return m_warnings;
+    }
+
+    /** Check if there is another game tree in the input.
+        @throws SgfError If reading from the stream fails. */
+    public boolean hasNext() throws SgfError
+    {
+        try
+        {
+            while (true)
+            {
+                int t = m_lexer.next();
+                if (t == SgfLexer.EOF)
+                    return false;
+                if (t == '(')
+                {
+                    m_lexer.pushBack();
+                    return true;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SgfError("IO error");
+        }
+    }
+
+    /** Read the next game tree.
+        Requires: hasNext() returned true.
+        @return The game tree. If the reader was created with onlyRoot, the
+        tree contains only the root node.
+        @throws SgfError If reading fails. */
+    public GameTree next() throws SgfError
+    {
+        m_warnings = null;
+        SgfReader reader = new SgfReader(m_lexer, m_file, m_onlyRoot);
+        m_warnings = reader.getWarnings();
+        ++m_numberGames;
+        return reader.getTree();
+    }
+
+    private final boolean m_onlyRoot;
+
+    private int m_numberGames;
+
+    private final File m_file;
+
+    private final InputStream m_in;
+
+    private final SgfLexer m_lexer;
+
+    private String m_warnings;
+}
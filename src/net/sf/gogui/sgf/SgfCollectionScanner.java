@@ -0,0 +1,187 @@
+// SgfCollectionScanner.java
+
+package net.sf.gogui.sgf;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/** Scanner for the game trees in an SGF collection.
+    Finds the boundaries of the top-level game trees by tracking the nesting
+    level of parentheses on the byte level. Property values are skipped
+    (respecting escaped characters) without tokenizing or decoding them.
+    Text between game trees is ignored.
+    <p>
+    Like SgfLexer in byte mode, the scanner requires a charset that is
+    compatible with ASCII (see SgfLexer#isAsciiCompatible). The boundaries
+    of game trees in other charsets can be wrong. Users should check the
+    charset of each game tree with isAsciiCompatible(byte[]) and read the
+    rest of the input starting at getGameOffset() with SgfCollectionReader
+    if the check fails. */
+final class SgfCollectionScanner
+{
+    /** Constructor.
+        @param in The stream. Does not need to be buffered. */
+    public SgfCollectionScanner(InputStream in)
+    {
+        m_in = in;
+    }
+
+    /** Get the byte offset of the game tree returned by the last call of
+        next() in the input. */
+    public long getGameOffset()
+    {
+        return m_gameOffset;
+    }
+
+    /** Check if the charset of a game tree is compatible with ASCII.
+        Reads the charset property of the root node in the same way as
+        SgfReader.
+        @param game The bytes of the game tree as returned by next().
+        @return false, if the root node has a charset property with a
+        supported charset that is not compatible with ASCII. */
+    public static boolean isAsciiCompatible(byte[] game) throws IOException
+    {
+        SgfLexer lexer = new SgfLexer(game, 0, game.length, DEFAULT_CHARSET);
+        if (lexer.next() != '(' || lexer.next() != ';')
+            return true;
+        while (lexer.next() == SgfLexer.PROPERTY)
+        {
+            boolean isCharset = (lexer.getProperty() == "CA");
+            while (lexer.next() == '[')
+            {
+                if (! lexer.readValue())
+                    return true;
+                if (isCharset)
+                    return isAsciiCompatible(lexer.getValue().trim());
+            }
+            lexer.pushBack();
+        }
+        return true;
+    }
+
+    /** Get the next game tree.
+        @return The bytes of the game tree from the opening parenthesis to
+        the closing parenthesis (or to the end of the input, if the game tree
+        is not closed) or null, if there are no more game trees. */
+    public byte[] next() throws IOException
+    {
+        m_gameLength = 0;
+        int depth = 0;
+        boolean inValue = false;
+        boolean quoted = false;
+        int start = m_position;
+        while (true)
+        {
+            if (m_position == m_end)
+            {
+                if (depth > 0)
+                    append(start, m_end);
+                if (! fill())
+                    break;
+                start = 0;
+            }
+            byte c = m_buffer[m_position++];
+            if (depth == 0)
+            {
+                if (c == '(')
+                {
+                    depth = 1;
+                    start = m_position - 1;
+                    m_gameOffset = m_bufferOffset + start;
+                }
+            }
+            else if (inValue)
+            {
+                if (quoted)
+                    quoted = false;
+                else if (c == '\\')
+                    quoted = true;
+                else if (c == ']')
+                    inValue = false;
+            }
+            else if (c == '[')
+                inValue = true;
+            else if (c == '(')
+                ++depth;
+            else if (c == ')' && --depth == 0)
+            {
+                append(start, m_position);
+                break;
+            }
+        }
+        if (m_gameLength == 0)
+            return null;
+        return Arrays.copyOf(m_game, m_gameLength);
+    }
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final Charset DEFAULT_CHARSET =
+        Charset.forName("ISO-8859-1");
+
+    private int m_position;
+
+    private int m_end;
+
+    private int m_gameLength;
+
+    /** Byte offset of the start of the buffer in the input. */
+    private long m_bufferOffset;
+
+    private long m_gameOffset;
+
+    private final byte[] m_buffer = new byte[BUFFER_SIZE];
+
+    /** Bytes of the current game tree. */
+    private byte[] m_game = new byte[BUFFER_SIZE];
+
+    private final InputStream m_in;
+
+    private void append(int start, int end)
+    {
+        int length = end - start;
+        if (m_gameLength + length > m_game.length)
+            m_game = Arrays.copyOf(m_game,
+                                   Math.max(2 * m_game.length,
+                                            m_gameLength + length));
+        System.arraycopy(m_buffer, start, m_game, m_gameLength, length);
+        m_gameLength += length;
+    }
+
+    private static boolean isAsciiCompatible(String charsetName)
+    {
+        try
+        {
+            if (Charset.isSupported(charsetName))
+            {
+                Charset charset = Charset.forName(charsetName);
+                return SgfLexer.isAsciiCompatible(charset);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Illegal charset name
+        }
+        // SgfReader ignores unknown charsets
+        return true;
+    }
+
+    /** Read more bytes into the buffer.
+        @return false, if the end of the input was reached. */
+    private boolean fill() throws IOException
+    {
+        m_bufferOffset += m_end;
+        m_position = 0;
+        m_end = 0;
+        int n;
+        do
+            n = m_in.read(m_buffer, 0, m_buffer.length);
+        while (n == 0);
+        if (n < 0)
+            return false;
+        m_end = n;
+        return true;
+    }
+}
@@ -0,0 +1,505 @@
+// SgfLexer.java
+
+package net.sf.gogui.sgf;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Lexer for SGF files.
+    Works directly on the bytes of the input, if the charset is compatible
+    with ASCII in the sense that the bytes of the SGF syntax characters
+    (brackets, parentheses, semicolon, backslash, letters, linebreaks) never
+    occur as part of a multi-byte character (true for UTF-8, ISO-8859-X and
+    many others). Property values are collected as bytes and decoded once
+    per value. For other charsets (e.g. Shift_JIS or Big5), the input is
+    decoded into characters first.
+    <p>
+    Property identifiers are converted to upper case and looked up in a
+    table that contains the identifiers with one or two letters and the
+    obsolete long names of standard properties (which are mapped to the
+    short names), so that the identifiers of standard properties are
+    returned as the same String instance as the corresponding literal and
+    can be compared with ==. */
+final class SgfLexer
+{
+    /** Token type for the end of the input. */
+    public static final int EOF = -1;
+
+    /** Token type for a property identifier (see getProperty). */
+    public static final int PROPERTY = -2;
+
+    /** Construct lexer for a stream.
+        @param in The stream. Does not need to be buffered.
+        @param charset The charset. */
+    public SgfLexer(InputStream in, Charset charset)
+    {
+        m_in = in;
+        m_buffer = new byte[BUFFER_SIZE];
+        setCharset(charset);
+    }
+
+    /** Construct lexer for a part of a byte array.
+        @param buffer The byte array. Is used directly and not copied.
+        @param offset The start of the input in the byte array.
+        @param length The length of the input.
+        @param charset The charset. */
+    public SgfLexer(byte[] buffer, int offset, int length, Charset charset)
+    {
+        m_in = null;
+        m_buffer = buffer;
+        m_position = offset;
+        m_end = offset + length;
+        m_bufferOffset = -offset;
+        setCharset(charset);
+    }
+
+    /** Get the current charset. */
+    public Charset getCharset()
+    {
+        return m_charset;
+    }
+
+    /** Get the byte offset of the next unread byte in the input.
+        Only valid, if isByteMode() returns true. */
+    public long getOffset()
+    {
+        assert isByteMode();
+        return m_bufferOffset + m_position;
+    }
+
+    /** Get the identifier, if the last token was PROPERTY.
+        @return The identifier in upper case with long names of standard
+        properties replaced by their short names. */
+    public String getProperty()
+    {
+        return m_property;
+    }
+
+    /** Get the value read by the last call of readValue(). */
+    public String getValue()
+    {
+        if (m_reader != null)
+            return m_text.toString();
+        return new String(m_value, 0, m_valueLength, m_charset);
+    }
+
+    /** Check if a charset can be used for lexing on the byte level.
+        @see SgfLexer */
+    public static boolean isAsciiCompatible(Charset charset)
+    {
+        String name = charset.name();
+        return (name.equals("UTF-8") || name.equals("US-ASCII")
+                || name.startsWith("ISO-8859-")
+                || name.startsWith("windows-125") || name.startsWith("KOI8-")
+                || name.equals("EUC-JP") || name.equals("EUC-KR")
+                || name.equals("GB2312"));
+    }
+
+    /** Check if the lexer works on the byte level.
+        @return true, if the charset is compatible with ASCII (see
+        isAsciiCompatible). */
+    public boolean isByteMode()
+    {
+        return (m_reader == null);
+    }
+
+    /** Mark the current position in the input.
+        The bytes of the input after the mark are kept in the buffer until
+        reset() or unmark() is called. Only allowed in byte mode and if no
+        token was pushed back. */
+    public void mark()
+    {
+        assert isByteMode() && ! m_pushBack;
+        m_mark = m_position;
+    }
+
+    /** Read the next token.
+        Skips whitespace characters.
+        @return EOF, PROPERTY or the character of the token (e.g. '(', ')',
+        ';', '[' or an unexpected character). */
+    public int next() throws IOException
+    {
+        if (m_pushBack)
+        {
+            m_pushBack = false;
+            return m_token;
+        }
+        int c;
+        do
+            c = read();
+        while (c >= 0 && c <= ' ');
+        if (c < 0)
+            m_token = EOF;
+        else if (isLetter(c))
+        {
+            readProperty(c);
+            m_token = PROPERTY;
+        }
+        else
+            m_token = c;
+        return m_token;
+    }
+
+    /** Return the last token again at the next call of next(). */
+    public void pushBack()
+    {
+        m_pushBack = true;
+    }
+
+    /** Read the text of a property value.
+        Handles escaped characters and transforms all linebreaks allowed in
+        SGF to '\n'. The value can be retrieved with getValue().
+        @return false, if the end of the input was reached before the
+        closing bracket. */
+    public boolean readValue() throws IOException
+    {
+        assert ! m_pushBack;
+        if (m_reader != null)
+            return readValueChars();
+        m_valueLength = 0;
+        boolean quoted = false;
+        int last = -1;
+        while (true)
+        {
+            if (m_position == m_end && ! fill())
+                return false;
+            int c = m_buffer[m_position++] & 0xFF;
+            if (quoted)
+            {
+                if (c != '\n' && c != '\r')
+                    appendValue(c);
+                last = c;
+                quoted = false;
+            }
+            else if (c == ']')
+                return true;
+            else if (c == '\\')
+                quoted = true;
+            else if (c == '\n' || c == '\r')
+            {
+                // Transform all linebreaks allowed in SGF (LF, CR, LFCR,
+                // CRLF) to a single '\n'
+                if ((last == '\n' || last == '\r') && c != last)
+                    last = -1;
+                else
+                {
+                    appendValue('\n');
+                    last = c;
+                }
+            }
+            else
+            {
+                appendValue(c);
+                last = c;
+            }
+        }
+    }
+
+    /** Return to the position of the last call of mark().
+        Can be used together with setCharset() to read a part of the input
+        again with a different charset. */
+    public void reset()
+    {
+        assert m_mark >= 0;
+        m_position = m_mark;
+        m_mark = -1;
+        m_peek = -2;
+        m_pushBack = false;
+    }
+
+    /** Change the charset for the remaining input.
+        If the new charset is not compatible with ASCII, the lexer switches
+        to decoding the remaining input into characters; it cannot switch
+        back to the byte level or change the charset again afterwards.
+        @param charset The new charset. */
+    public void setCharset(Charset charset)
+    {
+        if (m_reader != null)
+            return;
+        m_charset = charset;
+        if (isAsciiCompatible(charset))
+            return;
+        InputStream in =
+            new ByteArrayInputStream(m_buffer, m_position,
+                                     m_end - m_position);
+        if (m_in != null)
+            in = new SequenceInputStream(in, m_in);
+        m_reader = new BufferedReader(new InputStreamReader(in, charset));
+        m_position = m_end;
+    }
+
+    /** Skip the rest of the current game tree.
+        Skips all nodes and subtrees until the parenthesis that closes the
+        game tree, which is read at the current nesting level. Property
+        values are skipped without storing or decoding them.
+        @return false, if the end of the input was reached before the
+        closing parenthesis. */
+    public boolean skipTree() throws IOException
+    {
+        int depth = 1;
+        if (m_pushBack)
+        {
+            m_pushBack = false;
+            if (m_token == '(')
+                ++depth;
+            else if (m_token == ')')
+                --depth;
+            else if (m_token == EOF)
+                return false;
+        }
+        boolean inValue = false;
+        boolean quoted = false;
+        while (depth > 0)
+        {
+            int c = read();
+            if (c < 0)
+                return false;
+            if (inValue)
+            {
+                if (quoted)
+                    quoted = false;
+                else if (c == '\\')
+                    quoted = true;
+                else if (c == ']')
+                    inValue = false;
+            }
+            else if (c == '[')
+                inValue = true;
+            else if (c == '(')
+                ++depth;
+            else if (c == ')')
+                --depth;
+        }
+        return true;
+    }
+
+    /** Remove the mark set with mark(). */
+    public void unmark()
+    {
+        m_mark = -1;
+    }
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /** Identifiers with one or two letters indexed by
+        (first letter * 27 + second letter or 26). */
+    private static final String[] SHORT_NAMES = new String[26 * 27];
+
+    /** Obsolete long names of standard properties. */
+    private static final Map<String,String> LONG_NAMES =
+        new HashMap<String,String>();
+
+    static
+    {
+        for (int i = 0; i < 26; ++i)
+        {
+            char c1 = (char)('A' + i);
+            SHORT_NAMES[i * 27 + 26] = String.valueOf(c1).intern();
+            for (int j = 0; j < 26; ++j)
+            {
+                char c2 = (char)('A' + j);
+                SHORT_NAMES[i * 27 + j] =
+                    (String.valueOf(c1) + String.valueOf(c2)).intern();
+            }
+        }
+        LONG_NAMES.put("ADDBLACK", "AB");
+        LONG_NAMES.put("ADDEMPTY", "AE");
+        LONG_NAMES.put("ADDWHITE", "AW");
+        LONG_NAMES.put("BLACK", "B");
+        LONG_NAMES.put("BLACKRANK", "BR");
+        LONG_NAMES.put("COMMENT", "C");
+        LONG_NAMES.put("COPYRIGHT", "CP");
+        LONG_NAMES.put("DATE", "DT");
+        LONG_NAMES.put("EVENT", "EV");
+        LONG_NAMES.put("GAME", "GM");
+        LONG_NAMES.put("HANDICAP", "HA");
+        LONG_NAMES.put("KOMI", "KM");
+        LONG_NAMES.put("PLACE", "PC");
+        LONG_NAMES.put("PLAYERBLACK", "PB");
+        LONG_NAMES.put("PLAYERWHITE", "PW");
+        LONG_NAMES.put("PLAYER", "PL");
+        LONG_NAMES.put("RESULT", "RE");
+        LONG_NAMES.put("ROUND", "RO");
+        LONG_NAMES.put("RULES", "RU");
+        LONG_NAMES.put("SIZE", "SZ");
+        LONG_NAMES.put("WHITE", "W");
+        LONG_NAMES.put("WHITERANK", "WR");
+    }
+
+    private boolean m_pushBack;
+
+    private int m_token;
+
+    private int m_position;
+
+    private int m_end;
+
+    private int m_valueLength;
+
+    /** Position of the mark in the buffer or -1, if no mark is set. */
+    private int m_mark = -1;
+
+    /** Character read ahead after a property identifier or -2, if none. */
+    private int m_peek = -2;
+
+    /** Byte offset of the start of m_buffer in the input. */
+    private long m_bufferOffset;
+
+    private byte[] m_buffer;
+
+    private byte[] m_value = new byte[256];
+
+    private final InputStream m_in;
+
+    /** Reader for the remaining input if not in byte mode. */
+    private BufferedReader m_reader;
+
+    private Charset m_charset;
+
+    private String m_property;
+
+    /** Value if not in byte mode. */
+    private final StringBuilder m_text = new StringBuilder(256);
+
+    /** Letters of a property identifier with more than two letters. */
+    private final StringBuilder m_longName = new StringBuilder(16);
+
+    private void appendValue(int c)
+    {
+        if (m_valueLength == m_value.length)
+        {
+            byte[] value = new byte[2 * m_value.length];
+            System.arraycopy(m_value, 0, value, 0, m_valueLength);
+            m_value = value;
+        }
+        m_value[m_valueLength++] = (byte)c;
+    }
+
+    /** Read more bytes into the buffer.
+        Keeps the bytes after the mark, if a mark is set.
+        @return false, if the end of the input was reached. */
+    private boolean fill() throws IOException
+    {
+        if (m_in == null)
+            return false;
+        int keep = (m_mark >= 0 ? m_mark : m_end);
+        if (keep == 0 && m_end == m_buffer.length)
+        {
+            byte[] buffer = new byte[2 * m_buffer.length];
+            System.arraycopy(m_buffer, 0, buffer, 0, m_end);
+            m_buffer = buffer;
+        }
+        else if (keep > 0)
+        {
+            System.arraycopy(m_buffer, keep, m_buffer, 0, m_end - keep);
+            m_bufferOffset += keep;
+            m_position -= keep;
+            m_end -= keep;
+            if (m_mark >= 0)
+                m_mark = 0;
+        }
+        int n;
+        do
+            n = m_in.read(m_buffer, m_end, m_buffer.length - m_end);
+        while (n == 0);
+        if (n < 0)
+            return false;
+        m_end += n;
+        return true;
+    }
+
+    private static boolean isLetter(int c)
+    {
+        return ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'));
+    }
+
+    private int read() throws IOException
+    {
+        if (m_peek != -2)
+        {
+            int c = m_peek;
+            m_peek = -2;
+            return c;
+        }
+        if (m_reader != null)
+            return m_reader.read();
+        if (m_position == m_end && ! fill())
+            return -1;
+        return m_buffer[m_position++] & 0xFF;
+    }
+
+    private void readProperty(int c) throws IOException
+    {
+        int length = 0;
+        int index = 0;
+        m_longName.setLength(0);
+        // Letters followed by letters or digits (like a word token of
+        // StreamTokenizer)
+        while (isLetter(c) || (length > 0 && c >= '0' && c <= '9'))
+        {
+            c = Character.toUpperCase((char)c);
+            if (length < 2 && c >= 'A' && c <= 'Z')
+                index = (length == 0 ? (c - 'A') * 27 + 26
+                         : index - 26 + (c - 'A'));
+            m_longName.append((char)c);
+            ++length;
+            c = read();
+        }
+        m_peek = c;
+        if (length == 1 || (length == 2 && isLetter(m_longName.charAt(1))))
+        {
+            m_property = SHORT_NAMES[index];
+            return;
+        }
+        String name = m_longName.toString();
+        String shortName = LONG_NAMES.get(name);
+        m_property = (shortName != null ? shortName : name);
+    }
+
+    /** Implementation of readValue(), if not in byte mode. */
+    private boolean readValueChars() throws IOException
+    {
+        m_text.setLength(0);
+        boolean quoted = false;
+        int last = -1;
+        while (true)
+        {
+            int c = read();
+            if (c < 0)
+                return false;
+            if (quoted)
+            {
+                if (c != '\n' && c != '\r')
+                    m_text.append((char)c);
+                last = c;
+                quoted = false;
+            }
+            else if (c == ']')
+                return true;
+            else if (c == '\\')
+                quoted = true;
+            else if (c == '\n' || c == '\r')
+            {
+                if ((last == '\n' || last == '\r') && c != last)
+                    last = -1;
+                else
+                {
+                    m_text.append('\n');
+                    last = c;
+                }
+            }
+            else
+            {
+                m_text.append((char)c);
+                last = c;
+            }
+        }
+    }
+}
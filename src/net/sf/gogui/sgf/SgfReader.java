@@ -2,15 +2,12 @@
 
 package net.sf.gogui.sgf;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.StreamTokenizer;
-import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.Map;
 import java.util.TreeMap;
@@ -18,8 +15,11 @@ import java.util.TreeSet;
 import java.util.ArrayList;
 import java.util.Locale;
 import java.util.Set;
+import net.sf.gogui.game.CompactGameTree;
+import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.GameInfo;
 import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.LazyString;
 import net.sf.gogui.game.MarkType;
 import net.sf.gogui.game.Node;
 import net.sf.gogui.game.StringInfo;
@@ -37,6 +37,7 @@ import net.sf.gogui.go.Move;
 import net.sf.gogui.go.PointList;
 import net.sf.gogui.util.ByteCountInputStream;
 import net.sf.gogui.util.ProgressShow;
+import net.sf.gogui.util.StringUtil;
 
 /** SGF reader.
     @bug The error messages currently don't contain line numbers, see
@@ -45,13 +46,13 @@ public final class SgfReader
 {
     /** Read SGF file from stream.
         Default charset is ISO-8859-1 according to the SGF version 4 standard.
-        The charset property is only respected if the stream is a
-        FileInputStream, because it has to be reopened with a different
-        encoding.
+        If the root node has a charset property, the raw bytes of the root
+        node are read again with this charset and the rest of the stream is
+        decoded with it, so the stream is read only once.
         The stream is closed after reading.
         @param in Stream to read from.
-        @param file File name if input stream is a FileInputStream to allow
-        reopening the stream after a charset change
+        @param file File name if input stream is a FileInputStream (used in
+        error messages), can be null
         @param progressShow Callback to show progress, can be null
         @param size Size of stream if progressShow != null
         @throws SgfError If reading fails. */
@@ -59,37 +60,68 @@ public final class SgfReader
                      long size)
         throws SgfError
     {
+        this(in, file, progressShow, size, false);
+    }
+
+    /** Read SGF file from stream.
+        Like SgfReader(InputStream,File,ProgressShow,long), but allows to
+        store the game tree in a CompactGameTree instead of a GameTree.
+        In this case the nodes are transferred to the compact tree while
+        reading, so that the nodes of the whole tree never exist at the same
+        time as Node objects.
+        @param in Stream to read from.
+        @param file File name if input stream is a FileInputStream (used in
+        error messages), can be null
+        @param progressShow Callback to show progress, can be null
+        @param size Size of stream if progressShow != null
+        @param compact Store the game tree in a CompactGameTree (see
+        getCompactTree())
+        @throws SgfError If reading fails. */
+    public SgfReader(InputStream in, File file, ProgressShow progressShow,
+                     long size, boolean compact)
+        throws SgfError
+    {
+        this(in, file, progressShow, size, compact, false);
+    }
+
+    /** Read SGF file from stream.
+        Like SgfReader(InputStream,File,ProgressShow,long,boolean), but allows
+        to load comments and unknown properties on demand.
+        In this mode, only the locations of the values of comments and
+        unknown properties in the file are stored in the tree. The values are
+        read again from a memory-mapped view of the file, when they are
+        needed. This mode is only used if the stream is a FileInputStream
+        positioned at the start of the file, the file size is less than
+        2 GB, and the charset of the file is compatible with ASCII (see
+        SgfLexer); otherwise all values are loaded into memory. The file
+        must not be modified in place while the game tree is used. To save
+        the tree to the same file, use GameWriter, which replaces the file
+        instead of overwriting it (see releaseFile()).
+        @param in Stream to read from.
+        @param file File name if input stream is a FileInputStream (used in
+        error messages and for loading values on demand), can be null
+        @param progressShow Callback to show progress, can be null
+        @param size Size of stream if progressShow != null
+        @param compact Store the game tree in a CompactGameTree (see
+        getCompactTree())
+        @param lazy Load comments and unknown properties on demand
+        @throws SgfError If reading fails. */
+    public SgfReader(InputStream in, File file, ProgressShow progressShow,
+                     long size, boolean compact, boolean lazy)
+        throws SgfError
+    {
+        m_compact = compact;
         m_file = file;
         m_progressShow = progressShow;
         m_size = size;
-        m_isFile = (in instanceof FileInputStream && file != null);
+        m_lazy = (lazy && file != null && isAtStartOfFile(in, file)
+                  && MappedSgfFile.canMap(file));
+        m_onlyRoot = false;
         if (progressShow != null)
             progressShow.showProgress(0);
         try
         {
-            // SGF FF 4 standard defines ISO-8859-1 as default
-            readSgf(in, "ISO-8859-1");
-        }
-        catch (SgfCharsetChanged e1)
-        {
-            try
-            {
-                in.close();
-                in = new FileInputStream(file);
-            }
-            catch (IOException e2)
-            {
-                throw new SgfError("Could not reset SGF stream after"
-                                   + " charset change.");
-            }
-            try
-            {
-                readSgf(in, m_newCharset);
-            }
-            catch (SgfCharsetChanged e3)
-            {
-                assert false;
-            }
+            readSgf(in);
         }
         finally
         {
@@ -104,8 +136,52 @@ public final class SgfReader
         }
     }
 
+    /** Read a single game tree from a lexer.
+        Used by SgfCollectionReader. The lexer must be positioned before the
+        opening parenthesis of the game tree; after reading, it is
+        positioned after the closing parenthesis.
+        @param lexer The lexer.
+        @param file File name used in error messages, can be null
+        @param onlyRoot Read only the root node and skip the rest of the
+        game tree
+        @throws SgfError If reading fails. */
+    SgfReader(SgfLexer lexer, File file, boolean onlyRoot) throws SgfError
+    {
+        m_compact = false;
+        m_file = file;
+        m_progressShow = null;
+        m_size = 0;
+        m_lazy = false;
+        m_onlyRoot = onlyRoot;
+        m_lexer = lexer;
+        try
+        {
+            if (lexer.isByteMode())
+                lexer.setCharset(DEFAULT_CHARSET);
+            readTree();
+        }
+        catch (IOException e)
+        {
+            throw new SgfError("IO error");
+        }
+        catch (OutOfMemoryError e)
+        {
+            throw new SgfError("Out of memory");
+        }
+    }
+
+    /** Get game tree of loaded SGF file, if the reader was created for a
+        compact tree.
+        @return The game tree or null, if the reader was not created for a
+        compact tree. */
+    public CompactGameTree getCompactTree()
+    {
+        return m_compactTree;
+    }
+
     /** Get game tree of loaded SGF file.
-        @return The game tree. */
+        @return The game tree or null, if the reader was created for a
+        compact tree. */
     public GameTree getTree()
     {
         return m_tree;
@@ -126,12 +202,26 @@ public final class SgfReader
         return result.toString();
     }
 
-    private static class SgfCharsetChanged
-        extends Exception
+    /** Release a file used for loading values on demand.
+        Needs to be called before a file that was read with lazy loading
+        is replaced or deleted. The values that are still needed are copied
+        into memory.
+        @param file The file.
+        @throws IOException If the file name cannot be resolved. */
+    public static void releaseFile(File file) throws IOException
     {
+        MappedSgfFile.close(file);
     }
 
-    private final boolean m_isFile;
+    /** SGF FF 4 standard defines ISO-8859-1 as default. */
+    private static final Charset DEFAULT_CHARSET =
+        Charset.forName("ISO-8859-1");
+
+    private final boolean m_compact;
+
+    private final boolean m_lazy;
+
+    private final boolean m_onlyRoot;
 
     /** Has current node inconsistent FF3 overtime settings properties. */
     private boolean m_ignoreOvertime;
@@ -150,40 +240,88 @@ public final class SgfReader
 
     private ByteCountInputStream m_byteCountInputStream;
 
-    private java.io.Reader m_reader;
+    private SgfLexer m_lexer;
+
+    /** File for loading values on demand.
+        Null if all values are loaded into memory. */
+    private MappedSgfFile m_mappedFile;
+
+    /** Byte offset of the last value read by readValue().
+        Only used if m_mappedFile is not null. */
+    private long m_valueOffset;
+
+    /** Byte length of the last value read by readValue().
+        Includes the closing bracket. Only used if m_mappedFile is not
+        null. */
+    private int m_valueLength;
 
     private GameTree m_tree;
 
+    private CompactGameTree m_compactTree;
+
+    private Node m_root;
+
+    /** Nodes read so far, indexed by node number.
+        Only used if the tree is not stored in a compact tree. */
+    private final ArrayList<Node> m_nodes = new ArrayList<Node>();
+
     private final ProgressShow m_progressShow;
 
     /** Contains strings with warnings. */
     private final Set<String> m_warnings = new TreeSet<String>();
 
-    private StreamTokenizer m_tokenizer;
-
     private final File m_file;
 
-    private String m_newCharset;
-
-    /** Pre-allocated temporary buffer for use within functions. */
-    private final StringBuilder m_buffer = new StringBuilder(512);
-
     private final PointList m_pointList = new PointList();
 
+    /** Stack of father nodes used in readNodes(). */
+    private int[] m_stack = new int[64];
+
     /** Map containing the properties of the current node. */
     private final Map<String,ArrayList<String>> m_props =
         new TreeMap<String,ArrayList<String>>();
 
-    /** Apply some fixes for broken SGF files. */
-    private void applyFixes()
+    /** Map containing the values of the properties of the current node to
+        be loaded on demand.
+        Only used if m_mappedFile is not null. */
+    private final Map<String,ArrayList<LazyString>> m_lazyProps =
+        new TreeMap<String,ArrayList<LazyString>>();
+
+    /** Add a node to the tree.
+        @param father The number of the father node or -1, if the node is the
+        root node.
+        @param node The node.
+        @return The number of the node. */
+    private int addNode(int father, Node node)
     {
-        Node root = m_tree.getRoot();
-        GameInfo info = m_tree.getGameInfo(root);
-        if (root.hasSetup() && root.getPlayer() == null)
+        if (father < 0)
+        {
+            m_root = node;
+            if (m_compact)
+            {
+                m_compactTree = new CompactGameTree(getBoardSize(), node);
+                return 0;
+            }
+        }
+        else if (m_compact)
+            return m_compactTree.append(father, node);
+        else
+            m_nodes.get(father).append(node);
+        m_nodes.add(node);
+        return m_nodes.size() - 1;
+    }
+
+    /** Apply some fixes for broken SGF files.
+        @param root The root node of the tree (may be a view of the root
+        node in a compact tree). */
+    private void applyFixes(ConstNode root)
+    {
+        GameInfo info = m_root.getGameInfo();
+        if (m_root.hasSetup() && m_root.getPlayer() == null)
         {
             if (info.getHandicap() > 0)
             {
-                root.setPlayer(WHITE);
+                m_root.setPlayer(WHITE);
             }
             else
             {
@@ -191,7 +329,7 @@ public final class SgfReader
                 boolean hasWhiteChildMoves = false;
                 for (int i = 0; i < root.getNumberChildren(); ++i)
                 {
-                    Move move = root.getChild(i).getMove();
+                    Move move = root.getChildConst(i).getMove();
                     if (move == null)
                         continue;
                     if (move.getColor() == BLACK)
@@ -200,88 +338,20 @@ public final class SgfReader
                         hasWhiteChildMoves = true;
                 }
                 if (hasBlackChildMoves && ! hasWhiteChildMoves)
-                    root.setPlayer(BLACK);
+                    m_root.setPlayer(BLACK);
                 if (hasWhiteChildMoves && ! hasBlackChildMoves)
-                    root.setPlayer(WHITE);
+                    m_root.setPlayer(WHITE);
             }
         }
     }
 
     private void checkEndOfFile() throws SgfError, IOException
     {
-        while (true)
-        {
-            m_tokenizer.nextToken();
-            int t = m_tokenizer.ttype;
-            if (t == '(')
-                throw getError("Multiple SGF trees not supported");
-            else if (t == StreamTokenizer.TT_EOF)
-                return;
-            else if (t != ' ' && t != '\t' && t != '\n' && t != '\r')
-            {
-                setWarning("Extra text after SGF tree");
-                return;
-            }
-        }
-    }
-
-    /** Check for obsolete long names for standard properties.
-        These are still used in some old SGF files.
-        @param property Property name
-        @return Short standard version of the property or original property */
-    private String checkForObsoleteLongProps(String property)
-    {
-        if (property.length() <= 2)
-            return property;
-        property = property.intern();
-        String shortName = null;
-        if (property == "ADDBLACK")
-            shortName = "AB";
-        else if (property == "ADDEMPTY")
-            shortName = "AE";
-        else if (property == "ADDWHITE")
-            shortName = "AW";
-        else if (property == "BLACK")
-            shortName = "B";
-        else if (property == "BLACKRANK")
-            shortName = "BR";
-        else if (property == "COMMENT")
-            shortName = "C";
-        else if (property == "COPYRIGHT")
-            shortName = "CP";
-        else if (property == "DATE")
-            shortName = "DT";
-        else if (property == "EVENT")
-            shortName = "EV";
-        else if (property == "GAME")
-            shortName = "GM";
-        else if (property == "HANDICAP")
-            shortName = "HA";
-        else if (property == "KOMI")
-            shortName = "KM";
-        else if (property == "PLACE")
-            shortName = "PC";
-        else if (property == "PLAYERBLACK")
-            shortName = "PB";
-        else if (property == "PLAYERWHITE")
-            shortName = "PW";
-        else if (property == "PLAYER")
-            shortName = "PL";
-        else if (property == "RESULT")
-            shortName = "RE";
-        else if (property == "ROUND")
-            shortName = "RO";
-        else if (property == "RULES")
-            shortName = "RU";
-        else if (property == "SIZE")
-            shortName = "SZ";
-        else if (property == "WHITE")
-            shortName = "W";
-        else if (property == "WHITERANK")
-            shortName = "WR";
-        if (shortName != null)
-            return shortName;
-        return property;
+        int t = m_lexer.next();
+        if (t == '(')
+            throw getError("Multiple SGF trees not supported");
+        else if (t != SgfLexer.EOF)
+            setWarning("Extra text after SGF tree");
     }
 
     private GameInfo createGameInfo(Node node)
@@ -293,22 +363,20 @@ public final class SgfReader
     {
         while (true)
         {
-            m_tokenizer.nextToken();
-            int t = m_tokenizer.ttype;
+            int t = m_lexer.next();
             if (t == '(')
             {
                 // Better make sure that ( is followed by a node
-                m_tokenizer.nextToken();
-                t = m_tokenizer.ttype;
+                t = m_lexer.next();
                 if (t == ';')
                 {
-                    m_tokenizer.pushBack();
+                    m_lexer.pushBack();
                     return;
                 }
                 else
                     setWarning("Extra text before SGF tree");
             }
-            else if (t == StreamTokenizer.TT_EOF)
+            else if (t == SgfLexer.EOF)
                 throw getError("No root tree found");
             else
                 setWarning("Extra text before SGF tree");
@@ -322,22 +390,32 @@ public final class SgfReader
         return m_boardSize;
     }
 
-    private SgfError getError(String message)
+    /** Get the charset of the CA property of the current node.
+        @return The charset or null, if the node has no CA property or the
+        charset is not supported (a warning is set in this case). */
+    private Charset getCharset()
     {
-        // Line numbers in error messages is currently disabled because
-        // StreamTokenizer.lineno() does not work as expected with Windows-style
-        // line endings (it seems to count CRLF as two line endings; last with
-        // Java 1.7).
-        /*
-        int lineNumber = m_tokenizer.lineno();
-        if (m_file == null)
-            return new SgfError(lineNumber + ": " + message);
-        else
+        ArrayList<String> values = m_props.get("CA");
+        if (values == null)
+            return null;
+        String name = values.get(0).trim();
+        try
+        {
+            if (Charset.isSupported(name))
+                return Charset.forName(name);
+        }
+        catch (IllegalArgumentException e)
         {
-            String s = m_file.getName() + ":" + lineNumber + ": " + message;
-            return new SgfError(s);
+            // Illegal charset name
         }
-        */
+        setWarning("Unknown character set \"" + name + "\"");
+        return null;
+    }
+
+    private SgfError getError(String message)
+    {
+        // Line numbers in error messages are currently not supported,
+        // SgfLexer does not count lines
         if (m_file == null)
             return new SgfError(message);
         else
@@ -345,7 +423,7 @@ public final class SgfReader
     }
 
     private void handleProps(Node node, boolean isRoot)
-        throws IOException, SgfError, SgfCharsetChanged
+        throws IOException, SgfError
     {
         // Handle SZ property first to be able to parse points
         if (m_props.containsKey("SZ"))
@@ -411,18 +489,15 @@ public final class SgfReader
             else if (p == "BT")
                 set(node, StringInfoColor.TEAM, BLACK, v);
             else if (p == "C")
-                node.setComment(v);
+            {
+                if (m_mappedFile != null && ! StringUtil.isEmpty(v))
+                    node.setCommentLazy(m_lazyProps.get(p).get(0));
+                else
+                    node.setComment(v);
+            }
             else if (p == "CA")
             {
-                if (isRoot && m_isFile && m_newCharset == null)
-                {
-                    m_newCharset = v.trim();
-                    if (Charset.isSupported(m_newCharset))
-                        throw new SgfCharsetChanged();
-                    else
-                        setWarning("Unknown character set \"" + m_newCharset
-                                   + "\"");
-                }
+                // Handled in readRootProps()
             }
             else if (p == "CP")
                 set(node, StringInfo.COPYRIGHT, v);
@@ -569,7 +644,32 @@ public final class SgfReader
             else if (p == "WT")
                 set(node, StringInfoColor.TEAM, WHITE, v);
             else if (p != "FF" && p != "GN" && p != "AP")
-                node.addSgfProperty(p, values);
+            {
+                if (m_mappedFile != null)
+                    node.addSgfPropertyLazy(p, m_lazyProps.get(p));
+                else
+                    node.addSgfProperty(p, values);
+            }
+        }
+    }
+
+    /** Check that a stream is a FileInputStream positioned at the start of
+        a file.
+        Required for lazy loading, which uses the byte offsets in the
+        stream as offsets in the file. */
+    private static boolean isAtStartOfFile(InputStream in, File file)
+    {
+        if (! (in instanceof FileInputStream))
+            return false;
+        try
+        {
+            FileChannel channel = ((FileInputStream)in).getChannel();
+            return (channel.position() == 0
+                    && channel.size() == file.length());
+        }
+        catch (IOException e)
+        {
+            return false;
         }
     }
 
@@ -761,73 +861,98 @@ public final class SgfReader
             m_preByoyomi = preByoyomi;
     }
 
-    private Node readNext(Node father, boolean isRoot)
-        throws IOException, SgfError, SgfCharsetChanged
+    /** Read a node.
+        The semicolon starting the node must already be read.
+        @param father The number of the father node or -1, if reading the
+        root node.
+        @param isRoot Whether the node is the root node.
+        @return The number of the node. */
+    private int readNode(int father, boolean isRoot)
+        throws IOException, SgfError
     {
-        if (m_progressShow != null)
-        {
-            int percent;
-            if (m_size > 0)
-            {
-                long count = m_byteCountInputStream.getCount();
-                percent = (int)(count * 100 / m_size);
-            }
-            else
-                percent = 100;
-            if (percent != m_lastPercent)
-                m_progressShow.showProgress(percent);
-            m_lastPercent = percent;
-        }
-        m_tokenizer.nextToken();
-        int ttype = m_tokenizer.ttype;
-        if (ttype == '(')
-        {
-            Node node = father;
-            while (node != null)
-                node = readNext(node, false);
-            return father;
-        }
-        if (ttype == ')')
-            return null;
-        if (ttype == StreamTokenizer.TT_EOF)
-        {
-            setWarning("Game tree not closed");
-            return null;
-        }
-        if (ttype != ';')
-            throw getError("Next node expected");
         Node son = new Node();
-        if (father != null)
-            father.append(son);
         m_ignoreOvertime = false;
         m_byoyomiMoves = -1;
         m_byoyomi = -1;
         m_preByoyomi = -1;
         m_props.clear();
-        while (readProp());
+        m_lazyProps.clear();
+        if (isRoot)
+            readRootProps();
+        else
+            while (readProp());
         handleProps(son, isRoot);
         setTimeSettings(son);
-        return son;
+        return addNode(father, son);
+    }
+
+    /** Read the nodes and subtrees following a node.
+        Reads until the parenthesis that closes the game tree. Uses an
+        explicit stack for the father nodes of the subtrees instead of
+        recursion, so that the nesting depth of subtrees is only limited by
+        the available memory.
+        @param node The number of the node. */
+    private void readNodes(int node) throws IOException, SgfError
+    {
+        int[] stack = m_stack;
+        int stackSize = 0;
+        while (true)
+        {
+            if (m_progressShow != null)
+                showProgress();
+            int ttype = m_lexer.next();
+            if (ttype == ';')
+                node = readNode(node, false);
+            else if (ttype == '(')
+            {
+                if (stackSize == stack.length)
+                {
+                    int[] newStack = new int[2 * stack.length];
+                    System.arraycopy(stack, 0, newStack, 0, stackSize);
+                    stack = newStack;
+                    m_stack = stack;
+                }
+                stack[stackSize++] = node;
+            }
+            else if (ttype == ')')
+            {
+                if (stackSize == 0)
+                    return;
+                node = stack[--stackSize];
+            }
+            else if (ttype == SgfLexer.EOF)
+            {
+                setWarning("Game tree not closed");
+                return;
+            }
+            else
+                throw getError("Next node expected");
+        }
     }
 
     private boolean readProp() throws IOException, SgfError
     {
-        m_tokenizer.nextToken();
-        int ttype = m_tokenizer.ttype;
-        if (ttype == StreamTokenizer.TT_WORD)
+        if (m_lexer.next() == SgfLexer.PROPERTY)
         {
-            // Use intern() to allow fast comparsion with ==
-            String p = m_tokenizer.sval.toUpperCase(Locale.ENGLISH).intern();
+            // Identifiers of standard properties can be compared with ==
+            String p = m_lexer.getProperty();
             ArrayList<String> values = new ArrayList<String>();
+            ArrayList<LazyString> lazyValues = null;
+            if (m_mappedFile != null)
+                lazyValues = new ArrayList<LazyString>();
             String s;
             while ((s = readValue()) != null)
+            {
                 values.add(s);
+                if (lazyValues != null)
+                    lazyValues.add(m_mappedFile.createValue(m_valueOffset,
+                                                            m_valueLength));
+            }
             if (values.isEmpty())
             {
                 setWarning("Property \"" + p + "\" has no value");
                 return true;
             }
-            p = checkForObsoleteLongProps(p);
             if (m_props.containsKey(p))
                 // Silently accept duplicate properties, as long as they have
                 // the same value (only check for single value properties)
@@ -835,51 +960,64 @@ public final class SgfReader
                     || ! values.get(0).equals(m_props.get(p).get(0)))
                     setWarning("Duplicate property " + p + " in node");
             m_props.put(p, values);
+            if (lazyValues != null)
+                m_lazyProps.put(p, lazyValues);
             return true;
         }
-        if (ttype != '\n')
-            // Don't pushBack newline, will confuse lineno() (Bug 4942853)
-            m_tokenizer.pushBack();
+        m_lexer.pushBack();
         return false;
     }
 
-    private void readSgf(InputStream in, String charset)
-        throws SgfError, SgfCharsetChanged
+    /** Read the properties of the root node.
+        If the root node has a charset property, the properties are read
+        again with this charset, which is then used for the rest of the
+        input. */
+    private void readRootProps() throws IOException, SgfError
+    {
+        if (! m_lexer.isByteMode())
+        {
+            // Only possible if several game trees are read with the same
+            // lexer and a previous tree used a charset that is not
+            // compatible with ASCII
+            while (readProp());
+            Charset charset = getCharset();
+            if (charset != null && ! charset.equals(m_lexer.getCharset()))
+                setWarning("Character set \"" + charset.name()
+                           + "\" ignored");
+            return;
+        }
+        m_lexer.mark();
+        while (readProp());
+        Charset charset = getCharset();
+        if (charset != null && ! charset.equals(m_lexer.getCharset()))
+        {
+            m_lexer.reset();
+            m_lexer.setCharset(charset);
+            if (m_mappedFile != null)
+                m_mappedFile = (m_lexer.isByteMode() ?
+                                new MappedSgfFile(m_file, charset) : null);
+            m_props.clear();
+            m_lazyProps.clear();
+            while (readProp());
+        }
+        m_lexer.unmark();
+    }
+
+    private void readSgf(InputStream in) throws SgfError
     {
         try
         {
-            m_boardSize = -1;
             if (m_progressShow != null)
             {
                 m_byteCountInputStream = new ByteCountInputStream(in);
                 in = m_byteCountInputStream;
             }
-            InputStreamReader reader;
-            try
-            {
-                reader = new InputStreamReader(in, charset);
-            }
-            catch (UnsupportedEncodingException e)
-            {
-                // Should actually not happen, because this function is only
-                // called with charset ISO-8859-1 (should be supported on every
-                // Java platform according to Charset documentation) or with a
-                // CA property value, which was already checked with
-                // Charset.isSupported()
-                setWarning("Character set \"" + charset + "\" not supported");
-                reader = new InputStreamReader(in);
-            }
-            m_reader = new BufferedReader(reader);
-            m_tokenizer = new StreamTokenizer(m_reader);
-            findRoot();
-            Node root = readNext(null, true);
-            Node node = root;
-            while (node != null)
-                node = readNext(node, false);
+            m_lexer = new SgfLexer(in, DEFAULT_CHARSET);
+            m_mappedFile = null;
+            if (m_lazy && m_lexer.isByteMode())
+                m_mappedFile = new MappedSgfFile(m_file, DEFAULT_CHARSET);
+            readTree();
             checkEndOfFile();
-            getBoardSize(); // Set to default value if still unknown
-            m_tree = new GameTree(m_boardSize, root);
-            applyFixes();
         }
         catch (FileNotFoundException e)
         {
@@ -895,61 +1033,61 @@ public final class SgfReader
         }
     }
 
+    private void readTree() throws IOException, SgfError
+    {
+        m_boardSize = -1;
+        m_nodes.clear();
+        m_compactTree = null;
+        findRoot();
+        m_lexer.next(); // Semicolon pushed back by findRoot()
+        int root = readNode(-1, true);
+        if (m_onlyRoot)
+        {
+            if (! m_lexer.skipTree())
+                setWarning("Game tree not closed");
+        }
+        else
+            readNodes(root);
+        getBoardSize(); // Set to default value if still unknown
+        if (m_compact)
+            applyFixes(m_compactTree.getRootConst());
+        else
+        {
+            m_nodes.clear();
+            m_tree = new GameTree(m_boardSize, m_root);
+            applyFixes(m_root);
+        }
+    }
+
     private String readValue() throws IOException, SgfError
     {
-        m_tokenizer.nextToken();
-        int ttype = m_tokenizer.ttype;
-        if (ttype != '[')
+        if (m_lexer.next() != '[')
         {
-            if (ttype != '\n')
-                // Don't pushBack newline, will confuse lineno() (Bug 4942853)
-                m_tokenizer.pushBack();
+            m_lexer.pushBack();
             return null;
         }
-        m_buffer.setLength(0);
-        boolean quoted = false;
-        Character last = null;
-        while (true)
+        if (m_mappedFile != null)
+            m_valueOffset = m_lexer.getOffset();
+        if (! m_lexer.readValue())
+            throw getError("Property value incomplete");
+        if (m_mappedFile != null)
+            m_valueLength = (int)(m_lexer.getOffset() - m_valueOffset);
+        return m_lexer.getValue();
+    }
+
+    private void showProgress()
+    {
+        int percent;
+        if (m_size > 0)
         {
-            int c = m_reader.read();
-            if (c < 0)
-                throw getError("Property value incomplete");
-            if (quoted)
-            {
-                if (c != '\n' && c != '\r')
-                    m_buffer.append((char)c);
-                last = Character.valueOf((char)c);
-                quoted = false;
-            }
-            else
-            {
-                if (c == ']')
-                    break;
-                quoted = (c == '\\');
-                if (! quoted)
-                {
-                    // Transform all linebreaks allowed in SGF (LF, CR, LFCR,
-                    // CRLF) to a single '\n'
-                    boolean isLinebreak = (c == '\n' || c == '\r');
-                    boolean lastLinebreak =
-                        (last != null && (last.charValue() == '\n'
-                                          || last.charValue() == '\r'));
-                    boolean filterSecondLinebreak =
-                        (isLinebreak && lastLinebreak && c != last.charValue());
-                    if (filterSecondLinebreak)
-                        last = null;
-                    else
-                    {
-                        if (isLinebreak)
-                            m_buffer.append('\n');
-                        else
-                            m_buffer.append((char)c);
-                        last = Character.valueOf((char)c);
-                    }
-                }
-            }
+            long count = m_byteCountInputStream.getCount();
+            percent = (int)(count * 100 / m_size);
         }
-        return m_buffer.toString();
+        else
+            percent = 100;
+        if (percent != m_lastPercent)
+            m_progressShow.showProgress(percent);
+        m_lastPercent = percent;
     }
 
     private void set(Node node, StringInfo type, String value)
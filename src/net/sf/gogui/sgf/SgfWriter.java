@@ -5,6 +5,7 @@ package net.sf.gogui.sgf;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Map;
 import net.sf.gogui.game.ConstGameInfo;
 import net.sf.gogui.game.ConstGameTree;
@@ -54,7 +55,7 @@ public class SgfWriter
         m_size = tree.getBoardSize();
         printHeader(application, version);
         printNewLine();
-        printNode(tree.getRootConst(), true);
+        printTree(tree.getRootConst());
         print(")");
         m_out.println(m_buffer.toString());
         m_out.close();
@@ -120,20 +121,6 @@ public class SgfWriter
         return result.toString();
     }
 
-    private static int getMoveNumberInVariation(ConstNode node)
-    {
-        int moveNumber = 0;
-        while (node != null)
-        {
-            if (node.getMove() != null)
-                ++moveNumber;
-            node = node.getFatherConst();
-            if (node != null && node.getNumberChildren() > 1)
-                break;
-        }
-        return moveNumber;
-    }
-
     private String getPoint(GoPoint p)
     {
         if (p == null)
@@ -279,17 +266,18 @@ public class SgfWriter
             print(property + getPointList(marked));
     }
 
-    private void printNode(ConstNode node, boolean isRoot)
+    /** Print the properties of a node.
+        @param node The node.
+        @param isRoot True, if the node is the root node.
+        @param moveNumber The number of moves in the variation of the node
+        up to and including the node. */
+    private void printNode(ConstNode node, boolean isRoot, int moveNumber)
     {
         Move move = node.getMove();
         if (! isRoot)
         {
-            if (move != null)
-            {
-                int moveNumber = getMoveNumberInVariation(node);
-                if (moveNumber != 1 && moveNumber % 10 == 1)
-                    printNewLine();
-            }
+            if (move != null && moveNumber != 1 && moveNumber % 10 == 1)
+                printNewLine();
             print(";");
         }
         ConstGameInfo info = node.getGameInfoConst();
@@ -352,21 +340,6 @@ public class SgfWriter
                 for (int i = 0; i < sgfProps.getNumberValues(key); ++i)
                     print("[" + sgfProps.getValue(key, i) + "]");
             }
-        int numberChildren = node.getNumberChildren();
-        if (numberChildren == 0)
-            return;
-        if (numberChildren == 1)
-        {
-            printNode(node.getChildConst(), false);
-            return;
-        }
-        for (int i = 0; i < numberChildren; ++i)
-        {
-            printNewLine();
-            print("(");
-            printNode(node.getChildConst(i), false);
-            print(")");
-        }
     }
 
     private void printPosition(ConstBoard board)
@@ -386,6 +359,53 @@ public class SgfWriter
         printToPlay(board.getToMove());
     }
 
+    /** Print the nodes of a tree.
+        Uses an explicit stack instead of recursion, so that the depth of
+        the tree is not limited by the thread stack size. */
+    private void printTree(ConstNode root)
+    {
+        // A null element on the stack closes a variation
+        ArrayList<ConstNode> stack = new ArrayList<ConstNode>();
+        // Move numbers in the variation of the fathers of the nodes
+        ArrayList<Integer> moveNumbers = new ArrayList<Integer>();
+        stack.add(root);
+        moveNumbers.add(Integer.valueOf(0));
+        while (! stack.isEmpty())
+        {
+            ConstNode node = stack.remove(stack.size() - 1);
+            int moveNumber = moveNumbers.remove(moveNumbers.size() - 1);
+            if (node == null)
+            {
+                print(")");
+                continue;
+            }
+            ConstNode father = node.getFatherConst();
+            if (father != null && father.getNumberChildren() > 1)
+            {
+                printNewLine();
+                print("(");
+                moveNumber = 0;
+            }
+            if (node.getMove() != null)
+                ++moveNumber;
+            printNode(node, node == root, moveNumber);
+            int numberChildren = node.getNumberChildren();
+            if (numberChildren == 1)
+            {
+                stack.add(node.getChildConst());
+                moveNumbers.add(Integer.valueOf(moveNumber));
+            }
+            else
+                for (int i = numberChildren - 1; i >= 0; --i)
+                {
+                    stack.add(null);
+                    moveNumbers.add(Integer.valueOf(0));
+                    stack.add(node.getChildConst(i));
+                    moveNumbers.add(Integer.valueOf(moveNumber));
+                }
+        }
+    }
+
     private void printSetup(ConstPointList black, ConstPointList white)
     {
         if (black.size() > 0 || white.size() > 0)
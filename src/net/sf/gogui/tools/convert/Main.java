@@ -2,13 +2,18 @@
 
 package net.sf.gogui.tools.convert;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Locale;
 import net.sf.gogui.game.ConstGameTree;
+import net.sf.gogui.game.GameTree;
 import net.sf.gogui.gamefile.GameReader;
+import net.sf.gogui.sgf.ParallelSgfReader;
 import net.sf.gogui.sgf.SgfWriter;
 import net.sf.gogui.tex.TexWriter;
 import net.sf.gogui.util.ErrorMessage;
@@ -28,6 +33,7 @@ public final class Main
         {
             String options[] = {
                 "check",
+                "collection",
                 "config:",
                 "force",
                 "format:",
@@ -51,6 +57,7 @@ public final class Main
             String title = opt.get("title", "");
             boolean werror = opt.contains("werror");
             boolean checkOnly = opt.contains("check");
+            boolean collection = opt.contains("collection");
             ArrayList<String> arguments = opt.getArguments();
             if (! (arguments.size() == 2
                    || (arguments.size() == 1 && checkOnly)))
@@ -79,6 +86,14 @@ public final class Main
             }
             if (! in.exists())
                 throw new ErrorMessage("File \"" + in + "\" not found");
+            if (collection)
+            {
+                if (! checkOnly && ! format.equals("sgf"))
+                    throw new ErrorMessage("Collections can only be"
+                                           + " converted to SGF");
+                convertCollection(in, out, werror);
+                return;
+            }
             GameReader reader = new GameReader(in);
             ConstGameTree tree = reader.getTree();
             String warnings = reader.getWarnings();
@@ -115,17 +130,74 @@ public final class Main
     {
     }
 
+    /** Convert all games of an SGF collection.
+        The games are parsed in parallel (see ParallelSgfReader) and written
+        to a single SGF file in the original order.
+        @param in The input file.
+        @param out The output file or null, if only checking the input.
+        @param werror Handle read warnings as errors. */
+    private static void convertCollection(File in, File out,
+                                          final boolean werror)
+        throws ErrorMessage, IOException
+    {
+        final OutputStream outStream =
+            (out == null ? null : new FileOutputStream(out));
+        final String version = Version.get();
+        ParallelSgfReader.Listener listener = new ParallelSgfReader.Listener()
+            {
+                public void gameRead(File file, int index, GameTree tree,
+                                     String warnings)
+                    throws ErrorMessage
+                {
+                    if (warnings != null)
+                    {
+                        System.err.print("Game " + (index + 1) + ":\n"
+                                         + warnings);
+                        if (werror)
+                            throw new ErrorMessage("Warnings in game "
+                                                   + (index + 1));
+                    }
+                    if (outStream == null)
+                        return;
+                    // SgfWriter closes the stream
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    new SgfWriter(buffer, tree, "gogui-convert", version);
+                    try
+                    {
+                        buffer.writeTo(outStream);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new ErrorMessage("Could not write file: "
+                                               + e.getMessage());
+                    }
+                }
+            };
+        try
+        {
+            ArrayList<File> files = new ArrayList<File>();
+            files.add(in);
+            new ParallelSgfReader(true).read(files, listener);
+        }
+        finally
+        {
+            if (outStream != null)
+                outStream.close();
+        }
+    }
+
     private static void printUsage(PrintStream out)
     {
         out.print("Usage: gogui-convert infile outfile\n" +
                   "\n" +
-                  "-check   only check reading a file\n" +
-                  "-config  config file\n" +
-                  "-force   overwrite existing files\n" +
-                  "-format  output format (sgf,tex,xml)\n" +
-                  "-help    display this help and exit\n" +
-                  "-title   use title\n" +
-                  "-version print version and exit\n" +
-                  "-werror  handle read warnings as errors\n");
+                  "-check      only check reading a file\n" +
+                  "-collection read all games of an SGF collection\n" +
+                  "-config     config file\n" +
+                  "-force      overwrite existing files\n" +
+                  "-format     output format (sgf,tex,xml)\n" +
+                  "-help       display this help and exit\n" +
+                  "-title      use title\n" +
+                  "-version    print version and exit\n" +
+                  "-werror     handle read warnings as errors\n");
     }
 }
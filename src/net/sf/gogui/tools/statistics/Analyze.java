@@ -5,6 +5,7 @@ package net.sf.gogui.tools.statistics;
 import java.awt.Color;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.InputStream;
 import java.io.IOException;
@@ -17,7 +18,8 @@ import net.sf.gogui.game.GameInfo;
 import net.sf.gogui.game.GameTree;
 import net.sf.gogui.game.StringInfo;
 import net.sf.gogui.game.StringInfoColor;
-import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.SgfCollectionReader;
+import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.FileUtil;
 import net.sf.gogui.util.Histogram;
@@ -220,6 +222,13 @@ public class Analyze
 
     private ArrayList<GameData> m_gameData;
 
+    /** File of the root nodes in m_roots (see readGameRoot()). */
+    private File m_rootsFile;
+
+    private ArrayList<GameTree> m_roots;
+
+    private String m_rootsError;
+
     private void endInfo(PrintStream out)
     {
         out.print("</table></td></tr>\n" +
@@ -487,6 +496,71 @@ public class Analyze
         return false;
     }
 
+    /** Read the root node of a game.
+        The root nodes of all games in a file are read at once and kept
+        until a game from another file is requested, because the games of
+        a collection are consecutive in the table.
+        @param game The file name or file#n for the n'th game of a
+        collection (see Statistics). */
+    private GameTree readGameRoot(String game) throws ErrorMessage
+    {
+        File file = new File(game);
+        int index = 0;
+        int pos = game.lastIndexOf('#');
+        if (pos >= 0 && ! file.exists())
+        {
+            try
+            {
+                index = Integer.parseInt(game.substring(pos + 1)) - 1;
+                file = new File(game.substring(0, pos));
+            }
+            catch (NumberFormatException e)
+            {
+            }
+        }
+        if (! file.equals(m_rootsFile))
+            readRoots(file);
+        if (index < m_roots.size())
+            return m_roots.get(index);
+        if (m_rootsError != null)
+            throw new ErrorMessage(m_rootsError);
+        throw new ErrorMessage(file + " has no game " + (index + 1));
+    }
+
+    /** Read the root nodes of all games in a file.
+        If reading fails, the root nodes of the games before the error are
+        kept and the error is stored in m_rootsError. */
+    private void readRoots(File file)
+    {
+        m_rootsFile = file;
+        m_roots = new ArrayList<GameTree>();
+        m_rootsError = null;
+        InputStream in;
+        try
+        {
+            in = new FileInputStream(file);
+        }
+        catch (FileNotFoundException e)
+        {
+            m_rootsError = "File not found: " + file;
+            return;
+        }
+        SgfCollectionReader reader = new SgfCollectionReader(in, file, true);
+        try
+        {
+            while (reader.hasNext())
+                m_roots.add(reader.next());
+        }
+        catch (SgfError e)
+        {
+            m_rootsError = e.getMessage();
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
     private void startHtml(PrintStream out, String title)
     {
         String charset = StringUtil.getDefaultEncoding();
@@ -660,9 +734,7 @@ public class Analyze
         writeHtmlRow(out, "File", getGameLink(file, gameNumber, false));
         try
         {
-            InputStream in = new FileInputStream(new File(game));
-            SgfReader reader = new SgfReader(in, new File(game), null, 0);
-            GameTree tree = reader.getTree();
+            GameTree tree = readGameRoot(game);
             GameInfo info = tree.getGameInfo(tree.getRoot());
             String playerBlack = info.get(StringInfoColor.NAME, BLACK);
             if (playerBlack == null)
@@ -676,7 +748,6 @@ public class Analyze
             writeHtmlRow(out, "Black", playerBlack);
             writeHtmlRow(out, "White", playerWhite);
             writeHtmlRow(out, "Result", result);
-            in.close();
         }
         catch (Exception e)
         {
@@ -2,21 +2,22 @@
 
 package net.sf.gogui.tools.statistics;
 
-import java.io.InputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.GameTree;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.EMPTY;
 import net.sf.gogui.go.Move;
-import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.ParallelSgfReader;
 import net.sf.gogui.util.ErrorMessage;
 
-/** Check that SGF files meet the requirements for a Statistics run. */
+/** Check that SGF files meet the requirements for a Statistics run.
+    The files can be SGF collections containing several games; all games
+    are checked. The files are parsed in parallel (see ParallelSgfReader). */
 public class FileCheck
 {
     public FileCheck(ArrayList<String> sgfFiles, int size, boolean allowSetup)
@@ -24,34 +25,47 @@ public class FileCheck
     {
         m_size = size;
         m_allowSetup = allowSetup;
-        for (int i = 0; i < sgfFiles.size(); ++i)
+        ArrayList<File> files = new ArrayList<File>(sgfFiles.size());
+        for (String name : sgfFiles)
         {
-            m_file = new File(sgfFiles.get(i));
-            checkFile();
+            File file = new File(name);
+            if (! file.exists())
+                throw new ErrorMessage(file + ": file not found");
+            files.add(file);
         }
+        ParallelSgfReader.Listener listener = new ParallelSgfReader.Listener()
+            {
+                public void gameRead(File file, int index, GameTree tree,
+                                     String warnings)
+                    throws ErrorMessage
+                {
+                    m_numberGames.put(file, index + 1);
+                    checkGame(file, index, tree);
+                }
+            };
+        new ParallelSgfReader(true).read(files, listener);
+    }
+
+    /** Get the number of games in a file.
+        @param file The file name as given in the constructor. */
+    public int getNumberGames(String file)
+    {
+        Integer numberGames = m_numberGames.get(new File(file));
+        return (numberGames == null ? 0 : numberGames.intValue());
     }
 
     private final boolean m_allowSetup;
 
     private final int m_size;
 
-    private File m_file;
+    private final Map<File,Integer> m_numberGames =
+        new HashMap<File,Integer>();
 
-    private void checkFile() throws ErrorMessage
+    private void checkGame(File file, int index, GameTree tree)
+        throws ErrorMessage
     {
-        InputStream in = null;
-        try
-        {
-            in = new FileInputStream(m_file);
-        }
-        catch (FileNotFoundException e)
-        {
-            throwError("file not found");
-        }
-        SgfReader reader = new SgfReader(in, m_file, null, 0);
-        GameTree tree = reader.getTree();
         if (tree.getBoardSize() != m_size)
-            throwError("size is not " + m_size);
+            throwError(file, index, "size is not " + m_size);
         ConstNode root = tree.getRoot();
         GoColor toMove = BLACK;
         for (ConstNode node = root; node != null; node = node.getChildConst())
@@ -63,11 +77,11 @@ public class FileCheck
                     if (node == root)
                         toMove = EMPTY;
                     else
-                        throw new ErrorMessage("setup stones"
-                                               + " in non-root position");
+                        throwError(file, index,
+                                   "setup stones in non-root position");
                 }
                 else
-                    throw new ErrorMessage("contains setup stones");
+                    throwError(file, index, "contains setup stones");
             }
             Move move = node.getMove();
             if (move != null)
@@ -75,14 +89,16 @@ public class FileCheck
                 if (toMove == EMPTY)
                     toMove = move.getColor();
                 if (move.getColor() != toMove)
-                    throwError("non-alternating moves");
+                    throwError(file, index, "non-alternating moves");
                 toMove = toMove.otherColor();
             }
         }
     }
 
-    private void throwError(String reason) throws ErrorMessage
+    private static void throwError(File file, int index, String reason)
+        throws ErrorMessage
     {
-        throw new ErrorMessage(m_file + ": " + reason);
+        throw new ErrorMessage(file + " (game " + (index + 1) + "): "
+                               + reason);
     }
 }
@@ -22,6 +22,7 @@ public final class Main
                 "analyze:",
                 "backward",
                 "begin:",
+                "bitboard",
                 "commands:",
                 "config:",
                 "final:",
@@ -107,6 +108,7 @@ public final class Main
                 statistics.setMin(min);
                 statistics.setMax(max);
                 statistics.setQuiet(quiet);
+                statistics.setBitBoard(opt.contains("bitboard"));
                 statistics.run(program, arguments, boardSize, commands,
                                beginCommands, finalCommands, verbose,
                                allowSetup, backward, random);
@@ -148,6 +150,7 @@ public final class Main
                   "-analyze      Create HTML file from result file\n" +
                   "-backward     Iterate backward from end position\n" +
                   "-begin        GTP commands to run on begin positions\n" +
+                  "-bitboard     Use bitset board engine\n" +
                   "-commands     GTP commands to run (comma separated)\n" +
                   "-config       Config file\n" +
                   "-final        GTP commands to run on final positions\n" +
@@ -2,10 +2,7 @@
 
 package net.sf.gogui.tools.statistics;
 
-import java.io.InputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.NumberFormat;
@@ -15,6 +12,7 @@ import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.ConstGameInfo;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.Game;
+import net.sf.gogui.game.GameTree;
 import net.sf.gogui.game.NodeUtil;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
@@ -26,8 +24,7 @@ import net.sf.gogui.gtp.GtpClient;
 import net.sf.gogui.gtp.GtpClientBase;
 import net.sf.gogui.gtp.GtpError;
 import net.sf.gogui.gtp.GtpSynchronizer;
-import net.sf.gogui.sgf.SgfError;
-import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.ParallelSgfReader;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.Platform;
 import net.sf.gogui.util.StringUtil;
@@ -52,7 +49,9 @@ public class Statistics
         @param gtp The GTP engine
         @param program Program command (null, if gtp is not an instance of
         GtpClient)
-        @param sgfFiles List containing the SGF file names
+        @param sgfFiles List containing the SGF file names. The files can
+        be SGF collections; games in collections are named file#n in the
+        result table.
         @param size The board size used in the games (all games must have the
         same board size)
         @param commands List containing the commands to run in every position
@@ -74,7 +73,7 @@ public class Statistics
                     boolean backward, boolean random)
         throws ErrorMessage, IOException
     {
-        new FileCheck(sgfFiles, size, allowSetup);
+        final FileCheck fileCheck = new FileCheck(sgfFiles, size, allowSetup);
         m_size = size;
         m_allowSetup = allowSetup;
         m_backward = backward;
@@ -98,8 +97,23 @@ public class Statistics
         String host = Platform.getHostInfo();
         m_table.setProperty("Host", host);
         m_table.setProperty("Date", StringUtil.getDate());
-        for (int i = 0; i < sgfFiles.size(); ++i)
-            handleFile(sgfFiles.get(i));
+        ArrayList<File> files = new ArrayList<File>(sgfFiles.size());
+        for (String name : sgfFiles)
+            files.add(new File(name));
+        // Parse the next games in parallel while the program is running
+        ParallelSgfReader.Listener listener = new ParallelSgfReader.Listener()
+            {
+                public void gameRead(File file, int index, GameTree tree,
+                                     String warnings)
+                    throws ErrorMessage
+                {
+                    String name = file.toString();
+                    if (fileCheck.getNumberGames(name) > 1)
+                        name = name + "#" + (index + 1);
+                    handleGame(tree, name);
+                }
+            };
+        new ParallelSgfReader(true).read(files, listener);
         m_gtp.send("quit");
         m_gtp.close();
         m_gtp.waitForExit();
@@ -108,6 +122,14 @@ public class Statistics
         m_table.setProperty("Random", random ? "yes" : "no");
     }
 
+    /** Use the bitset board engine.
+        Default is false.
+        @see net.sf.gogui.go.Board#Board(int, boolean) */
+    public void setBitBoard(boolean enable)
+    {
+        m_bitBoard = enable;
+    }
+
     /** Set maximum move number for positions to run the commands on.
         Default is Integer.MAX_VALUE. */
     public void setMax(int max)
@@ -158,6 +180,8 @@ public class Statistics
 
     private boolean m_backward;
 
+    private boolean m_bitBoard;
+
     private boolean m_random;
 
     private boolean m_quiet;
@@ -352,15 +376,10 @@ public class Statistics
         return m_commands.get(index);
     }
 
-    private void handleFile(String name)
-        throws ErrorMessage, FileNotFoundException, GtpError,
-               SgfError
+    private void handleGame(GameTree tree, String name) throws ErrorMessage
     {
-        File file = new File(name);
-        InputStream in = new FileInputStream(file);
-        SgfReader reader = new SgfReader(in, file, null, 0);
         ++m_numberGames;
-        Game game = new Game(reader.getTree());
+        Game game = new Game(tree, m_bitBoard);
         checkGame(game.getTree(), name);
         if (m_random)
             iteratePositionsRandom(game, name);
@@ -3,22 +3,21 @@
 package net.sf.gogui.tools.twogtp;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.GameTree;
-import net.sf.gogui.go.Board;
 import net.sf.gogui.go.BoardUtil;
-import net.sf.gogui.go.ConstBoard;
+import net.sf.gogui.go.ConstPointList;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Move;
 import net.sf.gogui.go.PointList;
-import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.ParallelSgfReader;
+import net.sf.gogui.util.ErrorMessage;
 
 /** Find duplicates in games. */
 public final class Compare
@@ -46,9 +45,9 @@ public final class Compare
 
     /** Check if game already exists in game collection.
         All games must have the same board size.
-        Also finds rotated duplicates.
-        @param board Board with the correct size (only used for
-        Board.rotate).
+        The placements must be in canonical orientation as returned by
+        getPlacements, so that rotated and mirrored duplicates are found
+        by comparing the placements directly.
         @param moves Moves of game to check.
         @param games Games in collection. The key is the game number, the value
         is the sequence of moves.
@@ -59,48 +58,37 @@ public final class Compare
         @return String containing number of first identical game in
         collection or "-" if no duplicate was found. If a nearly identical
         game is found (&lt;= 20% identical moves comparing moves by number),
-        the game number is returned with a question mark appended. */
-    public static String checkDuplicate(ConstBoard board,
-                                      ArrayList<Placement> moves,
+        the game number is returned with a question mark appended. Nearly
+        identical games are only found if they have the same canonical
+        orientation. */
+    public static String checkDuplicate(ArrayList<Placement> moves,
                                       Map<Integer, ArrayList<Placement>> games,
                                       boolean useAlternate,
                                       boolean isAlternated)
     {
         String result = "-";
-        int size = board.getSize();
         for (Map.Entry<Integer, ArrayList<Placement>> entry : games.entrySet())
         {
             int numberGame = entry.getKey();
             if (useAlternate && ((numberGame % 2 != 0) != isAlternated))
                 continue;
             ArrayList<Placement> gameMoves = entry.getValue();
-            for (int rot = 0; rot < BoardUtil.NUMBER_ROTATIONS; ++rot)
+            int numberDifferent = 0;
+            int moveNumber = moves.size();
+            int maxDifferent = moveNumber / 5;
+            if (gameMoves.size() != moveNumber)
             {
-                int numberDifferent = 0;
-                int moveNumber = moves.size();
-                int maxDifferent = moveNumber / 5;
-                if (gameMoves.size() != moveNumber)
-                {
-                    numberDifferent = Math.abs(gameMoves.size() - moveNumber);
-                    moveNumber = Math.min(gameMoves.size(), moveNumber);
-                }
-                for (int i = 0;
-                     numberDifferent <= maxDifferent && i < moveNumber; ++i)
-                {
-                    Placement move = moves.get(i);
-                    Placement gameMove = gameMoves.get(i);
-                    GoPoint gameRotatedPoint =
-                        BoardUtil.rotate(rot, gameMove.m_point, size);
-                    if (move.m_isSetup != gameMove.m_isSetup
-                        || ! move.m_color.equals(gameMove.m_color)
-                        || ! GoPoint.equals(move.m_point, gameRotatedPoint))
-                        ++numberDifferent;
-                }
-                if (numberDifferent == 0)
-                    return Integer.toString(numberGame);
-                else if (numberDifferent < maxDifferent)
-                    result = Integer.toString(numberGame) + "?";
+                numberDifferent = Math.abs(gameMoves.size() - moveNumber);
+                moveNumber = Math.min(gameMoves.size(), moveNumber);
             }
+            for (int i = 0;
+                 numberDifferent <= maxDifferent && i < moveNumber; ++i)
+                if (compare(moves.get(i), gameMoves.get(i)) != 0)
+                    ++numberDifferent;
+            if (numberDifferent == 0)
+                return Integer.toString(numberGame);
+            else if (numberDifferent < maxDifferent)
+                result = Integer.toString(numberGame) + "?";
         }
         return result;
     }
@@ -108,58 +96,137 @@ public final class Compare
     /** Compare a set of SGF files.
         Prints the results to standard output, one line per game
         with the filename and the duplicate information as returned by
-        Compare.checkDuplicate.
+        Compare.checkDuplicate. The files can be SGF collections containing
+        several games; the games are numbered consecutively over all files.
+        The files are parsed in parallel (see ParallelSgfReader).
         @param filenames List of filenames
         @throws Exception If reading one of the files fails. */
     public static void compare(ArrayList<String> filenames) throws Exception
     {
-        Board board = null;
-        Map<Integer, ArrayList<Placement>> games =
+        ArrayList<File> files = new ArrayList<File>(filenames.size());
+        for (String filename : filenames)
+            files.add(new File(filename));
+        final Map<Integer, ArrayList<Placement>> games =
             new TreeMap<Integer, ArrayList<Placement>>();
-        for (int gameNumber = 0; gameNumber < filenames.size(); ++gameNumber)
+        ParallelSgfReader.Listener listener = new ParallelSgfReader.Listener()
+            {
+                public void gameRead(File file, int index, GameTree tree,
+                                     String warnings)
+                    throws ErrorMessage
+                {
+                    int size = tree.getBoardSize();
+                    if (m_size == 0)
+                        m_size = size;
+                    else if (size != m_size)
+                        throw new ErrorMessage("Board size in " + file +
+                                               " does not match other games");
+                    ArrayList<Placement> moves =
+                        getPlacements(tree.getRoot(), size);
+                    int gameNumber = games.size();
+                    String duplicate =
+                        checkDuplicate(moves, games, false, false);
+                    System.out.println(Integer.toString(gameNumber) + " " +
+                                       file + " " + duplicate);
+                    games.put(gameNumber, moves);
+                }
+
+                private int m_size;
+            };
+        new ParallelSgfReader(true).read(files, listener);
+    }
+
+    /** Get the setup stones and moves of the main variation in canonical
+        orientation.
+        The canonical orientation is the rotation, for which the sequence of
+        rotated placements is smallest (see compare(Placement, Placement)),
+        with the setup stones of each node sorted after the rotation.
+        Games that are rotated or mirrored versions of each other have the
+        same placements in canonical orientation.
+        @param node The root node of the game.
+        @param size The board size.
+        @return The placements in canonical orientation. */
+    public static ArrayList<Placement> getPlacements(ConstNode node, int size)
+    {
+        ArrayList<Placement> result = null;
+        for (int mode = 0; mode < BoardUtil.NUMBER_ROTATIONS; ++mode)
         {
-            String filename = filenames.get(gameNumber);
-            File file = new File(filename);
-            FileInputStream fileStream = new FileInputStream(file);
-            SgfReader reader = new SgfReader(fileStream, file, null, 0);
-            GameTree tree = reader.getTree();
-            int size = tree.getBoardSize();
-            if (board == null)
-                board = new Board(size);
-            else if (size != board.getSize())
-                throw new Exception("Board size in " + filename +
-                                    " does not match other games");
-            ArrayList<Placement> moves = getPlacements(tree.getRoot());
-            String duplicate =
-                checkDuplicate(board, moves, games, false, false);
-            System.out.println(Integer.toString(gameNumber) + " " +
-                               filename + " " + duplicate);
-            games.put(gameNumber, moves);
+            ArrayList<Placement> placements =
+                getPlacements(node, mode, size);
+            if (result == null || compare(placements, result) < 0)
+                result = placements;
         }
+        return result;
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private Compare()
+    {
     }
 
-    public static ArrayList<Placement> getPlacements(ConstNode node)
+    /** Compare two placements.
+        Orders by point (pass moves first), then setup before moves, then
+        by color. */
+    private static int compare(Placement p1, Placement p2)
+    {
+        int index1 = (p1.m_point == null ? -1 : p1.m_point.getIndex());
+        int index2 = (p2.m_point == null ? -1 : p2.m_point.getIndex());
+        if (index1 != index2)
+            return (index1 < index2 ? -1 : 1);
+        if (p1.m_isSetup != p2.m_isSetup)
+            return (p1.m_isSetup ? -1 : 1);
+        return getColorIndex(p1.m_color) - getColorIndex(p2.m_color);
+    }
+
+    /** Compare two sequences of placements in lexicographic order. */
+    private static int compare(ArrayList<Placement> placements1,
+                               ArrayList<Placement> placements2)
+    {
+        int size = Math.min(placements1.size(), placements2.size());
+        for (int i = 0; i < size; ++i)
+        {
+            int result = compare(placements1.get(i), placements2.get(i));
+            if (result != 0)
+                return result;
+        }
+        return placements1.size() - placements2.size();
+    }
+
+    private static int getColorIndex(GoColor c)
+    {
+        for (int i = 0; i < BLACK_WHITE_EMPTY.size(); ++i)
+            if (BLACK_WHITE_EMPTY.get(i) == c)
+                return i;
+        assert false;
+        return -1;
+    }
+
+    /** Get the setup stones and moves of the main variation in a given
+        rotation. */
+    private static ArrayList<Placement> getPlacements(ConstNode node,
+                                                      int rotationMode,
+                                                      int size)
     {
         ArrayList<Placement> result = new ArrayList<Placement>(512);
         while (node != null)
         {
             for (GoColor c : BLACK_WHITE_EMPTY)
             {
-                PointList list = new PointList(node.getSetup(c));
+                ConstPointList setup = node.getSetup(c);
+                PointList list = new PointList(setup.size());
+                for (GoPoint p : setup)
+                    list.add(BoardUtil.rotate(rotationMode, p, size));
                 Collections.sort(list);
                 for (GoPoint p : list)
                     result.add(new Placement(true, c, p));
             }
             Move move = node.getMove();
             if (move != null)
-                result.add(new Placement(move));
+                result.add(new Placement(false, move.getColor(),
+                                         BoardUtil.rotate(rotationMode,
+                                                          move.getPoint(),
+                                                          size)));
             node = node.getChildConst();
         }
         return result;
     }
-
-    /** Make constructor unavailable; class is for namespace only. */
-    private Compare()
-    {
-    }
 }
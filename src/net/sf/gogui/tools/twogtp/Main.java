@@ -48,7 +48,9 @@ public final class Main
                 "xml"
             };
             Options opt = Options.parse(args, options);
-            opt.checkNoArguments();
+            boolean compare = opt.contains("compare");
+            if (! compare)
+                opt.checkNoArguments();
             if (opt.contains("help"))
             {
                 String helpText =
@@ -81,7 +83,6 @@ public final class Main
                 System.out.print(helpText);
                 System.exit(0);
             }
-            boolean compare = opt.contains("compare");
             if (compare)
             {
                 Compare.compare(opt.getArguments());
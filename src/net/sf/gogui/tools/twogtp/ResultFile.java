@@ -15,8 +15,9 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.ConstGame;
+import net.sf.gogui.game.GameTree;
 import net.sf.gogui.go.Komi;
 import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.sgf.SgfReader;
@@ -81,11 +82,11 @@ public class ResultFile
                                        double cpuTimeWhite)
         throws ErrorMessage
     {
+        ConstGameTree tree = game.getTree();
         ArrayList<Compare.Placement> moves
-            = Compare.getPlacements(game.getTree().getRootConst());
+            = Compare.getPlacements(tree.getRootConst(), tree.getBoardSize());
         String duplicate =
-            Compare.checkDuplicate(game.getBoard(), moves, m_games,
-                                   m_alternate, alternated);
+            Compare.checkDuplicate(moves, m_games, m_alternate, alternated);
         NumberFormat format = StringUtil.getNumberFormat(1);
         m_table.startRow();
         m_table.set("GAME", Integer.toString(gameIndex));
@@ -285,8 +286,9 @@ public class ResultFile
             {
                 FileInputStream fileStream = new FileInputStream(file);
                 SgfReader reader = new SgfReader(fileStream, file, null, 0);
-                ConstNode root = reader.getTree().getRoot();
-                m_games.put(n, Compare.getPlacements(root));
+                GameTree tree = reader.getTree();
+                m_games.put(n, Compare.getPlacements(tree.getRoot(),
+                                                     tree.getBoardSize()));
             }
             catch (SgfError e)
             {
@@ -306,7 +306,7 @@ public class XmlWriter
         }
 
         ConstNode father = node.getFatherConst();
-        if (father != null && father.getChildConst() == node)
+        if (father != null && node.equals(father.getChildConst()))
         {
             int numberSiblings = father.getNumberChildren();
             for (int i = 1; i < numberSiblings; ++i)
@@ -2,9 +2,12 @@
 
 package net.sf.gogui.game;
 
+import java.util.ArrayList;
+import java.util.Random;
 import net.sf.gogui.go.Board;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Komi;
 import net.sf.gogui.go.Move;
@@ -27,6 +30,99 @@ public final class BoardUpdaterTest
         m_updater = new BoardUpdater();
     }
 
+    /** Compare incremental updates with full updates while jumping
+        between random nodes of a tree with variations. */
+    public void testIncremental()
+    {
+        checkRandomNavigation();
+    }
+
+    /** Like testIncremental with checkpoints enabled. */
+    public void testCheckpoints()
+    {
+        m_updater.enableCheckpoints(5, 1000000);
+        checkRandomNavigation();
+    }
+
+    /** Like testCheckpoints with a memory limit that causes evictions. */
+    public void testCheckpointsEviction()
+    {
+        m_updater.enableCheckpoints(3, 10000);
+        checkRandomNavigation();
+    }
+
+    public void testCheckpointCache()
+    {
+        CheckpointCache cache = new CheckpointCache(1, 10000);
+        Board board = new Board(9);
+        CheckpointCache.Entry entry =
+            new CheckpointCache.Entry(board.getSnapshot(), 0, 0, true, false,
+                                      true);
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        for (int i = 0; i < 100; ++i)
+        {
+            Node node = new Node();
+            nodes.add(node);
+            cache.put(node, entry);
+            assertSame(entry, cache.get(node, 0));
+            assertNull(cache.get(node, 2));
+        }
+        assertTrue(cache.size() < 100);
+        assertNull(cache.get(nodes.get(0), 0));
+        assertSame(entry, cache.get(nodes.get(99), 0));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    private void checkRandomNavigation()
+    {
+        Random random = new Random(1);
+        GameTree tree = new GameTree(9, null, null, null, null);
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        nodes.add(tree.getRoot());
+        Board board = new Board(9);
+        for (int i = 0; i < 300; ++i)
+        {
+            Node father = nodes.get(random.nextInt(nodes.size()));
+            m_updater.update(tree, father, board);
+            Node node = new Node();
+            int r = random.nextInt(20);
+            if (r == 0)
+                node.addStone(WHITE, GoPoint.get(random.nextInt(9),
+                                                 random.nextInt(9)));
+            else if (r == 1)
+                node.setPlayer(WHITE);
+            else
+            {
+                GoPoint p =
+                    GoPoint.get(random.nextInt(9), random.nextInt(9));
+                if (board.getColor(p) == EMPTY)
+                    node.setMove(Move.get(board.getToMove(), p));
+            }
+            father.append(node);
+            nodes.add(node);
+        }
+        for (int i = 0; i < 500; ++i)
+        {
+            Node node = nodes.get(random.nextInt(nodes.size()));
+            if (random.nextBoolean() && node.getFatherConst() != null)
+                node = node.getFather();
+            else if (random.nextBoolean() && node.hasChildren())
+                node = node.getChild();
+            m_updater.update(tree, node, board);
+            Board expected = new Board(9);
+            new BoardUpdater().update(tree, node, expected);
+            for (GoPoint p : board)
+                assertEquals(expected.getColor(p), board.getColor(p));
+            assertEquals(expected.getToMove(), board.getToMove());
+            assertEquals(expected.getCaptured(BLACK),
+                         board.getCaptured(BLACK));
+            assertEquals(expected.getCaptured(WHITE),
+                         board.getCaptured(WHITE));
+            assertEquals(expected.getNumberMoves(), board.getNumberMoves());
+        }
+    }
+
     public void testSetup()
     {
         GameTree tree = new GameTree();
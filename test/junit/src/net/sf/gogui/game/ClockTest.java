@@ -55,6 +55,48 @@ public final class ClockTest
         assertEquals(5, m_clock.getMovesLeft(WHITE));
     }
 
+    public void testMoveTime()
+    {
+        m_clock.setTimeSettings(new TimeSettings(10000));
+        m_clock.startMove(BLACK);
+        setTimeNanos(1500);
+        m_clock.halt();
+        setTimeNanos(2000000);
+        m_clock.resume();
+        setTimeNanos(2000250);
+        m_clock.stopMove();
+        assertEquals(1750L, m_clock.getLastMoveTime(BLACK));
+        assertEquals(1750L, m_clock.getTimeUsed(BLACK));
+        assertEquals(1, m_clock.getNumberMoves(BLACK));
+        m_clock.startMove(WHITE);
+        setTimeNanos(3000000);
+        m_clock.stopMove();
+        m_clock.startMove(BLACK);
+        setTimeNanos(3000100);
+        m_clock.stopMove();
+        assertEquals(100L, m_clock.getLastMoveTime(BLACK));
+        assertEquals(1850L, m_clock.getTimeUsed(BLACK));
+        assertEquals(2, m_clock.getNumberMoves(BLACK));
+        assertEquals(999750L, m_clock.getLastMoveTime(WHITE));
+        assertEquals(1, m_clock.getNumberMoves(WHITE));
+        m_clock.reset();
+        assertEquals(0L, m_clock.getTimeUsed(BLACK));
+        assertEquals(0, m_clock.getNumberMoves(BLACK));
+    }
+
+    /** Test a clock using a time source in milliseconds. */
+    public void testMillisTimeSource()
+    {
+        MillisTimeSource timeSource = new MillisTimeSource();
+        Clock clock = new Clock(timeSource);
+        clock.setTimeSettings(new TimeSettings(10000));
+        clock.startMove(BLACK);
+        timeSource.setTime(1500);
+        clock.stopMove();
+        assertEquals(8500, clock.getTimeLeft(BLACK));
+        assertEquals(1500000000L, clock.getLastMoveTime(BLACK));
+    }
+
     public void testParseTimeString()
     {
         assertEquals(24000L, Clock.parseTimeString("24"));
@@ -93,7 +135,7 @@ public final class ClockTest
         assertEquals(10000, m_clock.getTimeLeft(BLACK));
     }
 
-    private static final class TestTimeSource
+    private static final class MillisTimeSource
         implements Clock.TimeSource
     {
         public long currentTimeMillis()
@@ -109,12 +151,33 @@ public final class ClockTest
         private long m_currentTime;
     }
 
+    private static final class TestTimeSource
+        implements Clock.NanoTimeSource
+    {
+        public long nanoTime()
+        {
+            return m_currentTime;
+        }
+
+        public void setTime(long nanos)
+        {
+            m_currentTime = nanos;
+        }
+
+        private long m_currentTime;
+    }
+
     private TestTimeSource m_timeSource;
 
     private Clock m_clock;
 
     private void setTime(long millis)
     {
-        m_timeSource.setTime(millis);
+        m_timeSource.setTime(millis * 1000000L);
+    }
+
+    private void setTimeNanos(long nanos)
+    {
+        m_timeSource.setTime(nanos);
     }
 }
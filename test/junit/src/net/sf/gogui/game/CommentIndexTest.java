@@ -0,0 +1,122 @@
+// CommentIndexTest.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public final class CommentIndexTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(CommentIndexTest.class);
+    }
+
+    public void testFind()
+    {
+        GameTree tree = new GameTree();
+        Node root = tree.getRoot();
+        Node node1 = new Node();
+        node1.setComment("Good move");
+        root.append(node1);
+        Node node2 = new Node();
+        node2.setComment("Bad move, better is A1");
+        node1.append(node2);
+        Node node3 = new Node();
+        node3.setComment("Not so good");
+        root.append(node3);
+        CommentIndex index = tree.getCommentIndex();
+        assertEquals(3, index.getNumberNodes());
+        Pattern pattern = getPattern("good");
+        assertSame(node1, index.findInComments(root, pattern));
+        assertSame(node3, index.findInComments(node1, pattern));
+        assertNull(index.findInComments(node3, pattern));
+        assertSame(node2, index.findInComments(root, getPattern("bet")));
+        assertSame(node2, index.findInComments(root, getPattern("D MOVE, B")));
+        assertSame(node2, index.findInComments(root, getPattern("A[0-9]")));
+        node3.setComment("Bad");
+        assertNull(index.findInComments(node1, pattern));
+        node2.setComment(null);
+        assertNull(index.findInComments(node1, getPattern("better")));
+        assertEquals(2, index.getNumberNodes());
+        Node node4 = new Node();
+        node4.setComment("Better");
+        node1.append(node4);
+        assertSame(node4, index.findInComments(root, getPattern("better")));
+        node1.removeChild(node4);
+        assertNull(index.findInComments(root, getPattern("better")));
+        assertEquals(2, index.getNumberNodes());
+        // Move a subtree, which is already indexed
+        root.removeChild(node1);
+        node3.append(node1);
+        assertSame(node1, index.findInComments(node3, getPattern("good")));
+    }
+
+    /** Compare with NodeUtil.findInComments for random trees and
+        changes. */
+    public void testRandom()
+    {
+        Random random = new Random(7);
+        String[] words = { "good", "bad", "Move", "better", "ko", "a1" };
+        String[] patterns = { "good", "GOOD MOVE", "ko", "ter", "ad mo", "x",
+                              "go+d", "^bad", "a[0-9]", "move$" };
+        GameTree tree = new GameTree();
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        nodes.add(tree.getRoot());
+        CommentIndex index = tree.getCommentIndex();
+        for (int i = 0; i < 300; ++i)
+        {
+            Node node = nodes.get(random.nextInt(nodes.size()));
+            int action = random.nextInt(5);
+            if (action <= 1)
+            {
+                Node child = new Node();
+                node.append(child);
+                nodes.add(child);
+                node = child;
+            }
+            if (action <= 2)
+            {
+                StringBuilder comment = new StringBuilder();
+                int numberWords = random.nextInt(4);
+                for (int j = 0; j < numberWords; ++j)
+                    comment.append(words[random.nextInt(words.length)])
+                        .append(' ');
+                node.setComment(comment.toString());
+            }
+            else if (action == 3 && node.getFather() != null
+                     && random.nextInt(4) == 0)
+            {
+                node.getFather().removeChild(node);
+                ArrayList<Node> subtree = new ArrayList<Node>();
+                for (Node n : nodes)
+                    if (NodeUtil.getRoot(n) != tree.getRoot())
+                        subtree.add(n);
+                nodes.removeAll(subtree);
+            }
+            else if (action == 4 && node.getFather() != null)
+                node.getFather().makeFirstChild(node);
+            for (int j = 0; j < 3; ++j)
+            {
+                ConstNode start = nodes.get(random.nextInt(nodes.size()));
+                Pattern pattern =
+                    getPattern(patterns[random.nextInt(patterns.length)]);
+                assertSame(NodeUtil.findInComments(start, pattern),
+                           index.findInComments(start, pattern));
+            }
+        }
+    }
+
+    private static Pattern getPattern(String regex)
+    {
+        return Pattern.compile(regex,
+                               Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+    }
+}
@@ -0,0 +1,125 @@
+// CompactGameTreeTest.java
+
+package net.sf.gogui.game;
+
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+
+public final class CompactGameTreeTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(CompactGameTreeTest.class);
+    }
+
+    public void testAppend()
+    {
+        CompactGameTree tree = new CompactGameTree(9, new Node());
+        assertNotNull(tree.getGameInfoConst(tree.getRootConst()));
+        int node1 = tree.append(0, new Node(Move.get(BLACK, 2, 2)));
+        int node2 = tree.append(node1, new Node(Move.getPass(WHITE)));
+        Node data = new Node(Move.get(WHITE, 3, 3));
+        data.setComment("foo");
+        int node3 = tree.append(node1, data);
+        int node4 = tree.append(0, new Node());
+        assertEquals(5, tree.getNumberNodes());
+        assertTrue(tree.hasVariations());
+        ConstNode root = tree.getRootConst();
+        assertEquals(root, tree.getNodeConst(0));
+        assertEquals(root.hashCode(), tree.getNodeConst(0).hashCode());
+        assertFalse(root.hasFather());
+        assertEquals(2, root.getNumberChildren());
+        assertEquals(5, root.getSubtreeSize());
+        ConstNode node = tree.getNodeConst(node1);
+        assertEquals(node, root.getChildConst());
+        assertEquals(tree.getNodeConst(node4), root.getChildConst(1));
+        assertEquals(tree.getNodeConst(node4), root.variationAfter(node));
+        assertEquals(node, root.variationBefore(tree.getNodeConst(node4)));
+        assertNull(root.variationBefore(node));
+        assertEquals(Move.get(BLACK, 2, 2), node.getMove());
+        assertEquals(WHITE, node.getToMove());
+        assertEquals(3, node.getSubtreeSize());
+        assertEquals(1, root.getChildIndex(tree.getNodeConst(node4)));
+        assertEquals(-1, root.getChildIndex(tree.getNodeConst(node2)));
+        ConstNode child = tree.getNodeConst(node2);
+        assertEquals(Move.getPass(WHITE), child.getMove());
+        assertEquals(node, child.getFatherConst());
+        assertEquals(2, child.getDepth());
+        assertEquals(2, child.getMoveNumber());
+        assertFalse(child.hasComment());
+        assertTrue(Float.isNaN(child.getValue()));
+        child = tree.getNodeConst(node3);
+        assertEquals("foo", child.getComment());
+        assertFalse(child.isEmpty());
+        assertTrue(tree.getNodeConst(node4).isEmpty());
+        assertEquals(0, tree.getNodeConst(node4).getMoveNumber());
+        assertSame(tree.getGameInfoConst(root),
+                   tree.getGameInfoConst(child));
+    }
+
+    /** Test that converting a game tree preserves the tree and node
+        information. */
+    public void testCopy()
+    {
+        GameTree gameTree = new GameTree();
+        Node root = gameTree.getRoot();
+        root.addStone(BLACK, GoPoint.get(3, 3));
+        root.setPlayer(WHITE);
+        Node node1 = new Node(Move.get(WHITE, 4, 4));
+        node1.addMarked(GoPoint.get(1, 1), MarkType.TRIANGLE);
+        node1.setLabel(GoPoint.get(2, 1), "A");
+        node1.addSgfProperty("XY", "foo");
+        node1.setTimeLeft(WHITE, 10);
+        node1.setValue(1.5f);
+        root.append(node1);
+        Node node2 = new Node(Move.get(BLACK, 5, 5));
+        node2.createGameInfo().set(StringInfo.RESULT, "B+R");
+        node1.append(node2);
+        root.append(new Node(Move.get(WHITE, 6, 6)));
+        CompactGameTree tree = new CompactGameTree(gameTree);
+        assertEquals(gameTree.getBoardSize(), tree.getBoardSize());
+        assertEquals(4, tree.getNumberNodes());
+        ConstNode compactRoot = tree.getRootConst();
+        assertEquals(root.getSetup(BLACK), compactRoot.getSetup(BLACK));
+        assertEquals(WHITE, compactRoot.getToMove());
+        ConstNode node = compactRoot.getChildConst();
+        assertTrue(node.getMarkedConst(MarkType.TRIANGLE)
+                   .contains(GoPoint.get(1, 1)));
+        assertEquals("A", node.getLabel(GoPoint.get(2, 1)));
+        assertEquals("foo", node.getSgfPropertiesConst().getValue("XY", 0));
+        assertEquals(10.0, node.getTimeLeft(WHITE));
+        assertEquals(1.5f, node.getValue());
+        ConstNode child = node.getChildConst();
+        assertEquals("B+R", tree.getGameInfoConst(child)
+                     .get(StringInfo.RESULT));
+        assertNull(tree.getGameInfoConst(node).get(StringInfo.RESULT));
+        assertEquals(Move.get(WHITE, 6, 6),
+                     compactRoot.getChildConst(1).getMove());
+        // Copy does not share node information
+        node1.setLabel(GoPoint.get(2, 1), "B");
+        assertEquals("A", node.getLabel(GoPoint.get(2, 1)));
+    }
+
+    /** Test a tree that is deeper than the initial capacity of the
+        arrays. */
+    public void testDeep()
+    {
+        CompactGameTree tree = new CompactGameTree(19, new Node());
+        int node = 0;
+        for (int i = 0; i < 1000; ++i)
+            node = tree.append(node, new Node(Move.getPass(BLACK)));
+        assertEquals(1001, tree.getNumberNodes());
+        assertFalse(tree.hasVariations());
+        assertEquals(1001, tree.getRootConst().getSubtreeSize());
+        assertEquals(1000, tree.getNodeConst(node).getDepth());
+        assertEquals(1000, NodeUtil.getLast(tree.getRootConst()).getDepth());
+    }
+}
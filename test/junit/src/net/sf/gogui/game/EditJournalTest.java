@@ -0,0 +1,225 @@
+// EditJournalTest.java
+
+package net.sf.gogui.game;
+
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+
+public final class EditJournalTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(EditJournalTest.class);
+    }
+
+    public void testKeepOnlyMainVariation()
+    {
+        Game game = new Game(19);
+        game.play(Move.get(BLACK, 3, 3));
+        ConstNode node1 = game.getCurrentNode();
+        game.play(Move.get(WHITE, 4, 4));
+        game.gotoNode(node1);
+        game.play(Move.get(WHITE, 5, 5));
+        ConstNode node2 = game.getCurrentNode();
+        game.gotoNode(game.getRoot());
+        game.play(Move.get(BLACK, 6, 6));
+        ConstNode node3 = game.getCurrentNode();
+        game.gotoNode(node1);
+        game.keepOnlyMainVariation();
+        assertFalse(game.getTree().hasVariations());
+        assertNull(node2.getFatherConst());
+        assertNull(node3.getFatherConst());
+        game.undoEdit();
+        assertSame(node1, game.getCurrentNode());
+        assertSame(node1, node2.getFatherConst());
+        assertEquals(2, game.getRoot().getNumberChildren());
+        assertSame(node3, game.getRoot().getChildConst(1));
+        assertEquals(5, game.getRoot().getSubtreeSize());
+        game.redoEdit();
+        assertFalse(game.getTree().hasVariations());
+        assertEquals(3, game.getRoot().getSubtreeSize());
+    }
+
+    public void testMarkup()
+    {
+        Game game = new Game(19);
+        GoPoint p = GoPoint.get(3, 3);
+        game.addMarked(p, MarkType.MARK);
+        game.setLabel(p, " A ");
+        ConstNode root = game.getRoot();
+        assertEquals("A", root.getLabel(p));
+        game.undoEdit();
+        assertNull(root.getLabel(p));
+        assertTrue(root.getMarkedConst(MarkType.MARK).contains(p));
+        game.undoEdit();
+        assertFalse(root.getMarkedConst(MarkType.MARK).contains(p));
+        assertFalse(game.canUndoEdit());
+        game.redoEdit();
+        game.redoEdit();
+        assertTrue(root.getMarkedConst(MarkType.MARK).contains(p));
+        assertEquals("A", root.getLabel(p));
+        game.removeMarked(p, MarkType.MARK);
+        game.undoEdit();
+        assertTrue(root.getMarkedConst(MarkType.MARK).contains(p));
+    }
+
+    public void testMakeMainVariation()
+    {
+        Game game = new Game(19);
+        game.play(Move.get(BLACK, 3, 3));
+        ConstNode node1 = game.getCurrentNode();
+        game.gotoNode(game.getRoot());
+        game.play(Move.get(BLACK, 4, 4));
+        ConstNode node2 = game.getCurrentNode();
+        game.makeMainVariation();
+        assertSame(node2, game.getRoot().getChildConst());
+        game.undoEdit();
+        assertSame(node1, game.getRoot().getChildConst());
+        assertSame(node2, game.getRoot().getChildConst(1));
+        game.redoEdit();
+        assertSame(node2, game.getRoot().getChildConst());
+    }
+
+    /** Test that the memory of removed subtrees is counted. */
+    public void testMemoryRemovedSubtree()
+    {
+        GameTree tree = new GameTree();
+        Game game = new Game(tree);
+        game.play(Move.get(BLACK, 3, 3));
+        game.truncate();
+        long memorySmall = tree.getJournal().getMemory();
+        tree = new GameTree();
+        game = new Game(tree);
+        for (int i = 0; i < 100; ++i)
+            game.play(Move.get(i % 2 == 0 ? BLACK : WHITE, i % 19, i / 19));
+        game.gotoNode(game.getRoot().getChildConst());
+        game.truncate();
+        long memoryLarge = tree.getJournal().getMemory();
+        assertTrue(memoryLarge >= memorySmall + 99 * 4);
+    }
+
+    public void testMaxMemory()
+    {
+        GameTree tree = new GameTree();
+        Game game = new Game(tree);
+        EditJournal journal = tree.getJournal();
+        game.createNewChild();
+        long maxMemory = 10 * journal.getMemory();
+        journal.setMaxMemory(maxMemory);
+        for (int i = 0; i < 18; ++i)
+            game.createNewChild();
+        assertTrue(journal.getMemory() <= maxMemory);
+        int numberUndo = 0;
+        while (game.canUndoEdit())
+        {
+            game.undoEdit();
+            ++numberUndo;
+        }
+        assertTrue(numberUndo > 0);
+        assertTrue(numberUndo < 19);
+        assertEquals(19 - numberUndo, game.getCurrentNode().getDepth());
+        // A new edit removes the edits for redo
+        game.createNewChild();
+        assertFalse(game.canRedoEdit());
+        assertTrue(journal.getMemory() <= maxMemory);
+    }
+
+    /** Test that moves played are not recorded and are kept by undo and
+        redo of an earlier edit. */
+    public void testPlay()
+    {
+        GameTree tree = new GameTree();
+        Game game = new Game(tree);
+        game.play(Move.get(BLACK, 3, 3));
+        ConstNode node1 = game.getCurrentNode();
+        game.gotoNode(game.getRoot());
+        game.play(Move.get(BLACK, 4, 4));
+        ConstNode node2 = game.getCurrentNode();
+        assertFalse(game.canUndoEdit());
+        game.makeMainVariation();
+        long memory = tree.getJournal().getMemory();
+        game.play(Move.get(WHITE, 5, 5));
+        ConstNode node3 = game.getCurrentNode();
+        game.gotoNode(game.getRoot());
+        game.play(Move.get(WHITE, 6, 6));
+        ConstNode node4 = game.getCurrentNode();
+        // Moves played do not change the memory of the journal
+        assertEquals(memory, tree.getJournal().getMemory());
+        game.undoEdit();
+        ConstNode root = game.getRoot();
+        assertEquals(3, root.getNumberChildren());
+        assertSame(node1, root.getChildConst(0));
+        assertSame(node2, root.getChildConst(1));
+        assertSame(node4, root.getChildConst(2));
+        assertSame(node2, node3.getFatherConst());
+        game.redoEdit();
+        assertEquals(3, root.getNumberChildren());
+        assertSame(node2, root.getChildConst(0));
+        assertSame(node4, root.getChildConst(2));
+    }
+
+    /** Test that all changes in a group of edits are undone together. */
+    public void testSetup()
+    {
+        Game game = new Game(19);
+        game.play(Move.get(BLACK, 3, 3));
+        ConstNode node = game.getCurrentNode();
+        GoPoint p1 = GoPoint.get(4, 4);
+        GoPoint p2 = GoPoint.get(3, 3);
+        game.beginEdit();
+        game.createNewChild();
+        ConstNode setupNode = game.getCurrentNode();
+        game.setup(p1, WHITE);
+        game.setup(p2, EMPTY);
+        game.setToMove(WHITE);
+        game.endEdit();
+        assertEquals(WHITE, game.getBoard().getColor(p1));
+        assertEquals(EMPTY, game.getBoard().getColor(p2));
+        game.undoEdit();
+        assertSame(node, game.getCurrentNode());
+        assertFalse(node.hasChildren());
+        assertEquals(EMPTY, game.getBoard().getColor(p1));
+        assertEquals(BLACK, game.getBoard().getColor(p2));
+        game.redoEdit();
+        assertSame(setupNode, game.getCurrentNode());
+        assertEquals(WHITE, game.getBoard().getColor(p1));
+        assertEquals(WHITE, setupNode.getPlayer());
+        assertEquals(1, setupNode.getSetup(WHITE).size());
+        game.setToMove(BLACK);
+        game.undoEdit();
+        assertEquals(WHITE, setupNode.getPlayer());
+    }
+
+    public void testTruncate()
+    {
+        Game game = new Game(19);
+        game.play(Move.get(BLACK, 3, 3));
+        ConstNode node1 = game.getCurrentNode();
+        game.play(Move.get(WHITE, 4, 4));
+        ConstNode node2 = game.getCurrentNode();
+        game.gotoNode(node1);
+        game.truncate();
+        assertSame(game.getRoot(), game.getCurrentNode());
+        assertFalse(game.getRoot().hasChildren());
+        game.undoEdit();
+        assertSame(node1, game.getCurrentNode());
+        assertSame(node1, game.getRoot().getChildConst());
+        assertSame(node2, node1.getChildConst());
+        assertEquals(2, node2.getMoveNumber());
+        game.truncateChildren();
+        assertFalse(node1.hasChildren());
+        assertFalse(game.canRedoEdit());
+        game.undoEdit();
+        assertSame(node2, node1.getChildConst());
+        assertTrue(game.canRedoEdit());
+    }
+}
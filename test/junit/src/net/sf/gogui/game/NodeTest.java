@@ -7,6 +7,7 @@ import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
 import static net.sf.gogui.go.GoColor.EMPTY;
 import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
 
 public final class NodeTest
     extends junit.framework.TestCase
@@ -47,6 +48,42 @@ public final class NodeTest
         assertTrue(child2.getFather() == node);
     }
 
+    /** Test cached depth, move number and subtree size after changes of
+        the tree. */
+    public void testCachedValues()
+    {
+        Node root = new Node();
+        Node node1 = new Node(Move.get(BLACK, GoPoint.get(1, 1)));
+        Node node2 = new Node();
+        Node node3 = new Node(Move.get(WHITE, GoPoint.get(2, 2)));
+        Node node4 = new Node(Move.get(WHITE, GoPoint.get(3, 3)));
+        root.append(node1);
+        node1.append(node2);
+        node2.append(node3);
+        assertEquals(3, node3.getDepth());
+        assertEquals(2, node3.getMoveNumber());
+        assertEquals(1, node2.getMoveNumber());
+        assertEquals(4, root.getSubtreeSize());
+        node1.append(node4);
+        assertEquals(2, node4.getDepth());
+        assertEquals(2, node4.getMoveNumber());
+        assertEquals(5, root.getSubtreeSize());
+        assertEquals(4, node1.getSubtreeSize());
+        node1.setMove(null);
+        assertEquals(1, node3.getMoveNumber());
+        assertEquals(1, node4.getMoveNumber());
+        root.removeChild(node1);
+        assertEquals(1, root.getSubtreeSize());
+        assertEquals(0, node1.getDepth());
+        assertEquals(2, node3.getDepth());
+        node1.removeVariations();
+        assertEquals(3, node1.getSubtreeSize());
+        root.append(node1);
+        assertEquals(4, root.getSubtreeSize());
+        assertEquals(3, node3.getDepth());
+        assertEquals(1, node3.getMoveNumber());
+    }
+
     public void testIsChildOf()
     {
         Node father = new Node();
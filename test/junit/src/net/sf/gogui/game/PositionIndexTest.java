@@ -0,0 +1,124 @@
+// PositionIndexTest.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.Random;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+
+public final class PositionIndexTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(PositionIndexTest.class);
+    }
+
+    public void testTranspositions()
+    {
+        GameTree tree = new GameTree();
+        Node root = tree.getRoot();
+        // B C3, W D4, B E5 and B E5, W D4, B C3
+        Node node1 = append(root, BLACK, 2, 2);
+        Node node2 = append(append(node1, WHITE, 3, 3), BLACK, 4, 4);
+        Node node3 = append(root, BLACK, 4, 4);
+        Node node4 = append(append(node3, WHITE, 3, 3), BLACK, 2, 2);
+        // Same stones, but different color to move
+        Node node5 = new Node();
+        node5.addStone(BLACK, GoPoint.get(2, 2));
+        node5.addStone(BLACK, GoPoint.get(4, 4));
+        node5.addStone(WHITE, GoPoint.get(3, 3));
+        node5.setPlayer(BLACK);
+        root.append(node5);
+        ArrayList<ConstNode> transpositions =
+            NodeUtil.getTranspositions(tree, node2);
+        assertEquals(1, transpositions.size());
+        assertSame(node4, transpositions.get(0));
+        assertTrue(NodeUtil.getTranspositions(tree, node1).isEmpty());
+        node5.setPlayer(WHITE);
+        assertEquals(2, NodeUtil.getTranspositions(tree, node2).size());
+        // Changing a move changes the position in the subtree
+        node3.setMove(Move.get(BLACK, 5, 5));
+        transpositions = NodeUtil.getTranspositions(tree, node2);
+        assertEquals(1, transpositions.size());
+        assertSame(node5, transpositions.get(0));
+        root.removeChild(node5);
+        assertTrue(NodeUtil.getTranspositions(tree, node2).isEmpty());
+    }
+
+    /** Compare with positions computed by BoardUpdater in random trees. */
+    public void testRandom()
+    {
+        Random random = new Random(5);
+        GameTree tree = new GameTree(5, null, null, null, null);
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        nodes.add(tree.getRoot());
+        PositionIndex index = tree.getPositionIndex();
+        Board board = new Board(5);
+        for (int i = 0; i < 400; ++i)
+        {
+            Node node = nodes.get(random.nextInt(nodes.size()));
+            int action = random.nextInt(10);
+            GoPoint p = GoPoint.get(random.nextInt(5), random.nextInt(5));
+            if (action < 7)
+            {
+                Node child =
+                    new Node(Move.get(random.nextBoolean() ? BLACK : WHITE,
+                                      p));
+                node.append(child);
+                nodes.add(child);
+            }
+            else if (action == 7 && node != tree.getRoot())
+                node.setMove(Move.get(BLACK, p));
+            else if (action == 8)
+                node.addStone(WHITE, p);
+            else if (node.getFather() != null && random.nextInt(3) == 0)
+            {
+                node.getFather().removeChild(node);
+                ArrayList<Node> removed = new ArrayList<Node>();
+                for (Node n : nodes)
+                    if (NodeUtil.getRoot(n) != tree.getRoot())
+                        removed.add(n);
+                nodes.removeAll(removed);
+            }
+            if (i % 20 != 0)
+                continue;
+            int numberPositions = 0;
+            ArrayList<Long> hashCodes = new ArrayList<Long>();
+            for (Node n : nodes)
+            {
+                // New updater, because nodes were changed
+                new BoardUpdater().update(tree, n, board);
+                long hashCode = PositionIndex.getHashCode(board);
+                assertEquals(hashCode, index.getHashCode(n));
+                assertTrue(index.getNodes(hashCode).contains(n));
+                if (! hashCodes.contains(hashCode))
+                {
+                    hashCodes.add(hashCode);
+                    numberPositions += 1;
+                }
+            }
+            for (Long hashCode : hashCodes)
+                for (ConstNode n : index.getNodes(hashCode))
+                    assertTrue(nodes.contains(n));
+            assertTrue(index.getNumberPositions() >= numberPositions);
+        }
+    }
+
+    private static Node append(Node father, GoColor c, int x, int y)
+    {
+        Node node = new Node(Move.get(c, x, y));
+        father.append(node);
+        return node;
+    }
+}
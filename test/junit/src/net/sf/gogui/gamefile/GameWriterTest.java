@@ -0,0 +1,90 @@
+// GameWriterTest.java
+
+package net.sf.gogui.gamefile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import net.sf.gogui.game.ConstGameTree;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.SgfWriter;
+
+public final class GameWriterTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(GameWriterTest.class);
+    }
+
+    /** Test saving a tree that loads comments on demand to the file it was
+        read from. */
+    public void testSaveLazyToSource() throws Exception
+    {
+        StringBuilder text = new StringBuilder("(;FF[4]CA[UTF-8]AP[x:1]");
+        for (int i = 0; i < 2000; ++i)
+        {
+            text.append(i % 2 == 0 ? ";B[" : ";W[");
+            text.append((char)('a' + i % 19));
+            text.append((char)('a' + (i / 19) % 19));
+            text.append("]C[Comment \u00e4 \\] ");
+            text.append(i);
+            text.append(']');
+        }
+        text.append(')');
+        File dir = File.createTempFile("gogui", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        File file = new File(dir, "game.sgf");
+        try
+        {
+            OutputStream out = new FileOutputStream(file);
+            out.write(text.toString().getBytes("UTF-8"));
+            out.close();
+            String expected = writeString(read(file, false));
+            ConstGameTree tree = read(file, true);
+            GameFile gameFile = new GameFile();
+            gameFile.m_file = file;
+            gameFile.m_format = GameFile.Format.SGF;
+            new GameWriter(gameFile, tree, "x", "1");
+            ConstNode node = tree.getRootConst();
+            for (int i = 0; i < 2000; ++i)
+            {
+                node = node.getChildConst();
+                assertEquals("Comment \u00e4 ] " + i, node.getComment());
+            }
+            assertEquals(expected, writeString(tree));
+            assertEquals(expected, writeString(read(file, false)));
+            // No temporary files left
+            assertEquals(1, dir.list().length);
+        }
+        finally
+        {
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    private static ConstGameTree read(File file, boolean lazy)
+        throws Exception
+    {
+        SgfReader reader = new SgfReader(new FileInputStream(file), file,
+                                         null, 0, false, lazy);
+        return reader.getTree();
+    }
+
+    private static String writeString(ConstGameTree tree)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SgfWriter(out, tree, "x", "1");
+        return out.toString();
+    }
+}
@@ -0,0 +1,90 @@
+// BitBoardTest.java
+
+package net.sf.gogui.go;
+
+import java.util.Random;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+
+public final class BitBoardTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(BitBoardTest.class);
+    }
+
+    public void testCaptureAtEdge()
+    {
+        // Stones on the right edge must not see the left edge of the next
+        // row as neighbor
+        for (int size = 3; size <= GoPoint.MAX_SIZE; ++size)
+        {
+            Board board = new Board(size, true);
+            board.play(BLACK, GoPoint.get(size - 1, 0));
+            board.play(WHITE, GoPoint.get(size - 2, 0));
+            board.play(BLACK, GoPoint.get(0, 1));
+            board.play(WHITE, GoPoint.get(size - 1, 1));
+            assertEquals(EMPTY, board.getColor(GoPoint.get(size - 1, 0)));
+            assertEquals(1, board.getCaptured(BLACK));
+        }
+    }
+
+    public void testGetLiberties()
+    {
+        BitBoard bitBoard = new BitBoard(19);
+        bitBoard.set(GoPoint.get(0, 0), BLACK);
+        assertEquals(2, bitBoard.getLiberties(GoPoint.get(0, 0)));
+        bitBoard.set(GoPoint.get(1, 0), BLACK);
+        assertEquals(3, bitBoard.getLiberties(GoPoint.get(0, 0)));
+        bitBoard.set(GoPoint.get(2, 0), WHITE);
+        assertEquals(2, bitBoard.getLiberties(GoPoint.get(0, 0)));
+        assertEquals(2, bitBoard.getLiberties(GoPoint.get(2, 0)));
+        bitBoard.set(GoPoint.get(18, 18), WHITE);
+        assertEquals(2, bitBoard.getLiberties(GoPoint.get(18, 18)));
+    }
+
+    /** Compare bitset engine with default engine on random games. */
+    public void testRandomGames()
+    {
+        Random random = new Random(1);
+        for (int size = 1; size <= GoPoint.MAX_SIZE; size += 3)
+        {
+            Board board = new Board(size);
+            Board bitBoard = new Board(size, true);
+            ConstPointList points = BoardConstants.get(size).getPoints();
+            for (int i = 0; i < 4 * size * size; ++i)
+            {
+                GoPoint p = points.get(random.nextInt(points.size()));
+                if (board.getColor(p) != EMPTY)
+                    continue;
+                GoColor c = board.getToMove();
+                assertEquals(board.isSuicide(c, p), bitBoard.isSuicide(c, p));
+                board.play(c, p);
+                bitBoard.play(c, p);
+                assertEquals(board.getKilled().size(),
+                             bitBoard.getKilled().size());
+                for (GoPoint q : board)
+                    assertEquals(board.getColor(q), bitBoard.getColor(q));
+                PointList stones = new PointList();
+                PointList bitStones = new PointList();
+                board.getStones(p, board.getColor(p), stones);
+                bitBoard.getStones(p, board.getColor(p), bitStones);
+                assertEquals(stones.size(), bitStones.size());
+                assertTrue(stones.containsAll(bitStones));
+            }
+            for (GoColor c : GoColor.BLACK_WHITE)
+                assertEquals(board.getCaptured(c), bitBoard.getCaptured(c));
+            board.undo(board.getNumberMoves());
+            bitBoard.undo(bitBoard.getNumberMoves());
+            for (GoPoint q : bitBoard)
+                assertEquals(EMPTY, bitBoard.getColor(q));
+        }
+    }
+}
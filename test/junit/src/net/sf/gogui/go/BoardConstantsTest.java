@@ -78,6 +78,27 @@ public final class BoardConstantsTest
         }
     }
 
+    public void testGetRotatedIndex()
+    {
+        BoardConstants constants = BoardConstants.get(19);
+        int index = GoPoint.get(2, 5).getIndex();
+        assertEquals(index, constants.getRotatedIndex(0, index));
+        assertEquals(GoPoint.get(16, 5).getIndex(),
+                     constants.getRotatedIndex(1, index));
+        assertEquals(GoPoint.get(2, 13).getIndex(),
+                     constants.getRotatedIndex(2, index));
+        assertEquals(GoPoint.get(5, 2).getIndex(),
+                     constants.getRotatedIndex(3, index));
+        assertEquals(GoPoint.get(13, 2).getIndex(),
+                     constants.getRotatedIndex(4, index));
+        assertEquals(GoPoint.get(5, 16).getIndex(),
+                     constants.getRotatedIndex(5, index));
+        assertEquals(GoPoint.get(16, 13).getIndex(),
+                     constants.getRotatedIndex(6, index));
+        assertEquals(GoPoint.get(13, 16).getIndex(),
+                     constants.getRotatedIndex(7, index));
+    }
+
     private static GoPoint parsePoint(String s)
     {
         int boardSize = GoPoint.MAX_SIZE;
@@ -0,0 +1,161 @@
+// BoardSnapshotTest.java
+
+package net.sf.gogui.go;
+
+import java.util.Random;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+
+public final class BoardSnapshotTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(BoardSnapshotTest.class);
+    }
+
+    /** Test that a snapshot is not changed by later changes of the board. */
+    public void testImmutable()
+    {
+        Board board = new Board(9);
+        board.play(BLACK, GoPoint.get(2, 2));
+        BoardSnapshot snapshot = board.getSnapshot();
+        board.play(WHITE, GoPoint.get(3, 3));
+        board.undo();
+        board.undo();
+        board.play(WHITE, GoPoint.get(2, 2));
+        assertEquals(BLACK, snapshot.getColor(GoPoint.get(2, 2)));
+        assertEquals(EMPTY, snapshot.getColor(GoPoint.get(3, 3)));
+        assertEquals(1, snapshot.getNumberMoves());
+        assertEquals(Move.get(BLACK, GoPoint.get(2, 2)), snapshot.getMove(0));
+        assertEquals(WHITE, snapshot.getToMove());
+        assertEquals(Move.get(WHITE, GoPoint.get(2, 2)),
+                     board.getSnapshot().getMove(0));
+    }
+
+    /** Test sharing of unchanged rows and move chunks. */
+    public void testSharing()
+    {
+        Board board = new Board(19);
+        BoardSnapshot snapshot1 = board.getSnapshot();
+        assertSame(snapshot1, board.getSnapshot());
+        board.play(BLACK, GoPoint.get(3, 3));
+        BoardSnapshot snapshot2 = board.getSnapshot();
+        assertNotSame(snapshot1, snapshot2);
+        assertSame(snapshot1.m_rows[0], snapshot2.m_rows[0]);
+        assertNotSame(snapshot1.m_rows[3], snapshot2.m_rows[3]);
+        for (int i = 0; i < 2 * BoardSnapshot.MOVE_CHUNK_SIZE; ++i)
+            board.play(board.getToMove(), null);
+        BoardSnapshot snapshot3 = board.getSnapshot();
+        board.play(board.getToMove(), null);
+        BoardSnapshot snapshot4 = board.getSnapshot();
+        assertSame(snapshot3.m_moves[0], snapshot4.m_moves[0]);
+        assertSame(snapshot3.m_rows[3], snapshot4.m_rows[3]);
+    }
+
+    /** Compare snapshots with the board in random games. */
+    public void testRandom()
+    {
+        Random random = new Random(3);
+        Board board = new Board(7);
+        for (int i = 0; i < 500; ++i)
+        {
+            if (board.getNumberMoves() > 0 && random.nextInt(4) == 0)
+                board.undo();
+            else
+            {
+                GoPoint p = GoPoint.get(random.nextInt(7), random.nextInt(7));
+                if (board.getColor(p) == EMPTY && ! board.isKo(p))
+                    board.play(board.getToMove(), p);
+            }
+            assertSameState(board, board.getSnapshot());
+        }
+    }
+
+    public void testRestore()
+    {
+        Board board = new Board(9);
+        PointList black = new PointList();
+        black.add(GoPoint.get(2, 2));
+        black.add(GoPoint.get(6, 6));
+        board.setupHandicap(black);
+        board.play(WHITE, GoPoint.get(0, 0));
+        board.play(BLACK, GoPoint.get(1, 0));
+        board.play(WHITE, GoPoint.get(4, 4));
+        board.play(BLACK, GoPoint.get(0, 1));
+        BoardSnapshot snapshot = board.getSnapshot();
+        Board restored = new Board(snapshot);
+        assertSameState(restored, snapshot);
+        assertEquals(1, restored.getKilled().size());
+        restored.play(WHITE, GoPoint.get(5, 5));
+        restored.undo();
+        assertSameState(restored, snapshot);
+        // Undo moves restored from the snapshot
+        restored.undo(2);
+        board.undo(2);
+        assertSameState(restored, board.getSnapshot());
+        assertTrue(restored.isSetupHandicap());
+        assertEquals(WHITE, restored.getToMove());
+    }
+
+    private static void assertSameState(ConstBoard board,
+                                        BoardSnapshot snapshot)
+    {
+        assertEquals(board.getSize(), snapshot.getSize());
+        for (GoPoint p : board)
+            assertEquals(board.getColor(p), snapshot.getColor(p));
+        assertEquals(board.getNumberMoves(), snapshot.getNumberMoves());
+        for (int i = 0; i < board.getNumberMoves(); ++i)
+            assertEquals(board.getMove(i), snapshot.getMove(i));
+        assertEquals(board.getToMove(), snapshot.getToMove());
+        assertEquals(board.getHashCode(), snapshot.getHashCode());
+        for (GoColor c : GoColor.BLACK_WHITE)
+        {
+            assertEquals(board.getCaptured(c), snapshot.getCaptured(c));
+            assertEquals(board.getSetup(c), snapshot.getSetup(c));
+        }
+        if (board.getNumberMoves() > 0)
+        {
+            assertEquals(new PointList(board.getKilled()),
+                         new PointList(snapshot.getKilled()));
+            assertEquals(new PointList(board.getSuicide()),
+                         new PointList(snapshot.getSuicide()));
+        }
+        for (GoPoint p : board)
+        {
+            for (GoColor c : GoColor.BLACK_WHITE)
+            {
+                assertEquals(board.isSuicide(c, p), snapshot.isSuicide(c, p));
+                assertEquals(board.isCaptureOrSuicide(c, p),
+                             snapshot.isCaptureOrSuicide(c, p));
+                assertEquals(board.isSuperko(c, p),
+                             snapshot.isSuperko(c, p));
+            }
+            assertEquals(board.isKo(p), snapshot.isKo(p));
+            GoColor color = board.getColor(p);
+            PointList stones = new PointList();
+            PointList snapshotStones = new PointList();
+            board.getStones(p, color, stones);
+            snapshot.getStones(p, color, snapshotStones);
+            assertEquals(stones.size(), snapshotStones.size());
+            assertTrue(stones.containsAll(snapshotStones));
+        }
+        for (GoColor c : GoColor.BLACK_WHITE)
+        {
+            PointIndexList moves = new PointIndexList();
+            PointIndexList snapshotMoves = new PointIndexList();
+            board.getLegalMoves(c, moves);
+            snapshot.getLegalMoves(c, snapshotMoves);
+            // The order of the moves is not specified
+            assertEquals(moves.size(), snapshotMoves.size());
+            for (int i = 0; i < moves.size(); ++i)
+                assertTrue(snapshotMoves.containsIndex(moves.getIndex(i)));
+        }
+    }
+}
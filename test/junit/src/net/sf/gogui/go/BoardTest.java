@@ -2,6 +2,8 @@
 
 package net.sf.gogui.go;
 
+import java.util.ArrayList;
+import java.util.Random;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
 import static net.sf.gogui.go.GoColor.EMPTY;
@@ -158,6 +160,44 @@ public final class BoardTest
         assertTrue(board.isSuicide(WHITE, GoPoint.get(1, 0)));
     }
 
+    /** Compare Board.getLegalMoves() with playing each move in random
+        positions. */
+    public void testGetLegalMoves()
+    {
+        Random random = new Random(2);
+        for (boolean useBitBoard : new boolean[] { false, true })
+        {
+            Board board = new Board(9, useBitBoard);
+            for (int i = 0; i < 300; ++i)
+            {
+                for (GoColor c : GoColor.BLACK_WHITE)
+                {
+                    PointIndexList moves = new PointIndexList();
+                    board.getLegalMoves(c, moves);
+                    for (GoPoint p : board)
+                    {
+                        boolean isLegal = false;
+                        if (board.getColor(p) == EMPTY
+                            && ! (c == board.getToMove() && board.isKo(p)))
+                        {
+                            board.play(c, p);
+                            isLegal = board.getSuicide().isEmpty();
+                            board.undo();
+                        }
+                        assertEquals(isLegal, moves.contains(p));
+                    }
+                }
+                PointIndexList moves = new PointIndexList();
+                board.getLegalMoves(board.getToMove(), moves);
+                if (moves.isEmpty())
+                    board.play(board.getToMove(), null);
+                else
+                    board.play(board.getToMove(),
+                               moves.get(random.nextInt(moves.size())));
+            }
+        }
+    }
+
     public void testGetLastMove()
     {
         Board board = new Board(19);
@@ -181,6 +221,184 @@ public final class BoardTest
         assertEquals(WHITE, board.getColor(point));
     }
 
+    /** Check playSequence against play in random games.
+        The games contain captures, ko, suicide, passes and plays on
+        occupied points. The moves are played in sequences of random length
+        and some of them are undone again. */
+    public void testPlaySequence()
+    {
+        Random random = new Random(1);
+        int size = 9;
+        ConstPointList points = BoardConstants.get(size).getPoints();
+        for (int useBitBoard = 0; useBitBoard < 2; ++useBitBoard)
+        {
+            Board expected = new Board(size);
+            Board board = new Board(size, useBitBoard == 1);
+            board.setSuperkoHistory(true);
+            ArrayList<Move> moves = new ArrayList<Move>();
+            for (int i = 0; i < 500; ++i)
+            {
+                int n = random.nextInt(20);
+                moves.clear();
+                for (int j = 0; j < n; ++j)
+                {
+                    GoColor c = expected.getToMove();
+                    if (random.nextInt(10) == 0)
+                        c = c.otherColor();
+                    GoPoint p = points.get(random.nextInt(points.size()));
+                    int r = random.nextInt(100);
+                    if (r == 0)
+                        p = null;
+                    else if (expected.getColor(p) != EMPTY && r > 5)
+                        continue;
+                    Move move = Move.get(c, p);
+                    expected.play(move);
+                    moves.add(move);
+                }
+                board.playSequence(moves);
+                assertSameState(expected, board);
+                if (random.nextInt(5) == 0)
+                {
+                    n = random.nextInt(expected.getNumberMoves() + 1);
+                    expected.undo(n);
+                    board.undo(n);
+                    assertSameState(expected, board);
+                }
+            }
+        }
+    }
+
+    /** Check incrementally updated block information against the block
+        information computed from scratch and against the bitset engine in
+        random games with undo and plays on occupied points. */
+    public void testRandomPlayUndo()
+    {
+        Random random = new Random(1);
+        int size = 9;
+        Board board = new Board(size);
+        Board bitBoard = new Board(size, true);
+        ConstPointList points = BoardConstants.get(size).getPoints();
+        for (int i = 0; i < 20000; ++i)
+        {
+            GoPoint p = points.get(random.nextInt(points.size()));
+            GoColor c = (random.nextInt(10) == 0 ? board.getToMove()
+                         .otherColor() : board.getToMove());
+            int r = random.nextInt(100);
+            if (r < 30 && board.getNumberMoves() > 0)
+            {
+                int n = random.nextInt(board.getNumberMoves()) + 1;
+                board.undo(n);
+                bitBoard.undo(n);
+            }
+            else if (r == 30)
+            {
+                PointList black = new PointList();
+                for (GoPoint q : board)
+                    if (board.getColor(q) == BLACK)
+                        black.add(q);
+                board.setup(black, null, WHITE);
+                bitBoard.setup(black, null, WHITE);
+            }
+            else if (board.getColor(p) == EMPTY || r == 31)
+            {
+                Board rebuilt = rebuild(board);
+                assertEquals(rebuilt.isSuicide(c, p),
+                             board.isSuicide(c, p));
+                assertEquals(rebuilt.isCaptureOrSuicide(c, p),
+                             board.isCaptureOrSuicide(c, p));
+                assertEquals(bitBoard.isSuicide(c, p),
+                             board.isSuicide(c, p));
+                assertEquals(bitBoard.isCaptureOrSuicide(c, p),
+                             board.isCaptureOrSuicide(c, p));
+                boolean isEmpty = (board.getColor(p) == EMPTY);
+                boolean isSuicide = board.isSuicide(c, p);
+                boolean isCaptureOrSuicide = board.isCaptureOrSuicide(c, p);
+                board.play(c, p);
+                rebuilt.play(c, p);
+                bitBoard.play(c, p);
+                assertEquals(bitBoard.getKilled().size(),
+                             board.getKilled().size());
+                assertEquals(bitBoard.getSuicide().size(),
+                             board.getSuicide().size());
+                assertEquals(rebuilt.getKilled().size(),
+                             board.getKilled().size());
+                assertEquals(rebuilt.getSuicide().size(),
+                             board.getSuicide().size());
+                if (isEmpty)
+                {
+                    assertEquals(isSuicide, board.getSuicide().size() > 0);
+                    assertEquals(isCaptureOrSuicide,
+                                 board.getKilled().size() > 0
+                                 || board.getSuicide().size() > 0);
+                }
+            }
+            assertEquals(Zobrist.getHashCode(board), board.getHashCode());
+            assertEquals(board.getHashCode(), bitBoard.getHashCode());
+            Board rebuilt = rebuild(board);
+            for (GoPoint q : board)
+            {
+                GoColor color = board.getColor(q);
+                assertEquals(rebuilt.getColor(q), color);
+                assertEquals(bitBoard.getColor(q), color);
+                if (color == EMPTY)
+                    continue;
+                PointList stones = new PointList();
+                PointList rebuiltStones = new PointList();
+                board.getStones(q, color, stones);
+                rebuilt.getStones(q, color, rebuiltStones);
+                assertEquals(rebuiltStones.size(), stones.size());
+                assertTrue(stones.containsAll(rebuiltStones));
+                PointList bitStones = new PointList();
+                bitBoard.getStones(q, color, bitStones);
+                assertEquals(bitStones.size(), stones.size());
+                assertTrue(stones.containsAll(bitStones));
+            }
+        }
+    }
+
+    public void testHashCode()
+    {
+        Board board = new Board(19);
+        assertEquals(0, board.getHashCode());
+        board.play(BLACK, GoPoint.get(3, 3));
+        long hashCode = board.getHashCode();
+        assertTrue(hashCode != 0);
+        board.play(WHITE, GoPoint.get(4, 4));
+        board.undo();
+        assertEquals(hashCode, board.getHashCode());
+        Board otherBoard = new Board(19);
+        otherBoard.setup(new PointList(GoPoint.get(3, 3)), null, null);
+        assertEquals(hashCode, otherBoard.getHashCode());
+        board.init(9);
+        assertEquals(0, board.getHashCode());
+    }
+
+    public void testIsSuperko()
+    {
+        Board board = new Board(19);
+        PointList black = new PointList();
+        black.add(GoPoint.get(1, 0));
+        black.add(GoPoint.get(0, 1));
+        black.add(GoPoint.get(1, 2));
+        PointList white = new PointList();
+        white.add(GoPoint.get(1, 1));
+        white.add(GoPoint.get(2, 0));
+        white.add(GoPoint.get(3, 1));
+        white.add(GoPoint.get(2, 2));
+        board.setup(black, white, BLACK);
+        assertFalse(board.isSuperko(BLACK, GoPoint.get(2, 1)));
+        board.play(BLACK, GoPoint.get(2, 1));
+        assertTrue(board.isSuperko(WHITE, GoPoint.get(1, 1)));
+        assertFalse(board.isSuperko(WHITE, GoPoint.get(10, 10)));
+        assertFalse(board.isSuperko(WHITE, null));
+        board.setSuperkoHistory(true);
+        assertTrue(board.isSuperko(WHITE, GoPoint.get(1, 1)));
+        assertFalse(board.isSuperko(WHITE, GoPoint.get(10, 10)));
+        board.undo();
+        board.play(BLACK, GoPoint.get(10, 10));
+        assertFalse(board.isSuperko(WHITE, GoPoint.get(1, 1)));
+    }
+
     /** Test that setup does not cause suicide. */
     public void testSetupSuicide()
     {
@@ -234,4 +452,78 @@ public final class BoardTest
         assertEquals(EMPTY, board.getColor(GoPoint.get(0, 0)));
         assertEquals(BLACK, board.getToMove());
     }
+
+    /** Test undoing a move restored from a snapshot of a setup with only
+        a player to move.
+        Undoing a restored move replays the moves from the setup position,
+        which needs to keep the setup player. */
+    public void testUndoRestoredSetupPlayer()
+    {
+        Board board = new Board(19);
+        board.setup(null, null, WHITE);
+        board.play(WHITE, GoPoint.get(0, 0));
+        Board restored = new Board(board.getSnapshot());
+        restored.undo();
+        assertEquals(EMPTY, restored.getColor(GoPoint.get(0, 0)));
+        assertEquals(WHITE, restored.getToMove());
+        assertEquals(WHITE, restored.getSetupPlayer());
+    }
+
+    private static void assertSameState(Board expected, Board board)
+    {
+        assertEquals(expected.getNumberMoves(), board.getNumberMoves());
+        for (int i = 0; i < expected.getNumberMoves(); ++i)
+            assertEquals(expected.getMove(i), board.getMove(i));
+        assertEquals(expected.getHashCode(), board.getHashCode());
+        assertEquals(Zobrist.getHashCode(board), board.getHashCode());
+        assertEquals(expected.getToMove(), board.getToMove());
+        assertEquals(expected.getCaptured(BLACK), board.getCaptured(BLACK));
+        assertEquals(expected.getCaptured(WHITE), board.getCaptured(WHITE));
+        if (expected.getNumberMoves() > 0)
+        {
+            // The order of the stones is not specified
+            assertEquals(expected.getKilled().size(),
+                         board.getKilled().size());
+            assertTrue(new PointList(board.getKilled())
+                       .containsAll(new PointList(expected.getKilled())));
+            assertEquals(expected.getSuicide().size(),
+                         board.getSuicide().size());
+            assertTrue(new PointList(board.getSuicide())
+                       .containsAll(new PointList(expected.getSuicide())));
+        }
+        for (GoPoint p : expected)
+        {
+            GoColor c = expected.getColor(p);
+            assertEquals(c, board.getColor(p));
+            assertEquals(expected.isKo(p), board.isKo(p));
+            assertEquals(expected.isSuperko(BLACK, p),
+                         board.isSuperko(BLACK, p));
+            assertEquals(expected.isSuicide(BLACK, p),
+                         board.isSuicide(BLACK, p));
+            if (c == EMPTY)
+                continue;
+            PointList expectedStones = new PointList();
+            PointList stones = new PointList();
+            expected.getStones(p, c, expectedStones);
+            board.getStones(p, c, stones);
+            assertEquals(expectedStones.size(), stones.size());
+            assertTrue(stones.containsAll(expectedStones));
+        }
+    }
+
+    /** Create a board with the position of a board as setup.
+        The block information of the new board is computed from scratch. */
+    private static Board rebuild(Board board)
+    {
+        PointList black = new PointList();
+        PointList white = new PointList();
+        for (GoPoint p : board)
+            if (board.getColor(p) == BLACK)
+                black.add(p);
+            else if (board.getColor(p) == WHITE)
+                white.add(p);
+        Board result = new Board(board.getSize());
+        result.setup(black, white, board.getToMove());
+        return result;
+    }
 }
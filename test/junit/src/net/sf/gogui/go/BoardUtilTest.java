@@ -0,0 +1,64 @@
+// BoardUtilTest.java
+
+package net.sf.gogui.go;
+
+import java.util.ArrayList;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+
+public final class BoardUtilTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(BoardUtilTest.class);
+    }
+
+    public void testCanonicalBoard()
+    {
+        Board board = new Board(9);
+        board.play(BLACK, GoPoint.get(2, 2));
+        board.play(WHITE, GoPoint.get(6, 3));
+        long hashCode = BoardUtil.getCanonicalHashCode(board);
+        int canonicalRotation = BoardUtil.getCanonicalRotation(board);
+        for (int mode = 0; mode < BoardUtil.NUMBER_ROTATIONS; ++mode)
+        {
+            Board rotated = new Board(9);
+            rotated.play(BLACK, BoardUtil.rotate(mode, GoPoint.get(2, 2), 9));
+            rotated.play(WHITE, BoardUtil.rotate(mode, GoPoint.get(6, 3), 9));
+            assertEquals(hashCode, BoardUtil.getCanonicalHashCode(rotated));
+            if (mode == canonicalRotation)
+                assertEquals(hashCode, rotated.getHashCode());
+        }
+    }
+
+    public void testCanonicalMoves()
+    {
+        ArrayList<Move> moves = new ArrayList<Move>();
+        moves.add(Move.get(BLACK, GoPoint.get(15, 3)));
+        moves.add(Move.get(WHITE, null));
+        moves.add(Move.get(BLACK, GoPoint.get(3, 3)));
+        moves.add(Move.get(WHITE, GoPoint.get(16, 15)));
+        long hashCode = BoardUtil.getCanonicalHashCode(moves, 19);
+        ArrayList<Move> canonical =
+            BoardUtil.rotate(BoardUtil.getCanonicalRotation(moves, 19),
+                             moves, 19);
+        for (int mode = 0; mode < BoardUtil.NUMBER_ROTATIONS; ++mode)
+        {
+            ArrayList<Move> rotated = BoardUtil.rotate(mode, moves, 19);
+            assertEquals(hashCode,
+                         BoardUtil.getCanonicalHashCode(rotated, 19));
+            assertEquals(canonical,
+                         BoardUtil.rotate(BoardUtil.getCanonicalRotation(
+                                                             rotated, 19),
+                                          rotated, 19));
+        }
+        moves.add(Move.get(BLACK, GoPoint.get(4, 4)));
+        assertFalse(hashCode == BoardUtil.getCanonicalHashCode(moves, 19));
+    }
+}
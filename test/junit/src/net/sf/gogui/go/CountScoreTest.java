@@ -0,0 +1,194 @@
+// CountScoreTest.java
+
+package net.sf.gogui.go;
+
+import java.util.Random;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import static net.sf.gogui.go.Score.ScoringMethod.AREA;
+import static net.sf.gogui.go.Score.ScoringMethod.TERRITORY;
+
+public final class CountScoreTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(CountScoreTest.class);
+    }
+
+    /** Test changing the status of a white stone in black territory. */
+    public void testChangeStatus()
+    {
+        Board board = new Board(5);
+        PointList black = new PointList();
+        PointList white = new PointList();
+        for (int y = 0; y < 5; ++y)
+        {
+            black.add(GoPoint.get(1, y));
+            white.add(GoPoint.get(3, y));
+        }
+        white.add(GoPoint.get(0, 2));
+        board.setup(black, white, BLACK);
+        CountScore countScore = new CountScore();
+        countScore.begin(board, null);
+        // Empty points adjacent to the alive white stone are neutral
+        assertEquals(EMPTY, countScore.getColor(GoPoint.get(0, 0)));
+        assertEquals(WHITE, countScore.getColor(GoPoint.get(0, 2)));
+        assertEquals(EMPTY, countScore.getColor(GoPoint.get(2, 2)));
+        assertEquals(WHITE, countScore.getColor(GoPoint.get(4, 2)));
+        Score score = countScore.getScore(null, TERRITORY, 0);
+        assertEquals(5, score.m_areaBlack);
+        assertEquals(11, score.m_areaWhite);
+        assertEquals(-5.0, score.m_result);
+        ConstPointList stones = countScore.changeStatus(GoPoint.get(0, 2));
+        assertEquals(1, stones.size());
+        assertEquals(GoPoint.get(0, 2), stones.get(0));
+        assertTrue(countScore.isDead(GoPoint.get(0, 2)));
+        countScore.compute();
+        assertEquals(BLACK, countScore.getColor(GoPoint.get(0, 0)));
+        assertEquals(BLACK, countScore.getColor(GoPoint.get(0, 2)));
+        score = countScore.getScore(null, TERRITORY, 0);
+        assertEquals(10, score.m_areaBlack);
+        assertEquals(10, score.m_areaWhite);
+        assertEquals(5, score.m_territoryBlack);
+        assertEquals(1, score.m_capturedWhite);
+        assertEquals(1.0, score.m_result);
+        countScore.changeStatus(GoPoint.get(0, 2));
+        countScore.compute();
+        assertEquals(EMPTY, countScore.getColor(GoPoint.get(0, 0)));
+        assertEquals(WHITE, countScore.getColor(GoPoint.get(0, 2)));
+        assertEquals(-5.0, countScore.getScore(null, TERRITORY, 0).m_result);
+    }
+
+    /** Compare with a simple computation of the score in random positions
+        after random changes of the life-death status. */
+    public void testRandom()
+    {
+        Random random = new Random(7);
+        CountScore countScore = new CountScore();
+        for (int n = 0; n < 50; ++n)
+        {
+            int size = 2 + random.nextInt(8);
+            Board board = new Board(size);
+            int numberMoves = random.nextInt(2 * size * size);
+            for (int i = 0; i < numberMoves; ++i)
+            {
+                GoPoint p = GoPoint.get(random.nextInt(size),
+                                        random.nextInt(size));
+                if (board.getColor(p) == EMPTY)
+                    board.play(random.nextBoolean() ? BLACK : WHITE, p);
+            }
+            countScore.begin(board, null);
+            checkScore(board, countScore);
+            for (int i = 0; i < 20; ++i)
+            {
+                GoPoint p = GoPoint.get(random.nextInt(size),
+                                        random.nextInt(size));
+                if (board.getColor(p) == EMPTY)
+                    continue;
+                countScore.changeStatus(p);
+                if (random.nextBoolean())
+                {
+                    countScore.compute();
+                    checkScore(board, countScore);
+                }
+            }
+            countScore.compute();
+            checkScore(board, countScore);
+        }
+    }
+
+    private static void checkScore(ConstBoard board, CountScore countScore)
+    {
+        GoColor[] owner = new GoColor[GoPoint.NUMBER_INDEXES];
+        boolean hasStones = false;
+        for (GoPoint p : board)
+            if (board.getColor(p) != EMPTY)
+                hasStones = true;
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            if (c != EMPTY && ! countScore.isDead(p))
+                owner[p.getIndex()] = c;
+            else if (owner[p.getIndex()] == null)
+            {
+                // Flood the region of empty points and dead stones
+                PointList region = new PointList();
+                Marker mark = new Marker(board.getSize());
+                region.add(p);
+                mark.set(p);
+                boolean isBlackAdjacent = false;
+                boolean isWhiteAdjacent = false;
+                for (int i = 0; i < region.size(); ++i)
+                    for (GoPoint adj : board.getAdjacent(region.get(i)))
+                    {
+                        GoColor adjColor = board.getColor(adj);
+                        if (adjColor != EMPTY && ! countScore.isDead(adj))
+                        {
+                            if (adjColor == BLACK)
+                                isBlackAdjacent = true;
+                            else
+                                isWhiteAdjacent = true;
+                        }
+                        else if (! mark.get(adj))
+                        {
+                            mark.set(adj);
+                            region.add(adj);
+                        }
+                    }
+                GoColor regionOwner;
+                if (! hasStones || (isBlackAdjacent && isWhiteAdjacent))
+                    regionOwner = EMPTY;
+                else if (isWhiteAdjacent)
+                    regionOwner = WHITE;
+                else
+                    regionOwner = BLACK;
+                for (GoPoint regionPoint : region)
+                    owner[regionPoint.getIndex()] = regionOwner;
+            }
+        }
+        Score score = new Score();
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            GoColor sc = owner[p.getIndex()];
+            assertEquals(sc, countScore.getColor(p));
+            if (sc == BLACK)
+                ++score.m_areaBlack;
+            else if (sc == WHITE)
+                ++score.m_areaWhite;
+            if (sc != EMPTY && c != sc)
+            {
+                if (sc == BLACK)
+                    ++score.m_territoryBlack;
+                else
+                    ++score.m_territoryWhite;
+                if (c == BLACK)
+                    ++score.m_capturedBlack;
+                else if (c == WHITE)
+                    ++score.m_capturedWhite;
+            }
+        }
+        Komi komi = new Komi(6.5);
+        Score area = countScore.getScore(komi, AREA, 2);
+        assertEquals(score.m_areaBlack, area.m_areaBlack);
+        assertEquals(score.m_areaWhite, area.m_areaWhite);
+        assertEquals(score.m_areaBlack - score.m_areaWhite - 2 - 6.5,
+                     area.m_result);
+        Score territory = countScore.getScore(komi, TERRITORY, 2);
+        assertEquals(score.m_territoryBlack, territory.m_territoryBlack);
+        assertEquals(score.m_territoryWhite, territory.m_territoryWhite);
+        int capturedBlack = board.getCaptured(BLACK) + score.m_capturedBlack;
+        int capturedWhite = board.getCaptured(WHITE) + score.m_capturedWhite;
+        assertEquals(capturedBlack, territory.m_capturedBlack);
+        assertEquals(capturedWhite, territory.m_capturedWhite);
+        assertEquals(capturedWhite - capturedBlack + score.m_territoryBlack
+                     - score.m_territoryWhite - 6.5, territory.m_result);
+    }
+}
@@ -0,0 +1,104 @@
+// LegalMovesBenchmark.java
+
+package net.sf.gogui.go;
+
+import java.util.Random;
+
+/** Benchmark for Board.getLegalMoves().
+    Compares computing all legal moves in random positions with
+    getLegalMoves, with a loop over all points calling isKo and isSuicide,
+    and with a loop over all points that plays and undoes each move.
+    Not a unit test; run with <code>java -ea:none</code> for meaningful
+    numbers. */
+public final class LegalMovesBenchmark
+{
+    public static void main(String args[])
+    {
+        int numberPositions = 200;
+        int numberIterations = 200;
+        Board[] boards = new Board[numberPositions];
+        Random random = new Random(1);
+        for (int i = 0; i < numberPositions; ++i)
+            boards[i] = createPosition(random, 50 + random.nextInt(150));
+        for (int run = 0; run < 3; ++run)
+        {
+            long sum = 0;
+            long time = System.nanoTime();
+            PointIndexList moves = new PointIndexList(361);
+            for (int i = 0; i < numberIterations; ++i)
+                for (Board board : boards)
+                {
+                    moves.clear();
+                    board.getLegalMoves(board.getToMove(), moves);
+                    sum += moves.size();
+                }
+            long timeLegalMoves = System.nanoTime() - time;
+            time = System.nanoTime();
+            for (int i = 0; i < numberIterations; ++i)
+                for (Board board : boards)
+                    sum -= countLegalPerPoint(board);
+            long timePerPoint = System.nanoTime() - time;
+            time = System.nanoTime();
+            for (int i = 0; i < numberIterations; ++i)
+                for (Board board : boards)
+                    sum += countLegalPlayUndo(board);
+            long timePlayUndo = System.nanoTime() - time;
+            int n = numberIterations * numberPositions;
+            System.out.println("getLegalMoves:        "
+                               + (timeLegalMoves / n) + " ns/position");
+            System.out.println("isKo/isSuicide loop:  "
+                               + (timePerPoint / n) + " ns/position");
+            System.out.println("play/undo loop:       "
+                               + (timePlayUndo / n) + " ns/position");
+            // Use result to avoid elimination of the loops
+            System.out.println("(checksum " + sum + ")");
+        }
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private LegalMovesBenchmark()
+    {
+    }
+
+    private static int countLegalPerPoint(Board board)
+    {
+        GoColor c = board.getToMove();
+        int result = 0;
+        for (GoPoint p : board)
+            if (board.getColor(p) == GoColor.EMPTY && ! board.isKo(p)
+                && ! board.isSuicide(c, p))
+                ++result;
+        return result;
+    }
+
+    private static int countLegalPlayUndo(Board board)
+    {
+        GoColor c = board.getToMove();
+        int result = 0;
+        for (GoPoint p : board)
+            if (board.getColor(p) == GoColor.EMPTY && ! board.isKo(p))
+            {
+                board.play(c, p);
+                if (board.getSuicide().isEmpty())
+                    ++result;
+                board.undo();
+            }
+        return result;
+    }
+
+    private static Board createPosition(Random random, int numberMoves)
+    {
+        Board board = new Board(19);
+        PointIndexList moves = new PointIndexList(361);
+        for (int i = 0; i < numberMoves; ++i)
+        {
+            moves.clear();
+            board.getLegalMoves(board.getToMove(), moves);
+            if (moves.isEmpty())
+                break;
+            board.play(board.getToMove(),
+                       moves.get(random.nextInt(moves.size())));
+        }
+        return board;
+    }
+}
@@ -41,6 +41,24 @@ public final class MarkerTest
         assertFalse(marker.get(p3));
     }
 
+    public void testReuse()
+    {
+        Marker marker = new Marker(19);
+        GoPoint p1 = GoPoint.get(0, 0);
+        GoPoint p2 = GoPoint.get(18, 18);
+        for (int i = 0; i < 1000; ++i)
+        {
+            assertTrue(marker.isCleared());
+            marker.set(i % 2 == 0 ? p1 : p2);
+            assertEquals(i % 2 == 0, marker.get(p1));
+            assertEquals(i % 2 != 0, marker.get(p2));
+            marker.clear();
+        }
+        marker.set(p1);
+        marker.set(p1, false);
+        assertTrue(marker.isCleared());
+    }
+
     public void testSetList()
     {
         Marker marker = new Marker(19);
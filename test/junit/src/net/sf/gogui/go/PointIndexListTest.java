@@ -0,0 +1,111 @@
+// PointIndexListTest.java
+
+package net.sf.gogui.go;
+
+import java.util.Iterator;
+
+public final class PointIndexListTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(PointIndexListTest.class);
+    }
+
+    public void testAddContains()
+    {
+        PointIndexList list = new PointIndexList(1);
+        GoPoint p1 = GoPoint.get(1, 1);
+        GoPoint p2 = GoPoint.get(24, 24);
+        assertFalse(list.contains(p1));
+        assertTrue(list.add(p1));
+        assertTrue(list.add(p2));
+        assertFalse(list.add(p1));
+        assertEquals(2, list.size());
+        assertTrue(list.contains(p1));
+        assertTrue(list.containsIndex(p2.getIndex()));
+        assertFalse(list.contains(GoPoint.get(2, 2)));
+        assertEquals(p2, list.get(1));
+        assertEquals(p2.getIndex(), list.getIndex(1));
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertFalse(list.contains(p1));
+        assertFalse(list.contains(p2));
+    }
+
+    public void testConvert()
+    {
+        PointList pointList = new PointList();
+        pointList.add(GoPoint.get(3, 3));
+        pointList.add(GoPoint.get(0, 5));
+        PointIndexList list = new PointIndexList(pointList);
+        assertEquals(pointList, list.toPointList());
+        assertEquals(pointList, new PointList(list));
+        assertEquals(pointList.hashCode(), list.hashCode());
+    }
+
+    /** Test that equals is symmetric.
+        A PointIndexList is only equal to other PointIndexLists, because
+        PointList.equals does not accept it. */
+    public void testEquals()
+    {
+        PointList pointList = new PointList();
+        pointList.add(GoPoint.get(3, 3));
+        pointList.add(GoPoint.get(0, 5));
+        PointIndexList list = new PointIndexList(pointList);
+        assertEquals(new PointIndexList(pointList), list);
+        assertEquals(new PointIndexList(pointList).hashCode(),
+                     list.hashCode());
+        assertFalse(list.equals(pointList));
+        assertFalse(pointList.equals(list));
+        list.popIndex();
+        assertFalse(list.equals(new PointIndexList(pointList)));
+    }
+
+    public void testIterate()
+    {
+        PointIndexList list = new PointIndexList();
+        GoPoint p1 = GoPoint.get(1, 1);
+        GoPoint p2 = GoPoint.get(2, 2);
+        list.add(p1);
+        list.add(p2);
+        Iterator<GoPoint> it = list.iterator();
+        assertTrue(it.hasNext());
+        assertEquals(p1, it.next());
+        assertTrue(it.hasNext());
+        assertEquals(p2, it.next());
+        assertFalse(it.hasNext());
+    }
+
+    public void testRemove()
+    {
+        PointIndexList list = new PointIndexList();
+        GoPoint p1 = GoPoint.get(1, 1);
+        GoPoint p2 = GoPoint.get(2, 2);
+        GoPoint p3 = GoPoint.get(2, 3);
+        list.add(p1);
+        list.add(p2);
+        list.add(p3);
+        assertTrue(list.remove(p2));
+        assertFalse(list.remove(p2));
+        assertFalse(list.contains(p2));
+        assertEquals(p3, list.get(1));
+        assertEquals(p3.getIndex(), list.popIndex());
+        assertFalse(list.contains(p3));
+        assertEquals(1, list.size());
+    }
+
+    public void testToString()
+    {
+        PointIndexList list = new PointIndexList();
+        assertEquals("", list.toString());
+        list.add(GoPoint.get(0, 0));
+        list.add(GoPoint.get(1, 1));
+        assertEquals("A1 B2", list.toString());
+    }
+}
@@ -310,6 +310,32 @@ public final class GtpSynchronizerTest
         assertExpectQueueEmpty();
     }
 
+    /** Test synchronizing a board with a setup player but no setup stones.
+        The setup player cannot be transmitted without setup stones and
+        must not cause a new initialization of the engine state. */
+    public void testSetupPlayerOnly() throws GtpError
+    {
+        createSynchronizer();
+        expect("list_commands",
+               "gogui-setup\n" +
+               "gogui-setup_player\n");
+        m_gtp.querySupportedCommands();
+        assertExpectQueueEmpty();
+        setup(new PointList(), null, WHITE);
+        expect("boardsize 19", "");
+        expect("clear_board", "");
+        m_synchronizer.synchronize(m_board, null, null);
+        assertExpectQueueEmpty();
+        play(WHITE, 3, 4);
+        expect("play W D5", "");
+        m_synchronizer.synchronize(m_board, null, null);
+        assertExpectQueueEmpty();
+        play(BLACK, 4, 4);
+        expect("play B E5", "");
+        m_synchronizer.synchronize(m_board, null, null);
+        assertExpectQueueEmpty();
+    }
+
     public void testTimeSettings() throws GtpError
     {
         createSynchronizer();
@@ -0,0 +1,192 @@
+// ParallelSgfReaderTest.java
+
+package net.sf.gogui.sgf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import net.sf.gogui.game.ConstGameTree;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.util.ErrorMessage;
+
+public final class ParallelSgfReaderTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(ParallelSgfReaderTest.class);
+    }
+
+    public void tearDown()
+    {
+        for (File file : m_files)
+            file.delete();
+    }
+
+    /** Test reading in the order of completion. */
+    public void testAsCompleted() throws Exception
+    {
+        createFile(createCollection(100));
+        Collector collector = new Collector();
+        new ParallelSgfReader(4, false).read(m_files, collector);
+        Collections.sort(collector.m_trees);
+        Collector inOrder = new Collector();
+        new ParallelSgfReader(1, true).read(m_files, inOrder);
+        Collections.sort(inOrder.m_trees);
+        assertEquals(inOrder.m_trees, collector.m_trees);
+    }
+
+    /** Test that an error is reported after the game trees before the
+        game tree with the error. */
+    public void testError() throws Exception
+    {
+        File file = createFile("(;SZ[9];B[aa])(;SZ[9];B[zz])(;SZ[9])");
+        Collector collector = new Collector();
+        try
+        {
+            new ParallelSgfReader(4, true).read(m_files, collector);
+            fail();
+        }
+        catch (SgfError e)
+        {
+        }
+        assertEquals(1, collector.m_trees.size());
+        assertEquals(file + ":0", collector.m_names.get(0));
+    }
+
+    /** Test reading in the order of the files.
+        Compares with the game trees read by SgfCollectionReader. */
+    public void testInOrder() throws Exception
+    {
+        createFile(createCollection(50));
+        createFile("(;SZ[9];B[aa])");
+        createFile("foo (;GM[1]C[)\\]((])(;C[x]");
+        Collector collector = new Collector();
+        new ParallelSgfReader(4, true).read(m_files, collector);
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<String> trees = new ArrayList<String>();
+        for (File file : m_files)
+        {
+            SgfCollectionReader reader =
+                new SgfCollectionReader(new FileInputStream(file),
+                                        file, false);
+            for (int i = 0; reader.hasNext(); ++i)
+            {
+                trees.add(writeString(reader.next()));
+                names.add(file + ":" + i);
+            }
+            reader.close();
+        }
+        assertEquals(53, names.size());
+        assertEquals(names, collector.m_names);
+        assertEquals(trees, collector.m_trees);
+        assertNotNull(collector.m_warnings.get(52));
+    }
+
+    /** Test a collection with a charset that is not compatible with ASCII.
+        The second byte of U+8868 in Shift_JIS is a backslash, the games
+        after the charset property must not be split on the byte level. */
+    public void testShiftJis() throws Exception
+    {
+        if (! Charset.isSupported("Shift_JIS"))
+            return;
+        createFile("(;GM[1]SZ[9];B[aa])"
+                   + "(;CA[Shift_JIS]GM[1]SZ[9]C[\u8868](;B[aa])(;B[bb]))"
+                   + "(;GM[1]SZ[9];W[cc])", "Shift_JIS");
+        Collector collector = new Collector();
+        new ParallelSgfReader(4, true).read(m_files, collector);
+        File file = m_files.get(0);
+        SgfCollectionReader reader =
+            new SgfCollectionReader(new FileInputStream(file), file, false);
+        ArrayList<String> trees = new ArrayList<String>();
+        while (reader.hasNext())
+            trees.add(writeString(reader.next()));
+        reader.close();
+        assertEquals(3, trees.size());
+        assertEquals(trees, collector.m_trees);
+        assertEquals(2, collector.m_rootChildren.get(1).intValue());
+        assertEquals("\u8868", collector.m_rootComments.get(1));
+        assertNull(collector.m_warnings.get(1));
+    }
+
+    private static final class Collector
+        implements ParallelSgfReader.Listener
+    {
+        public final ArrayList<String> m_names = new ArrayList<String>();
+
+        public final ArrayList<String> m_trees = new ArrayList<String>();
+
+        public final ArrayList<String> m_warnings = new ArrayList<String>();
+
+        public final ArrayList<String> m_rootComments =
+            new ArrayList<String>();
+
+        public final ArrayList<Integer> m_rootChildren =
+            new ArrayList<Integer>();
+
+        public void gameRead(File file, int index, GameTree tree,
+                             String warnings) throws ErrorMessage
+        {
+            m_names.add(file + ":" + index);
+            m_rootComments.add(tree.getRoot().getComment());
+            m_rootChildren.add(tree.getRoot().getNumberChildren());
+            m_trees.add(writeString(tree));
+            m_warnings.add(warnings);
+        }
+    }
+
+    private final ArrayList<File> m_files = new ArrayList<File>();
+
+    private static String createCollection(int numberGames)
+    {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < numberGames; ++i)
+        {
+            buffer.append("(;GM[1]SZ[19]PB[Player ");
+            buffer.append(i);
+            buffer.append("]C[Game \\] ");
+            buffer.append(i);
+            buffer.append("]");
+            for (int j = 0; j <= i % 10; ++j)
+            {
+                buffer.append(j % 2 == 0 ? ";B[" : ";W[");
+                buffer.append((char)('a' + j));
+                buffer.append("a]");
+            }
+            buffer.append("(;B[ss])(;B[rr]C[(]))\n");
+        }
+        return buffer.toString();
+    }
+
+    private File createFile(String text) throws Exception
+    {
+        return createFile(text, "ISO-8859-1");
+    }
+
+    private File createFile(String text, String charset) throws Exception
+    {
+        File file = File.createTempFile("gogui", ".sgf");
+        m_files.add(file);
+        OutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes(charset));
+        out.close();
+        return file;
+    }
+
+    private static String writeString(ConstGameTree tree)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SgfWriter(out, tree, "test", "1");
+        return out.toString();
+    }
+}
@@ -0,0 +1,91 @@
+// SgfCollectionReaderTest.java
+
+package net.sf.gogui.sgf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import net.sf.gogui.game.ConstGameInfo;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.StringInfoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+
+public final class SgfCollectionReaderTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(SgfCollectionReaderTest.class);
+    }
+
+    /** Test reading a collection with different charsets. */
+    public void testCharset() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("(;CA[UTF-8]C[\u00e4];B[aa])".getBytes("UTF-8"));
+        out.write("(;C[\u00e4];B[aa])".getBytes("ISO-8859-1"));
+        SgfCollectionReader reader = createReader(out.toByteArray(), false);
+        assertTrue(reader.hasNext());
+        assertEquals("\u00e4", reader.next().getRoot().getComment());
+        assertTrue(reader.hasNext());
+        assertEquals("\u00e4", reader.next().getRoot().getComment());
+        assertFalse(reader.hasNext());
+    }
+
+    public void testOnlyRoot() throws Exception
+    {
+        String text =
+            "(;GM[1]SZ[9]PB[a];B[aa]C[)(];W[bb](;B[cc])(;B[dd]C[\\]])))\n"
+            + "(;GM[1]SZ[13]PB[b](;B[aa])(;B[bb]))";
+        SgfCollectionReader reader = createReader(text.getBytes(), true);
+        assertTrue(reader.hasNext());
+        GameTree tree = reader.next();
+        assertEquals(9, tree.getBoardSize());
+        assertFalse(tree.getRoot().hasChildren());
+        ConstGameInfo info = tree.getGameInfo(tree.getRoot());
+        assertEquals("a", info.get(StringInfoColor.NAME, BLACK));
+        assertTrue(reader.hasNext());
+        tree = reader.next();
+        assertEquals(13, tree.getBoardSize());
+        assertFalse(tree.getRoot().hasChildren());
+        assertFalse(reader.hasNext());
+        assertEquals(2, reader.getNumberGames());
+    }
+
+    /** Test reading all game trees with text between them. */
+    public void testRead() throws Exception
+    {
+        String text =
+            "foo\n(;SZ[9];B[aa];W[bb](;B[cc])(;B[dd]))\nbar\n"
+            + "(;SZ[19];B[aa])\n(;SZ[13]";
+        SgfCollectionReader reader = createReader(text.getBytes(), false);
+        assertTrue(reader.hasNext());
+        GameTree tree = reader.next();
+        assertEquals(9, tree.getBoardSize());
+        assertNull(reader.getWarnings());
+        ConstNode node = tree.getRoot().getChildConst().getChildConst();
+        assertEquals(2, node.getNumberChildren());
+        assertTrue(reader.hasNext());
+        tree = reader.next();
+        assertEquals(19, tree.getBoardSize());
+        assertEquals(2, tree.getRoot().getSubtreeSize());
+        assertTrue(reader.hasNext());
+        tree = reader.next();
+        assertEquals(13, tree.getBoardSize());
+        assertNotNull(reader.getWarnings());
+        assertFalse(reader.hasNext());
+        assertEquals(3, reader.getNumberGames());
+    }
+
+    private static SgfCollectionReader createReader(byte[] bytes,
+                                                    boolean onlyRoot)
+    {
+        return new SgfCollectionReader(new ByteArrayInputStream(bytes), null,
+                                       onlyRoot);
+    }
+}
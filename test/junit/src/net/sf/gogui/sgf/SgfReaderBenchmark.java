@@ -0,0 +1,150 @@
+// SgfReaderBenchmark.java
+
+package net.sf.gogui.sgf;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import net.sf.gogui.game.GameTree;
+
+/** Benchmark for SgfReader.
+    Reads large synthetic SGF files from memory and reports the throughput.
+    The first file contains moves, comments and variations like an
+    ordinary game record, the second file contains deeply nested
+    variations like files generated by programs.
+    Not a unit test; run with <code>java -ea:none</code> for meaningful
+    numbers. */
+public final class SgfReaderBenchmark
+{
+    public static void main(String args[]) throws Exception
+    {
+        byte[] sgf = createSgf(new Random(1), 20000).getBytes("UTF-8");
+        byte[] deepSgf = createDeepSgf(new Random(1), 20, 2000)
+            .getBytes("UTF-8");
+        for (int run = 0; run < 3; ++run)
+        {
+            long sum = run(sgf, "ordinary:");
+            sum += run(deepSgf, "deep:    ");
+            // Use result to avoid elimination of the loops
+            System.out.println("(checksum " + sum + ")");
+        }
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private SgfReaderBenchmark()
+    {
+    }
+
+    private static final String WORDS[] = {
+        "black", "white", "ko", "atari", "sente", "gote", "joseki",
+        "[tesuji]", "aji", "miai", "\u00e4\u00f6\u00fc",
+        "\u56f4\u68cb"
+    };
+
+    private static final int NUMBER_ITERATIONS = 50;
+
+    private static void appendComment(StringBuilder buffer, Random random)
+    {
+        buffer.append("C[");
+        int numberWords = 1 + random.nextInt(30);
+        for (int i = 0; i < numberWords; ++i)
+        {
+            if (i > 0)
+                buffer.append(random.nextInt(8) == 0 ? '\n' : ' ');
+            String word = WORDS[random.nextInt(WORDS.length)];
+            buffer.append(word.replace("]", "\\]"));
+        }
+        buffer.append(']');
+    }
+
+    private static void appendNode(StringBuilder buffer, Random random,
+                                   int moveNumber)
+    {
+        buffer.append("\n;");
+        buffer.append(moveNumber % 2 == 0 ? 'B' : 'W');
+        buffer.append('[');
+        buffer.append((char)('a' + random.nextInt(19)));
+        buffer.append((char)('a' + random.nextInt(19)));
+        buffer.append(']');
+        if (random.nextInt(5) == 0)
+            appendComment(buffer, random);
+        if (random.nextInt(20) == 0)
+            buffer.append("LB[dd:A][pp:B]");
+    }
+
+    /** Append a sequence of nodes followed by variations.
+        @return The number of nodes appended. */
+    private static int appendTree(StringBuilder buffer, Random random,
+                                  int moveNumber, int numberNodes)
+    {
+        int length = 1 + random.nextInt(100);
+        int n = 0;
+        while (n < length && n < numberNodes)
+            appendNode(buffer, random, moveNumber + n++);
+        while (n < numberNodes)
+        {
+            buffer.append('(');
+            n += appendTree(buffer, random, moveNumber + length,
+                            Math.min(numberNodes - n,
+                                     1 + random.nextInt(numberNodes)));
+            buffer.append(')');
+        }
+        return n;
+    }
+
+    /** Create a file with deeply nested variations.
+        The root node has a number of variations; in each variation, every
+        move has a variation with a single move and a variation that
+        continues the nesting.
+        @param numberVariations The number of variations of the root node.
+        @param depth The nesting depth of each variation. */
+    private static String createDeepSgf(Random random, int numberVariations,
+                                        int depth)
+    {
+        StringBuilder buffer =
+            new StringBuilder(numberVariations * depth * 24);
+        buffer.append("(;FF[4]GM[1]SZ[19]");
+        for (int i = 0; i < numberVariations; ++i)
+        {
+            for (int j = 0; j < depth; ++j)
+            {
+                buffer.append('(');
+                appendNode(buffer, random, j);
+            }
+            for (int j = 0; j < depth; ++j)
+            {
+                buffer.append(")(");
+                appendNode(buffer, random, depth - j - 1);
+            }
+            buffer.append(')');
+        }
+        buffer.append(")\n");
+        return buffer.toString();
+    }
+
+    private static String createSgf(Random random, int numberNodes)
+    {
+        StringBuilder buffer = new StringBuilder(numberNodes * 64);
+        buffer.append("(;FF[4]CA[UTF-8]GM[1]SZ[19]PB[Black]PW[White]");
+        appendTree(buffer, random, 0, numberNodes);
+        buffer.append(")\n");
+        return buffer.toString();
+    }
+
+    private static long run(byte[] sgf, String label) throws Exception
+    {
+        long sum = 0;
+        long time = System.nanoTime();
+        for (int i = 0; i < NUMBER_ITERATIONS; ++i)
+        {
+            ByteArrayInputStream in = new ByteArrayInputStream(sgf);
+            GameTree tree = new SgfReader(in, null, null, 0).getTree();
+            sum += tree.getRoot().getSubtreeSize();
+        }
+        time = System.nanoTime() - time;
+        long bytes = (long)NUMBER_ITERATIONS * sgf.length;
+        System.out.println("SgfReader " + label + " " + (time / bytes) + "."
+                           + (10 * time / bytes % 10) + " ns/byte, "
+                           + (1000 * bytes / time) + " MB/s");
+        return sum;
+    }
+}
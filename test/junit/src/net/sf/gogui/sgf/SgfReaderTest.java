@@ -3,11 +3,14 @@
 package net.sf.gogui.sgf;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.nio.charset.Charset;
+import net.sf.gogui.game.CompactGameTree;
 import net.sf.gogui.game.ConstGameInfo;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.ConstNode;
@@ -39,6 +42,132 @@ public final class SgfReaderTest
         return new junit.framework.TestSuite(SgfReaderTest.class);
     }
 
+    /** Test that reading into a compact tree gives the same tree.
+        Compares the output of SgfWriter for both trees. */
+    public void testCompact() throws Exception
+    {
+        String name = "ff4_ex.1.sgf";
+        SgfReader reader = getReader(name);
+        assertNull(reader.getCompactTree());
+        InputStream in = getClass().getResourceAsStream(name);
+        SgfReader compactReader = new SgfReader(in, null, null, 0, true);
+        assertNull(compactReader.getTree());
+        CompactGameTree tree = compactReader.getCompactTree();
+        assertEquals(54, tree.getNumberNodes());
+        String text = writeString(reader.getTree());
+        assertEquals(text, writeString(tree));
+        assertEquals(text, writeString(new CompactGameTree(tree)));
+    }
+
+    /** Test loading comments and unknown properties on demand.
+        Compares with the tree loaded into memory. */
+    public void testLazy() throws Exception
+    {
+        String text =
+            "(;FF[4]CA[UTF-8]C[Gr\u00fc\u00dfe \\] \ud83d\ude00\r\nfoo]"
+            + "XY[a][b\\]]\n;B[aa]C[ ];W[bb]C[\u00e4\\\nb])";
+        File file = File.createTempFile("gogui", ".sgf");
+        OutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+        SgfReader reader =
+            new SgfReader(new FileInputStream(file), file, null, 0);
+        SgfReader lazyReader =
+            new SgfReader(new FileInputStream(file), file, null, 0, false,
+                          true);
+        ConstNode root = lazyReader.getTree().getRoot();
+        assertEquals("Gr\u00fc\u00dfe ] \ud83d\ude00\nfoo",
+                     root.getComment());
+        ConstSgfProperties props = root.getSgfPropertiesConst();
+        assertEquals(2, props.getNumberValues("XY"));
+        assertEquals("b]", props.getValue("XY", 1));
+        ConstNode node = root.getChildConst();
+        assertFalse(node.hasComment());
+        assertEquals("\u00e4b", node.getChildConst().getComment());
+        assertEquals(writeString(reader.getTree()),
+                     writeString(lazyReader.getTree()));
+        file.delete();
+    }
+
+    /** Test that comments are loaded into memory if the stream is not at
+        the start of the file in lazy mode. */
+    public void testLazyNotAtStart() throws Exception
+    {
+        String text = "xx(;FF[4]C[comment];B[aa]C[other comment])";
+        File file = File.createTempFile("gogui", ".sgf");
+        OutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("ISO-8859-1"));
+        out.close();
+        FileInputStream in = new FileInputStream(file);
+        assertEquals(2, in.skip(2));
+        SgfReader reader = new SgfReader(in, file, null, 0, false, true);
+        ConstNode root = reader.getTree().getRoot();
+        assertEquals("comment", root.getComment());
+        assertEquals("other comment", root.getChildConst().getComment());
+        file.delete();
+    }
+
+    /** Test a charset that is not compatible with ASCII.
+        The second byte of U+8868 in Shift_JIS is a backslash. */
+    public void testCharsetShiftJis() throws Exception
+    {
+        if (! Charset.isSupported("Shift_JIS"))
+            return;
+        String text =
+            "(;FF[4]CA[Shift_JIS]C[\u8868]XY[\u8868\u8868];B[aa])";
+        File file = File.createTempFile("gogui", ".sgf");
+        OutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("Shift_JIS"));
+        out.close();
+        SgfReader reader =
+            new SgfReader(new FileInputStream(file), file, null, 0);
+        ConstNode root = reader.getTree().getRoot();
+        assertEquals("\u8868", root.getComment());
+        assertEquals("\u8868\u8868", getSgfPropertyValue(root, "XY"));
+        assertTrue(root.hasChildren());
+        file.delete();
+    }
+
+    /** Test that the charset property is respected for streams that are
+        not files.
+        Uses a root node that is larger than the buffer of the lexer with
+        the charset property at the end. */
+    public void testCharsetStream() throws Exception
+    {
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < 30000; ++i)
+            comment.append("\u00e4\u00df");
+        String text = "(;FF[4]C[" + comment + "]CA[UTF-8];C[\u00fc])";
+        InputStream in = new ByteArrayInputStream(text.getBytes("UTF-8"));
+        SgfReader reader = new SgfReader(in, null, null, 0);
+        ConstNode root = reader.getTree().getRoot();
+        assertEquals(comment.toString(), root.getComment());
+        assertEquals("\u00fc", root.getChildConst().getComment());
+        assertNull(reader.getWarnings());
+    }
+
+    /** Test that deeply nested subtrees don't cause a stack overflow. */
+    public void testDeepNesting() throws Exception
+    {
+        int depth = 100000;
+        StringBuilder text = new StringBuilder(depth * 20);
+        text.append("(;SZ[9]");
+        for (int i = 0; i < depth; ++i)
+            text.append(i % 2 == 0 ? "(;B[aa]" : "(;W[aa]");
+        text.append(')');
+        for (int i = 0; i < depth; ++i)
+            text.append("(;C[foo]))");
+        ConstGameTree tree = readSgfFileString(text.toString());
+        ConstNode node = tree.getRootConst();
+        for (int i = 0; i < depth; ++i)
+        {
+            assertEquals(2, node.getNumberChildren());
+            assertEquals("foo", node.getChildConst(1).getComment());
+            node = node.getChildConst();
+        }
+        assertFalse(node.hasChildren());
+    }
+
     public void testDuplicateProperty() throws Exception
     {
         readSgfFileString("(;C[foo]C[bar])", false, true);
@@ -316,6 +445,13 @@ public final class SgfReaderTest
         return new SgfReader(in, null, null, 0);
     }
 
+    private static String writeString(ConstGameTree tree)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SgfWriter(out, tree, "GoGui", Version.get());
+        return out.toString();
+    }
+
     private static String getSgfPropertyValue(ConstNode node, String key)
     {
         return node.getSgfPropertiesConst().getValue(key, 0);
@@ -2,13 +2,18 @@
 
 package net.sf.gogui.sgf;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.GameInfo;
 import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.Node;
+import net.sf.gogui.game.NodeUtil;
 import net.sf.gogui.game.TimeSettings;
+import static net.sf.gogui.go.GoColor.BLACK;
 import net.sf.gogui.go.Komi;
+import net.sf.gogui.go.Move;
 
 public final class SgfWriterTest
     extends junit.framework.TestCase
@@ -23,6 +28,30 @@ public final class SgfWriterTest
         return new junit.framework.TestSuite(SgfWriterTest.class);
     }
 
+    /** Test writing a tree that is deeper than the thread stack would
+        allow for a recursive writer.
+        Every node has a variation, so that the variations are nested. */
+    public void testDeepTree() throws Exception
+    {
+        GameTree tree = new GameTree();
+        Node node = tree.getRoot();
+        for (int i = 0; i < 20000; ++i)
+        {
+            Node child = new Node(Move.get(BLACK, i % 19, (i / 19) % 19));
+            node.append(child);
+            node.append(new Node(Move.get(BLACK, null)));
+            node = child;
+        }
+        String s = writeToString(tree);
+        SgfReader reader =
+            new SgfReader(new ByteArrayInputStream(s.getBytes("UTF-8")),
+                          null, null, 0);
+        ConstGameTree readTree = reader.getTree();
+        assertEquals(NodeUtil.subtreeSize(tree.getRoot()),
+                     NodeUtil.subtreeSize(readTree.getRootConst()));
+        assertEquals(s, writeToString(readTree));
+    }
+
     /** Test that komi property is written. */
     public void testKomi() throws Exception
     {